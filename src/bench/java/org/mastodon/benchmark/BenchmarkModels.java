@@ -0,0 +1,54 @@
+package org.mastodon.benchmark;
+
+import org.mastodon.graph.revised.CreateLargeModelExample;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Synthetic models used by the benchmarks, built with
+ * {@link CreateLargeModelExample}.
+ */
+public class BenchmarkModels
+{
+
+	public static final int N_STARTING_CELLS = 6;
+
+	public static final int N_FRAMES_PER_DIVISION = 5;
+
+	/**
+	 * The Z position around which the spots of the synthetic models lie.
+	 */
+	public static final double CENTER_Z = 85.;
+
+	/**
+	 * Creates a synthetic model made of {@value #N_STARTING_CELLS} lineages
+	 * dividing the specified number of times.
+	 *
+	 * @param nDivisions
+	 *            the number of divisions in each lineage. The number of spots
+	 *            grows as <code>2^nDivisions</code>.
+	 * @return a new model.
+	 */
+	public static Model create( final int nDivisions )
+	{
+		return new CreateLargeModelExample().run( N_STARTING_CELLS, nDivisions, N_FRAMES_PER_DIVISION );
+	}
+
+	/**
+	 * Returns the last time-point that has spots in the specified model.
+	 *
+	 * @param model
+	 *            the model.
+	 * @return the max time-point.
+	 */
+	public static int maxTimepoint( final Model model )
+	{
+		int max = 0;
+		for ( final Spot spot : model.getGraph().vertices() )
+			max = Math.max( max, spot.getTimepoint() );
+		return max;
+	}
+
+	private BenchmarkModels()
+	{}
+}
@@ -0,0 +1,115 @@
+package org.mastodon.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.ConnectedComponentIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Operations of the {@link ConnectedComponentIndex} that backs the track ID
+ * and track size features: building the index, splitting and merging tracks
+ * by removing and adding links, and querying all the spots.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ConnectedComponentIndexBenchmark
+{
+
+	/** Number of links removed and added back by {@link #splitAndMerge()}. */
+	private static final int N_LINKS = 1000;
+
+	@Param( { "10", "13" } )
+	public int nDivisions;
+
+	private ModelGraph graph;
+
+	private ConnectedComponentIndex< Spot, Link > index;
+
+	private RefList< Spot > sources;
+
+	private RefList< Spot > targets;
+
+	@Setup
+	public void setup()
+	{
+		final Model model = BenchmarkModels.create( nDivisions );
+		graph = model.getGraph();
+		index = model.getTrackIndex();
+
+		// Pick random links, whose removal splits a track.
+		final RefList< Link > links = RefCollections.createRefList( graph.edges() );
+		links.addAll( graph.edges() );
+		final Random random = new Random( 1l );
+		sources = RefCollections.createRefList( graph.vertices() );
+		targets = RefCollections.createRefList( graph.vertices() );
+		final Spot ref = graph.vertexRef();
+		final Link lref = graph.edgeRef();
+		for ( int i = 0; i < N_LINKS; i++ )
+		{
+			final Link link = links.get( random.nextInt( links.size() ), lref );
+			sources.add( link.getSource( ref ) );
+			targets.add( link.getTarget( ref ) );
+		}
+		graph.releaseRef( ref );
+		graph.releaseRef( lref );
+	}
+
+	@Benchmark
+	public int rebuild()
+	{
+		index.graphRebuilt();
+		return index.numComponents();
+	}
+
+	@Benchmark
+	public int splitAndMerge()
+	{
+		final Spot source = graph.vertexRef();
+		final Spot target = graph.vertexRef();
+		final Link lref = graph.edgeRef();
+		for ( int i = 0; i < sources.size(); i++ )
+		{
+			sources.get( i, source );
+			targets.get( i, target );
+			final Link link = graph.getEdge( source, target, lref );
+			if ( link == null )
+				continue;
+			graph.remove( link );
+			graph.addEdge( source, target, lref ).init();
+		}
+		graph.releaseRef( source );
+		graph.releaseRef( target );
+		graph.releaseRef( lref );
+		return index.numComponents();
+	}
+
+	@Benchmark
+	public long queryAll()
+	{
+		long sum = 0;
+		for ( final Spot spot : graph.vertices() )
+			sum += index.getComponentId( spot ) + index.getComponentSize( spot );
+		return sum;
+	}
+}
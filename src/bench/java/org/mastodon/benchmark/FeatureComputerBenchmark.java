@@ -0,0 +1,82 @@
+package org.mastodon.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.mamut.feature.MamutFeatureComputer;
+import org.mastodon.mamut.feature.MamutFeatureComputerService;
+import org.mastodon.mamut.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+
+/**
+ * Full computation of each {@link MamutFeatureComputer}, with its
+ * dependencies.
+ * <p>
+ * The spot intensity feature is not included: it requires image data, that
+ * synthetic models do not have. The track ID and track size features are not
+ * included either: they are read live from the track index of the model, and
+ * their computers do nothing. See {@link ConnectedComponentIndexBenchmark}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class FeatureComputerBenchmark
+{
+
+	@Param( { "10", "13" } )
+	public int nDivisions;
+
+	@Param( {
+			"Spot frame",
+			"Spot N links",
+			"Link displacement",
+			"Link velocity" } )
+	public String featureKey;
+
+	private Context context;
+
+	private MamutFeatureComputerService service;
+
+	private FeatureSpec< ?, ? > spec;
+
+	@Setup
+	public void setup()
+	{
+		final Model model = BenchmarkModels.create( nDivisions );
+		context = new Context();
+		service = context.getService( MamutFeatureComputerService.class );
+		service.setModel( model );
+		spec = service.getFeatureSpecs().stream()
+				.filter( s -> s.getKey().equals( featureKey ) )
+				.findFirst()
+				.orElseThrow( () -> new IllegalArgumentException( "Unknown feature: " + featureKey ) );
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		context.dispose();
+	}
+
+	@Benchmark
+	public Feature< ? > compute()
+	{
+		return service.compute( true, spec ).get( spec );
+	}
+}
@@ -0,0 +1,67 @@
+package org.mastodon.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.ModelGraphTrackSchemeProperties;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.views.trackscheme.LineageTreeLayout;
+import org.mastodon.views.trackscheme.TrackSchemeEdge;
+import org.mastodon.views.trackscheme.TrackSchemeGraph;
+import org.mastodon.views.trackscheme.TrackSchemeVertex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full TrackScheme layout of a model.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class LineageTreeLayoutBenchmark
+{
+
+	@Param( { "10", "13" } )
+	public int nDivisions;
+
+	private LineageTreeLayout layout;
+
+	@Setup
+	public void setup()
+	{
+		final Model model = BenchmarkModels.create( nDivisions );
+		final ModelGraph modelGraph = model.getGraph();
+		final TrackSchemeGraph< Spot, Link > graph = new TrackSchemeGraph<>(
+				modelGraph,
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( modelGraph ),
+				modelGraph.getLock() );
+		final DefaultSelectionModel< Spot, Link > selectionModel = new DefaultSelectionModel<>( modelGraph, model.getGraphIdBimap() );
+		final SelectionModelAdapter< Spot, Link, TrackSchemeVertex, TrackSchemeEdge > selection =
+				new SelectionModelAdapter<>( selectionModel, graph.getVertexMap(), graph.getEdgeMap() );
+		layout = new LineageTreeLayout( graph, selection );
+	}
+
+	@Benchmark
+	public double layout()
+	{
+		layout.layout();
+		return layout.getCurrentLayoutMaxX();
+	}
+}
@@ -0,0 +1,37 @@
+package org.mastodon.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.mamut.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Spot creation and linking in a {@link Model} graph.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ModelGraphBenchmark
+{
+
+	@Param( { "10", "13" } )
+	public int nDivisions;
+
+	@Benchmark
+	public Model addAndLinkSpots()
+	{
+		return BenchmarkModels.create( nDivisions );
+	}
+}
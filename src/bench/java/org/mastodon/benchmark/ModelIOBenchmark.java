@@ -0,0 +1,87 @@
+package org.mastodon.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.MamutProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving and loading the raw model files of a project folder.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ModelIOBenchmark
+{
+
+	@Param( { "10", "13" } )
+	public int nDivisions;
+
+	private Model model;
+
+	private Model target;
+
+	private File folder;
+
+	private MamutProject project;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		model = BenchmarkModels.create( nDivisions );
+		target = new Model();
+		folder = Files.createTempDirectory( "mastodon-benchmark" ).toFile();
+		project = new MamutProject( folder );
+		saveRaw();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		final File[] files = folder.listFiles();
+		if ( files != null )
+			for ( final File file : files )
+				file.delete();
+		folder.delete();
+	}
+
+	@Benchmark
+	public GraphToFileIdMap< Spot, Link > saveRaw() throws IOException
+	{
+		try (final MamutProject.ProjectWriter writer = project.openForWriting())
+		{
+			return model.saveRaw( writer );
+		}
+	}
+
+	@Benchmark
+	public FileIdToGraphMap< Spot, Link > loadRaw() throws IOException
+	{
+		try (final MamutProject.ProjectReader reader = project.openForReading())
+		{
+			return target.loadRaw( reader );
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package org.mastodon.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.adapter.FocusModelAdapter;
+import org.mastodon.adapter.HighlightModelAdapter;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.mamut.model.BoundingSphereRadiusStatistics;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.ModelOverlayProperties;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.DefaultFocusModel;
+import org.mastodon.model.DefaultHighlightModel;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.ui.coloring.GraphColorGeneratorAdapter;
+import org.mastodon.views.bdv.overlay.OverlayGraphRenderer;
+import org.mastodon.views.bdv.overlay.wrap.OverlayEdgeWrapper;
+import org.mastodon.views.bdv.overlay.wrap.OverlayGraphWrapper;
+import org.mastodon.views.bdv.overlay.wrap.OverlayVertexWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Painting the BDV overlay of a model on an offscreen image.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+public class OverlayGraphRendererBenchmark
+{
+
+	private static final int SIZE = 1024;
+
+	@Param( { "10", "13" } )
+	public int nDivisions;
+
+	private OverlayGraphRenderer< OverlayVertexWrapper< Spot, Link >, OverlayEdgeWrapper< Spot, Link > > renderer;
+
+	private BufferedImage image;
+
+	private Graphics2D graphics;
+
+	@Setup
+	public void setup()
+	{
+		final Model model = BenchmarkModels.create( nDivisions );
+		final ModelGraph modelGraph = model.getGraph();
+		final OverlayGraphWrapper< Spot, Link > graph = new OverlayGraphWrapper<>(
+				modelGraph,
+				model.getGraphIdBimap(),
+				model.getSpatioTemporalIndex(),
+				modelGraph.getLock(),
+				new ModelOverlayProperties( modelGraph, new BoundingSphereRadiusStatistics( model ) ) );
+
+		final HighlightModelAdapter< Spot, Link, OverlayVertexWrapper< Spot, Link >, OverlayEdgeWrapper< Spot, Link > > highlight =
+				new HighlightModelAdapter<>( new DefaultHighlightModel<>( model.getGraphIdBimap() ), graph.getVertexMap(), graph.getEdgeMap() );
+		final FocusModelAdapter< Spot, Link, OverlayVertexWrapper< Spot, Link >, OverlayEdgeWrapper< Spot, Link > > focus =
+				new FocusModelAdapter<>( new DefaultFocusModel<>( model.getGraphIdBimap() ), graph.getVertexMap(), graph.getEdgeMap() );
+		final SelectionModelAdapter< Spot, Link, OverlayVertexWrapper< Spot, Link >, OverlayEdgeWrapper< Spot, Link > > selection =
+				new SelectionModelAdapter<>( new DefaultSelectionModel<>( modelGraph, model.getGraphIdBimap() ), graph.getVertexMap(), graph.getEdgeMap() );
+		final GraphColorGeneratorAdapter< Spot, Link, OverlayVertexWrapper< Spot, Link >, OverlayEdgeWrapper< Spot, Link > > coloring =
+				new GraphColorGeneratorAdapter<>( graph.getVertexMap(), graph.getEdgeMap() );
+
+		renderer = new OverlayGraphRenderer<>( graph, highlight, focus, selection, coloring );
+		renderer.setCanvasSize( SIZE, SIZE );
+
+		// Look at the center of the model, in the middle of the movie.
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				1, 0, 0, SIZE / 2,
+				0, 1, 0, SIZE / 2,
+				0, 0, 1, -BenchmarkModels.CENTER_Z );
+		renderer.transformChanged( transform );
+		renderer.timePointChanged( BenchmarkModels.maxTimepoint( model ) / 2 );
+
+		image = new BufferedImage( SIZE, SIZE, BufferedImage.TYPE_INT_ARGB );
+		graphics = image.createGraphics();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage drawOverlays()
+	{
+		renderer.drawOverlays( graphics );
+		return image;
+	}
+}
@@ -0,0 +1,130 @@
+package org.mastodon.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.mastodon.kdtree.ClipConvexPolytope;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.spatial.SpatialIndex;
+import org.mastodon.spatial.SpatioTemporalIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.imglib2.RealPoint;
+import net.imglib2.algorithm.kdtree.ConvexPolytope;
+import net.imglib2.algorithm.kdtree.HyperPlane;
+import net.imglib2.neighborsearch.NearestNeighborSearch;
+
+/**
+ * Clipping and nearest-neighbor queries on the {@link SpatioTemporalIndex} of
+ * a model, over all its time-points.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class SpatioTemporalIndexBenchmark
+{
+
+	private static final int N_QUERIES = 100;
+
+	private static final double HALF_SIZE = 100.;
+
+	@Param( { "10", "13" } )
+	public int nDivisions;
+
+	private SpatioTemporalIndex< Spot > index;
+
+	private ReentrantReadWriteLock lock;
+
+	private int maxTimepoint;
+
+	private ConvexPolytope box;
+
+	private RealPoint[] queries;
+
+	@Setup
+	public void setup()
+	{
+		final Model model = BenchmarkModels.create( nDivisions );
+		index = model.getSpatioTemporalIndex();
+		lock = model.getGraph().getLock();
+		maxTimepoint = BenchmarkModels.maxTimepoint( model );
+
+		final double z = BenchmarkModels.CENTER_Z;
+		box = new ConvexPolytope(
+				new HyperPlane(  1,  0,  0, -HALF_SIZE ),
+				new HyperPlane( -1,  0,  0, -HALF_SIZE ),
+				new HyperPlane(  0,  1,  0, -HALF_SIZE ),
+				new HyperPlane(  0, -1,  0, -HALF_SIZE ),
+				new HyperPlane(  0,  0,  1, z - HALF_SIZE ),
+				new HyperPlane(  0,  0, -1, -z - HALF_SIZE ) );
+
+		final Random ran = new Random( 1l );
+		queries = new RealPoint[ N_QUERIES ];
+		for ( int i = 0; i < N_QUERIES; i++ )
+			queries[ i ] = new RealPoint(
+					( 2. * ran.nextDouble() - 1. ) * HALF_SIZE,
+					( 2. * ran.nextDouble() - 1. ) * HALF_SIZE,
+					z + ( 2. * ran.nextDouble() - 1. ) * HALF_SIZE );
+	}
+
+	@Benchmark
+	public int clip()
+	{
+		lock.readLock().lock();
+		try
+		{
+			int n = 0;
+			for ( int t = 0; t <= maxTimepoint; t++ )
+			{
+				final ClipConvexPolytope< Spot > ccp = index.getSpatialIndex( t ).getClipConvexPolytope();
+				ccp.clip( box );
+				for ( @SuppressWarnings( "unused" ) final Spot spot : ccp.getInsideValues() )
+					n++;
+			}
+			return n;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	@Benchmark
+	public void nearestNeighbor( final Blackhole bh )
+	{
+		lock.readLock().lock();
+		try
+		{
+			for ( int t = 0; t <= maxTimepoint; t++ )
+			{
+				final SpatialIndex< Spot > si = index.getSpatialIndex( t );
+				final NearestNeighborSearch< Spot > nns = si.getNearestNeighborSearch();
+				for ( final RealPoint query : queries )
+				{
+					nns.search( query );
+					bh.consume( nns.getSampler().get() );
+				}
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+}
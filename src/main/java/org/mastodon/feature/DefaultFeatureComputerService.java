@@ -1,12 +1,22 @@
 package org.mastodon.feature;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import org.mastodon.collection.RefList;
 import org.mastodon.feature.FeatureDependencyGraph.Edge;
@@ -43,9 +53,26 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 
 	private final FeatureComputationStatus status = new FeatureComputationStatus();
 
-	private String cancelReason;
+	private volatile String cancelReason;
 
-	private FeatureComputer currentFeatureComputer;
+	/**
+	 * The feature computers currently running.
+	 */
+	private final Set< FeatureComputer > runningComputers = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Time spent in each feature computer in the last computation.
+	 */
+	private final Map< FeatureSpec< ?, ? >, Long > computationTimes = new ConcurrentHashMap<>();
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The executor running the computers during a computation, also given to
+	 * the computers that declare an {@link ExecutorService} parameter to run
+	 * their own tasks.
+	 */
+	private volatile ExecutorService executor;
 
 	public DefaultFeatureComputerService()
 	{
@@ -205,34 +232,192 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		final FeatureDependencyGraph dependencyGraph = dependencies.subGraphFor( specs );
 		final RefList< FeatureDependencyGraph.Vertex > sequence = new TopologicalSort<>( dependencyGraph ).get();
 
-		final Map< FeatureSpec< ?, ? >, Feature< ? > > featureModel = new HashMap<>();
+		/*
+		 * Number of dependencies not yet computed for each vertex. Edges go
+		 * from a feature to the features it depends on.
+		 */
+		final Map< FeatureDependencyGraph.Vertex, Integer > nMissingInputs = new HashMap<>();
+		final Deque< FeatureDependencyGraph.Vertex > ready = new ArrayDeque<>();
 		for ( final FeatureDependencyGraph.Vertex vertex : sequence )
 		{
-			if ( isCanceled() )
-				break;
+			final int n = vertex.outgoingEdges().size();
+			nMissingInputs.put( vertex, n );
+			if ( n == 0 )
+				ready.add( vertex );
+		}
 
-			currentFeatureComputer = vertex.getFeatureComputer();
-			final CommandInfo info = vertex.getFeatureComputerInfo();
-			final CommandModule module = new CommandModule( info, currentFeatureComputer );
-			for ( final ModuleItem< ? > item : info.inputs() )
+		final Map< FeatureSpec< ?, ? >, Feature< ? > > featureModel = new HashMap<>();
+		computationTimes.clear();
+		status.start( sequence.size() );
+		/*
+		 * Computers and the tasks they split their work into share the same
+		 * pool, so that the total number of busy threads stays bounded by
+		 * numThreads. A computer waiting for its tasks helps running them.
+		 */
+		final ForkJoinPool executor = new ForkJoinPool( numThreads );
+		this.executor = executor;
+		final CompletionService< FeatureDependencyGraph.Vertex > completion = new ExecutorCompletionService<>( executor );
+		final Map< FeatureDependencyGraph.Vertex, CommandModule > modules = new HashMap<>();
+		try
+		{
+			int nRunning = 0;
+			while ( true )
 			{
-				final Class< ? > klass = item.getType();
-				provideParameters( item, module, klass, featureModel );
-			}
+				// Launch all the computers whose inputs are ready.
+				while ( !ready.isEmpty() && !isCanceled() )
+				{
+					final FeatureDependencyGraph.Vertex vertex = ready.poll();
+					final FeatureComputer featureComputer = vertex.getFeatureComputer();
+					final CommandInfo info = vertex.getFeatureComputerInfo();
+					final CommandModule module = new CommandModule( info, featureComputer );
+					final String key = vertex.getFeatureSpec().getKey();
+					for ( final ModuleItem< ? > item : info.inputs() )
+					{
+						final Class< ? > klass = item.getType();
+						if ( FeatureComputationStatus.class.isAssignableFrom( klass ) )
+						{
+							// Each computer reports its own progress.
+							@SuppressWarnings( "unchecked" )
+							final ModuleItem< FeatureComputationStatus > statusItem = ( ModuleItem< FeatureComputationStatus > ) item;
+							statusItem.setValue( module, status.forComputer( key ) );
+							continue;
+						}
+						provideParameters( item, module, klass, featureModel );
+					}
+					featureComputer.createOutput();
+					modules.put( vertex, module );
+
+					runningComputers.add( featureComputer );
+					completion.submit( () -> {
+						status.computerStarted( key );
+						final long start = System.nanoTime();
+						try
+						{
+							featureComputer.run();
+						}
+						catch ( final RuntimeException | Error e )
+						{
+							status.computerFailed( key, e );
+							throw e;
+						}
+						finally
+						{
+							final long duration = System.nanoTime() - start;
+							computationTimes.put( vertex.getFeatureSpec(), duration );
+							runningComputers.remove( featureComputer );
+							status.computerFinished( key, duration );
+						}
+						return vertex;
+					} );
+					nRunning++;
+				}
 
-			status.notifyStatus( vertex.getFeatureSpec().getKey() );
-			currentFeatureComputer.createOutput();
-			currentFeatureComputer.run();
+				if ( nRunning == 0 )
+					break;
 
-			final Feature< ? > output = ( Feature< ? > ) info.outputs().iterator().next().getValue( module );
-			featureModel.put( vertex.getFeatureSpec(), output );
-		}
+				// Wait for one computer to finish and collect its output.
+				final FeatureDependencyGraph.Vertex done = completion.take().get();
+				nRunning--;
+				final CommandInfo info = done.getFeatureComputerInfo();
+				final Feature< ? > output = ( Feature< ? > ) info.outputs().iterator().next().getValue( modules.get( done ) );
+				featureModel.put( done.getFeatureSpec(), output );
 
-		currentFeatureComputer = null;
-		status.notifyClear();
+				// Computers depending on this one might now be ready.
+				for ( final FeatureDependencyGraph.Edge edge : done.incomingEdges() )
+				{
+					final FeatureDependencyGraph.Vertex dependent = edge.getSource();
+					final int n = nMissingInputs.get( dependent ) - 1;
+					nMissingInputs.put( dependent, n );
+					if ( n == 0 )
+						ready.add( dependent );
+				}
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			cancel( "Feature computation was interrupted." );
+			Thread.currentThread().interrupt();
+		}
+		catch ( final ExecutionException e )
+		{
+			// Cancels the computers still running, and reports the error.
+			cancel( "Error during feature computation: " + e.getCause() );
+		}
+		finally
+		{
+			executor.shutdownNow();
+			awaitTermination( executor );
+			this.executor = null;
+			runningComputers.clear();
+			status.notifyClear();
+		}
 		return ( featureModel );
 	}
 
+	/**
+	 * Waits for the computers still running to return. After a failure or an
+	 * interruption, computers that ignore the cancellation keep writing their
+	 * output, and must not overlap with the next computation. An interruption
+	 * while waiting is restored once all the computers returned.
+	 */
+	private static void awaitTermination( final ExecutorService executor )
+	{
+		boolean interrupted = Thread.interrupted();
+		while ( true )
+		{
+			try
+			{
+				if ( executor.awaitTermination( 1, TimeUnit.SECONDS ) )
+					break;
+			}
+			catch ( final InterruptedException e )
+			{
+				interrupted = true;
+			}
+		}
+		if ( interrupted )
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Sets the number of threads used for feature computation. Computers that
+	 * do not depend on each other are run in parallel, a computer being
+	 * launched as soon as all the features it depends on are computed. If
+	 * {@code 1}, computers run one after another, in topological order.
+	 * <p>
+	 * This is the thread budget of the whole computation: computers that
+	 * declare an {@link ExecutorService} parameter receive the executor
+	 * running them, and should use it instead of creating their own threads.
+	 *
+	 * @param numThreads
+	 *            the number of threads.
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	/**
+	 * Returns the number of threads used for feature computation.
+	 *
+	 * @return the number of threads.
+	 */
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Returns the time, in nanoseconds, spent by each {@link FeatureComputer}
+	 * in the last call to {@link #compute(boolean, Collection)}.
+	 *
+	 * @return an unmodifiable map from feature specs to computation time.
+	 */
+	public Map< FeatureSpec< ?, ? >, Long > getComputationTimes()
+	{
+		return Collections.unmodifiableMap( computationTimes );
+	}
+
 	/**
 	 * Try to set a value for the specified {@link ModuleItem} that is a parameter
 	 * of the {@link FeatureComputer} described by the specified
@@ -266,6 +451,15 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 			return;
 		}
 
+		// Executor shared by all computers.
+		if ( ExecutorService.class.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< ExecutorService > executorItem = ( ModuleItem< ExecutorService > ) item;
+			executorItem.setValue( module, executor );
+			return;
+		}
+
 		// FeatureComputationStatus.
 		if (FeatureComputationStatus.class.isAssignableFrom( parameterClass ))
 		{
@@ -288,8 +482,9 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 	public void cancel( final String reason )
 	{
 		this.cancelReason = reason;
-		if ( currentFeatureComputer instanceof Cancelable )
-			( ( Cancelable ) currentFeatureComputer ).cancel( reason );
+		for ( final FeatureComputer featureComputer : runningComputers )
+			if ( featureComputer instanceof Cancelable )
+				( ( Cancelable ) featureComputer ).cancel( reason );
 	}
 
 	@Override
@@ -322,15 +517,86 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		void progress( final double progress );
 
 		void clear();
+
+		/**
+		 * Notifies that the computer of the feature with the specified key
+		 * started.
+		 *
+		 * @param key
+		 *            the feature key.
+		 */
+		default void computerStarted( final String key )
+		{}
+
+		/**
+		 * Notifies the progress of the computer of the feature with the
+		 * specified key.
+		 *
+		 * @param key
+		 *            the feature key.
+		 * @param progress
+		 *            computation progress as a number between 0 and 1.
+		 */
+		default void computerProgress( final String key, final double progress )
+		{}
+
+		/**
+		 * Notifies that the computer of the feature with the specified key
+		 * failed with an exception. The computation is then canceled, see
+		 * {@link FeatureComputerService#getCancelReason()}.
+		 *
+		 * @param key
+		 *            the feature key.
+		 * @param error
+		 *            the exception thrown by the computer.
+		 */
+		default void computerFailed( final String key, final Throwable error )
+		{}
+
+		/**
+		 * Notifies that the computer of the feature with the specified key
+		 * finished, failed, or was canceled.
+		 *
+		 * @param key
+		 *            the feature key.
+		 * @param nanos
+		 *            the time spent in the computer, in nanoseconds.
+		 */
+		default void computerFinished( final String key, final long nanos )
+		{}
 	}
 
+	/**
+	 * Reports the computation status to listeners.
+	 * <p>
+	 * Several computers might run at the same time. Each receives its own
+	 * instance, obtained with {@link #forComputer(String)}, that forwards
+	 * progress to the per-computer listener methods. The global status is the
+	 * list of running computers, and the global progress is averaged over all
+	 * the computers scheduled.
+	 */
 	public static class FeatureComputationStatus
 	{
 		private final Listeners.List< FeatureComputationStatusListener > listeners;
 
+		/**
+		 * Progress of the running computers, by feature key.
+		 */
+		private final Map< String, Double > running;
+
+		private int nScheduled;
+
+		private int nFinished;
+
 		FeatureComputationStatus()
 		{
-			listeners = new Listeners.SynchronizedList<>();
+			this( new Listeners.SynchronizedList<>() );
+		}
+
+		private FeatureComputationStatus( final Listeners.List< FeatureComputationStatusListener > listeners )
+		{
+			this.listeners = listeners;
+			running = new LinkedHashMap<>();
 		}
 
 		public void notifyStatus( final String status )
@@ -350,5 +616,98 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		{
 			listeners.list.forEach( l -> l.clear() );
 		}
+
+		/**
+		 * Returns a status instance to pass to the computer of the feature
+		 * with the specified key.
+		 *
+		 * @param key
+		 *            the feature key.
+		 * @return a new status instance.
+		 */
+		FeatureComputationStatus forComputer( final String key )
+		{
+			return new ComputerStatus( this, key );
+		}
+
+		synchronized void start( final int nComputers )
+		{
+			running.clear();
+			nScheduled = nComputers;
+			nFinished = 0;
+		}
+
+		synchronized void computerStarted( final String key )
+		{
+			running.put( key, 0. );
+			listeners.list.forEach( l -> l.computerStarted( key ) );
+			notifyStatus( String.join( ", ", running.keySet() ) );
+			notifyProgress( globalProgress() );
+		}
+
+		synchronized void computerProgress( final String key, final double progress )
+		{
+			running.put( key, progress );
+			listeners.list.forEach( l -> l.computerProgress( key, progress ) );
+			notifyProgress( globalProgress() );
+		}
+
+		synchronized void computerFailed( final String key, final Throwable error )
+		{
+			listeners.list.forEach( l -> l.computerFailed( key, error ) );
+		}
+
+		synchronized void computerFinished( final String key, final long nanos )
+		{
+			running.remove( key );
+			nFinished++;
+			listeners.list.forEach( l -> l.computerFinished( key, nanos ) );
+			notifyStatus( String.join( ", ", running.keySet() ) );
+			notifyProgress( globalProgress() );
+		}
+
+		private double globalProgress()
+		{
+			if ( nScheduled <= 0 )
+				return 0.;
+			double progress = nFinished;
+			for ( final double p : running.values() )
+				progress += p;
+			return progress / nScheduled;
+		}
+	}
+
+	/**
+	 * Status given to one computer, forwarding to the global status.
+	 */
+	private static final class ComputerStatus extends FeatureComputationStatus
+	{
+		private final FeatureComputationStatus parent;
+
+		private final String key;
+
+		private ComputerStatus( final FeatureComputationStatus parent, final String key )
+		{
+			// Shares the listeners of the parent, but only forwards to them.
+			super( parent.listeners );
+			this.parent = parent;
+			this.key = key;
+		}
+
+		@Override
+		public void notifyStatus( final String status )
+		{
+			parent.notifyStatus( key + ": " + status );
+		}
+
+		@Override
+		public void notifyProgress( final double progress )
+		{
+			parent.computerProgress( key, progress );
+		}
+
+		@Override
+		public void notifyClear()
+		{}
 	}
 }
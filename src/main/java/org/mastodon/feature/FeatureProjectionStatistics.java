@@ -0,0 +1,241 @@
+package org.mastodon.feature;
+
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import org.mastodon.properties.AbstractPropertyMap;
+import org.mastodon.properties.BeforePropertyChangeListener;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.properties.PropertyChangeListener;
+
+/**
+ * Summary statistics (count, min, max, mean and quantiles) of the values of a
+ * feature projection backed by a property map.
+ * <p>
+ * The statistics are kept up to date by listening to the changes of the
+ * property map: setting or removing a value updates the count and the sum in
+ * O(1), and the min and max unless the previous value was the min or the max.
+ * In that case, when {@link #invalidate()} was called, and when the count does
+ * not match the number of values in the map anymore (e.g. when the map was
+ * modified while its listeners were paused), the statistics are recomputed from
+ * the values of the map on next access, without visiting the objects. Quantiles
+ * are computed from a sorted copy of the values, built on first request and
+ * kept until the next change.
+ * <p>
+ * Deleting an object removes its value from the map without notifying the
+ * listeners, so {@link #invalidate()} must be called when objects are deleted.
+ * For the features of a graph, this is done by the listener of
+ * {@code GraphFeatureUpdateListeners.statisticsListener()}.
+ *
+ * @param <T>
+ *            the type of objects.
+ */
+public class FeatureProjectionStatistics< T > implements BeforePropertyChangeListener< T >, PropertyChangeListener< T >
+{
+	private final Predicate< T > isSet;
+
+	private final ToDoubleFunction< T > value;
+
+	private final Supplier< double[] > values;
+
+	private final IntSupplier size;
+
+	private int count;
+
+	private double sum;
+
+	private double min;
+
+	private double max;
+
+	/**
+	 * Whether the statistics must be recomputed from the values of the map.
+	 */
+	private boolean dirty;
+
+	/**
+	 * Sorted values, or {@code null} if they changed since last sorted.
+	 */
+	private double[] sorted;
+
+	private FeatureProjectionStatistics(
+			final AbstractPropertyMap< T, ? > map,
+			final Predicate< T > isSet,
+			final ToDoubleFunction< T > value,
+			final Supplier< double[] > values,
+			final IntSupplier size )
+	{
+		this.isSet = isSet;
+		this.value = value;
+		this.values = values;
+		this.size = size;
+		dirty = true;
+		map.addBeforePropertyChangeListener( this );
+		map.addPropertyChangeListener( this );
+	}
+
+	/**
+	 * Creates statistics for the values of the specified map, and registers
+	 * them as listeners of the map.
+	 *
+	 * @param map
+	 *            the map.
+	 * @param <T>
+	 *            the type of objects.
+	 * @return new statistics.
+	 */
+	public static < T > FeatureProjectionStatistics< T > of( final DoublePropertyMap< T > map )
+	{
+		return new FeatureProjectionStatistics<>( map, map::isSet, map::getDouble,
+				() -> map.getMap().values(),
+				() -> map.getMap().size() );
+	}
+
+	/**
+	 * Creates statistics for the values of the specified map, and registers
+	 * them as listeners of the map.
+	 *
+	 * @param map
+	 *            the map.
+	 * @param <T>
+	 *            the type of objects.
+	 * @return new statistics.
+	 */
+	public static < T > FeatureProjectionStatistics< T > of( final IntPropertyMap< T > map )
+	{
+		return new FeatureProjectionStatistics<>( map, map::isSet, map::getInt,
+				() -> Arrays.stream( map.getMap().values() ).asDoubleStream().toArray(),
+				() -> map.getMap().size() );
+	}
+
+	/**
+	 * Returns the number of objects with a value.
+	 *
+	 * @return the number of values.
+	 */
+	public synchronized int getCount()
+	{
+		update();
+		return count;
+	}
+
+	/**
+	 * Returns the smallest value, or {@link Double#POSITIVE_INFINITY} if there
+	 * are no values.
+	 *
+	 * @return the min.
+	 */
+	public synchronized double getMin()
+	{
+		update();
+		return min;
+	}
+
+	/**
+	 * Returns the largest value, or {@link Double#NEGATIVE_INFINITY} if there
+	 * are no values.
+	 *
+	 * @return the max.
+	 */
+	public synchronized double getMax()
+	{
+		update();
+		return max;
+	}
+
+	/**
+	 * Returns the mean of the values, or 0 if there are no values.
+	 *
+	 * @return the mean.
+	 */
+	public synchronized double getMean()
+	{
+		update();
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * Returns the specified quantile of the values (nearest rank), or
+	 * {@link Double#NaN} if there are no values.
+	 *
+	 * @param q
+	 *            the quantile, in the range from 0 to 1.
+	 * @return the value at quantile {@code q}.
+	 */
+	public synchronized double getQuantile( final double q )
+	{
+		update();
+		if ( sorted == null )
+		{
+			sorted = values.get();
+			Arrays.sort( sorted );
+		}
+		if ( sorted.length == 0 )
+			return Double.NaN;
+		final double clamped = Math.max( 0, Math.min( 1, q ) );
+		return sorted[ ( int ) Math.round( clamped * ( sorted.length - 1 ) ) ];
+	}
+
+	/**
+	 * Forces the statistics to be recomputed from the values of the map on next
+	 * access. Must be called when objects are deleted, and when the map is
+	 * modified without notifying its listeners.
+	 */
+	public synchronized void invalidate()
+	{
+		dirty = true;
+		sorted = null;
+	}
+
+	@Override
+	public synchronized void beforePropertyChange( final T obj )
+	{
+		sorted = null;
+		if ( dirty || !isSet.test( obj ) )
+			return;
+
+		final double v = value.applyAsDouble( obj );
+		--count;
+		sum -= v;
+		if ( !( v > min && v < max ) )
+			dirty = true;
+	}
+
+	@Override
+	public synchronized void propertyChanged( final T obj )
+	{
+		sorted = null;
+		if ( dirty || !isSet.test( obj ) )
+			return;
+
+		final double v = value.applyAsDouble( obj );
+		++count;
+		sum += v;
+		min = Math.min( min, v );
+		max = Math.max( max, v );
+	}
+
+	private void update()
+	{
+		if ( !dirty && count == size.getAsInt() )
+			return;
+
+		sorted = null;
+		count = 0;
+		sum = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		for ( final double v : values.get() )
+		{
+			++count;
+			sum += v;
+			min = Math.min( min, v );
+			max = Math.max( max, v );
+		}
+		dirty = false;
+	}
+}
@@ -1,5 +1,7 @@
 package org.mastodon.feature;
 
+import java.util.function.ToIntFunction;
+
 import org.mastodon.properties.DoublePropertyMap;
 import org.mastodon.properties.IntPropertyMap;
 
@@ -18,7 +20,67 @@ public class FeatureProjections
 		return new MyDoublePropertyProjection<>( key, map, units );
 	}
 
-	private static final class MyIntPropertyProjection< T > implements IntFeatureProjection< T >
+	/**
+	 * Returns an int projection whose values are computed on demand by the
+	 * specified function. The projection is set for all objects.
+	 *
+	 * @param key
+	 *            the projection key.
+	 * @param function
+	 *            the function that computes the value of an object.
+	 * @param units
+	 *            the projection units.
+	 * @param <T>
+	 *            the type of objects.
+	 * @return a new projection.
+	 */
+	public static final < T > IntFeatureProjection< T > project( final FeatureProjectionKey key, final ToIntFunction< T > function, final String units )
+	{
+		return new MyIntFunctionProjection<>( key, function, units );
+	}
+
+	private static final class MyIntFunctionProjection< T > implements IntFeatureProjection< T >
+	{
+
+		private final FeatureProjectionKey key;
+
+		private final ToIntFunction< T > function;
+
+		private final String units;
+
+		public MyIntFunctionProjection( final FeatureProjectionKey key, final ToIntFunction< T > function, final String units )
+		{
+			this.key = key;
+			this.function = function;
+			this.units = units;
+		}
+
+		@Override
+		public FeatureProjectionKey getKey()
+		{
+			return key;
+		}
+
+		@Override
+		public boolean isSet( final T obj )
+		{
+			return true;
+		}
+
+		@Override
+		public double value( final T obj )
+		{
+			return function.applyAsInt( obj );
+		}
+
+		@Override
+		public String units()
+		{
+			return units;
+		}
+	}
+
+	private static final class MyIntPropertyProjection< T > implements IntFeatureProjection< T >, SummarizedFeatureProjection< T >
 	{
 
 		private final FeatureProjectionKey key;
@@ -27,6 +89,8 @@ public class FeatureProjections
 
 		private final String units;
 
+		private FeatureProjectionStatistics< T > statistics;
+
 		public MyIntPropertyProjection( final FeatureProjectionKey key, final IntPropertyMap< T > map, final String units )
 		{
 			this.key = key;
@@ -52,6 +116,21 @@ public class FeatureProjections
 			return map.getInt( obj );
 		}
 
+		@Override
+		public synchronized FeatureProjectionStatistics< T > getStatistics()
+		{
+			if ( statistics == null )
+				statistics = FeatureProjectionStatistics.of( map );
+			return statistics;
+		}
+
+		@Override
+		public synchronized void invalidateStatistics()
+		{
+			if ( statistics != null )
+				statistics.invalidate();
+		}
+
 		@Override
 		public String units()
 		{
@@ -59,7 +138,7 @@ public class FeatureProjections
 		}
 	}
 
-	private static final class MyDoublePropertyProjection< T > implements FeatureProjection< T >
+	private static final class MyDoublePropertyProjection< T > implements SummarizedFeatureProjection< T >
 	{
 
 		private final FeatureProjectionKey key;
@@ -68,6 +147,8 @@ public class FeatureProjections
 
 		private final String units;
 
+		private FeatureProjectionStatistics< T > statistics;
+
 		public MyDoublePropertyProjection( final FeatureProjectionKey key, final DoublePropertyMap< T > map, final String units )
 		{
 			this.key = key;
@@ -93,6 +174,21 @@ public class FeatureProjections
 			return map.getDouble( obj );
 		}
 
+		@Override
+		public synchronized FeatureProjectionStatistics< T > getStatistics()
+		{
+			if ( statistics == null )
+				statistics = FeatureProjectionStatistics.of( map );
+			return statistics;
+		}
+
+		@Override
+		public synchronized void invalidateStatistics()
+		{
+			if ( statistics != null )
+				statistics.invalidate();
+		}
+
 		@Override
 		public String units()
 		{
@@ -0,0 +1,170 @@
+package org.mastodon.feature;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+import org.scijava.log.Logger;
+
+/**
+ * A {@link Feature} that is only loaded the first time it is accessed.
+ * <p>
+ * This proxy is declared in a {@link FeatureModel} in place of the actual
+ * feature, for instance when opening a project, so that features nobody looks
+ * at are never deserialized. The actual feature is loaded by the first call to
+ * {@link #project(FeatureProjectionKey)}, {@link #projections()},
+ * {@link #invalidate(Object)} or {@link #get()}, and all these methods then
+ * delegate to it. Objects whose value changed before the feature is loaded can
+ * be marked as stale with {@link #markStale(Object)} without loading it.
+ * <p>
+ * Code that needs the concrete class of a feature retrieved from a
+ * {@link FeatureModel} must call {@link #unwrap(Feature)} on it first.
+ * <p>
+ * If the feature cannot be loaded, the error is reported to the logger and this
+ * proxy behaves as a feature without projections.
+ *
+ * @param <T>
+ *            the type of the object the feature is defined for.
+ */
+public class LazyFeature< T > implements Feature< T >
+{
+
+	private final FeatureSpec< ? extends Feature< T >, T > spec;
+
+	private volatile Callable< ? extends Feature< T > > loader;
+
+	private final RefCollection< T > objects;
+
+	private final Logger log;
+
+	private Feature< T > feature;
+
+	// Objects to invalidate once the feature is loaded.
+	private RefSet< T > stale;
+
+	/**
+	 * Creates a lazy feature.
+	 *
+	 * @param spec
+	 *            the spec of the feature.
+	 * @param loader
+	 *            the task that loads the feature. It is called at most once.
+	 * @param objects
+	 *            the collection of the objects the feature is defined for,
+	 *            used to store the objects marked as stale.
+	 * @param log
+	 *            the logger to report loading errors to.
+	 */
+	public LazyFeature( final FeatureSpec< ? extends Feature< T >, T > spec, final Callable< ? extends Feature< T > > loader, final RefCollection< T > objects, final Logger log )
+	{
+		this.spec = spec;
+		this.loader = loader;
+		this.objects = objects;
+		this.log = log;
+	}
+
+	/**
+	 * Returns the actual feature, loading it if needed.
+	 *
+	 * @return the feature, or {@code null} if it could not be loaded.
+	 */
+	public synchronized Feature< T > get()
+	{
+		if ( loader != null )
+		{
+			try
+			{
+				feature = loader.call();
+			}
+			catch ( final Exception e )
+			{
+				log.error( "Could not load the feature " + spec.getKey() + ".", e );
+			}
+			loader = null;
+			if ( stale != null && feature != null )
+				for ( final T obj : stale )
+					feature.invalidate( obj );
+			stale = null;
+		}
+		return feature;
+	}
+
+	/**
+	 * Invalidates the value of the specified object, without loading the
+	 * actual feature. If it is not loaded yet, the object is invalidated when
+	 * it is.
+	 *
+	 * @param obj
+	 *            the object whose value is stale.
+	 */
+	public synchronized void markStale( final T obj )
+	{
+		if ( isLoaded() )
+		{
+			if ( feature != null )
+				feature.invalidate( obj );
+			return;
+		}
+		if ( stale == null )
+			stale = RefCollections.createRefSet( objects );
+		stale.add( obj );
+	}
+
+	/**
+	 * Returns whether the actual feature was loaded, or an attempt to load it
+	 * was made.
+	 *
+	 * @return <code>true</code> if the feature was loaded.
+	 */
+	public boolean isLoaded()
+	{
+		return loader == null;
+	}
+
+	@Override
+	public FeatureProjection< T > project( final FeatureProjectionKey key )
+	{
+		final Feature< T > f = get();
+		return f == null ? null : f.project( key );
+	}
+
+	@Override
+	public Set< FeatureProjection< T > > projections()
+	{
+		final Feature< T > f = get();
+		return f == null ? Collections.emptySet() : f.projections();
+	}
+
+	@Override
+	public FeatureSpec< ? extends Feature< T >, T > getSpec()
+	{
+		return spec;
+	}
+
+	@Override
+	public void invalidate( final T obj )
+	{
+		final Feature< T > f = get();
+		if ( f != null )
+			f.invalidate( obj );
+	}
+
+	/**
+	 * Returns the actual feature behind the specified feature: the loaded
+	 * feature if it is a {@link LazyFeature}, the feature itself otherwise.
+	 *
+	 * @param feature
+	 *            the feature, possibly {@code null}.
+	 * @return the actual feature, or {@code null} if the specified feature is
+	 *         {@code null} or could not be loaded.
+	 */
+	public static Feature< ? > unwrap( final Feature< ? > feature )
+	{
+		if ( feature instanceof LazyFeature )
+			return ( ( LazyFeature< ? > ) feature ).get();
+		return feature;
+	}
+}
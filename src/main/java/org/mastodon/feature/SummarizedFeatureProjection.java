@@ -0,0 +1,27 @@
+package org.mastodon.feature;
+
+/**
+ * Interface for projections that maintain summary statistics of their values,
+ * so that their range can be queried without visiting all objects.
+ *
+ * @param <T>
+ *            the type of objects for which the feature is defined.
+ */
+public interface SummarizedFeatureProjection< T > extends FeatureProjection< T >
+{
+	/**
+	 * Returns the statistics of the values of this projection. They are
+	 * created on first call and kept up to date afterwards.
+	 *
+	 * @return the statistics.
+	 */
+	public FeatureProjectionStatistics< T > getStatistics();
+
+	/**
+	 * Forces the statistics of this projection to be recomputed on next
+	 * access, if they were created. Must be called when objects are deleted,
+	 * because their values are removed from the property map without
+	 * notifying its listeners.
+	 */
+	public void invalidateStatistics();
+}
@@ -104,6 +104,18 @@ public class FeatureColorModeEditorPanel extends JPanel
 				setMinMax( minMax[ 0 ], minMax[ 1 ] );
 			}
 
+			@Override
+			public void autoscale( final double lower, final double upper )
+			{
+				final FeatureProjectionId projection = mode.getVertexFeatureProjection();
+				if ( null == projection )
+					return;
+				final double[] range = rangeCalculator.computeQuantiles( projection, lower, upper );
+				if ( null == range || Double.isNaN( range[ 0 ] ) )
+					return;
+				setMinMax( range[ 0 ], range[ 1 ] );
+			}
+
 		};
 		addToLayout( new JLabel( "vertex range", JLabel.TRAILING ), vertexFeatureRangeSelector, c );
 
@@ -150,7 +162,7 @@ public class FeatureColorModeEditorPanel extends JPanel
 			@Override
 			public void autoscale()
 			{
-				final FeatureProjectionId projection = mode.getVertexFeatureProjection();
+				final FeatureProjectionId projection = mode.getEdgeFeatureProjection();
 				if ( null == projection )
 					return;
 				final double[] minMax = rangeCalculator.computeMinMax( projection );
@@ -158,6 +170,18 @@ public class FeatureColorModeEditorPanel extends JPanel
 					return;
 				setMinMax( minMax[ 0 ], minMax[ 1 ] );
 			}
+
+			@Override
+			public void autoscale( final double lower, final double upper )
+			{
+				final FeatureProjectionId projection = mode.getEdgeFeatureProjection();
+				if ( null == projection )
+					return;
+				final double[] range = rangeCalculator.computeQuantiles( projection, lower, upper );
+				if ( null == range || Double.isNaN( range[ 0 ] ) )
+					return;
+				setMinMax( range[ 0 ], range[ 1 ] );
+			}
 		};
 		addToLayout( new JLabel( "edge range", JLabel.TRAILING ), edgeFeatureRangeSelector, c );
 
@@ -102,6 +102,8 @@ public class FeatureComputationController implements GraphChangeListener
 					reenabler.reenable();
 					if ( !computerService.isCanceled() )
 						model.setUptodate( computed.keySet() );
+					else
+						gui.progressBar.setString( computerService.getCancelReason() );
 				} );
 			};
 		}.start();
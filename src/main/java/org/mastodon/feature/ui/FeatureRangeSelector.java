@@ -22,6 +22,12 @@ public abstract class FeatureRangeSelector extends JPanel
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Quantiles of the range set by the percentiles button, robust to
+	 * outliers.
+	 */
+	private static final double LOWER_QUANTILE = 0.01, UPPER_QUANTILE = 0.99;
+
 	private final JFormattedTextField min;
 
 	private final JFormattedTextField max;
@@ -30,6 +36,8 @@ public abstract class FeatureRangeSelector extends JPanel
 
 	private final JButton autoscale;
 
+	private final JButton percentiles;
+
 	public FeatureRangeSelector()
 	{
 		super( new FlowLayout( FlowLayout.LEADING, 10, 2 ) );
@@ -49,6 +57,9 @@ public abstract class FeatureRangeSelector extends JPanel
 		add( max );
 		autoscale = new JButton( "autoscale" );
 		add( autoscale );
+		percentiles = new JButton( "1-99%" );
+		percentiles.setToolTipText( "Sets the range from the 1st to the 99th percentile of the values, ignoring outliers." );
+		add( percentiles );
 
 		final FocusListener fl = new FocusAdapter()
 		{
@@ -68,29 +79,33 @@ public abstract class FeatureRangeSelector extends JPanel
 		min.addFocusListener( fl );
 		max.addFocusListener( fl );
 
-		autoscale.addActionListener( e -> new Thread( () -> preAutoscale(), "Autoscale calculation thread." ).start() );
+		autoscale.addActionListener( e -> new Thread( () -> preAutoscale( autoscale, () -> autoscale() ), "Autoscale calculation thread." ).start() );
+		percentiles.addActionListener( e -> new Thread( () -> preAutoscale( percentiles, () -> autoscale( LOWER_QUANTILE, UPPER_QUANTILE ) ), "Autoscale calculation thread." ).start() );
 
 		final PropertyChangeListener l = ( e ) -> notifyListeners();
 		min.addPropertyChangeListener( "value", l );
 		max.addPropertyChangeListener( "value", l );
 	}
 
-	private void preAutoscale()
+	private void preAutoscale( final JButton button, final Runnable calculation )
 	{
+		final String text = button.getText();
 		min.setEnabled( false );
 		max.setEnabled( false );
 		autoscale.setEnabled( false );
-		autoscale.setText( "calculating..." );
+		percentiles.setEnabled( false );
+		button.setText( "calculating..." );
 		try
 		{
-			autoscale();
+			calculation.run();
 		}
 		finally
 		{
 			min.setEnabled( true );
 			max.setEnabled( true );
-			autoscale.setText( "autoscale" );
+			button.setText( text );
 			autoscale.setEnabled( true );
+			percentiles.setEnabled( true );
 		}
 	}
 
@@ -107,6 +122,16 @@ public abstract class FeatureRangeSelector extends JPanel
 
 	public abstract void autoscale();
 
+	/**
+	 * Sets the range to the values at the specified quantiles.
+	 *
+	 * @param lower
+	 *            the quantile of the lower bound, from 0 to 1.
+	 * @param upper
+	 *            the quantile of the upper bound, from 0 to 1.
+	 */
+	public abstract void autoscale( double lower, double upper );
+
 	public void setMinMax( final double min, final double max )
 	{
 		final double l1 = Math.min( min, max );
@@ -2,11 +2,18 @@ package org.mastodon.feature.update;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.mastodon.feature.Feature;
 import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureModel.FeatureModelListener;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureProjectionStatistics;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.LazyFeature;
+import org.mastodon.feature.SummarizedFeatureProjection;
 import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.graph.Vertex;
 import org.mastodon.properties.PropertyChangeListener;
 
@@ -25,7 +32,28 @@ public class GraphFeatureUpdateListeners
 	 */
 	public static < V extends Vertex< E >, E extends Edge< V > > PropertyChangeListener< V > vertexPropertyListener( final FeatureModel featureModel, final Class< V > vertexClass, final Class< E > edgeClass )
 	{
-		return new MyVertexPropertyChangeListener<>( featureModel, vertexClass, edgeClass );
+		return vertexPropertyListener( featureModel, vertexClass, edgeClass, spec -> true );
+	}
+
+	/**
+	 * Returns a new {@link PropertyChangeListener} that will remove vertices
+	 * and their neighbor edges from the features of a feature model that
+	 * depend on the properties listened to. The other features are left
+	 * untouched. {@link LazyFeature}s are never loaded by the listener: their
+	 * objects are marked as stale until they are loaded.
+	 *
+	 * @param dependsOnProperties
+	 *            tests whether the feature with the specified spec depends on
+	 *            the vertex properties the listener is registered to.
+	 * @return a new {@link PropertyChangeListener}.
+	 */
+	public static < V extends Vertex< E >, E extends Edge< V > > PropertyChangeListener< V > vertexPropertyListener(
+			final FeatureModel featureModel,
+			final Class< V > vertexClass,
+			final Class< E > edgeClass,
+			final Predicate< FeatureSpec< ?, ? > > dependsOnProperties )
+	{
+		return new MyVertexPropertyChangeListener<>( featureModel, vertexClass, edgeClass, dependsOnProperties );
 	}
 
 	private static final class MyVertexPropertyChangeListener< V extends Vertex< E >, E extends Edge< V > > implements PropertyChangeListener< V >, FeatureModelListener
@@ -41,11 +69,14 @@ public class GraphFeatureUpdateListeners
 
 		private final List< Feature< V > > vertexFeatures;
 
-		public MyVertexPropertyChangeListener( final FeatureModel featureModel, final Class< V > vertexClass, final Class< E > edgeClass )
+		private final Predicate< FeatureSpec< ?, ? > > dependsOnProperties;
+
+		public MyVertexPropertyChangeListener( final FeatureModel featureModel, final Class< V > vertexClass, final Class< E > edgeClass, final Predicate< FeatureSpec< ?, ? > > dependsOnProperties )
 		{
 			this.featureModel = featureModel;
 			this.vertexClass = vertexClass;
 			this.edgeClass = edgeClass;
+			this.dependsOnProperties = dependsOnProperties;
 			this.edgeFeatures = new ArrayList<>();
 			this.vertexFeatures = new ArrayList<>();
 			featureModelChanged();
@@ -55,29 +86,136 @@ public class GraphFeatureUpdateListeners
 		@Override
 		public void propertyChanged( final V v )
 		{
-			vertexFeatures.forEach( f -> f.invalidate( v ) );
+			for ( final Feature< V > f : vertexFeatures )
+				invalidate( f, v );
 			for ( final Feature< E > f : edgeFeatures )
-				v.edges().forEach( e -> f.invalidate( e ) );
+				for ( final E e : v.edges() )
+					invalidate( f, e );
+		}
+
+		/**
+		 * Invalidates the value of the specified object. {@link LazyFeature}s
+		 * are not loaded for that, the object is marked as stale instead.
+		 */
+		@SuppressWarnings( "unchecked" )
+		private static < O > void invalidate( final Feature< O > feature, final O obj )
+		{
+			if ( feature instanceof LazyFeature )
+				( ( LazyFeature< O > ) feature ).markStale( obj );
+			else
+				feature.invalidate( obj );
 		}
 
 		@Override
 		public void featureModelChanged()
 		{
-			featuresOfTarget( featureModel, vertexClass, vertexFeatures );
-			featuresOfTarget( featureModel, edgeClass, edgeFeatures );
+			featuresOfTarget( featureModel, vertexClass, dependsOnProperties, vertexFeatures );
+			featuresOfTarget( featureModel, edgeClass, dependsOnProperties, edgeFeatures );
 		}
+	}
 
-		@SuppressWarnings( "unchecked" )
-		private static < O > void featuresOfTarget(
-				final FeatureModel featureModel,
-				final Class< O > targetClass,
-				final List< Feature< O > > featureList )
+	/**
+	 * Returns a new {@link GraphListener} that invalidates the
+	 * {@link FeatureProjectionStatistics} of the features of a feature model
+	 * when vertices or edges are removed. The values of removed objects are
+	 * deleted from the property maps of the features without notifying their
+	 * listeners, so the statistics cannot see it otherwise.
+	 *
+	 * @return a new {@link GraphListener}.
+	 */
+	public static < V extends Vertex< E >, E extends Edge< V > > GraphListener< V, E > statisticsListener( final FeatureModel featureModel, final Class< V > vertexClass, final Class< E > edgeClass )
+	{
+		return new MyStatisticsListener<>( featureModel, vertexClass, edgeClass );
+	}
+
+	private static final class MyStatisticsListener< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >, FeatureModelListener
+	{
+
+		private final FeatureModel featureModel;
+
+		private final Class< V > vertexClass;
+
+		private final Class< E > edgeClass;
+
+		private final List< Feature< E > > edgeFeatures;
+
+		private final List< Feature< V > > vertexFeatures;
+
+		public MyStatisticsListener( final FeatureModel featureModel, final Class< V > vertexClass, final Class< E > edgeClass )
 		{
-			featureList.clear();
-			featureModel.getFeatureSpecs()
-					.stream()
-					.filter( fs -> fs.getTargetClass().equals( targetClass ) )
-					.map( fs -> featureList.add( ( Feature< O > ) fs ) );
+			this.featureModel = featureModel;
+			this.vertexClass = vertexClass;
+			this.edgeClass = edgeClass;
+			this.edgeFeatures = new ArrayList<>();
+			this.vertexFeatures = new ArrayList<>();
+			featureModelChanged();
+			featureModel.listeners().add( this );
 		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			invalidateStatistics( vertexFeatures );
+			invalidateStatistics( edgeFeatures );
+		}
+
+		@Override
+		public void vertexAdded( final V vertex )
+		{}
+
+		@Override
+		public void vertexRemoved( final V vertex )
+		{
+			invalidateStatistics( vertexFeatures );
+		}
+
+		@Override
+		public void edgeAdded( final E edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final E edge )
+		{
+			invalidateStatistics( edgeFeatures );
+		}
+
+		@Override
+		public void featureModelChanged()
+		{
+			featuresOfTarget( featureModel, vertexClass, spec -> true, vertexFeatures );
+			featuresOfTarget( featureModel, edgeClass, spec -> true, edgeFeatures );
+		}
+
+		/**
+		 * Invalidates the statistics of the projections of the specified
+		 * features. Features that are not loaded yet are skipped, their
+		 * statistics do not exist.
+		 */
+		private static void invalidateStatistics( final List< ? extends Feature< ? > > features )
+		{
+			for ( final Feature< ? > feature : features )
+			{
+				if ( feature instanceof LazyFeature && !( ( LazyFeature< ? > ) feature ).isLoaded() )
+					continue;
+				for ( final FeatureProjection< ? > projection : feature.projections() )
+					if ( projection instanceof SummarizedFeatureProjection )
+						( ( SummarizedFeatureProjection< ? > ) projection ).invalidateStatistics();
+			}
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static < O > void featuresOfTarget(
+			final FeatureModel featureModel,
+			final Class< O > targetClass,
+			final Predicate< FeatureSpec< ?, ? > > filter,
+			final List< Feature< O > > featureList )
+	{
+		featureList.clear();
+		featureModel.getFeatureSpecs()
+				.stream()
+				.filter( fs -> fs.getTargetClass().equals( targetClass ) )
+				.filter( filter )
+				.forEach( fs -> featureList.add( ( Feature< O > ) featureModel.getFeature( fs ) ) );
 	}
 }
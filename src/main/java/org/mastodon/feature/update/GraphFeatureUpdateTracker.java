@@ -0,0 +1,162 @@
+package org.mastodon.feature.update;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.properties.PropertyChangeListener;
+
+/**
+ * Tracks, for each feature, the vertices and edges of a graph that were
+ * modified since the feature was last computed.
+ * <p>
+ * Instances must be registered as a {@link GraphListener} of the graph, and as
+ * a {@link PropertyChangeListener} of the vertex properties the features
+ * depend on (position, shape, time-point...).
+ * <ul>
+ * <li>When a vertex property changes, the vertex and its edges are marked.
+ * <li>When a vertex is added, it is marked.
+ * <li>When an edge is added or removed, it is marked, as well as its source
+ * and target vertices.
+ * <li>When the graph is rebuilt, everything is marked.
+ * </ul>
+ * A feature that was never computed, that is for which
+ * {@link #take(FeatureSpec)} was never called, is considered to require
+ * recomputing all objects.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ */
+public class GraphFeatureUpdateTracker< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >, PropertyChangeListener< V >
+{
+
+	private final GraphIdBimap< V, E > idmap;
+
+	private final V ref;
+
+	private final Map< FeatureSpec< ?, ? >, GraphUpdate > updates;
+
+	public GraphFeatureUpdateTracker( final ReadOnlyGraph< V, E > graph, final GraphIdBimap< V, E > idmap )
+	{
+		this.idmap = idmap;
+		this.ref = graph.vertexRef();
+		this.updates = new HashMap<>();
+	}
+
+	/**
+	 * Returns the objects modified since the last call to this method for the
+	 * specified feature, and starts tracking modifications anew.
+	 *
+	 * @param spec
+	 *            the feature about to be computed.
+	 * @return the objects to recompute.
+	 */
+	public synchronized GraphUpdate take( final FeatureSpec< ?, ? > spec )
+	{
+		final GraphUpdate update = updates.put( spec, new GraphUpdate() );
+		return update == null ? GraphUpdate.all() : update;
+	}
+
+	/**
+	 * Puts back the objects of an update obtained with
+	 * {@link #take(FeatureSpec)}, for instance if the computation of the
+	 * feature was canceled.
+	 *
+	 * @param spec
+	 *            the feature.
+	 * @param update
+	 *            the objects that still need to be recomputed.
+	 */
+	public synchronized void restore( final FeatureSpec< ?, ? > spec, final GraphUpdate update )
+	{
+		final GraphUpdate current = updates.get( spec );
+		if ( current != null )
+			current.add( update );
+	}
+
+	/**
+	 * Forgets all the features, so that all objects are recomputed for all
+	 * features next time.
+	 */
+	public synchronized void clear()
+	{
+		updates.clear();
+	}
+
+	@Override
+	public synchronized void propertyChanged( final V vertex )
+	{
+		final int id = idmap.getVertexId( vertex );
+		for ( final GraphUpdate update : updates.values() )
+		{
+			update.markVertex( id );
+			for ( final E edge : vertex.edges() )
+				update.markEdge( idmap.getEdgeId( edge ) );
+		}
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		updates.values().forEach( GraphUpdate::markAll );
+	}
+
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		final int id = idmap.getVertexId( vertex );
+		for ( final GraphUpdate update : updates.values() )
+		{
+			update.markVertex( id );
+			update.markStructureChanged();
+		}
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		final int id = idmap.getVertexId( vertex );
+		for ( final GraphUpdate update : updates.values() )
+		{
+			update.unmarkVertex( id );
+			update.markStructureChanged();
+		}
+	}
+
+	@Override
+	public synchronized void edgeAdded( final E edge )
+	{
+		final int id = idmap.getEdgeId( edge );
+		final int source = idmap.getVertexId( edge.getSource( ref ) );
+		final int target = idmap.getVertexId( edge.getTarget( ref ) );
+		for ( final GraphUpdate update : updates.values() )
+		{
+			update.markEdge( id );
+			update.markVertex( source );
+			update.markVertex( target );
+			update.markStructureChanged();
+		}
+	}
+
+	@Override
+	public synchronized void edgeRemoved( final E edge )
+	{
+		final int id = idmap.getEdgeId( edge );
+		final int source = idmap.getVertexId( edge.getSource( ref ) );
+		final int target = idmap.getVertexId( edge.getTarget( ref ) );
+		for ( final GraphUpdate update : updates.values() )
+		{
+			update.unmarkEdge( id );
+			update.markVertex( source );
+			update.markVertex( target );
+			update.markStructureChanged();
+		}
+	}
+}
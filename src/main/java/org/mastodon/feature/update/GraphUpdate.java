@@ -0,0 +1,206 @@
+package org.mastodon.feature.update;
+
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.ReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+
+/**
+ * The vertices and edges of a graph whose feature values must be recomputed,
+ * stored as bitsets of their ids in the {@link GraphIdBimap} of the graph.
+ * <p>
+ * A {@link org.mastodon.feature.FeatureComputer} can receive an instance of
+ * this class as a parameter, to restrict its computation to the objects that
+ * were modified since the feature was last computed.
+ */
+public class GraphUpdate
+{
+
+	private final BitSet vertices;
+
+	private final BitSet edges;
+
+	/**
+	 * If <code>true</code>, all the objects of the graph must be recomputed.
+	 */
+	private boolean all;
+
+	/**
+	 * Whether vertices or edges were added or removed.
+	 */
+	private boolean structureChanged;
+
+	/**
+	 * Creates a new, empty update.
+	 */
+	public GraphUpdate()
+	{
+		this( false );
+	}
+
+	private GraphUpdate( final boolean all )
+	{
+		this.vertices = new BitSet();
+		this.edges = new BitSet();
+		this.all = all;
+	}
+
+	/**
+	 * Returns a new update that requires recomputing all the objects of the
+	 * graph.
+	 *
+	 * @return a new update.
+	 */
+	public static GraphUpdate all()
+	{
+		return new GraphUpdate( true );
+	}
+
+	/**
+	 * Returns whether all the objects of the graph must be recomputed. If
+	 * <code>true</code>, the vertex and edge bitsets are meaningless.
+	 *
+	 * @return whether all objects must be recomputed.
+	 */
+	public boolean isAll()
+	{
+		return all;
+	}
+
+	/**
+	 * Returns whether vertices or edges were added or removed in the graph.
+	 *
+	 * @return whether the graph structure changed.
+	 */
+	public boolean isStructureChanged()
+	{
+		return all || structureChanged;
+	}
+
+	/**
+	 * Returns whether there is nothing to recompute.
+	 *
+	 * @return whether this update is empty.
+	 */
+	public boolean isEmpty()
+	{
+		return !all && !structureChanged && vertices.isEmpty() && edges.isEmpty();
+	}
+
+	/**
+	 * Exposes the ids of the vertices to recompute.
+	 *
+	 * @return the vertex ids, as a bitset.
+	 */
+	public BitSet vertices()
+	{
+		return vertices;
+	}
+
+	/**
+	 * Exposes the ids of the edges to recompute.
+	 *
+	 * @return the edge ids, as a bitset.
+	 */
+	public BitSet edges()
+	{
+		return edges;
+	}
+
+	/**
+	 * Calls the specified action on each vertex to recompute. Must not be
+	 * called if {@link #isAll()} returns <code>true</code>.
+	 *
+	 * @param graph
+	 *            the graph, used to create a vertex reference.
+	 * @param idmap
+	 *            the id bimap of the graph.
+	 * @param action
+	 *            the action to perform.
+	 */
+	public < V extends Vertex< E >, E extends Edge< V > > void forEachVertex( final ReadOnlyGraph< V, E > graph, final GraphIdBimap< V, E > idmap, final Consumer< V > action )
+	{
+		final V ref = graph.vertexRef();
+		for ( int id = vertices.nextSetBit( 0 ); id >= 0; id = vertices.nextSetBit( id + 1 ) )
+			action.accept( idmap.getVertex( id, ref ) );
+		graph.releaseRef( ref );
+	}
+
+	/**
+	 * Calls the specified action on each edge to recompute. Must not be called
+	 * if {@link #isAll()} returns <code>true</code>.
+	 *
+	 * @param graph
+	 *            the graph, used to create an edge reference.
+	 * @param idmap
+	 *            the id bimap of the graph.
+	 * @param action
+	 *            the action to perform.
+	 */
+	public < V extends Vertex< E >, E extends Edge< V > > void forEachEdge( final ReadOnlyGraph< V, E > graph, final GraphIdBimap< V, E > idmap, final Consumer< E > action )
+	{
+		final E ref = graph.edgeRef();
+		for ( int id = edges.nextSetBit( 0 ); id >= 0; id = edges.nextSetBit( id + 1 ) )
+			action.accept( idmap.getEdge( id, ref ) );
+		graph.releaseRef( ref );
+	}
+
+	/**
+	 * Adds the objects to recompute of the specified update to this one.
+	 *
+	 * @param other
+	 *            the update to add.
+	 */
+	public void add( final GraphUpdate other )
+	{
+		all |= other.all;
+		structureChanged |= other.structureChanged;
+		vertices.or( other.vertices );
+		edges.or( other.edges );
+	}
+
+	void markVertex( final int id )
+	{
+		vertices.set( id );
+	}
+
+	void unmarkVertex( final int id )
+	{
+		vertices.clear( id );
+	}
+
+	void markEdge( final int id )
+	{
+		edges.set( id );
+	}
+
+	void unmarkEdge( final int id )
+	{
+		edges.clear( id );
+	}
+
+	void markStructureChanged()
+	{
+		structureChanged = true;
+	}
+
+	void markAll()
+	{
+		all = true;
+		vertices.clear();
+		edges.clear();
+	}
+
+	@Override
+	public String toString()
+	{
+		if ( all )
+			return "GraphUpdate{ all }";
+		return "GraphUpdate{ vertices=" + vertices.cardinality()
+				+ ", edges=" + edges.cardinality()
+				+ ", structureChanged=" + structureChanged + " }";
+	}
+}
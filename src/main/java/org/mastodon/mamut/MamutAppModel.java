@@ -5,7 +5,9 @@ import org.mastodon.mamut.model.BoundingSphereRadiusStatistics;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.SpotPool;
 import org.mastodon.mamut.plugin.MamutPlugins;
+import org.mastodon.ui.coloring.GraphColorCache;
 import org.mastodon.ui.coloring.feature.FeatureColorModeManager;
 import org.mastodon.ui.keymap.KeyConfigContexts;
 import org.mastodon.ui.keymap.KeymapManager;
@@ -35,6 +37,8 @@ public class MamutAppModel extends MastodonAppModel< Model, Spot, Link >
 
 	private final FeatureColorModeManager featureColorModeManager;
 
+	private final GraphColorCache< Spot, Link > colorCache;
+
 	private final int minTimepoint;
 
 	private final int maxTimepoint;
@@ -64,6 +68,10 @@ public class MamutAppModel extends MastodonAppModel< Model, Spot, Link >
 		this.trackSchemeStyleManager = trackSchemeStyleManager;
 		this.renderSettingsManager = renderSettingsManager;
 		this.featureColorModeManager = featureColorModeManager;
+		this.colorCache = new GraphColorCache<>( model.getGraph(), model.getFeatureModel() );
+		final SpotPool spotPool = ( SpotPool ) model.getGraph().vertices().getRefPool();
+		spotPool.positionProperty().addPropertyChangeListener( colorCache );
+		spotPool.covarianceProperty().addPropertyChangeListener( colorCache );
 		this.minTimepoint = 0;
 		this.maxTimepoint = sharedBdvData.getNumTimepoints() - 1;
 		/*
@@ -89,6 +97,17 @@ public class MamutAppModel extends MastodonAppModel< Model, Spot, Link >
 		return featureColorModeManager;
 	}
 
+	/**
+	 * Exposes the colors of spots and links computed for feature color modes,
+	 * shared by all views.
+	 *
+	 * @return the color cache.
+	 */
+	public GraphColorCache< Spot, Link > getColorCache()
+	{
+		return colorCache;
+	}
+
 	public BoundingSphereRadiusStatistics getRadiusStats()
 	{
 		return radiusStats;
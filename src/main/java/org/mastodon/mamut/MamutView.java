@@ -72,7 +72,7 @@ public class MamutView< VG extends ViewGraph< Spot, Link, V, E >, V extends Vert
 			else if ( coloringModel.getTagSet() != null )
 				colorGeneratorAdapter.setColorGenerator( new TagSetGraphColorGenerator<>( tagSetModel, coloringModel.getTagSet() ) );
 			else if ( coloringModel.getFeatureColorMode() != null )
-				colorGeneratorAdapter.setColorGenerator( coloringModel.getFeatureGraphColorGenerator() );
+				colorGeneratorAdapter.setColorGenerator( coloringModel.getFeatureGraphColorGenerator( appModel.getColorCache() ) );
 			refresh.run();
 		};
 		coloringModel.listeners().add( coloringChangedListener );
@@ -141,6 +141,9 @@ public class MamutViewBdv extends MamutView< OverlayGraphWrapper< Spot, Link >,
 
 		highlightModel.listeners().add( () -> viewer.getDisplay().repaint() );
 		focusModel.listeners().add( () -> viewer.getDisplay().repaint() );
+		modelGraph.addGraphChangeListener( tracksOverlay::invalidateScreenCaches );
+		modelGraph.addVertexPositionListener( v -> tracksOverlay.invalidateScreenCaches() );
+		modelGraph.addVertexCovarianceListener( v -> tracksOverlay.invalidateScreenCaches() );
 		modelGraph.addGraphChangeListener( () -> viewer.getDisplay().repaint() );
 		modelGraph.addVertexPositionListener( v -> viewer.getDisplay().repaint() );
 		modelGraph.addVertexLabelListener( v -> viewer.getDisplay().repaint() );
@@ -173,6 +176,7 @@ public class MamutViewBdv extends MamutView< OverlayGraphWrapper< Spot, Link >,
 		final RenderSettings renderSettings = appModel.getRenderSettingsManager().getForwardDefaultStyle();
 		tracksOverlay.setRenderSettings( renderSettings );
 		final UpdateListener updateListener = () -> {
+			tracksOverlay.invalidateScreenCaches();
 			viewer.repaint();
 			contextProvider.notifyContextChanged();
 		};
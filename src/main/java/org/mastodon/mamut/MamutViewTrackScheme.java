@@ -82,7 +82,8 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 		final TrackSchemeOptions options = TrackSchemeOptions.options()
 				.shareKeyPressedEvents( keyPressedManager )
 				.style( forwardDefaultStyle )
-				.graphColorGenerator( coloringAdapter );
+				.graphColorGenerator( coloringAdapter )
+				.interruptibleLayout( true );
 		final AutoNavigateFocusModel< TrackSchemeVertex, TrackSchemeEdge > navigateFocusModel = new AutoNavigateFocusModel<>( focusModel, navigationHandler );
 		final TrackSchemeFrame frame = new TrackSchemeFrame(
 				viewGraph,
@@ -99,7 +100,10 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 		frame.getTrackschemePanel().graphChanged();
 		contextListener.setContextListener( frame.getTrackschemePanel() );
 
-		final TrackSchemeStyle.UpdateListener updateListener = () -> frame.getTrackschemePanel().repaint();
+		final TrackSchemeStyle.UpdateListener updateListener = () -> {
+			frame.getTrackschemePanel().getGraphOverlay().invalidateCache();
+			frame.getTrackschemePanel().repaint();
+		};
 		forwardDefaultStyle.updateListeners().add( updateListener );
 		onClose( () -> forwardDefaultStyle.updateListeners().remove( updateListener ) );
 
@@ -0,0 +1,401 @@
+package org.mastodon.mamut;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.mastodon.feature.FeatureModel.FeatureModelListener;
+import org.mastodon.graph.GraphChangeListener;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.labels.LabelSets;
+import org.mastodon.mamut.feature.MamutRawFeatureModelIO;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.SpotPool;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.mamut.project.MamutProjectIO;
+import org.mastodon.mamut.project.ProjectSnapshot;
+import org.mastodon.mamut.project.WriteZip;
+import org.mastodon.model.tag.DefaultTagSetModel;
+import org.mastodon.model.tag.TagSetModel.TagSetModelListener;
+import org.mastodon.properties.Property;
+import org.mastodon.properties.PropertyChangeListener;
+import org.scijava.Context;
+import org.scijava.log.LogService;
+
+/**
+ * Periodically saves the current project to a recovery file. Started by the
+ * {@link ProjectManager} when it is created, and stopped with {@link #stop()}.
+ * <p>
+ * The model is serialized to a {@link ProjectSnapshot} in memory while holding
+ * the read lock of its graph, so editing is only blocked while the model is
+ * copied. The snapshot is then compressed and written to the recovery file
+ * without the lock, on a background thread. If the heap is too small to hold
+ * the snapshot, the model is instead spooled to temporary files under the
+ * lock. The project is only saved if its graph, its tags or its features
+ * changed since the last save.
+ * <p>
+ * Recovery files are {@code .mastodon} files written in the
+ * {@link #RECOVERY_FOLDER}, named after the project file and a hash of its
+ * absolute path. Successive saves rotate over {@value #NUM_RECOVERY_FILES}
+ * files, and each file is only replaced once completely written, so that a
+ * crash while writing one of them leaves the previous ones intact. Features
+ * that were not loaded from the project yet are loaded before they are saved,
+ * since their file ids do not match the ones of the recovery file.
+ */
+public class ProjectAutoSaver
+{
+
+	public static final String RECOVERY_FOLDER = System.getProperty( "user.home" ) + "/.mastodon/autosave/";
+
+	private static final int NUM_RECOVERY_FILES = 2;
+
+	private static final long DEFAULT_PERIOD = 300;
+
+	private final Context context;
+
+	private final ScheduledExecutorService executor;
+
+	private final GraphChangeListener changeListener;
+
+	private final PropertyChangeListener< Spot > vertexListener;
+
+	private final PropertyChangeListener< Link > edgeListener;
+
+	private final TagSetModelListener tagSetListener;
+
+	private final FeatureModelListener featureListener;
+
+	private ScheduledFuture< ? > task;
+
+	private long period = DEFAULT_PERIOD;
+
+	private MamutProject project;
+
+	private Model model;
+
+	private volatile boolean modified;
+
+	private int nextSlot;
+
+	/**
+	 * Size of the last snapshot, used to estimate the memory needed by the
+	 * next one.
+	 */
+	private volatile long lastSnapshotSize;
+
+	public ProjectAutoSaver( final Context context )
+	{
+		this.context = context;
+		this.executor = Executors.newSingleThreadScheduledExecutor( r -> {
+			final Thread thread = new Thread( r, "Mastodon autosave" );
+			thread.setDaemon( true );
+			thread.setPriority( Thread.MIN_PRIORITY );
+			return thread;
+		} );
+		this.changeListener = () -> modified = true;
+		this.vertexListener = v -> modified = true;
+		this.edgeListener = e -> modified = true;
+		this.tagSetListener = () -> modified = true;
+		this.featureListener = () -> modified = true;
+	}
+
+	/**
+	 * Sets the project to autosave.
+	 *
+	 * @param project
+	 *            the project, can be {@code null}.
+	 * @param model
+	 *            the model of the project, can be {@code null}.
+	 */
+	public synchronized void setProject( final MamutProject project, final Model model )
+	{
+		if ( this.model != null )
+			removeListeners( this.model );
+		this.project = project;
+		this.model = model;
+		this.modified = false;
+		this.nextSlot = 0;
+		this.lastSnapshotSize = 0;
+		if ( model != null )
+			addListeners( model );
+	}
+
+	private void addListeners( final Model model )
+	{
+		final ModelGraph graph = model.getGraph();
+		graph.addGraphChangeListener( changeListener );
+		for ( final Property< Spot > property : vertexProperties( graph ) )
+			property.addPropertyChangeListener( vertexListener );
+		final TagLabelSets tags = new TagLabelSets( model );
+		tags.getVertexIdLabelSets().addPropertyChangeListener( vertexListener );
+		tags.getEdgeIdLabelSets().addPropertyChangeListener( edgeListener );
+		model.getTagSetModel().listeners().add( tagSetListener );
+		model.getFeatureModel().listeners().add( featureListener );
+	}
+
+	private void removeListeners( final Model model )
+	{
+		final ModelGraph graph = model.getGraph();
+		graph.removeGraphChangeListener( changeListener );
+		for ( final Property< Spot > property : vertexProperties( graph ) )
+			property.removePropertyChangeListener( vertexListener );
+		final TagLabelSets tags = new TagLabelSets( model );
+		tags.getVertexIdLabelSets().removePropertyChangeListener( vertexListener );
+		tags.getEdgeIdLabelSets().removePropertyChangeListener( edgeListener );
+		model.getTagSetModel().listeners().remove( tagSetListener );
+		model.getFeatureModel().listeners().remove( featureListener );
+	}
+
+	/**
+	 * Returns the saved properties of spots that can change without a graph
+	 * change event.
+	 */
+	private static List< Property< Spot > > vertexProperties( final ModelGraph graph )
+	{
+		final SpotPool spotPool = ( SpotPool ) graph.vertices().getRefPool();
+		return Arrays.asList(
+				spotPool.positionProperty(),
+				spotPool.covarianceProperty(),
+				spotPool.boundingSphereRadiusSquProperty(),
+				spotPool.labelProperty() );
+	}
+
+	/**
+	 * Sets the period between two autosaves.
+	 *
+	 * @param seconds
+	 *            the period, in seconds.
+	 */
+	public synchronized void setPeriod( final long seconds )
+	{
+		this.period = seconds;
+		if ( task != null )
+		{
+			stop();
+			start();
+		}
+	}
+
+	/**
+	 * Starts saving the project periodically. Does nothing if already started.
+	 */
+	public synchronized void start()
+	{
+		if ( task != null )
+			return;
+		task = executor.scheduleWithFixedDelay( this::autosaveIfModified, period, period, TimeUnit.SECONDS );
+	}
+
+	/**
+	 * Stops saving the project periodically.
+	 */
+	public synchronized void stop()
+	{
+		if ( task == null )
+			return;
+		task.cancel( false );
+		task = null;
+	}
+
+	/**
+	 * Notifies this autosaver that the project was saved by the user, so that
+	 * it is not autosaved until it is modified again.
+	 */
+	public void projectSaved()
+	{
+		modified = false;
+	}
+
+	/**
+	 * Saves the current project to the next recovery file, on the calling
+	 * thread.
+	 *
+	 * @return the recovery file, or {@code null} if there is no project.
+	 * @throws IOException
+	 *             if the recovery file cannot be written.
+	 */
+	public File autosave() throws IOException
+	{
+		final MamutProject project;
+		final Model model;
+		final File file;
+		synchronized ( this )
+		{
+			if ( this.project == null || this.model == null )
+				return null;
+			project = this.project;
+			model = this.model;
+			file = getRecoveryFile( project, nextSlot );
+			nextSlot = ( nextSlot + 1 ) % NUM_RECOVERY_FILES;
+		}
+		modified = false;
+		try
+		{
+			write( model, project, file );
+			return file;
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			modified = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the path of a recovery file of the specified project. The name
+	 * of the file includes a hash of the absolute path of the project (or of
+	 * its image data for new projects), so that projects with the same name in
+	 * different folders do not share recovery files.
+	 *
+	 * @param project
+	 *            the project.
+	 * @param slot
+	 *            the index of the recovery file, from 0 to
+	 *            {@value #NUM_RECOVERY_FILES} - 1.
+	 * @return the recovery file.
+	 */
+	public static File getRecoveryFile( final MamutProject project, final int slot )
+	{
+		final File root = project.getProjectRoot();
+		final String name = ( root == null )
+				? "untitled"
+				: root.getName().replaceAll( "\\.mastodon$", "" );
+		final File path = ( root == null ) ? project.getDatasetXmlFile() : root;
+		final String hash = String.format( "%08x", path.getAbsolutePath().hashCode() );
+		return new File( RECOVERY_FOLDER, name + "-" + hash + ".autosave-" + slot + ".mastodon" );
+	}
+
+	private void autosaveIfModified()
+	{
+		if ( !modified )
+			return;
+		try
+		{
+			autosave();
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			context.getService( LogService.class ).error( "Could not autosave the project.", e );
+		}
+	}
+
+	/**
+	 * Writes the model to the recovery file. The model is copied to a
+	 * {@link ProjectSnapshot} under the read lock of the graph, and written to
+	 * the file once the lock is released. If there might not be enough memory
+	 * for the snapshot, the entries are written under the lock, uncompressed,
+	 * and compressed when the writer is closed, after the lock is released. The
+	 * recovery file is not replaced if writing fails.
+	 */
+	private void write( final Model model, final MamutProject project, final File file ) throws IOException
+	{
+		file.getParentFile().mkdirs();
+		final MamutProject recovery = new MamutProject( file, project.getDatasetXmlFile() );
+		recovery.setDatasetXmlPathRelative( false );
+		recovery.setSpaceUnits( project.getSpaceUnits() );
+		recovery.setTimeUnits( project.getTimeUnits() );
+		final MamutProject.ProjectWriter writer = recovery.openForWriting( WriteZip.Compression.FAST );
+		try
+		{
+			new MamutProjectIO().save( recovery, writer );
+			if ( canHoldSnapshot() )
+			{
+				final ProjectSnapshot snapshot = new ProjectSnapshot();
+				writeModel( model, snapshot );
+				lastSnapshotSize = snapshot.size();
+				snapshot.writeTo( writer );
+			}
+			else
+			{
+				writeModel( model, writer );
+			}
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			// Keep the previous recovery file.
+			writer.abort();
+			throw e;
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes the raw graph, tags and features of the model with the specified
+	 * writer, under the read lock of the graph. Features that are not loaded
+	 * yet are loaded first.
+	 */
+	private void writeModel( final Model model, final MamutProject.ProjectWriter writer ) throws IOException
+	{
+		final Lock lock = model.getGraph().getLock().readLock();
+		lock.lock();
+		try
+		{
+			final GraphToFileIdMap< Spot, Link > idmap = model.createFileIdMap();
+			final List< Callable< Void > > tasks = new ArrayList<>();
+			tasks.add( () -> {
+				model.saveRawGraph( writer, idmap );
+				return null;
+			} );
+			tasks.add( () -> {
+				model.saveRawTags( writer, idmap );
+				return null;
+			} );
+			tasks.addAll( MamutRawFeatureModelIO.serializationTasks( context, model.getFeatureModel(), idmap, writer, true ) );
+			ProjectManager.runAll( tasks );
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the free heap is at least twice the size of the
+	 * last snapshot.
+	 */
+	private boolean canHoldSnapshot()
+	{
+		final Runtime runtime = Runtime.getRuntime();
+		final long free = runtime.maxMemory() - ( runtime.totalMemory() - runtime.freeMemory() );
+		return free >= 2 * lastSnapshotSize;
+	}
+
+	/**
+	 * Gives access to the label sets storing the tags of the model, to listen
+	 * to tag assignments.
+	 */
+	private static class TagLabelSets extends DefaultTagSetModel.SerialisationAccess< Spot, Link >
+	{
+		@SuppressWarnings( "unchecked" )
+		TagLabelSets( final Model model )
+		{
+			super( ( DefaultTagSetModel< Spot, Link > ) model.getTagSetModel() );
+		}
+
+		@Override
+		protected LabelSets< Spot, Integer > getVertexIdLabelSets()
+		{
+			return super.getVertexIdLabelSets();
+		}
+
+		@Override
+		protected LabelSets< Link, Integer > getEdgeIdLabelSets()
+		{
+			return super.getEdgeIdLabelSets();
+		}
+	}
+}
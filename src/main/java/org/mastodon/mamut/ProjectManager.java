@@ -1,8 +1,17 @@
 package org.mastodon.mamut;
 
 import java.awt.Component;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
 
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
@@ -17,6 +26,7 @@ import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.plugin.MamutPlugins;
 import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.mamut.project.MamutProjectIO;
+import org.mastodon.mamut.project.WriteZip;
 import org.mastodon.ui.coloring.feature.FeatureColorModeManager;
 import org.mastodon.ui.keymap.CommandDescriptionProvider;
 import org.mastodon.ui.keymap.CommandDescriptions;
@@ -95,6 +105,16 @@ public class ProjectManager
 
 	private File proposedProjectRoot;
 
+	private WriteZip.Compression saveCompression = WriteZip.Compression.STORED;
+
+	private final ProjectAutoSaver autoSaver;
+
+	/**
+	 * Closes the project the features of the current model are lazily read
+	 * from. {@code null} if there is none.
+	 */
+	private Closeable lazyFeatures;
+
 	private final AbstractNamedAction createProjectAction;
 
 	private final AbstractNamedAction loadProjectAction;
@@ -115,6 +135,8 @@ public class ProjectManager
 
 		tgmmImportDialog = new TgmmImportDialog( null );
 		simiImportDialog = new SimiImportDialog( null );
+		autoSaver = new ProjectAutoSaver( windowManager.getContext() );
+		autoSaver.start();
 
 		createProjectAction = new RunnableAction( CREATE_PROJECT, this::createProject );
 		loadProjectAction = new RunnableAction( LOAD_PROJECT, this::loadProject );
@@ -242,17 +264,112 @@ public class ProjectManager
 			return;
 
 		project.setProjectRoot( projectRoot );
-		try (final MamutProject.ProjectWriter writer = project.openForWriting())
+		final Model model = windowManager.getAppModel().getModel();
+		final MamutProject.ProjectWriter writer = project.openForWriting( saveCompression );
+		try
 		{
 			new MamutProjectIO().save( project, writer );
-			final Model model = windowManager.getAppModel().getModel();
-			final GraphToFileIdMap< Spot, Link > idmap = model.saveRaw( writer );
-			// Serialize feature model.
-			MamutRawFeatureModelIO.serialize( windowManager.getContext(), model.getFeatureModel(), idmap, writer );
+
+			/*
+			 * Serialize the model graph, the tags and each feature
+			 * concurrently, under the read lock. They all use the file ids
+			 * computed up front. The entries of a .mastodon file are written
+			 * uncompressed, and only compressed when the writer is closed,
+			 * after the lock is released.
+			 */
+			final Lock lock = model.getGraph().getLock().readLock();
+			lock.lock();
+			try
+			{
+				final GraphToFileIdMap< Spot, Link > idmap = model.createFileIdMap();
+				final List< Callable< Void > > tasks = new ArrayList<>();
+				tasks.add( () -> {
+					model.saveRawGraph( writer, idmap );
+					return null;
+				} );
+				tasks.add( () -> {
+					model.saveRawTags( writer, idmap );
+					return null;
+				} );
+				tasks.addAll( MamutRawFeatureModelIO.serializationTasks( windowManager.getContext(), model.getFeatureModel(), idmap, writer ) );
+				runAll( tasks );
+			}
+			finally
+			{
+				lock.unlock();
+			}
 		}
+		catch ( final IOException | RuntimeException e )
+		{
+			// Do not overwrite the existing project with a partial one.
+			writer.abort();
+			throw e;
+		}
+		finally
+		{
+			writer.close();
+		}
+		autoSaver.projectSaved();
 		updateEnabledActions();
 	}
 
+	/**
+	 * Exposes the autosaver of the current project. It is started when this
+	 * manager is created, autosaving is disabled by calling
+	 * {@link ProjectAutoSaver#stop()}.
+	 *
+	 * @return the autosaver.
+	 */
+	public ProjectAutoSaver getAutoSaver()
+	{
+		return autoSaver;
+	}
+
+	/**
+	 * Sets the compression of the raw model, tags and features when saving a
+	 * project to a {@code .mastodon} file. {@link WriteZip.Compression#STORED}
+	 * by default.
+	 *
+	 * @param compression
+	 *            the compression.
+	 */
+	public void setSaveCompression( final WriteZip.Compression compression )
+	{
+		this.saveCompression = compression;
+	}
+
+	/**
+	 * Runs the specified tasks concurrently, and waits for all of them to
+	 * complete.
+	 */
+	static void runAll( final List< Callable< Void > > tasks ) throws IOException
+	{
+		final int nThreads = Math.max( 1, Math.min( tasks.size(), Runtime.getRuntime().availableProcessors() ) );
+		final ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+		try
+		{
+			final List< Future< Void > > futures = executor.invokeAll( tasks );
+			for ( final Future< Void > future : futures )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while saving the project.", e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof IOException )
+				throw ( IOException ) cause;
+			throw new IOException( cause );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
 	/**
 	 * Opens a project. If {@code project.getProjectRoot() == null} this is a
 	 * new project and data structures are initialized as empty. The image data
@@ -309,22 +426,20 @@ public class ProjectManager
 		 */
 		final Model model = new Model( project.getSpaceUnits(), project.getTimeUnits() );
 		final boolean isNewProject = project.getProjectRoot() == null;
+		Closeable newLazyFeatures = null;
 		if ( !isNewProject )
 		{
+			final FileIdToGraphMap< Spot, Link > idmap;
 			try (final MamutProject.ProjectReader reader = project.openForReading())
 			{
-				final FileIdToGraphMap< Spot, Link > idmap = model.loadRaw( reader );
-				// Load features.
-				MamutRawFeatureModelIO.deserialize(
-						windowManager.getContext(),
-						model,
-						idmap,
-						reader );
-			}
-			catch ( final ClassNotFoundException e )
-			{
-				e.printStackTrace();
+				idmap = model.loadRaw( reader );
 			}
+			// Declare features, they are read when first accessed.
+			newLazyFeatures = MamutRawFeatureModelIO.deserializeLazily(
+					windowManager.getContext(),
+					model,
+					idmap,
+					project );
 		}
 
 		/*
@@ -357,7 +472,12 @@ public class ProjectManager
 				globalAppActions );
 
 		windowManager.setAppModel( appModel );
+		// The previous model is discarded, release the project it reads from.
+		if ( lazyFeatures != null )
+			lazyFeatures.close();
+		lazyFeatures = newLazyFeatures;
 		this.project = project;
+		autoSaver.setProject( project, model );
 		updateEnabledActions();
 	}
 
@@ -1,6 +1,7 @@
 package org.mastodon.mamut.feature;
 
 import org.mastodon.feature.Dimension;
+import org.mastodon.feature.update.GraphUpdate;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
@@ -17,6 +18,9 @@ public class LinkDisplacementFeatureComputer implements MamutFeatureComputer
 	@Parameter
 	private Model model;
 
+	@Parameter
+	private GraphUpdate update;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private LinkDisplacementFeature output;
 
@@ -33,26 +37,35 @@ public class LinkDisplacementFeatureComputer implements MamutFeatureComputer
 	@Override
 	public void run()
 	{
-		output.map.beforeClearPool();
-
 		final ModelGraph graph = model.getGraph();
 		final Spot ref1 = graph.vertexRef();
 		final Spot ref2 = graph.vertexRef();
 
-		for ( final Link link : graph.edges() )
+		if ( update == null || update.isAll() )
+		{
+			output.map.beforeClearPool();
+			for ( final Link link : graph.edges() )
+				compute( link, ref1, ref2 );
+		}
+		else
 		{
-			final Spot source = link.getSource( ref1 );
-			final Spot target = link.getTarget( ref2 );
-			double d2 = 0.;
-			for ( int d = 0; d < 3; d++ )
-			{
-				final double dx = source.getDoublePosition( d ) - target.getDoublePosition( d );
-				d2 += dx * dx;
-			}
-			output.map.set( link, Math.sqrt( d2 ) );
+			update.forEachEdge( graph, graph.getGraphIdBimap(), link -> compute( link, ref1, ref2 ) );
 		}
 
 		graph.releaseRef( ref1 );
 		graph.releaseRef( ref2 );
 	}
+
+	private void compute( final Link link, final Spot ref1, final Spot ref2 )
+	{
+		final Spot source = link.getSource( ref1 );
+		final Spot target = link.getTarget( ref2 );
+		double d2 = 0.;
+		for ( int d = 0; d < 3; d++ )
+		{
+			final double dx = source.getDoublePosition( d ) - target.getDoublePosition( d );
+			d2 += dx * dx;
+		}
+		output.map.set( link, Math.sqrt( d2 ) );
+	}
 }
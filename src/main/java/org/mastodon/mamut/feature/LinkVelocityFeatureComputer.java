@@ -1,6 +1,7 @@
 package org.mastodon.mamut.feature;
 
 import org.mastodon.feature.Dimension;
+import org.mastodon.feature.update.GraphUpdate;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
@@ -20,6 +21,9 @@ public class LinkVelocityFeatureComputer implements MamutFeatureComputer
 	@Parameter
 	private Model model;
 
+	@Parameter
+	private GraphUpdate update;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private LinkVelocityFeature output;
 
@@ -40,19 +44,29 @@ public class LinkVelocityFeatureComputer implements MamutFeatureComputer
 		final Spot ref1 = graph.vertexRef();
 		final Spot ref2 = graph.vertexRef();
 
-		for ( final Link link : graph.edges() )
+		if ( update == null || update.isAll() )
 		{
-			if ( displacement.map.isSet( link ) )
-			{
-				final double disp = displacement.map.get( link );
-				final Spot source = link.getSource( ref1 );
-				final Spot target = link.getTarget( ref2 );
-				final double dt = Math.abs( source.getTimepoint() - target.getTimepoint() );
-				output.map.set( link, disp / dt );
-			}
+			for ( final Link link : graph.edges() )
+				compute( link, ref1, ref2 );
+		}
+		else
+		{
+			update.forEachEdge( graph, graph.getGraphIdBimap(), link -> compute( link, ref1, ref2 ) );
 		}
 
 		graph.releaseRef( ref1 );
 		graph.releaseRef( ref2 );
 	}
+
+	private void compute( final Link link, final Spot ref1, final Spot ref2 )
+	{
+		if ( displacement.map.isSet( link ) )
+		{
+			final double disp = displacement.map.get( link );
+			final Spot source = link.getSource( ref1 );
+			final Spot target = link.getTarget( ref2 );
+			final double dt = Math.abs( source.getTimepoint() - target.getTimepoint() );
+			output.map.set( link, disp / dt );
+		}
+	}
 }
@@ -1,7 +1,12 @@
 package org.mastodon.mamut.feature;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.mastodon.feature.DefaultFeatureComputerService;
@@ -10,6 +15,8 @@ import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.update.GraphFeatureUpdateListeners;
+import org.mastodon.feature.update.GraphFeatureUpdateTracker;
+import org.mastodon.feature.update.GraphUpdate;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
@@ -30,6 +37,16 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 
 	private Model model;
 
+	/**
+	 * The features whose values do not depend on the position and shape of
+	 * spots. They are not invalidated when a spot is moved or resized.
+	 */
+	private static final Set< FeatureSpec< ?, ? > > SPOT_GEOMETRY_INDEPENDENT_FEATURES = new HashSet<>( Arrays.asList(
+			SpotNLinksFeature.SPEC,
+			SpotFrameFeature.SPEC,
+			SpotTrackIDFeature.SPEC,
+			TrackSizeFeature.SPEC ) );
+
 	private final AtomicBoolean shouldRecomputeAll = new AtomicBoolean( false );
 
 	@Parameter
@@ -37,20 +54,61 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 
 	private PropertyChangeListener< Spot > vertexPropertyListener;
 
+	private GraphFeatureUpdateTracker< Spot, Link > updateTracker;
+
+	/**
+	 * The objects to recompute for each feature, for the current computation.
+	 */
+	private final Map< FeatureSpec< ?, ? >, GraphUpdate > updates = new HashMap<>();
+
 	public MamutFeatureComputerService()
 	{
 		super( MamutFeatureComputer.class );
 	}
 
+	/**
+	 * Computes the specified features.
+	 * <p>
+	 * If {@code forceComputeAll} is <code>false</code>, the feature computers
+	 * that accept a {@link GraphUpdate} parameter only recompute values for
+	 * the spots and links that were modified since the last computation of
+	 * their feature, or of the features they depend on.
+	 */
 	@Override
 	public Map< FeatureSpec< ?, ? >, Feature< ? > > compute( final boolean forceComputeAll, final Collection< FeatureSpec< ?, ? > > featureKeys )
 	{
 		// Set the force flag.
 		shouldRecomputeAll.set( forceComputeAll );
 
+		// Collect what was modified for the features to compute.
+		final Set< FeatureSpec< ?, ? > > specs = new LinkedHashSet<>();
+		for ( final FeatureSpec< ?, ? > spec : featureKeys )
+		{
+			if ( !getFeatureSpecs().contains( spec ) )
+				continue;
+			specs.add( spec );
+			specs.addAll( getDependencies( spec ) );
+		}
+		updates.clear();
+		for ( final FeatureSpec< ?, ? > spec : specs )
+		{
+			final GraphUpdate update = updateTracker.take( spec );
+			updates.put( spec, forceComputeAll ? GraphUpdate.all() : update );
+		}
+		// Objects modified for a dependency must be recomputed for the dependents.
+		for ( final FeatureSpec< ?, ? > spec : specs )
+		{
+			final GraphUpdate update = updates.get( spec );
+			for ( final FeatureSpec< ?, ? > dependency : getDependencies( spec ) )
+				update.add( updates.get( dependency ) );
+		}
+
 		final Map< FeatureSpec< ?, ? >, Feature< ? > > results = super.compute( forceComputeAll, featureKeys );
 		if ( isCanceled() )
+		{
+			updates.forEach( updateTracker::restore );
 			return null;
+		}
 
 		return results;
 	}
@@ -89,6 +147,18 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 			return;
 		}
 
+		// Pass the objects to recompute.
+		if ( GraphUpdate.class.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final Class< ? extends Feature< ? > > outputClass = ( Class< ? extends Feature< ? > > ) module.getInfo().outputs().iterator().next().getType();
+			final GraphUpdate update = updates.get( featureSpecsService.getSpec( outputClass ) );
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< GraphUpdate > updateItem = ( ModuleItem< GraphUpdate > ) item;
+			updateItem.setValue( module, update == null ? GraphUpdate.all() : update );
+			return;
+		}
+
 		// Pass the "force recompute" flag.
 		if ( AtomicBoolean.class.isAssignableFrom( parameterClass ) )
 		{
@@ -129,13 +199,18 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 			final SpotPool previousSpotPool = ( SpotPool ) this.model.getGraph().vertices().getRefPool();
 			previousSpotPool.covarianceProperty().removePropertyChangeListener( vertexPropertyListener );
 			previousSpotPool.positionProperty().removePropertyChangeListener( vertexPropertyListener );
+			previousSpotPool.covarianceProperty().removePropertyChangeListener( updateTracker );
+			previousSpotPool.positionProperty().removePropertyChangeListener( updateTracker );
+			previousSpotPool.timepointProperty().removePropertyChangeListener( updateTracker );
+			this.model.getGraph().removeGraphListener( updateTracker );
 		}
 
 		/*
 		 * Listen to graph changes to support incremental computation.
 		 *
 		 * Every-time a spot or a link is modified, they are removed from all
-		 * the features of the feature model. That way we limit (but don't
+		 * the features of the feature model that depend on the spot position
+		 * and shape. That way we limit (but don't
 		 * eliminate) the problem of features being out-of-sync after model
 		 * modification.
 		 *
@@ -147,18 +222,30 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 		 * Indeed, there might be feature values that depend on the neighbor
 		 * values. If a neighbor of an object is changed, a feature value of the
 		 * object that depends on the neighbors will become out of sync.
+		 *
+		 * In addition, the ids of the spots and links modified are tracked for
+		 * each feature, so that computers that accept a GraphUpdate parameter
+		 * only recompute these objects.
 		 */
 
 		this.model = model;
 
 		// Create listener.
 		final FeatureModel featureModel = model.getFeatureModel();
-		this.vertexPropertyListener = GraphFeatureUpdateListeners.vertexPropertyListener( featureModel, Spot.class, Link.class );
+		this.vertexPropertyListener = GraphFeatureUpdateListeners.vertexPropertyListener( featureModel, Spot.class, Link.class,
+				spec -> !SPOT_GEOMETRY_INDEPENDENT_FEATURES.contains( spec ) );
 
 		// Listen to changes in spot properties.
 		final ModelGraph graph = model.getGraph();
 		final SpotPool spotPool = ( SpotPool ) graph.vertices().getRefPool();
 		spotPool.covarianceProperty().addPropertyChangeListener( vertexPropertyListener );
 		spotPool.positionProperty().addPropertyChangeListener( vertexPropertyListener );
+
+		// Track modified spots and links.
+		this.updateTracker = new GraphFeatureUpdateTracker<>( graph, graph.getGraphIdBimap() );
+		graph.addGraphListener( updateTracker );
+		spotPool.covarianceProperty().addPropertyChangeListener( updateTracker );
+		spotPool.positionProperty().addPropertyChangeListener( updateTracker );
+		spotPool.timepointProperty().addPropertyChangeListener( updateTracker );
 	}
 }
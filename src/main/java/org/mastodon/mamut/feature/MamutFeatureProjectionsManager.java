@@ -138,6 +138,20 @@ public class MamutFeatureProjectionsManager implements FeatureProjectionsManager
 						: edgeCalculator.computeMinMax( projection );
 			}
 		}
+
+		@Override
+		public double[] computeQuantiles( final FeatureProjectionId projection, final double lower, final double upper )
+		{
+			if ( projection == null )
+				return null;
+
+			final FeatureRangeCalculator calculator = projection.getTargetType() == TargetType.VERTEX
+					? vertexCalculator
+					: edgeCalculator;
+			return calculator == null
+					? null
+					: calculator.computeQuantiles( projection, lower, upper );
+		}
 	};
 
 	@Override
@@ -2,30 +2,42 @@ package org.mastodon.mamut.feature;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.mastodon.collection.RefCollection;
 import org.mastodon.feature.Feature;
 import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureModel.FeatureModelListener;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.io.FeatureSerializationService;
+import org.mastodon.feature.LazyFeature;
 import org.mastodon.feature.io.FeatureSerializer;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.io.FileIdToObjectMap;
 import org.mastodon.io.ObjectToFileIdMap;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.mamut.project.MamutProject.ProjectReader;
 import org.mastodon.mamut.project.MamutProject.ProjectWriter;
 import org.scijava.Context;
+import org.scijava.log.LogService;
+import org.scijava.log.Logger;
 
 public class MamutRawFeatureModelIO
 {
@@ -36,23 +48,104 @@ public class MamutRawFeatureModelIO
 			final GraphToFileIdMap< Spot, Link > idmap,
 			final ProjectWriter writer )
 			throws IOException
+	{
+		for ( final Callable< Void > task : serializationTasks( context, featureModel, idmap, writer ) )
+		{
+			try
+			{
+				task.call();
+			}
+			catch ( final IOException e )
+			{
+				throw e;
+			}
+			catch ( final Exception e )
+			{
+				throw new IOException( e );
+			}
+		}
+	}
+
+	/**
+	 * Returns one task per feature of the specified feature model, that
+	 * serializes the feature with the specified writer. The tasks can be run
+	 * concurrently.
+	 *
+	 * @param context
+	 *            the context, used to get the feature serializers.
+	 * @param featureModel
+	 *            the feature model to serialize.
+	 * @param idmap
+	 *            the file ids of spots and links.
+	 * @param writer
+	 *            the project writer.
+	 * @return a new list of tasks.
+	 */
+	public static List< Callable< Void > > serializationTasks(
+			final Context context,
+			final FeatureModel featureModel,
+			final GraphToFileIdMap< Spot, Link > idmap,
+			final ProjectWriter writer )
+	{
+		return serializationTasks( context, featureModel, idmap, writer, true );
+	}
+
+	/**
+	 * Returns one task per feature of the specified feature model, that
+	 * serializes the feature with the specified writer. The tasks can be run
+	 * concurrently.
+	 *
+	 * @param context
+	 *            the context, used to get the feature serializers.
+	 * @param featureModel
+	 *            the feature model to serialize.
+	 * @param idmap
+	 *            the file ids of spots and links.
+	 * @param writer
+	 *            the project writer.
+	 * @param loadLazyFeatures
+	 *            if <code>false</code>, the {@link LazyFeature}s that are not
+	 *            loaded yet are skipped.
+	 * @return a new list of tasks.
+	 */
+	public static List< Callable< Void > > serializationTasks(
+			final Context context,
+			final FeatureModel featureModel,
+			final GraphToFileIdMap< Spot, Link > idmap,
+			final ProjectWriter writer,
+			final boolean loadLazyFeatures )
 	{
 		final FeatureSerializationService featureSerializationService = context.getService( FeatureSerializationService.class );
+		final List< Callable< Void > > tasks = new ArrayList<>();
 		for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
 		{
 			final Feature< ? > rawFeature = featureModel.getFeature( spec );
+			if ( !loadLazyFeatures && rawFeature instanceof LazyFeature && !( ( LazyFeature< ? > ) rawFeature ).isLoaded() )
+				continue;
 			final FeatureSerializer< ?, ? > rawSerializer = featureSerializationService.getFeatureSerializerFor( rawFeature.getSpec() );
 			if ( null == rawSerializer )
 				continue;
 
+			final ObjectToFileIdMap< ? > map;
 			final Class< ? > specTargetClass = spec.getTargetClass();
 			if ( specTargetClass == Spot.class )
-				write( rawFeature, rawSerializer, idmap.vertices(), writer );
+				map = idmap.vertices();
 			else if ( specTargetClass == Link.class )
-				write( rawFeature, rawSerializer, idmap.edges(), writer );
+				map = idmap.edges();
 			else
+			{
 				System.err.println( "Do not know how to serialize a feature that targets " + specTargetClass );
+				continue;
+			}
+			tasks.add( () -> {
+				// Lazy features are loaded here, before their file is overwritten.
+				final Feature< ? > feature = LazyFeature.unwrap( rawFeature );
+				if ( feature != null )
+					write( feature, rawSerializer, map, writer );
+				return null;
+			} );
 		}
+		return tasks;
 	}
 
 	public static void deserialize(
@@ -61,50 +154,125 @@ public class MamutRawFeatureModelIO
 			final FileIdToGraphMap< Spot, Link > idmap,
 			final ProjectReader reader ) throws ClassNotFoundException, IOException
 	{
-		final FeatureSerializationService featureSerializationService = context.getService( FeatureSerializationService.class );
-		final FeatureSpecsService featureSpecsService = context.getService( FeatureSpecsService.class );
-		final Collection< String > featureKeys = reader.getFeatureKeys();
 		final FeatureModel featureModel = model.getFeatureModel();
 		featureModel.pauseListeners();
 		featureModel.clear();
-		for ( final String featureKey : featureKeys )
+		for ( final FeatureSerializer< ?, ? > serializer : serializers( context, reader, context.getService( LogService.class ) ) )
+		{
+			@SuppressWarnings( "rawtypes" )
+			final Feature feature = read( serializer, model, idmap, reader );
+			featureModel.declareFeature( feature );
+		}
+		featureModel.resumeListeners();
+	}
+
+	/**
+	 * Declares the features stored in the specified project in the feature
+	 * model of the specified model, without reading them.
+	 * <p>
+	 * Each feature is declared as a {@link LazyFeature}, that is deserialized
+	 * the first time one of its projections is accessed. The file ids of spots
+	 * and links stored in the project stop matching the model as soon as a
+	 * spot or a link is removed, so all the features not loaded yet are loaded
+	 * before the first removal.
+	 * <p>
+	 * The project is kept open until all the lazy features are loaded or
+	 * removed from the feature model, or until the returned handle is closed.
+	 * The handle must be closed when the model is discarded, e.g. when another
+	 * project is opened. Features that are not loaded when the handle is closed
+	 * cannot be loaded anymore.
+	 *
+	 * @param context
+	 *            the context, used to get the feature serializers and the log
+	 *            service loading errors are reported to.
+	 * @param model
+	 *            the model, whose graph was just loaded from the project.
+	 * @param idmap
+	 *            the file id map returned when loading the graph.
+	 * @param project
+	 *            the project to read the features from.
+	 * @return a handle that closes the project.
+	 * @throws IOException
+	 *             if the project cannot be opened.
+	 */
+	public static Closeable deserializeLazily(
+			final Context context,
+			final Model model,
+			final FileIdToGraphMap< Spot, Link > idmap,
+			final MamutProject project ) throws IOException
+	{
+		final LogService log = context.getService( LogService.class );
+		final ProjectReader reader = project.openForReading();
+		final FeatureModel featureModel = model.getFeatureModel();
+		final LazyFeatureLoader loader = new LazyFeatureLoader( featureModel, model.getGraph(), reader, log );
+		featureModel.pauseListeners();
+		featureModel.clear();
+		for ( final FeatureSerializer< ?, ? > serializer : serializers( context, reader, log ) )
+		{
+			final FeatureSpec< ?, ? > spec = serializer.getFeatureSpec();
+			@SuppressWarnings( { "rawtypes", "unchecked" } )
+			final LazyFeature< ? > feature = new LazyFeature( spec, () -> loader.read( spec, () -> read( serializer, model, idmap, reader ) ), objects( spec, model ), log );
+			loader.add( feature );
+			featureModel.declareFeature( feature );
+		}
+		loader.install();
+		featureModel.resumeListeners();
+		return loader;
+	}
+
+	/**
+	 * Returns the serializers of the features stored in the specified project
+	 * that can be deserialized.
+	 */
+	private static List< FeatureSerializer< ?, ? > > serializers( final Context context, final ProjectReader reader, final Logger log )
+	{
+		final FeatureSerializationService featureSerializationService = context.getService( FeatureSerializationService.class );
+		final FeatureSpecsService featureSpecsService = context.getService( FeatureSpecsService.class );
+		final List< FeatureSerializer< ?, ? > > serializers = new ArrayList<>();
+		for ( final String featureKey : reader.getFeatureKeys() )
 		{
 			final FeatureSpec< ?, ? > spec = featureSpecsService.getSpec( featureKey );
-			if (null == spec)
+			if ( null == spec )
 			{
-				System.err.println( "Unkown feature: " + featureKey );
+				log.warn( "Unknown feature: " + featureKey );
 				continue;
 			}
 			final FeatureSerializer< ?, ? > serializer = featureSerializationService.getFeatureSerializerFor( spec );
 			if ( null == serializer )
 			{
-				System.err.println( "Do not know how to deserialize the feature with key: " + featureKey );
+				log.warn( "Do not know how to deserialize the feature with key: " + featureKey );
 				continue;
 			}
-
 			final Class< ? > targetClass = serializer.getFeatureSpec().getTargetClass();
-			@SuppressWarnings( "rawtypes" )
-			Feature feature;
-			if ( targetClass == Spot.class )
-				feature = read(
-						serializer,
-						idmap.vertices(),
-						model.getGraph().vertices(),
-						reader );
-			else if ( targetClass == Link.class )
-				feature = read(
-						serializer,
-						idmap.edges(),
-						model.getGraph().edges(),
-						reader );
-			else
+			if ( targetClass != Spot.class && targetClass != Link.class )
 			{
-				System.err.println( "Do not know how to deserialize a feature that targets " + targetClass );
+				log.warn( "Do not know how to deserialize a feature that targets " + targetClass );
 				continue;
 			}
-			featureModel.declareFeature( feature );
+			serializers.add( serializer );
 		}
-		featureModel.resumeListeners();
+		return serializers;
+	}
+
+	/**
+	 * Returns the spots or the links of the model, depending on the target of
+	 * the specified feature.
+	 */
+	private static RefCollection< ? > objects( final FeatureSpec< ?, ? > spec, final Model model )
+	{
+		if ( spec.getTargetClass() == Spot.class )
+			return model.getGraph().vertices();
+		else
+			return model.getGraph().edges();
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	private static Feature read( final FeatureSerializer< ?, ? > serializer, final Model model, final FileIdToGraphMap< Spot, Link > idmap, final ProjectReader reader ) throws IOException, ClassNotFoundException
+	{
+		if ( serializer.getFeatureSpec().getTargetClass() == Spot.class )
+			return read( serializer, idmap.vertices(), model.getGraph().vertices(), reader );
+		else
+			return read( serializer, idmap.edges(), model.getGraph().edges(), reader );
 	}
 
 	@SuppressWarnings( { "unchecked", "rawtypes" } )
@@ -131,4 +299,156 @@ public class MamutRawFeatureModelIO
 			return serializer.deserialize( idmap, pool, ois );
 		}
 	}
+
+	/**
+	 * Loads the pending lazy features of a model before its graph is modified
+	 * in a way that invalidates the file ids, and closes the project reader
+	 * once no lazy feature needs it, or when it is closed.
+	 */
+	private static final class LazyFeatureLoader implements GraphListener< Spot, Link >, FeatureModelListener, Closeable
+	{
+
+		private final FeatureModel featureModel;
+
+		private final ModelGraph graph;
+
+		private final ProjectReader reader;
+
+		private final Logger log;
+
+		private final Map< FeatureSpec< ?, ? >, LazyFeature< ? > > pending;
+
+		private boolean closed;
+
+		LazyFeatureLoader( final FeatureModel featureModel, final ModelGraph graph, final ProjectReader reader, final Logger log )
+		{
+			this.featureModel = featureModel;
+			this.graph = graph;
+			this.reader = reader;
+			this.log = log;
+			this.pending = new HashMap<>();
+		}
+
+		synchronized void add( final LazyFeature< ? > feature )
+		{
+			pending.put( feature.getSpec(), feature );
+		}
+
+		synchronized void install()
+		{
+			if ( pending.isEmpty() )
+			{
+				closeReader();
+				return;
+			}
+			graph.addGraphListener( this );
+			featureModel.listeners().add( this );
+		}
+
+		/**
+		 * Reads the feature with the specified spec. Reading is done under the
+		 * lock of this loader, so that the reader cannot be closed meanwhile.
+		 */
+		synchronized < F > F read( final FeatureSpec< ?, ? > spec, final Callable< F > read ) throws Exception
+		{
+			if ( closed )
+				throw new IOException( "The project was closed before the feature was loaded." );
+			try
+			{
+				return read.call();
+			}
+			finally
+			{
+				pending.remove( spec );
+				closeIfDone();
+			}
+		}
+
+		/**
+		 * Loads all the pending features, while the file ids are still valid.
+		 * Features are loaded outside of the lock of this loader, because the
+		 * lock of each feature must be acquired first.
+		 */
+		private void loadAll()
+		{
+			final List< LazyFeature< ? > > features;
+			synchronized ( this )
+			{
+				if ( closed )
+					return;
+				features = new ArrayList<>( pending.values() );
+			}
+			features.forEach( LazyFeature::get );
+		}
+
+		/**
+		 * Forgets the features that are not in the feature model anymore.
+		 */
+		@Override
+		public synchronized void featureModelChanged()
+		{
+			if ( closed )
+				return;
+			pending.values().removeIf( f -> featureModel.getFeature( f.getSpec() ) != f );
+			closeIfDone();
+		}
+
+		/**
+		 * Closes the project reader, even if some features are not loaded yet,
+		 * and stops listening to the model.
+		 */
+		@Override
+		public synchronized void close()
+		{
+			graph.removeGraphListener( this );
+			featureModel.listeners().remove( this );
+			if ( closed )
+				return;
+			pending.clear();
+			closeReader();
+		}
+
+		private void closeIfDone()
+		{
+			if ( closed || !pending.isEmpty() )
+				return;
+			closeReader();
+		}
+
+		private void closeReader()
+		{
+			closed = true;
+			try
+			{
+				reader.close();
+			}
+			catch ( final IOException e )
+			{
+				log.warn( "Could not close the project.", e );
+			}
+		}
+		@Override
+		public void graphRebuilt()
+		{}
+
+		@Override
+		public void vertexAdded( final Spot vertex )
+		{}
+
+		@Override
+		public void vertexRemoved( final Spot vertex )
+		{
+			loadAll();
+		}
+
+		@Override
+		public void edgeAdded( final Link edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final Link edge )
+		{
+			loadAll();
+		}
+	}
 }
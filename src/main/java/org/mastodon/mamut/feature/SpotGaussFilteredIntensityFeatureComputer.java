@@ -1,12 +1,22 @@
 package org.mastodon.mamut.feature;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.IntFunction;
 
 import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatus;
 import org.mastodon.feature.Feature;
+import org.mastodon.feature.LazyFeature;
+import org.mastodon.feature.update.GraphUpdate;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.properties.DoublePropertyMap;
@@ -21,11 +31,16 @@ import org.scijava.plugin.Plugin;
 import bdv.util.Affine3DHelpers;
 import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealPoint;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
 
 @Plugin( type = MamutFeatureComputer.class )
 public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureComputer, Cancelable
@@ -34,6 +49,34 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 	/** Convert from min radius to sigma by dividing radius by: */
 	static final double SIGMA_FACTOR = 2.;
 
+	/**
+	 * Size, in pixels, of the blocks used to group spots that are close in
+	 * the image.
+	 */
+	private static final int BLOCK_SIZE = 64;
+
+	/** Number of tasks created per thread for each source and time-point. */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/** Minimal number of spots processed by a single task. */
+	private static final int MIN_CHUNK_SIZE = 16;
+
+	/**
+	 * Number of steps per pixel used to quantize sigma in the separable
+	 * engine, so that kernels can be cached and reused across spots.
+	 */
+	private static final int SIGMA_STEPS_PER_PIXEL = 64;
+
+	/** Maximal number of kernels cached by each worker thread. */
+	private static final int MAX_CACHED_KERNELS = 1024;
+
+	/**
+	 * Maximal exponent of the geometric factor used to shift a cached kernel.
+	 * Beyond it, the factor could overflow while the centred weights underflow
+	 * to 0, so the shifted kernel is computed directly.
+	 */
+	private static final double MAX_SHIFT_EXPONENT = 300.;
+
 	@Parameter
 	private SharedBigDataViewerData bdvData;
 
@@ -46,10 +89,46 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 	@Parameter
 	private FeatureComputationStatus status;
 
+	@Parameter
+	private GraphUpdate update;
+
+	/**
+	 * The executor of the feature computer service, to run tasks in parallel
+	 * within its thread budget. If {@code null}, the computation runs on the
+	 * calling thread.
+	 */
+	@Parameter( required = false )
+	private ExecutorService executor;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private SpotGaussFilteredIntensityFeature output;
 
-	private String cancelReason;
+	private volatile String cancelReason;
+
+	private KernelEngine kernelEngine = KernelEngine.DIRECT;
+
+	/**
+	 * The strategies to accumulate the gaussian-weighted pixel values of a
+	 * spot.
+	 */
+	public enum KernelEngine
+	{
+		/**
+		 * Reads each pixel with a {@link RandomAccess} and accumulates the
+		 * full 3D weight with a running mean and variance.
+		 */
+		DIRECT,
+		/**
+		 * Copies the spot bounding interval with a flat cursor, then
+		 * accumulates along each axis in turn using the separability of the
+		 * Gaussian. Sigma is quantized to 1/64 pixel, and the kernels centred
+		 * on a pixel are cached per quantized sigma; the sub-pixel offset of
+		 * the spot center is applied to the cached kernel with a geometric
+		 * factor. Faster, but the quantization of sigma makes the values
+		 * differ slightly from the ones of the direct engine.
+		 */
+		SEPARABLE;
+	}
 
 	@Override
 	public void createOutput()
@@ -57,7 +136,7 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 		if ( null == output )
 		{
 			//  Try to get it from the FeatureModel, if we deserialized a model.
-			final Feature< ? > feature = model.getFeatureModel().getFeature( SpotGaussFilteredIntensityFeature.SPEC );
+			final Feature< ? > feature = LazyFeature.unwrap( model.getFeatureModel().getFeature( SpotGaussFilteredIntensityFeature.SPEC ) );
 			if (null != feature )
 			{
 				output = ( SpotGaussFilteredIntensityFeature ) feature;
@@ -94,22 +173,10 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 
 		// Calculation are made on resolution level 0.
 		final int level = 0;
-		// Covariance holder.
-		final double[][] cov = new double[ 3 ][ 3 ];
 		// Affine transform holder.
 		final AffineTransform3D transform = new AffineTransform3D();
 		// Physical calibration holder.
 		final double[] calibration = new double[ 3 ];
-		// Half-kernel holder.
-		final double[][] kernels = new double[ 3 ][];
-		// Half-kernel size holder.
-		final int[] halfkernelsizes = new int[ 3 ];
-		// Spot center position holder in image coords.
-		final double[] pos = new double[ 3 ];
-		// Spot center holder in image coords.
-		final RealPoint center = RealPoint.wrap( pos );
-		// Spot center position holder in integer image coords.
-		final long[] p = new long[ 3 ];
 
 		final int numTimepoints = bdvData.getNumTimepoints();
 		final int nSourcesToCompute = bdvData.getSources().size();
@@ -117,100 +184,464 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 
 		final ArrayList< SourceAndConverter< ? > > sources = bdvData.getSources();
 		final int nSources = sources.size();
+
+		/*
+		 * Scratch buffers are allocated once per worker thread and reused for
+		 * all the spots this thread processes.
+		 */
+		final ThreadLocal< Scratch > scratches = ThreadLocal.withInitial( Scratch::new );
+		final KernelEngine engine = kernelEngine;
+		final ExecutorService executor = this.executor;
+		final int numThreads = ( executor == null )
+				? 1
+				: ( executor instanceof ForkJoinPool )
+						? ( ( ForkJoinPool ) executor ).getParallelism()
+						: Runtime.getRuntime().availableProcessors();
+		final Spot ref = model.getGraph().vertexRef();
+		final GraphIdBimap< Spot, Link > idmap = model.getGraph().getGraphIdBimap();
+
+		/*
+		 * If we know which spots were modified, only consider them instead of
+		 * iterating over all the spots of each time-point.
+		 */
+		final TIntObjectMap< TIntArrayList > modified = ( recomputeAll || update == null || update.isAll() )
+				? null
+				: new TIntObjectHashMap<>();
+		if ( modified != null )
+		{
+			update.forEachVertex( model.getGraph(), idmap, spot -> {
+				TIntArrayList list = modified.get( spot.getTimepoint() );
+				if ( list == null )
+				{
+					list = new TIntArrayList();
+					modified.put( spot.getTimepoint(), list );
+				}
+				list.add( idmap.getVertexId( spot ) );
+			} );
+		}
+
 		int done = 0;
-		MAIN_LOOP: for ( int iSource = 0; iSource < nSources; iSource++ )
+		try
 		{
-			final Source< ? > source = sources.get( iSource ).getSpimSource();
-			for ( int timepoint = 0; timepoint < numTimepoints; timepoint++ )
+			MAIN_LOOP: for ( int iSource = 0; iSource < nSources; iSource++ )
 			{
-
-				status.notifyProgress( ( double ) done++ / todo );
-
-				source.getSourceTransform( timepoint, level, transform );
-				for ( int d = 0; d < calibration.length; d++ )
-					calibration[ d ] = Affine3DHelpers.extractScale( transform, d );
-
-				@SuppressWarnings( "unchecked" )
-				final RandomAccessibleInterval< RealType< ? > > rai = ( RandomAccessibleInterval< RealType< ? > > ) source.getSource( timepoint, level );
-				final RandomAccess< RealType< ? > > ra = rai.randomAccess( rai );
-
-				final SpatialIndex< Spot > toProcess = model.getSpatioTemporalIndex().getSpatialIndex( timepoint );
-				for ( final Spot spot : toProcess )
+				final Source< ? > source = sources.get( iSource ).getSpimSource();
+				final DoublePropertyMap< Spot > meanMap = output.means.get( iSource );
+				final DoublePropertyMap< Spot > stdMap = output.stds.get( iSource );
+				for ( int timepoint = 0; timepoint < numTimepoints; timepoint++ )
 				{
 					if ( isCanceled() )
 						break MAIN_LOOP;
 
-					/*
-					 * Skip if we are not force to recompute all and if a value
-					 * is already computed.
-					 */
-					if ( !recomputeAll && output.means.get( iSource ).isSet( spot ) )
-						continue;
+					status.notifyProgress( ( double ) done++ / todo );
+
+					source.getSourceTransform( timepoint, level, transform );
+					for ( int d = 0; d < calibration.length; d++ )
+						calibration[ d ] = Affine3DHelpers.extractScale( transform, d );
 
-					// Spot location in pixel units.
-					transform.applyInverse( center, spot );
-					for ( int d = 0; d < pos.length; d++ )
-						p[ d ] = Math.round( pos[ d ] );
+					@SuppressWarnings( "unchecked" )
+					final RandomAccessibleInterval< RealType< ? > > rai = ( RandomAccessibleInterval< RealType< ? > > ) source.getSource( timepoint, level );
 
-					// Compute kernels.
-					final double minRadius = minRadius( spot, cov );
-					final double sigma = minRadius / SIGMA_FACTOR; // um
-					for ( int d = 0; d < 3; d++ )
+					/*
+					 * Collect the spots to process. Skip if we are not force to
+					 * recompute all and if a value is already computed.
+					 */
+					final TIntArrayList ids = new TIntArrayList();
+					if ( modified != null )
+					{
+						final TIntArrayList list = modified.get( timepoint );
+						if ( list != null )
+							ids.addAll( list );
+					}
+					else
 					{
-						final double s = sigma / calibration[ d ];
-						halfkernelsizes[ d ] = Math.max( 2, ( int ) ( SIGMA_FACTOR * s + 0.5 ) + 1 );
-						kernels[ d ] = halfkernel( s, pos[ d ] - p[ d ], halfkernelsizes[ d ] );
+						final SpatialIndex< Spot > toProcess = model.getSpatioTemporalIndex().getSpatialIndex( timepoint );
+						for ( final Spot spot : toProcess )
+							if ( recomputeAll || !meanMap.isSet( spot ) )
+								ids.add( idmap.getVertexId( spot ) );
 					}
+					if ( ids.isEmpty() )
+						continue;
 
-					// Unsubtle loops.
-					final long minX = Math.max( rai.min( 0 ), p[ 0 ] - halfkernelsizes[ 0 ] + 1 );
-					final long maxX = Math.min( rai.max( 0 ), p[ 0 ] + halfkernelsizes[ 0 ] - 1 );
-					final long minY = Math.max( rai.min( 1 ), p[ 1 ] - halfkernelsizes[ 1 ] + 1 );
-					final long maxY = Math.min( rai.max( 1 ), p[ 1 ] + halfkernelsizes[ 1 ] - 1 );
-					final long minZ = Math.max( rai.min( 2 ), p[ 2 ] - halfkernelsizes[ 2 ] + 1 );
-					final long maxZ = Math.min( rai.max( 2 ), p[ 2 ] + halfkernelsizes[ 2 ] - 1 );
+					final int[] sorted = sortByBlock( ids.toArray(), transform );
+					final int nSpots = sorted.length;
+					final double[] means = new double[ nSpots ];
+					final double[] stds = new double[ nSpots ];
+					final boolean[] computed = new boolean[ nSpots ];
 
 					/*
-					 * Compute running mean & std.
-					 * https://en.wikipedia.org/wiki/
-					 * Algorithms_for_calculating_variance#
-					 * Weighted_incremental_algorithm
+					 * Split the spots, sorted by spatial blocks, in contiguous
+					 * chunks so that each task reads mostly the same image
+					 * cells.
 					 */
-					double weightedMean = 0.;
-					double weightedSum = 0.;
-					double S = 0.;
-
-					for ( long z = minZ; z <= maxZ; z++ )
+					final int nChunks = numThreads * CHUNKS_PER_THREAD;
+					final int chunkSize = Math.max( MIN_CHUNK_SIZE, ( nSpots + nChunks - 1 ) / nChunks );
+					final List< Callable< Void > > tasks = new ArrayList<>();
+					for ( int start = 0; start < nSpots; start += chunkSize )
 					{
-						ra.setPosition( z, 2 );
-						final int iz = ( int ) ( z - minZ );
-						final double wz = kernels[ 2 ][ iz ];
-						for ( long y = minY; y <= maxY; y++ )
-						{
-							ra.setPosition( y, 1 );
-							final int iy = ( int ) ( y - minY );
-							final double wy = kernels[ 1 ][ iy ];
-							for ( long x = minX; x <= maxX; x++ )
+						final int from = start;
+						final int to = Math.min( nSpots, start + chunkSize );
+						tasks.add( () -> {
+							final Scratch scratch = scratches.get();
+							final Spot spot = model.getGraph().vertexRef();
+							final RandomAccess< RealType< ? > > ra = rai.randomAccess( rai );
+							try
 							{
-								ra.setPosition( x, 0 );
-								final int ix = ( int ) ( x - minX );
-								final double wx = kernels[ 0 ][ ix ];
-								final double val = ra.get().getRealDouble();
-								final double weight = wx * wy * wz;
-
-								weightedSum += weight;
-								final double oldWeightedMean = weightedMean;
-								weightedMean = oldWeightedMean + ( weight / weightedSum ) * ( val - oldWeightedMean );
-								S = S + weight * ( val - oldWeightedMean ) * ( val - weightedMean );
+								for ( int i = from; i < to; i++ )
+								{
+									if ( isCanceled() )
+										return null;
+									idmap.getVertex( sorted[ i ], spot );
+									scratch.compute( spot, transform, calibration, rai, ra, engine );
+									means[ i ] = scratch.mean;
+									stds[ i ] = scratch.std;
+									computed[ i ] = true;
+								}
 							}
-						}
+							finally
+							{
+								model.getGraph().releaseRef( spot );
+							}
+							return null;
+						} );
+					}
+
+					if ( numThreads == 1 )
+					{
+						for ( final Callable< Void > task : tasks )
+							task.call();
+					}
+					else
+					{
+						for ( final Future< Void > future : executor.invokeAll( tasks ) )
+							future.get();
+					}
+
+					// Store results from the calling thread.
+					for ( int i = 0; i < nSpots; i++ )
+					{
+						if ( !computed[ i ] )
+							continue;
+						idmap.getVertex( sorted[ i ], ref );
+						meanMap.set( ref, means[ i ] );
+						stdMap.set( ref, stds[ i ] );
+					}
+				}
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			cancel( "Feature computation thread was interrupted." );
+			Thread.currentThread().interrupt();
+		}
+		catch ( final Exception e )
+		{
+			// Report the failure to the feature computer service.
+			final Throwable cause = ( e instanceof ExecutionException ) ? e.getCause() : e;
+			cancel( "Error during computation: " + cause.getMessage() );
+			throw new RuntimeException( cancelReason, cause );
+		}
+		finally
+		{
+			model.getGraph().releaseRef( ref );
+		}
+	}
+
+	/**
+	 * Sorts the spots with the specified ids by the spatial block of the image
+	 * they fall into, so that consecutive spots read neighboring cells of the
+	 * source image.
+	 *
+	 * @param ids
+	 *            the ids of the spots to sort.
+	 * @param transform
+	 *            the source transform, used to compute the spot positions in
+	 *            image coordinates.
+	 * @return a new array with the sorted spot ids.
+	 */
+	private int[] sortByBlock( final int[] ids, final AffineTransform3D transform )
+	{
+		final Spot spot = model.getGraph().vertexRef();
+		final double[] pos = new double[ 3 ];
+		final RealPoint center = RealPoint.wrap( pos );
+		final long[] keys = new long[ ids.length ];
+		for ( int i = 0; i < ids.length; i++ )
+		{
+			model.getGraph().getGraphIdBimap().getVertex( ids[ i ], spot );
+			transform.applyInverse( center, spot );
+			long key = 0;
+			for ( int d = pos.length - 1; d >= 0; d-- )
+			{
+				final long block = ( long ) Math.floor( pos[ d ] / BLOCK_SIZE );
+				key = ( key << 21 ) | ( block & 0x1FFFFF );
+			}
+			keys[ i ] = key;
+		}
+		model.getGraph().releaseRef( spot );
+
+		/*
+		 * Replace each key by its rank among the distinct keys, and sort the
+		 * ranks packed with the index of the spot, to sort primitives only.
+		 */
+		final long[] distinct = keys.clone();
+		Arrays.sort( distinct );
+		int nDistinct = 0;
+		for ( int i = 0; i < distinct.length; i++ )
+			if ( i == 0 || distinct[ i ] != distinct[ nDistinct - 1 ] )
+				distinct[ nDistinct++ ] = distinct[ i ];
+		final long[] order = new long[ ids.length ];
+		for ( int i = 0; i < order.length; i++ )
+		{
+			final long rank = Arrays.binarySearch( distinct, 0, nDistinct, keys[ i ] );
+			order[ i ] = ( rank << 32 ) | i;
+		}
+		Arrays.sort( order );
+
+		final int[] sorted = new int[ ids.length ];
+		for ( int i = 0; i < sorted.length; i++ )
+			sorted[ i ] = ids[ ( int ) order[ i ] ];
+		return sorted;
+	}
+
+	/**
+	 * Per-thread holders and the computation of the weighted mean and std of
+	 * one spot.
+	 */
+	private static final class Scratch
+	{
+		// Covariance holder.
+		private final double[][] cov = new double[ 3 ][ 3 ];
+
+		// Half-kernel holder.
+		private final double[][] kernels = new double[ 3 ][];
+
+		// Half-kernel size holder.
+		private final int[] halfkernelsizes = new int[ 3 ];
+
+		// Kernels centred on a pixel, by quantized sigma.
+		private final TIntObjectMap< double[] > centredKernels = new TIntObjectHashMap<>();
+
+		// Spot center position holder in image coords.
+		private final double[] pos = new double[ 3 ];
+
+		// Spot center holder in image coords.
+		private final RealPoint center = RealPoint.wrap( pos );
+
+		// Spot center position holder in integer image coords.
+		private final long[] p = new long[ 3 ];
+
+		// Bounding interval holders.
+		private final long[] min = new long[ 3 ];
+
+		private final long[] max = new long[ 3 ];
+
+		// Pixel values of the bounding interval, for the separable engine.
+		private double[] block = new double[ 0 ];
+
+		private final JamaEigenvalueDecomposition eig = new JamaEigenvalueDecomposition( 3 );
+
+		private double mean;
+
+		private double std;
+
+		private void compute(
+				final Spot spot,
+				final AffineTransform3D transform,
+				final double[] calibration,
+				final RandomAccessibleInterval< RealType< ? > > rai,
+				final RandomAccess< RealType< ? > > ra,
+				final KernelEngine engine )
+		{
+			// Spot location in pixel units.
+			transform.applyInverse( center, spot );
+			for ( int d = 0; d < pos.length; d++ )
+				p[ d ] = Math.round( pos[ d ] );
+
+			// Compute kernels.
+			final double minRadius = minRadius( spot, cov, eig );
+			final double sigma = minRadius / SIGMA_FACTOR; // um
+			for ( int d = 0; d < 3; d++ )
+			{
+				final double offset = pos[ d ] - p[ d ];
+				if ( engine == KernelEngine.DIRECT )
+				{
+					final double s = sigma / calibration[ d ];
+					halfkernelsizes[ d ] = halfkernelsize( s );
+					kernels[ d ] = halfkernel( s, offset, halfkernelsizes[ d ] );
+				}
+				else
+				{
+					final int q = Math.max( 1, ( int ) Math.round( SIGMA_STEPS_PER_PIXEL * sigma / calibration[ d ] ) );
+					final double s = ( double ) q / SIGMA_STEPS_PER_PIXEL;
+					halfkernelsizes[ d ] = halfkernelsize( s );
+					final int length = 2 * halfkernelsizes[ d ] - 1;
+					if ( kernels[ d ] == null || kernels[ d ].length < length )
+						kernels[ d ] = new double[ length ];
+					shift( centredKernel( q, s, halfkernelsizes[ d ] ), s, offset, halfkernelsizes[ d ], kernels[ d ] );
+				}
+				min[ d ] = Math.max( rai.min( d ), p[ d ] - halfkernelsizes[ d ] + 1 );
+				max[ d ] = Math.min( rai.max( d ), p[ d ] + halfkernelsizes[ d ] - 1 );
+			}
+			if ( engine == KernelEngine.SEPARABLE )
+				computeSeparable( rai );
+			else
+				computeDirect( ra );
+		}
+
+		/**
+		 * Returns the half-kernel centred on a pixel for the specified
+		 * quantized sigma, from the cache if possible.
+		 */
+		private double[] centredKernel( final int q, final double sigma, final int size )
+		{
+			double[] kernel = centredKernels.get( q );
+			if ( kernel == null )
+			{
+				if ( centredKernels.size() >= MAX_CACHED_KERNELS )
+					centredKernels.clear();
+				kernel = halfkernel( sigma, 0., size );
+				centredKernels.put( q, kernel );
+			}
+			return kernel;
+		}
+
+		private void computeDirect( final RandomAccess< RealType< ? > > ra )
+		{
+			// Unsubtle loops.
+			final long minX = min[ 0 ];
+			final long maxX = max[ 0 ];
+			final long minY = min[ 1 ];
+			final long maxY = max[ 1 ];
+			final long minZ = min[ 2 ];
+			final long maxZ = max[ 2 ];
+
+			/*
+			 * Compute running mean & std.
+			 * https://en.wikipedia.org/wiki/
+			 * Algorithms_for_calculating_variance#
+			 * Weighted_incremental_algorithm
+			 */
+			double weightedMean = 0.;
+			double weightedSum = 0.;
+			double S = 0.;
+
+			for ( long z = minZ; z <= maxZ; z++ )
+			{
+				ra.setPosition( z, 2 );
+				final int iz = ( int ) ( z - minZ );
+				final double wz = kernels[ 2 ][ iz ];
+				for ( long y = minY; y <= maxY; y++ )
+				{
+					ra.setPosition( y, 1 );
+					final int iy = ( int ) ( y - minY );
+					final double wy = kernels[ 1 ][ iy ];
+					for ( long x = minX; x <= maxX; x++ )
+					{
+						ra.setPosition( x, 0 );
+						final int ix = ( int ) ( x - minX );
+						final double wx = kernels[ 0 ][ ix ];
+						final double val = ra.get().getRealDouble();
+						final double weight = wx * wy * wz;
+
+						weightedSum += weight;
+						final double oldWeightedMean = weightedMean;
+						weightedMean = oldWeightedMean + ( weight / weightedSum ) * ( val - oldWeightedMean );
+						S = S + weight * ( val - oldWeightedMean ) * ( val - weightedMean );
 					}
+				}
+			}
+
+			final double variance = S / weightedSum;
+			mean = weightedMean;
+			std = Math.sqrt( variance );
+		}
 
-					final double variance = S / weightedSum;
-					output.means.get( iSource ).set( spot, weightedMean );
-					output.stds.get( iSource ).set( spot, Math.sqrt( variance ) );
+		/**
+		 * Copies the bounding interval of the spot in a flat array with a
+		 * single cursor pass, then computes the weighted mean and variance
+		 * exploiting the separability of the Gaussian weights: the sums are
+		 * accumulated along X first, then weighted along Y, then along Z.
+		 * <p>
+		 * Kernels are indexed like in {@link #computeDirect(RandomAccess)},
+		 * so that the two engines yield the same values up to rounding
+		 * errors.
+		 */
+		private void computeSeparable( final RandomAccessibleInterval< RealType< ? > > rai )
+		{
+			final int nx = ( int ) ( max[ 0 ] - min[ 0 ] + 1 );
+			final int ny = ( int ) ( max[ 1 ] - min[ 1 ] + 1 );
+			final int nz = ( int ) ( max[ 2 ] - min[ 2 ] + 1 );
+			if ( nx <= 0 || ny <= 0 || nz <= 0 )
+			{
+				// Same as the direct engine on an empty interval.
+				mean = 0.;
+				std = Double.NaN;
+				return;
+			}
+
+			final int size = nx * ny * nz;
+			if ( block.length < size )
+				block = new double[ size ];
+			final Cursor< RealType< ? > > cursor = Views.flatIterable( Views.interval( rai, min, max ) ).cursor();
+			int i = 0;
+			while ( cursor.hasNext() )
+				block[ i++ ] = cursor.next().getRealDouble();
+
+			final double[] kx = kernels[ 0 ];
+			final double[] ky = kernels[ 1 ];
+			final double[] kz = kernels[ 2 ];
+
+			// Sum of weights.
+			double sx = 0.;
+			for ( int ix = 0; ix < nx; ix++ )
+				sx += kx[ ix ];
+			double sy = 0.;
+			for ( int iy = 0; iy < ny; iy++ )
+				sy += ky[ iy ];
+			double sz = 0.;
+			for ( int iz = 0; iz < nz; iz++ )
+				sz += kz[ iz ];
+			final double weightedSum = sx * sy * sz;
+
+			// Weighted mean.
+			double sumZ = 0.;
+			for ( int iz = 0; iz < nz; iz++ )
+			{
+				double sumY = 0.;
+				for ( int iy = 0; iy < ny; iy++ )
+				{
+					final int o = ( iz * ny + iy ) * nx;
+					double sumX = 0.;
+					for ( int ix = 0; ix < nx; ix++ )
+						sumX += kx[ ix ] * block[ o + ix ];
+					sumY += ky[ iy ] * sumX;
+				}
+				sumZ += kz[ iz ] * sumY;
+			}
+			final double weightedMean = sumZ / weightedSum;
+
+			// Weighted variance, two-pass for numerical stability.
+			sumZ = 0.;
+			for ( int iz = 0; iz < nz; iz++ )
+			{
+				double sumY = 0.;
+				for ( int iy = 0; iy < ny; iy++ )
+				{
+					final int o = ( iz * ny + iy ) * nx;
+					double sumX = 0.;
+					for ( int ix = 0; ix < nx; ix++ )
+					{
+						final double dv = block[ o + ix ] - weightedMean;
+						sumX += kx[ ix ] * dv * dv;
+					}
+					sumY += ky[ iy ] * sumX;
 				}
+				sumZ += kz[ iz ] * sumY;
 			}
+
+			final double variance = sumZ / weightedSum;
+			mean = weightedMean;
+			std = Math.sqrt( variance );
 		}
 	}
 
@@ -226,30 +657,73 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 		return nSpots;
 	}
 
+	static final int halfkernelsize( final double sigma )
+	{
+		return Math.max( 2, ( int ) ( SIGMA_FACTOR * sigma + 0.5 ) + 1 );
+	}
+
 	private static final double[] halfkernel( final double sigma, final double offset, final int size )
 	{
-		final double two_sq_sigma = 2 * sigma * sigma;
 		final double[] kernel = new double[ 2 * size - 1 ];
+		halfkernel( sigma, offset, size, kernel );
+		return kernel;
+	}
 
-		for ( int i = 0; i < kernel.length; ++i )
+	/**
+	 * Writes the half-kernel of the specified size in the first
+	 * {@code 2 * size - 1} elements of the specified array.
+	 */
+	static final void halfkernel( final double sigma, final double offset, final int size, final double[] kernel )
+	{
+		final double two_sq_sigma = 2 * sigma * sigma;
+		final int length = 2 * size - 1;
+
+		for ( int i = 0; i < length; ++i )
 		{
 			final double x = i - size + 1 - offset;
 			kernel[ i ] = Math.exp( -( x * x ) / two_sq_sigma );
 		}
 
 		double sum = 0.;
-		for ( int i = 0; i < kernel.length; i++ )
+		for ( int i = 0; i < length; i++ )
 			sum += kernel[ i ];
 
-		for ( int i = 0; i < kernel.length; ++i )
+		for ( int i = 0; i < length; ++i )
 			kernel[ i ] /= sum;
-
-		return kernel;
 	}
 
-	private static final JamaEigenvalueDecomposition eig = new JamaEigenvalueDecomposition( 3 );
+	/**
+	 * Writes in the first {@code 2 * size - 1} elements of {@code kernel} the
+	 * half-kernel of the specified size centred on a pixel, shifted by the
+	 * specified sub-pixel offset. Since
+	 * {@code exp(-(k - o)^2 / 2s^2) = exp(-k^2 / 2s^2) * exp(k o / s^2) * c},
+	 * the shift multiplies each weight by a geometric factor. The constant
+	 * {@code c} is ignored: the weights are only used relative to their sum.
+	 * <p>
+	 * For very small sigmas, the factor overflows while the centred weights
+	 * underflow to 0. The shifted kernel is then computed directly with
+	 * {@link #halfkernel(double, double, int, double[])}.
+	 */
+	static final void shift( final double[] centred, final double sigma, final double offset, final int size, final double[] kernel )
+	{
+		final double sq_sigma = sigma * sigma;
+		if ( Math.abs( offset ) * ( size - 1 ) > MAX_SHIFT_EXPONENT * sq_sigma )
+		{
+			halfkernel( sigma, offset, size, kernel );
+			return;
+		}
 
-	private static final double minRadius( final Spot spot, final double[][] cov )
+		final int length = 2 * size - 1;
+		final double ratio = Math.exp( offset / sq_sigma );
+		double factor = Math.exp( -( size - 1 ) * offset / sq_sigma );
+		for ( int i = 0; i < length; ++i )
+		{
+			kernel[ i ] = centred[ i ] * factor;
+			factor *= ratio;
+		}
+	}
+
+	private static final double minRadius( final Spot spot, final double[][] cov, final JamaEigenvalueDecomposition eig )
 	{
 		// Best radius is smallest radius of ellipse.
 		spot.getCovariance( cov );
@@ -262,6 +736,27 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 		return radius;
 	}
 
+	/**
+	 * Sets the strategy used to accumulate pixel values in spots.
+	 *
+	 * @param kernelEngine
+	 *            the kernel engine.
+	 */
+	public void setKernelEngine( final KernelEngine kernelEngine )
+	{
+		this.kernelEngine = kernelEngine;
+	}
+
+	/**
+	 * Returns the strategy used to accumulate pixel values in spots.
+	 *
+	 * @return the kernel engine.
+	 */
+	public KernelEngine getKernelEngine()
+	{
+		return kernelEngine;
+	}
+
 	@Override
 	public boolean isCanceled()
 	{
@@ -1,5 +1,6 @@
 package org.mastodon.mamut.feature;
 
+import org.mastodon.feature.update.GraphUpdate;
 import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.properties.IntPropertyMap;
@@ -14,15 +15,25 @@ public class SpotNLinksFeatureComputer implements MamutFeatureComputer
 	@Parameter
 	private ModelGraph graph;
 
+	@Parameter
+	private GraphUpdate update;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private SpotNLinksFeature output;
 
 	@Override
 	public void run()
 	{
-		output.map.beforeClearPool();
-		for ( final Spot spot : graph.vertices() )
-			output.map.set( spot, spot.edges().size() );
+		if ( update == null || update.isAll() )
+		{
+			output.map.beforeClearPool();
+			for ( final Spot spot : graph.vertices() )
+				output.map.set( spot, spot.edges().size() );
+		}
+		else
+		{
+			update.forEachVertex( graph, graph.getGraphIdBimap(), spot -> output.map.set( spot, spot.edges().size() ) );
+		}
 	}
 
 	@Override
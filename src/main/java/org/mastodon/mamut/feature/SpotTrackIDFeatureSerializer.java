@@ -27,7 +27,7 @@ public class SpotTrackIDFeatureSerializer implements FeatureSerializer< SpotTrac
 	@Override
 	public void serialize( final SpotTrackIDFeature feature, final ObjectToFileIdMap< Spot > idmap, final ObjectOutputStream oos ) throws IOException
 	{
-		final IntPropertyMapSerializer< Spot > propertyMapSerializer = new IntPropertyMapSerializer<>( feature.map );
+		final IntPropertyMapSerializer< Spot > propertyMapSerializer = new IntPropertyMapSerializer<>( feature.getMap() );
 		propertyMapSerializer.writePropertyMap( idmap, oos );
 	}
 
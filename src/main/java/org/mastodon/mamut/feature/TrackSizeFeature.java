@@ -5,6 +5,7 @@ import static org.mastodon.feature.FeatureProjectionKey.key;
 import java.util.Collections;
 import java.util.Set;
 
+import org.mastodon.collection.RefCollection;
 import org.mastodon.feature.Dimension;
 import org.mastodon.feature.Feature;
 import org.mastodon.feature.FeatureProjection;
@@ -14,7 +15,9 @@ import org.mastodon.feature.FeatureProjections;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.IntFeatureProjection;
 import org.mastodon.feature.Multiplicity;
+import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.ConnectedComponentIndex;
 import org.mastodon.properties.IntPropertyMap;
 import org.scijava.plugin.Plugin;
 
@@ -29,7 +32,19 @@ public class TrackSizeFeature implements Feature< Spot >
 
 	public static final Spec SPEC = new Spec();
 
-	final IntPropertyMap< Spot > map;
+	/**
+	 * The values, or <code>null</code> if this feature is backed by a track
+	 * index.
+	 */
+	private final IntPropertyMap< Spot > map;
+
+	/**
+	 * The track index that backs this feature, or <code>null</code> if the
+	 * values are stored in {@link #map}.
+	 */
+	private final ConnectedComponentIndex< Spot, Link > index;
+
+	private final RefCollection< Spot > spots;
 
 	private final IntFeatureProjection< Spot > projection;
 
@@ -51,9 +66,53 @@ public class TrackSizeFeature implements Feature< Spot >
 	TrackSizeFeature( final IntPropertyMap< Spot > map )
 	{
 		this.map = map;
+		this.index = null;
+		this.spots = null;
 		this.projection = FeatureProjections.project( key( PROJECTION_SPEC ), map, Dimension.NONE_UNITS );
 	}
 
+	/**
+	 * Creates a feature whose values are read from the specified track index,
+	 * and are therefore always up to date.
+	 *
+	 * @param index
+	 *            the track index.
+	 * @param spots
+	 *            the spots of the model graph.
+	 */
+	TrackSizeFeature( final ConnectedComponentIndex< Spot, Link > index, final RefCollection< Spot > spots )
+	{
+		this.map = null;
+		this.index = index;
+		this.spots = spots;
+		this.projection = FeatureProjections.project( key( PROJECTION_SPEC ), index::getComponentSize, Dimension.NONE_UNITS );
+	}
+
+	/**
+	 * Returns <code>true</code> if this feature reads its values from the
+	 * specified track index.
+	 */
+	boolean isBackedBy( final ConnectedComponentIndex< Spot, Link > index )
+	{
+		return this.index != null && this.index == index;
+	}
+
+	/**
+	 * Returns the track size values as a property map. If this feature is backed by
+	 * a track index, the map is a new snapshot of the current index content.
+	 */
+	IntPropertyMap< Spot > getMap()
+	{
+		if ( index == null )
+			return map;
+
+		// A new map for each call, so that concurrent saves do not share it.
+		final IntPropertyMap< Spot > snapshot = new IntPropertyMap<>( spots, -1 );
+		for ( final Spot spot : spots )
+			snapshot.set( spot, index.getComponentSize( spot ) );
+		return snapshot;
+	}
+
 	@Override
 	public FeatureProjection< Spot > project( final FeatureProjectionKey key )
 	{
@@ -75,6 +134,8 @@ public class TrackSizeFeature implements Feature< Spot >
 	@Override
 	public void invalidate( final Spot spot )
 	{
-		map.remove( spot );
+		// Values read from the track index are always up to date.
+		if ( index == null )
+			map.remove( spot );
 	}
 }
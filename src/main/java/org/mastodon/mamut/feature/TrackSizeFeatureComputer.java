@@ -1,25 +1,16 @@
 package org.mastodon.mamut.feature;
 
-import org.mastodon.mamut.model.ModelGraph;
-import org.mastodon.mamut.model.Spot;
-import org.mastodon.pool.PoolCollectionWrapper;
-import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.mamut.model.Model;
 import org.scijava.ItemIO;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
-import gnu.trove.map.TIntIntMap;
-import gnu.trove.map.hash.TIntIntHashMap;
-
 @Plugin( type = MamutFeatureComputer.class )
 public class TrackSizeFeatureComputer implements MamutFeatureComputer
 {
 
 	@Parameter
-	private ModelGraph graph;
-
-	@Parameter
-	private SpotTrackIDFeature trackID;
+	private Model model;
 
 	@Parameter( type = ItemIO.OUTPUT )
 	private TrackSizeFeature output;
@@ -27,25 +18,14 @@ public class TrackSizeFeatureComputer implements MamutFeatureComputer
 	@Override
 	public void createOutput()
 	{
-		if ( null == output )
-			output = new TrackSizeFeature( new IntPropertyMap<>( graph.vertices().getRefPool(), -1 ) );
+		// Replaces features loaded from disk or computed for another model.
+		if ( null == output || !output.isBackedBy( model.getTrackIndex() ) )
+			output = new TrackSizeFeature( model.getTrackIndex(), model.getGraph().vertices() );
 	}
 
 	@Override
 	public void run()
 	{
-		output.map.beforeClearPool();
-
-		final TIntIntMap nSpots = new TIntIntHashMap();
-		final PoolCollectionWrapper< Spot > vertices = graph.vertices();
-		for ( final Spot spot : vertices )
-		{
-			final int id = trackID.map.get( spot );
-			if ( !nSpots.increment( id ) )
-				nSpots.put( id, 1 );
-		}
-
-		for ( final Spot spot : vertices )
-			output.map.set( spot, nSpots.get( trackID.map.get( spot ) ) );
+		// Nothing to do: the values are read from the model track index.
 	}
 }
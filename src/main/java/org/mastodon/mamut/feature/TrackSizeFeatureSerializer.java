@@ -27,7 +27,7 @@ public class TrackSizeFeatureSerializer implements FeatureSerializer< TrackSizeF
 	@Override
 	public void serialize( final TrackSizeFeature feature, final ObjectToFileIdMap< Spot > idmap, final ObjectOutputStream oos ) throws IOException
 	{
-		final IntPropertyMapSerializer< Spot > propertyMapSerializer = new IntPropertyMapSerializer<>( feature.map );
+		final IntPropertyMapSerializer< Spot > propertyMapSerializer = new IntPropertyMapSerializer<>( feature.getMap() );
 		propertyMapSerializer.writePropertyMap( idmap, oos );
 	}
 
@@ -98,6 +98,7 @@ import org.mastodon.feature.FeatureProjectionSpec;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.IntFeatureProjection;
+import org.mastodon.feature.LazyFeature;
 import org.mastodon.graph.algorithm.RootFinder;
 import org.mastodon.graph.algorithm.traversal.DepthFirstSearch;
 import org.mastodon.graph.algorithm.traversal.GraphSearch.SearchDirection;
@@ -680,9 +681,9 @@ public class MamutExporter
 			if ( fspec.getTargetClass().equals( target ) )
 			{
 				@SuppressWarnings( "unchecked" )
-				final Feature< T > feature = ( Feature< T > ) featureModel.getFeature( fspec );
+				final Feature< T > feature = ( Feature< T > ) LazyFeature.unwrap( featureModel.getFeature( fspec ) );
 				final String fname = fspec.getKey();
-				if ( null == feature.projections() )
+				if ( null == feature || null == feature.projections() )
 					continue;
 
 				if ( trackMateImporterFeatureClass.isInstance( feature ) )
@@ -710,9 +711,9 @@ public class MamutExporter
 			if ( fspec.getTargetClass().equals( target ) )
 			{
 				@SuppressWarnings( "unchecked" )
-				final Feature< T > feature = ( Feature< T > ) featureModel.getFeature( fspec );
+				final Feature< T > feature = ( Feature< T > ) LazyFeature.unwrap( featureModel.getFeature( fspec ) );
 				final String fname = fspec.getKey();
-				if ( null == feature.projections() )
+				if ( null == feature || null == feature.projections() )
 					continue;
 
 				/*
@@ -13,13 +13,16 @@ import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.update.GraphFeatureUpdateListeners;
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.labels.LabelSets;
 import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.model.AbstractModel;
+import org.mastodon.model.ConnectedComponentIndex;
 import org.mastodon.model.tag.DefaultTagSetModel;
+import org.mastodon.model.tag.PrimitiveTagSetModel;
 import org.mastodon.model.tag.RawTagSetModelIO;
 import org.mastodon.model.tag.TagSetModel;
 import org.mastodon.properties.Property;
@@ -57,6 +60,11 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 */
 	private final SpatioTemporalIndex< Spot > index;
 
+	/*
+	 * Connected components (tracks) of the model graph.
+	 */
+	private final ConnectedComponentIndex< Spot, Link > trackIndex;
+
 	private final ReentrantReadWriteLock lock;
 
 	private final GraphUndoRecorder< Spot, Link > undoRecorder;
@@ -88,6 +96,9 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		index = theIndex;
 		lock = modelGraph.getLock();
 
+		trackIndex = new ConnectedComponentIndex<>( modelGraph, modelGraph.getGraphIdBimap() );
+		modelGraph.addGraphListener( trackIndex );
+
 		final int initialCapacity = 1024;
 
 		final List< Property< Spot > > vertexUndoableProperties = new ArrayList<>();
@@ -99,7 +110,9 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		final List< Property< Link > > edgeUndoableProperties = new ArrayList<>();
 
 		featureModel = new FeatureModel();
-		tagSetModel = new DefaultTagSetModel<>( getGraph() );
+		// Values of deleted objects are dropped silently, update statistics.
+		modelGraph.addGraphListener( GraphFeatureUpdateListeners.statisticsListener( featureModel, Spot.class, Link.class ) );
+		tagSetModel = new PrimitiveTagSetModel<>( getGraph() );
 		vertexUndoableProperties.add(
 				new DefaultTagSetModel.SerialisationAccess< Spot, Link >( tagSetModel )
 				{
@@ -147,16 +160,22 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		final FileIdToGraphMap< Spot, Link > idmap = modelGraph.loadRaw( reader.getRawModelInputStream(), ModelSerializer.getInstance() );
 
 		tagSetModel.pauseListeners();
-		tagSetModel.clear();
-		try (
-				final InputStream tis = reader.getRawTagsInputStream();
-				final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( tis, 1024 * 1024 ) ))
+		try
 		{
-			RawTagSetModelIO.read( tagSetModel, idmap, ois );
+			tagSetModel.clear();
+			try (
+					final InputStream tis = reader.getRawTagsInputStream();
+					final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( tis, 1024 * 1024 ) ))
+			{
+				RawTagSetModelIO.read( tagSetModel, idmap, ois );
+			}
+			catch ( final FileNotFoundException e )
+			{}
+		}
+		finally
+		{
+			tagSetModel.resumeListeners();
 		}
-		catch ( final FileNotFoundException e )
-		{}
-		tagSetModel.resumeListeners();
 
 		return idmap;
 	}
@@ -173,16 +192,60 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 */
 	public GraphToFileIdMap< Spot, Link > saveRaw( final MamutProject.ProjectWriter writer ) throws IOException
 	{
-		final GraphToFileIdMap< Spot, Link > idmap = modelGraph.saveRaw( writer.getRawModelOutputStream(), ModelSerializer.getInstance() );
+		final GraphToFileIdMap< Spot, Link > idmap = createFileIdMap();
+		saveRawGraph( writer, idmap );
+		saveRawTags( writer, idmap );
+		return idmap;
+	}
+
+	/**
+	 * Creates the map from spots/links to the IDs they get in the raw files
+	 * written by {@link #saveRawGraph(MamutProject.ProjectWriter, GraphToFileIdMap)}.
+	 * With it, the model graph, the tags and the features can be saved
+	 * concurrently.
+	 *
+	 * @return a new map, valid until the model graph is modified.
+	 */
+	public GraphToFileIdMap< Spot, Link > createFileIdMap()
+	{
+		return modelGraph.createFileIdMap();
+	}
 
+	/**
+	 * Saves the model graph to the specified project folder.
+	 *
+	 * @param writer
+	 *            writer to save the raw project files.
+	 * @param idmap
+	 *            the IDs to use in the raw files, created by
+	 *            {@link #createFileIdMap()}.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the file.
+	 */
+	public void saveRawGraph( final MamutProject.ProjectWriter writer, final GraphToFileIdMap< Spot, Link > idmap ) throws IOException
+	{
+		modelGraph.saveBlockRaw( writer.getRawModelOutputStream(), ModelSerializer.getInstance(), idmap );
+	}
+
+	/**
+	 * Saves the tag sets of this model to the specified project folder.
+	 *
+	 * @param writer
+	 *            writer to save the raw project files.
+	 * @param idmap
+	 *            the IDs to use in the raw files, created by
+	 *            {@link #createFileIdMap()}.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the file.
+	 */
+	public void saveRawTags( final MamutProject.ProjectWriter writer, final GraphToFileIdMap< Spot, Link > idmap ) throws IOException
+	{
 		try (
 				final OutputStream fos = writer.getRawTagsOutputStream();
 				final ObjectOutputStream oos = new ObjectOutputStream( new BufferedOutputStream( fos, 1024 * 1024 ) ))
 		{
 			RawTagSetModelIO.write( tagSetModel, idmap, oos );
 		}
-
-		return idmap;
 	}
 
 	/**
@@ -195,6 +258,17 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		return index;
 	}
 
+	/**
+	 * Exposes the index of the tracks (connected components of the graph) of
+	 * this model. It is kept up to date with the graph.
+	 *
+	 * @return the track index.
+	 */
+	public ConnectedComponentIndex< Spot, Link > getTrackIndex()
+	{
+		return trackIndex;
+	}
+
 	public void undo()
 	{
 		lock.writeLock().lock();
@@ -62,4 +62,32 @@ public class ModelGraph extends AbstractModelGraph< ModelGraph, SpotPool, LinkPo
 	{
 		return vertexPool.label.removePropertyChangeListener( listener );
 	}
+
+	/**
+	 * Register a {@link PropertyChangeListener} that will be notified when
+	 * a {@code Spot}s covariance is changed.
+	 *
+	 * @param listener
+	 *            the listener to register.
+	 * @return {@code true} if the listener was successfully registered.
+	 *         {@code false} if it was already registered.
+	 */
+	public boolean addVertexCovarianceListener( final PropertyChangeListener< Spot > listener )
+	{
+		return vertexPool.covariance.addPropertyChangeListener( listener );
+	}
+
+	/**
+	 * Removes the specified {@link PropertyChangeListener} from the set of
+	 * VertexCovariance listeners.
+	 *
+	 * @param listener
+	 *            the listener to remove.
+	 * @return {@code true} if the listener was present in the listeners of this
+	 *         model and was successfully removed.
+	 */
+	public boolean removeVertexCovarianceListener( final PropertyChangeListener< Spot > listener )
+	{
+		return vertexPool.covariance.removePropertyChangeListener( listener );
+	}
 }
@@ -58,6 +58,11 @@ public class SpotPool extends AbstractSpotPool< Spot, Link, ByteMappedElement, M
 		return position;
 	}
 
+	public final Property< Spot > timepointProperty()
+	{
+		return timepoint;
+	}
+
 	public final Property< Spot > labelProperty()
 	{
 		return label;
@@ -136,16 +136,44 @@ public class MamutProject
 	}
 
 	public ProjectWriter openForWriting() throws IOException
+	{
+		return openForWriting( WriteZip.Compression.STORED );
+	}
+
+	/**
+	 * Opens this project for writing. The streams returned by the writer can
+	 * be written concurrently from different threads.
+	 *
+	 * @param compression
+	 *            the compression of the raw model, tags and feature entries,
+	 *            if the project is saved to a zip file. Ignored for project
+	 *            folders.
+	 * @return a new writer.
+	 * @throws IOException
+	 *             if the project cannot be opened for writing.
+	 */
+	public ProjectWriter openForWriting( final WriteZip.Compression compression ) throws IOException
 	{
 		return projectRoot.isDirectory()
 				? new WriteToDirectory()
-				: new WriteToZip();
+				: new WriteToZip( compression );
 	}
 
 	public interface ProjectReader extends Closeable
 	{
 		InputStream getProjectXmlInputStream() throws IOException;
 
+		/**
+		 * Returns a stream over the raw model file. The file is either in the
+		 * block raw format or, for projects saved by older versions, in the
+		 * legacy raw format; readers detect the format from the file header.
+		 * Project folders return a {@link FileInputStream}, so that the file
+		 * channel can be read directly.
+		 *
+		 * @return the raw model stream.
+		 * @throws IOException
+		 *             if the raw model file cannot be opened.
+		 */
 		InputStream getRawModelInputStream() throws IOException;
 
 		InputStream getRawTagsInputStream() throws IOException;
@@ -170,6 +198,14 @@ public class MamutProject
 		OutputStream getRawTagsOutputStream() throws IOException;
 
 		OutputStream getFeatureOutputStream( String featureKey ) throws IOException;
+
+		/**
+		 * Notifies that writing the project failed. When writing to a
+		 * {@code .mastodon} file, closing the writer then leaves the existing
+		 * file untouched. Files written to a project folder are not restored.
+		 */
+		default void abort()
+		{}
 	}
 
 	private class ReadFromDirectory implements ProjectReader
@@ -291,8 +327,9 @@ public class MamutProject
 		public OutputStream getFeatureOutputStream( final String featureKey ) throws IOException
 		{
 			final File featureFolder = new File( projectRoot, FEATURE_FOLDER_NAME );
-			if ( !featureFolder.exists() )
-				featureFolder.mkdir();
+			// Might be called concurrently: mkdirs() fails silently if the
+			// folder was just created by another thread.
+			featureFolder.mkdirs();
 			return new FileOutputStream( new File( featureFolder, featureKey + ".raw" ) );
 		}
 
@@ -305,15 +342,15 @@ public class MamutProject
 	{
 		private final WriteZip zip;
 
-		WriteToZip() throws IOException
+		WriteToZip( final WriteZip.Compression compression ) throws IOException
 		{
-			zip = new WriteZip( projectRoot );
+			zip = new WriteZip( projectRoot, compression );
 		}
 
 		@Override
 		public OutputStream getProjectXmlOutputStream() throws IOException
 		{
-			return zip.getOutputStream( PROJECT_FILE_NAME );
+			return zip.getOutputStream( PROJECT_FILE_NAME, WriteZip.Compression.FAST );
 		}
 
 		@Override
@@ -334,6 +371,12 @@ public class MamutProject
 			return zip.getOutputStream( FEATURE_FOLDER_NAME + "/" + featureKey + ".raw" );
 		}
 
+		@Override
+		public void abort()
+		{
+			zip.abort();
+		}
+
 		@Override
 		public void close() throws IOException
 		{
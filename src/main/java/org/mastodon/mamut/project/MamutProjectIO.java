@@ -17,7 +17,12 @@ public class MamutProjectIO
 {
 	public static final String MAMUTPROJECT_TAG = "MamutProject";
 	public static final String MAMUTPROJECT_VERSION_ATTRIBUTE_NAME = "version";
-	public static final String MAMUTPROJECT_VERSION_ATTRIBUTE_CURRENT = "0.3";
+	/**
+	 * Version of the project format written by this class. Version 0.4 stores
+	 * the model graph in the block raw format, that earlier readers cannot
+	 * read.
+	 */
+	public static final String MAMUTPROJECT_VERSION_ATTRIBUTE_CURRENT = "0.4";
 	public static final String SPIMDATAFILE_TAG = "SpimDataFile";
 	private static final String SPACE_UNITS_TAG = "SpaceUnits";
 	private static final String TIME_UNITS_TAG = "TimeUnits";
@@ -51,6 +56,11 @@ public class MamutProjectIO
 		if ( !MAMUTPROJECT_TAG.equals( root.getName() ) )
 			throw new IOException( "expected <" + MAMUTPROJECT_TAG + "> root element. wrong file?" );
 
+		final String version = root.getAttributeValue( MAMUTPROJECT_VERSION_ATTRIBUTE_NAME );
+		if ( version != null && !isSupportedVersion( version ) )
+			throw new IOException( "Unsupported project version " + version
+					+ ". This version of Mastodon reads projects up to version " + MAMUTPROJECT_VERSION_ATTRIBUTE_CURRENT + "." );
+
 		fromXml( project, root );
 
 		return project;
@@ -79,6 +89,35 @@ public class MamutProjectIO
 		project.setTimeUnits( timeUnits );
 	}
 
+	/**
+	 * Returns whether the specified project version, made of dot-separated
+	 * numbers, is not newer than {@link #MAMUTPROJECT_VERSION_ATTRIBUTE_CURRENT}.
+	 *
+	 * @param version
+	 *            the version.
+	 * @return <code>true</code> if projects of this version can be read.
+	 */
+	static boolean isSupportedVersion( final String version )
+	{
+		final String[] current = MAMUTPROJECT_VERSION_ATTRIBUTE_CURRENT.split( "\\." );
+		final String[] parts = version.trim().split( "\\." );
+		try
+		{
+			for ( int i = 0; i < Math.max( current.length, parts.length ); i++ )
+			{
+				final int c = i < current.length ? Integer.parseInt( current[ i ] ) : 0;
+				final int p = i < parts.length ? Integer.parseInt( parts[ i ] ) : 0;
+				if ( p != c )
+					return p < c;
+			}
+			return true;
+		}
+		catch ( final NumberFormatException e )
+		{
+			return false;
+		}
+	}
+
 	public static boolean mkdirs( final String fileName )
 	{
 		final File dir = new File( fileName );
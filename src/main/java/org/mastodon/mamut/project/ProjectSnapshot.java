@@ -0,0 +1,183 @@
+package org.mastodon.mamut.project;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mastodon.mamut.project.MamutProject.ProjectWriter;
+
+/**
+ * A {@link ProjectWriter} that keeps the content of the project in memory.
+ * <p>
+ * Used to take a consistent copy of a project while the model is locked,
+ * and write it to disk later, without the lock, with
+ * {@link #writeTo(ProjectWriter)}. Each entry is kept in a list of fixed-size
+ * chunks, so that entries are not limited to 2 GB and are not copied when they
+ * grow. The streams returned by this writer can be written concurrently from
+ * different threads.
+ */
+public class ProjectSnapshot implements ProjectWriter
+{
+
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	private ChunkedOutputStream projectXml;
+
+	private ChunkedOutputStream rawModel;
+
+	private ChunkedOutputStream rawTags;
+
+	private final Map< String, ChunkedOutputStream > features = new LinkedHashMap<>();
+
+	@Override
+	public synchronized OutputStream getProjectXmlOutputStream()
+	{
+		projectXml = new ChunkedOutputStream();
+		return projectXml;
+	}
+
+	@Override
+	public synchronized OutputStream getRawModelOutputStream()
+	{
+		rawModel = new ChunkedOutputStream();
+		return rawModel;
+	}
+
+	@Override
+	public synchronized OutputStream getRawTagsOutputStream()
+	{
+		rawTags = new ChunkedOutputStream();
+		return rawTags;
+	}
+
+	@Override
+	public synchronized OutputStream getFeatureOutputStream( final String featureKey )
+	{
+		final ChunkedOutputStream os = new ChunkedOutputStream();
+		features.put( featureKey, os );
+		return os;
+	}
+
+	/**
+	 * Returns the number of bytes held by this snapshot.
+	 *
+	 * @return the size of this snapshot.
+	 */
+	public synchronized long size()
+	{
+		long size = size( projectXml ) + size( rawModel ) + size( rawTags );
+		for ( final ChunkedOutputStream os : features.values() )
+			size += os.size();
+		return size;
+	}
+
+	/**
+	 * Writes the content of this snapshot with the specified writer. The
+	 * writer is not closed.
+	 *
+	 * @param writer
+	 *            the writer.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public synchronized void writeTo( final ProjectWriter writer ) throws IOException
+	{
+		if ( projectXml != null )
+			try (final OutputStream os = writer.getProjectXmlOutputStream())
+			{
+				projectXml.writeTo( os );
+			}
+		if ( rawModel != null )
+			try (final OutputStream os = writer.getRawModelOutputStream())
+			{
+				rawModel.writeTo( os );
+			}
+		if ( rawTags != null )
+			try (final OutputStream os = writer.getRawTagsOutputStream())
+			{
+				rawTags.writeTo( os );
+			}
+		for ( final Map.Entry< String, ChunkedOutputStream > entry : features.entrySet() )
+			try (final OutputStream os = writer.getFeatureOutputStream( entry.getKey() ))
+			{
+				entry.getValue().writeTo( os );
+			}
+	}
+
+	@Override
+	public void close()
+	{}
+
+	private static long size( final ChunkedOutputStream os )
+	{
+		return os == null ? 0 : os.size();
+	}
+
+	/**
+	 * An in-memory output stream that stores its content in a list of chunks
+	 * of {@value #CHUNK_SIZE} bytes.
+	 */
+	private static class ChunkedOutputStream extends OutputStream
+	{
+
+		private final List< byte[] > chunks = new ArrayList<>();
+
+		private byte[] current;
+
+		/**
+		 * Number of bytes written in the current chunk.
+		 */
+		private int pos = CHUNK_SIZE;
+
+		private long size;
+
+		@Override
+		public void write( final int b )
+		{
+			if ( pos == CHUNK_SIZE )
+				nextChunk();
+			current[ pos++ ] = ( byte ) b;
+			++size;
+		}
+
+		@Override
+		public void write( final byte[] b, int off, int len )
+		{
+			while ( len > 0 )
+			{
+				if ( pos == CHUNK_SIZE )
+					nextChunk();
+				final int n = Math.min( len, CHUNK_SIZE - pos );
+				System.arraycopy( b, off, current, pos, n );
+				pos += n;
+				off += n;
+				len -= n;
+				size += n;
+			}
+		}
+
+		long size()
+		{
+			return size;
+		}
+
+		void writeTo( final OutputStream os ) throws IOException
+		{
+			final int last = chunks.size() - 1;
+			for ( int i = 0; i < last; i++ )
+				os.write( chunks.get( i ), 0, CHUNK_SIZE );
+			if ( last >= 0 )
+				os.write( current, 0, pos );
+		}
+
+		private void nextChunk()
+		{
+			current = new byte[ CHUNK_SIZE ];
+			chunks.add( current );
+			pos = 0;
+		}
+	}
+}
@@ -1,87 +1,496 @@
 package org.mastodon.mamut.project;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
+/**
+ * Writes a zip file whose entries can be written concurrently.
+ * <p>
+ * Each entry is written uncompressed to a temporary file next to the zip
+ * file, so that writing entries is fast and can be done while holding a lock
+ * on the data. When this writer is closed, the entries are compressed in
+ * parallel, and the zip file is assembled by copying the compressed entries
+ * in the order in which they were created. Entries larger than 4 GB, offsets
+ * beyond 4 GB and more than 65534 entries are written in the ZIP64 format.
+ * <p>
+ * The zip file is first assembled in a temporary file, that is then moved
+ * over the target file, so that the target is left untouched if writing
+ * fails. If writing an entry fails, {@link #abort()} must be called before
+ * {@link #close()}, so that no zip file is written.
+ */
 public class WriteZip implements Closeable
 {
-	private final ZipOutputStream zos;
 
-	private ZipEntryStream current;
+	/**
+	 * Compression of a zip entry.
+	 */
+	public enum Compression
+	{
+		/**
+		 * No compression.
+		 */
+		STORED( -1 ),
+		/**
+		 * Fastest deflate compression.
+		 */
+		FAST( Deflater.BEST_SPEED ),
+		/**
+		 * Strongest deflate compression.
+		 */
+		STRONG( Deflater.BEST_COMPRESSION );
+
+		private final int level;
+
+		private Compression( final int level )
+		{
+			this.level = level;
+		}
+	}
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private static final long ZIP64_THRESHOLD = 0xFFFFFFFFL;
+
+	private final File file;
 
-	public WriteZip( String fn ) throws IOException
+	private final Compression defaultCompression;
+
+	private final List< ZipEntryStream > entries;
+
+	private final Set< String > names;
+
+	private boolean aborted;
+
+	public WriteZip( final String fn ) throws IOException
 	{
 		this( new File( fn ) );
 	}
 
-	public WriteZip( File f ) throws IOException
+	public WriteZip( final File f ) throws IOException
+	{
+		this( f, Compression.STORED );
+	}
+
+	/**
+	 * Creates a zip writer.
+	 *
+	 * @param f
+	 *            the zip file to write.
+	 * @param defaultCompression
+	 *            the compression of entries created with
+	 *            {@link #getOutputStream(String)}.
+	 * @throws IOException
+	 *             if the zip file cannot be written.
+	 */
+	public WriteZip( final File f, final Compression defaultCompression ) throws IOException
+	{
+		this.file = f.getAbsoluteFile();
+		if ( file.exists() && !file.canWrite() )
+			throw new IOException( "Cannot write to \"" + file + "\"" );
+		this.defaultCompression = defaultCompression;
+		this.entries = new ArrayList<>();
+		this.names = new HashSet<>();
+	}
+
+	public OutputStream getOutputStream( final String fn ) throws IOException
 	{
-		zos = new ZipOutputStream( new FileOutputStream( f ) );
-		zos.setMethod( ZipOutputStream.DEFLATED );
-		zos.setLevel( 0 );
-		current = null;
+		return getOutputStream( fn, defaultCompression );
 	}
 
-	public OutputStream getOutputStream( String fn ) throws IOException
+	/**
+	 * Creates a new entry and returns the stream to write its content. The
+	 * stream must be closed before this writer is. Streams of different
+	 * entries can be written concurrently from different threads.
+	 *
+	 * @param fn
+	 *            the entry name.
+	 * @param compression
+	 *            the compression of the entry.
+	 * @return a new stream.
+	 * @throws IOException
+	 *             if the temporary file for the entry cannot be created.
+	 */
+	public synchronized OutputStream getOutputStream( final String fn, final Compression compression ) throws IOException
 	{
-		if ( current != null && current.isOpen )
-			throw new IOException( "OutputStream for previous entry \"" + current.entry + "\" is still open" );
-		current = new ZipEntryStream( new ZipEntry( fn ) );
-		return current;
+		if ( !names.add( fn ) )
+			throw new IOException( "Duplicate entry \"" + fn + "\"" );
+		final ZipEntryStream entry = new ZipEntryStream( fn, compression );
+		entries.add( entry );
+		return entry;
 	}
 
+	/**
+	 * Marks this writer as failed: closing it will then only delete the
+	 * temporary files, and leave the target file untouched.
+	 */
+	public synchronized void abort()
+	{
+		aborted = true;
+	}
+
+	/**
+	 * Compresses the entries and writes the zip file, unless {@link #abort()}
+	 * was called. Temporary files are deleted in all cases.
+	 *
+	 * @throws IOException
+	 *             if an entry is still open, or if the zip file cannot be
+	 *             written. The target file is then left untouched.
+	 */
 	@Override
-	public void close() throws IOException
+	public synchronized void close() throws IOException
+	{
+		File tmp = null;
+		try
+		{
+			if ( aborted )
+				return;
+			for ( final ZipEntryStream entry : entries )
+				if ( entry.isOpen )
+					throw new IOException( "OutputStream for entry \"" + entry.name + "\" is still open" );
+			compress();
+			tmp = File.createTempFile( file.getName() + "-", ".tmp", file.getParentFile() );
+			assemble( tmp );
+			try
+			{
+				Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch ( final AtomicMoveNotSupportedException e )
+			{
+				Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			}
+		}
+		finally
+		{
+			for ( final ZipEntryStream entry : entries )
+			{
+				entry.tmp.delete();
+				entry.data.delete();
+			}
+			if ( tmp != null )
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * Compresses the entries that are not stored, in parallel.
+	 */
+	private void compress() throws IOException
+	{
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( final ZipEntryStream entry : entries )
+		{
+			if ( entry.compression != Compression.STORED )
+				tasks.add( () -> {
+					entry.compress();
+					return null;
+				} );
+		}
+		if ( tasks.isEmpty() )
+			return;
+
+		final int nThreads = Math.min( tasks.size(), Runtime.getRuntime().availableProcessors() );
+		final ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+		try
+		{
+			for ( final Future< Void > future : executor.invokeAll( tasks ) )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while compressing zip entries.", e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof IOException )
+				throw ( IOException ) cause;
+			throw new IOException( cause );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	private void assemble( final File target ) throws IOException
+	{
+		final LocalDateTime now = LocalDateTime.now();
+		final int dosTime = ( now.getHour() << 11 ) | ( now.getMinute() << 5 ) | ( now.getSecond() >> 1 );
+		final int dosDate = ( ( now.getYear() - 1980 ) << 9 ) | ( now.getMonthValue() << 5 ) | now.getDayOfMonth();
+
+		try (final FileOutputStream fos = new FileOutputStream( target );
+				final FileChannel out = fos.getChannel())
+		{
+			// Local headers and entry data.
+			final long[] offsets = new long[ entries.size() ];
+			for ( int i = 0; i < entries.size(); i++ )
+			{
+				final ZipEntryStream entry = entries.get( i );
+				offsets[ i ] = out.position();
+				final boolean zip64 = entry.isZip64( 0 );
+				final byte[] name = entry.name.getBytes( StandardCharsets.UTF_8 );
+				final ByteBuffer header = buffer( 30 + name.length + ( zip64 ? 20 : 0 ) );
+				header.putInt( 0x04034b50 );
+				header.putShort( ( short ) ( zip64 ? 45 : 20 ) );
+				header.putShort( ( short ) 0x0800 ); // UTF-8 names.
+				header.putShort( ( short ) entry.method() );
+				header.putShort( ( short ) dosTime );
+				header.putShort( ( short ) dosDate );
+				header.putInt( ( int ) entry.crc );
+				header.putInt( zip64 ? -1 : ( int ) entry.compressedSize );
+				header.putInt( zip64 ? -1 : ( int ) entry.size );
+				header.putShort( ( short ) name.length );
+				header.putShort( ( short ) ( zip64 ? 20 : 0 ) );
+				header.put( name );
+				if ( zip64 )
+				{
+					header.putShort( ( short ) 0x0001 );
+					header.putShort( ( short ) 16 );
+					header.putLong( entry.size );
+					header.putLong( entry.compressedSize );
+				}
+				write( out, header );
+
+				try (final FileInputStream fis = new FileInputStream( entry.data );
+						final FileChannel in = fis.getChannel())
+				{
+					long pos = 0;
+					while ( pos < entry.compressedSize )
+						pos += in.transferTo( pos, entry.compressedSize - pos, out );
+				}
+			}
+
+			// Central directory.
+			final long cdStart = out.position();
+			for ( int i = 0; i < entries.size(); i++ )
+			{
+				final ZipEntryStream entry = entries.get( i );
+				final boolean zip64 = entry.isZip64( offsets[ i ] );
+				final byte[] name = entry.name.getBytes( StandardCharsets.UTF_8 );
+				final ByteBuffer header = buffer( 46 + name.length + ( zip64 ? 28 : 0 ) );
+				header.putInt( 0x02014b50 );
+				header.putShort( ( short ) 45 );
+				header.putShort( ( short ) ( zip64 ? 45 : 20 ) );
+				header.putShort( ( short ) 0x0800 );
+				header.putShort( ( short ) entry.method() );
+				header.putShort( ( short ) dosTime );
+				header.putShort( ( short ) dosDate );
+				header.putInt( ( int ) entry.crc );
+				header.putInt( zip64 ? -1 : ( int ) entry.compressedSize );
+				header.putInt( zip64 ? -1 : ( int ) entry.size );
+				header.putShort( ( short ) name.length );
+				header.putShort( ( short ) ( zip64 ? 28 : 0 ) );
+				header.putShort( ( short ) 0 ); // comment length
+				header.putShort( ( short ) 0 ); // disk number
+				header.putShort( ( short ) 0 ); // internal attributes
+				header.putInt( 0 ); // external attributes
+				header.putInt( zip64 ? -1 : ( int ) offsets[ i ] );
+				header.put( name );
+				if ( zip64 )
+				{
+					header.putShort( ( short ) 0x0001 );
+					header.putShort( ( short ) 24 );
+					header.putLong( entry.size );
+					header.putLong( entry.compressedSize );
+					header.putLong( offsets[ i ] );
+				}
+				write( out, header );
+			}
+			final long cdEnd = out.position();
+			final long cdSize = cdEnd - cdStart;
+
+			// End of central directory.
+			final boolean zip64 = entries.size() >= 0xFFFF || cdStart >= ZIP64_THRESHOLD || cdSize >= ZIP64_THRESHOLD;
+			if ( zip64 )
+			{
+				final ByteBuffer record = buffer( 56 + 20 );
+				record.putInt( 0x06064b50 );
+				record.putLong( 44 );
+				record.putShort( ( short ) 45 );
+				record.putShort( ( short ) 45 );
+				record.putInt( 0 );
+				record.putInt( 0 );
+				record.putLong( entries.size() );
+				record.putLong( entries.size() );
+				record.putLong( cdSize );
+				record.putLong( cdStart );
+				// Locator.
+				record.putInt( 0x07064b50 );
+				record.putInt( 0 );
+				record.putLong( cdEnd );
+				record.putInt( 1 );
+				write( out, record );
+			}
+			final ByteBuffer end = buffer( 22 );
+			end.putInt( 0x06054b50 );
+			end.putShort( ( short ) 0 );
+			end.putShort( ( short ) 0 );
+			end.putShort( ( short ) ( zip64 ? 0xFFFF : entries.size() ) );
+			end.putShort( ( short ) ( zip64 ? 0xFFFF : entries.size() ) );
+			end.putInt( zip64 ? -1 : ( int ) cdSize );
+			end.putInt( zip64 ? -1 : ( int ) cdStart );
+			end.putShort( ( short ) 0 );
+			write( out, end );
+		}
+	}
+
+	private static ByteBuffer buffer( final int size )
+	{
+		return ByteBuffer.allocate( size ).order( ByteOrder.LITTLE_ENDIAN );
+	}
+
+	private static void write( final FileChannel out, final ByteBuffer buffer ) throws IOException
 	{
-		zos.close();
+		buffer.flip();
+		while ( buffer.hasRemaining() )
+			out.write( buffer );
 	}
 
 	private class ZipEntryStream extends OutputStream
 	{
+		final String name;
+
+		final Compression compression;
+
+		/**
+		 * The uncompressed content.
+		 */
+		final File tmp;
+
+		/**
+		 * The content to copy in the zip file: {@link #tmp}, or its
+		 * compressed version.
+		 */
+		File data;
+
+		/**
+		 * Stream to {@link #tmp}, released when closed so that the buffers
+		 * of many entries are not retained.
+		 */
+		private OutputStream out;
+
+		private final CRC32 checksum;
+
 		boolean isOpen;
 
-		ZipEntry entry;
+		long crc;
+
+		long size;
+
+		long compressedSize;
+
+		ZipEntryStream( final String name, final Compression compression ) throws IOException
+		{
+			this.name = name;
+			this.compression = compression;
+			this.tmp = File.createTempFile( file.getName() + "-", ".part", file.getParentFile() );
+			this.data = tmp;
+			this.out = new BufferedOutputStream( new FileOutputStream( tmp ), BUFFER_SIZE );
+			this.checksum = new CRC32();
+			this.isOpen = true;
+		}
+
+		/**
+		 * Deflates the content of this entry in a new temporary file.
+		 */
+		void compress() throws IOException
+		{
+			final File deflated = File.createTempFile( file.getName() + "-", ".deflated", file.getParentFile() );
+			data = deflated;
+			final Deflater deflater = new Deflater( compression.level, true );
+			try (final FileInputStream in = new FileInputStream( tmp );
+					final OutputStream os = new DeflaterOutputStream(
+							new BufferedOutputStream( new FileOutputStream( deflated ), BUFFER_SIZE ), deflater, 64 * 1024 ))
+			{
+				final byte[] buffer = new byte[ 64 * 1024 ];
+				int n;
+				while ( ( n = in.read( buffer ) ) >= 0 )
+					os.write( buffer, 0, n );
+			}
+			finally
+			{
+				deflater.end();
+			}
+			compressedSize = deflated.length();
+		}
+
+		int method()
+		{
+			return compression == Compression.STORED ? 0 : 8;
+		}
 
-		ZipEntryStream( ZipEntry entry ) throws IOException
+		boolean isZip64( final long offset )
 		{
-			zos.putNextEntry( entry );
-			isOpen = true;
+			return size >= ZIP64_THRESHOLD || compressedSize >= ZIP64_THRESHOLD || offset >= ZIP64_THRESHOLD;
 		}
 
 		@Override
 		public void write( final int b ) throws IOException
 		{
-			zos.write( b );
+			checksum.update( b );
+			size++;
+			out.write( b );
 		}
 
 		@Override
 		public void write( final byte[] b ) throws IOException
 		{
-			zos.write( b );
+			write( b, 0, b.length );
 		}
 
 		@Override
 		public void write( final byte[] b, final int off, final int len ) throws IOException
 		{
-			zos.write( b, off, len );
+			checksum.update( b, off, len );
+			size += len;
+			out.write( b, off, len );
 		}
 
 		@Override
 		public void flush() throws IOException
 		{
-			zos.flush();
+			out.flush();
 		}
 
 		@Override
 		public void close() throws IOException
 		{
-			zos.closeEntry();
-			isOpen = false;
+			if ( !isOpen )
+				return;
+			out.close();
+			out = null;
+			crc = checksum.getValue();
+			compressedSize = tmp.length();
+			synchronized ( WriteZip.this )
+			{
+				isOpen = false;
+			}
 		}
 	}
 }
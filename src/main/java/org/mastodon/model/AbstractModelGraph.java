@@ -2,6 +2,7 @@ package org.mastodon.model;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
@@ -68,6 +69,11 @@ public class AbstractModelGraph<
 	/**
 	 * Clears this model and loads the model from the specified raw file using
 	 * the specified serializer.
+	 * <p>
+	 * Files in the {@link BlockRawGraphIO block raw format} are detected
+	 * from their header. If the stream is a {@link FileInputStream}, its file
+	 * channel is read directly, without an intermediate stream buffer. Other
+	 * files are read in the legacy raw format.
 	 *
 	 * @param is
 	 *            the raw data to load.
@@ -83,18 +89,43 @@ public class AbstractModelGraph<
 			final GraphSerializer< V, E > serializer )
 					throws IOException
 	{
-		final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( is, 1024 * 1024 ) );
-		pauseListeners();
-		clear();
-		final FileIdToGraphMap< V, E > fileIdMap = RawGraphIO.read( this, idmap, serializer, ois );
-		RawPropertyIO.readPropertyMaps( fileIdMap.vertices(), vertexPropertySerializers, ois );
-		// TODO: edge properties
-//		RawFeatureIO.readFeatureMaps( fileIdMap.vertices(), vertexFeatures, ois );
-//		RawFeatureIO.readFeatureMaps( fileIdMap.edges(), edgeFeatures, ois );
-		ois.close();
-		resumeListeners();
+		final boolean isFile = is instanceof FileInputStream;
+		final InputStream in = isFile ? is : new BufferedInputStream( is, 1024 * 1024 );
+		final boolean isBlockRaw = isFile
+				? BlockRawGraphIO.isBlockRawFormat( ( ( FileInputStream ) is ).getChannel() )
+				: BlockRawGraphIO.isBlockRawFormat( in );
+		if ( isBlockRaw )
+		{
+			pauseListeners();
+			try
+			{
+				clear();
+				return BlockRawGraphIO.read( in, this, idmap, serializer, vertexPropertySerializers );
+			}
+			finally
+			{
+				in.close();
+				resumeListeners();
+			}
+		}
 
-		return fileIdMap;
+		final ObjectInputStream ois = new ObjectInputStream( isFile ? new BufferedInputStream( in, 1024 * 1024 ) : in );
+		pauseListeners();
+		try
+		{
+			clear();
+			final FileIdToGraphMap< V, E > fileIdMap = RawGraphIO.read( this, idmap, serializer, ois );
+			RawPropertyIO.readPropertyMaps( fileIdMap.vertices(), vertexPropertySerializers, ois );
+			// TODO: edge properties
+//			RawFeatureIO.readFeatureMaps( fileIdMap.vertices(), vertexFeatures, ois );
+//			RawFeatureIO.readFeatureMaps( fileIdMap.edges(), edgeFeatures, ois );
+			return fileIdMap;
+		}
+		finally
+		{
+			ois.close();
+			resumeListeners();
+		}
 	}
 
 	/**
@@ -130,6 +161,71 @@ public class AbstractModelGraph<
 		return fileIdMap;
 	}
 
+	/**
+	 * Saves this model to the specified raw file in the
+	 * {@link BlockRawGraphIO block raw format}, using the specified
+	 * serializer.
+	 *
+	 * @param os
+	 *            the stream to which raw data will be written.
+	 *            The stream will be closed when done!
+	 * @param serializer
+	 *            the serializer used for writing individual vertices.
+	 * @return the map from vertices/edges to IDs used in the raw file.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the file.
+	 */
+	public GraphToFileIdMap< V, E > saveBlockRaw(
+			final OutputStream os,
+			final GraphSerializer< V, E > serializer )
+					throws IOException
+	{
+		final GraphToFileIdMap< V, E > fileIdMap = createFileIdMap();
+		saveBlockRaw( os, serializer, fileIdMap );
+
+		return fileIdMap;
+	}
+
+	/**
+	 * Saves this model to the specified raw file in the
+	 * {@link BlockRawGraphIO block raw format}, using the specified
+	 * serializer and file ids.
+	 *
+	 * @param os
+	 *            the stream to which raw data will be written.
+	 *            The stream will be closed when done!
+	 * @param serializer
+	 *            the serializer used for writing individual vertices.
+	 * @param fileIdMap
+	 *            the IDs to use in the raw file, created by
+	 *            {@link #createFileIdMap()} for the current state of the
+	 *            graph.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the file.
+	 */
+	public void saveBlockRaw(
+			final OutputStream os,
+			final GraphSerializer< V, E > serializer,
+			final GraphToFileIdMap< V, E > fileIdMap )
+					throws IOException
+	{
+		BlockRawGraphIO.write( this, fileIdMap, serializer, vertexPropertySerializers, os );
+		os.close();
+	}
+
+	/**
+	 * Creates the map from vertices/edges to the IDs they get in a raw file
+	 * written by {@link #saveBlockRaw(OutputStream, GraphSerializer)}. This
+	 * map can be used to serialize data attached to the graph concurrently
+	 * with the graph itself.
+	 *
+	 * @return a new map, valid until the graph is modified.
+	 */
+	public GraphToFileIdMap< V, E > createFileIdMap()
+	{
+		return BlockRawGraphIO.fileIdMap( this, idmap );
+	}
+
 	public ReentrantReadWriteLock getLock()
 	{
 		return lock;
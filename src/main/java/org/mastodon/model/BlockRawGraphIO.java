@@ -0,0 +1,515 @@
+package org.mastodon.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.Graph;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.Vertex;
+import org.mastodon.graph.io.GraphSerializer;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.io.FileIdToObjectMap;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.io.properties.RawPropertyIO;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Reads and writes graphs in the block raw format.
+ * <p>
+ * Unlike the format of {@link org.mastodon.graph.io.RawGraphIO}, that goes
+ * through Java serialization for every vertex and edge, this format is made of
+ * fixed-size little-endian blocks that are read back through NIO buffers:
+ *
+ * <pre>
+ * int    magic number ('MRAW')
+ * int    format version
+ * int    number of vertices
+ * int    number of attribute bytes per vertex
+ * int    number of edges
+ * int    number of attribute bytes per edge
+ * byte[] vertex attributes, in file id order
+ * for each edge, in file id order:
+ *     int    source vertex file id
+ *     int    target vertex file id
+ *     byte[] edge attributes
+ * long   length of the vertex property maps block
+ * byte[] vertex property maps, written by {@link RawPropertyIO}
+ * </pre>
+ *
+ * When the graph is read from a file, the file channel is read directly into a
+ * direct buffer, without going through a stream. The file is deliberately not
+ * memory-mapped: a mapping is only released when its buffer is garbage
+ * collected, and until then the file cannot be overwritten on Windows, which
+ * breaks saving the project over the file that was opened. Files that are not
+ * in this format are read with {@link org.mastodon.graph.io.RawGraphIO}.
+ */
+public final class BlockRawGraphIO
+{
+
+	/**
+	 * "MRAW" in little-endian order. Never the first bytes of a Java
+	 * serialization stream, which start with 0xACED. Kept from the first
+	 * version of the format, so that existing files are still recognized.
+	 */
+	static final int MAGIC = 'M' | 'R' << 8 | 'A' << 16 | 'W' << 24;
+
+	static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 6 * Integer.BYTES;
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * Returns <code>true</code> if the file behind the specified channel is in
+	 * the block raw format. The channel position is not changed.
+	 *
+	 * @param channel
+	 *            the file channel.
+	 * @return <code>true</code> if the file starts with the block raw format
+	 *         magic number.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the channel.
+	 */
+	public static boolean isBlockRawFormat( final FileChannel channel ) throws IOException
+	{
+		final ByteBuffer header = ByteBuffer.allocate( Integer.BYTES ).order( ByteOrder.LITTLE_ENDIAN );
+		long pos = channel.position();
+		while ( header.hasRemaining() )
+		{
+			final int n = channel.read( header, pos );
+			if ( n < 0 )
+				return false;
+			pos += n;
+		}
+		return header.getInt( 0 ) == MAGIC;
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified stream starts with the block
+	 * raw format magic number. The stream is reset to its current position.
+	 *
+	 * @param is
+	 *            the stream. Must support {@link InputStream#mark(int)}.
+	 * @return <code>true</code> if the stream is in the block raw format.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the stream.
+	 */
+	public static boolean isBlockRawFormat( final InputStream is ) throws IOException
+	{
+		is.mark( Integer.BYTES );
+		try
+		{
+			int magic = 0;
+			for ( int i = 0; i < Integer.BYTES; i++ )
+			{
+				final int b = is.read();
+				if ( b < 0 )
+					return false;
+				magic |= b << ( 8 * i );
+			}
+			return magic == MAGIC;
+		}
+		finally
+		{
+			is.reset();
+		}
+	}
+
+	/**
+	 * Creates the map from vertices and edges to the ids they get in a file
+	 * written by {@link #write(Graph, GraphIdBimap, GraphSerializer, PropertyMapSerializers, OutputStream)}.
+	 * Vertices are numbered in iteration order, and edges in the iteration
+	 * order of their source vertex, then in outgoing edge order. The map is
+	 * only valid as long as the graph is not modified.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param idmap
+	 *            the id bimap of the graph.
+	 * @param <V>
+	 *            the type of vertices.
+	 * @param <E>
+	 *            the type of edges.
+	 * @return a new map.
+	 */
+	public static < V extends Vertex< E >, E extends Edge< V > > GraphToFileIdMap< V, E > fileIdMap(
+			final Graph< V, E > graph,
+			final GraphIdBimap< V, E > idmap )
+	{
+		final TIntIntMap vertexIdToFileId = new TIntIntHashMap( 2 * graph.vertices().size(), 0.5f, -1, -1 );
+		final TIntIntMap edgeIdToFileId = new TIntIntHashMap( 2 * graph.edges().size(), 0.5f, -1, -1 );
+		int vfid = 0;
+		int efid = 0;
+		for ( final V v : graph.vertices() )
+		{
+			vertexIdToFileId.put( idmap.getVertexId( v ), vfid++ );
+			for ( final E e : v.outgoingEdges() )
+				edgeIdToFileId.put( idmap.getEdgeId( e ), efid++ );
+		}
+		return new GraphToFileIdMap<>(
+				new ObjectToFileIdMap<>( vertexIdToFileId, idmap.vertexIdBimap() ),
+				new ObjectToFileIdMap<>( edgeIdToFileId, idmap.edgeIdBimap() ) );
+	}
+
+	/**
+	 * Writes the specified graph in the block raw format.
+	 *
+	 * @param graph
+	 *            the graph to write.
+	 * @param idmap
+	 *            the id bimap of the graph.
+	 * @param serializer
+	 *            the serializer for vertex and edge attributes.
+	 * @param vertexPropertySerializers
+	 *            the vertex property maps to write with the graph.
+	 * @param os
+	 *            the stream to write to. It is not closed.
+	 * @param <V>
+	 *            the type of vertices.
+	 * @param <E>
+	 *            the type of edges.
+	 * @return the map from vertices and edges to the ids used in the file.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing.
+	 */
+	public static < V extends Vertex< E >, E extends Edge< V > > GraphToFileIdMap< V, E > write(
+			final Graph< V, E > graph,
+			final GraphIdBimap< V, E > idmap,
+			final GraphSerializer< V, E > serializer,
+			final PropertyMapSerializers< V > vertexPropertySerializers,
+			final OutputStream os )
+					throws IOException
+	{
+		final GraphToFileIdMap< V, E > fileIdMap = fileIdMap( graph, idmap );
+		write( graph, fileIdMap, serializer, vertexPropertySerializers, os );
+		return fileIdMap;
+	}
+
+	/**
+	 * Writes the specified graph in the block raw format, using the specified
+	 * file ids.
+	 *
+	 * @param graph
+	 *            the graph to write.
+	 * @param fileIdMap
+	 *            the file ids, created by {@link #fileIdMap(Graph, GraphIdBimap)}
+	 *            for the current state of the graph.
+	 * @param serializer
+	 *            the serializer for vertex and edge attributes.
+	 * @param vertexPropertySerializers
+	 *            the vertex property maps to write with the graph.
+	 * @param os
+	 *            the stream to write to. It is not closed.
+	 * @param <V>
+	 *            the type of vertices.
+	 * @param <E>
+	 *            the type of edges.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing.
+	 */
+	public static < V extends Vertex< E >, E extends Edge< V > > void write(
+			final Graph< V, E > graph,
+			final GraphToFileIdMap< V, E > fileIdMap,
+			final GraphSerializer< V, E > serializer,
+			final PropertyMapSerializers< V > vertexPropertySerializers,
+			final OutputStream os )
+					throws IOException
+	{
+		final WritableByteChannel channel = ( os instanceof FileOutputStream )
+				? ( ( FileOutputStream ) os ).getChannel()
+				: Channels.newChannel( os );
+		final Output out = new Output( channel );
+
+		final int vertexBytes = serializer.getVertexSerializer().getNumBytes();
+		final int edgeBytes = serializer.getEdgeSerializer().getNumBytes();
+
+		out.require( HEADER_SIZE );
+		out.buffer.putInt( MAGIC );
+		out.buffer.putInt( VERSION );
+		out.buffer.putInt( graph.vertices().size() );
+		out.buffer.putInt( vertexBytes );
+		out.buffer.putInt( graph.edges().size() );
+		out.buffer.putInt( edgeBytes );
+
+		// Vertices, in file id order.
+		final byte[] vbytes = new byte[ vertexBytes ];
+		for ( final V v : graph.vertices() )
+		{
+			serializer.getVertexSerializer().getBytes( v, vbytes );
+			out.require( vertexBytes );
+			out.buffer.put( vbytes );
+		}
+
+		// Edges, in file id order.
+		final byte[] ebytes = new byte[ edgeBytes ];
+		final V ref = graph.vertexRef();
+		for ( final V v : graph.vertices() )
+		{
+			final int source = fileIdMap.vertices().getId( v );
+			for ( final E e : v.outgoingEdges() )
+			{
+				final int target = fileIdMap.vertices().getId( e.getTarget( ref ) );
+				serializer.getEdgeSerializer().getBytes( e, ebytes );
+				out.require( 2 * Integer.BYTES + edgeBytes );
+				out.buffer.putInt( source );
+				out.buffer.putInt( target );
+				out.buffer.put( ebytes );
+			}
+		}
+		graph.releaseRef( ref );
+
+		// Vertex property maps.
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (final ObjectOutputStream oos = new ObjectOutputStream( bos ))
+		{
+			RawPropertyIO.writePropertyMaps( fileIdMap.vertices(), vertexPropertySerializers, oos );
+		}
+		out.require( Long.BYTES );
+		out.buffer.putLong( bos.size() );
+		out.flush();
+		final ByteBuffer properties = ByteBuffer.wrap( bos.toByteArray() );
+		while ( properties.hasRemaining() )
+			channel.write( properties );
+	}
+
+	/**
+	 * Reads a graph in the block raw format into the specified graph, that is
+	 * expected to be empty. If the stream is a {@link FileInputStream}, its
+	 * file channel is read directly.
+	 *
+	 * @param is
+	 *            the stream to read from. It is not closed.
+	 * @param graph
+	 *            the graph to add vertices and edges to.
+	 * @param idmap
+	 *            the id bimap of the graph.
+	 * @param serializer
+	 *            the serializer for vertex and edge attributes.
+	 * @param vertexPropertySerializers
+	 *            the vertex property maps to read with the graph.
+	 * @param <V>
+	 *            the type of vertices.
+	 * @param <E>
+	 *            the type of edges.
+	 * @return the map from the ids used in the file to vertices and edges.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading, or if the file is not
+	 *             in a supported version of the format.
+	 */
+	public static < V extends Vertex< E >, E extends Edge< V > > FileIdToGraphMap< V, E > read(
+			final InputStream is,
+			final Graph< V, E > graph,
+			final GraphIdBimap< V, E > idmap,
+			final GraphSerializer< V, E > serializer,
+			final PropertyMapSerializers< V > vertexPropertySerializers )
+					throws IOException
+	{
+		final Input in = new StreamInput( ( is instanceof FileInputStream )
+				? ( ( FileInputStream ) is ).getChannel()
+				: Channels.newChannel( is ) );
+
+		in.require( HEADER_SIZE );
+		final int magic = in.buffer.getInt();
+		if ( magic != MAGIC )
+			throw new IOException( "Not a block raw graph file." );
+		final int version = in.buffer.getInt();
+		if ( version > VERSION )
+			throw new IOException( "Unsupported block raw graph format version " + version + ". This reader supports versions up to " + VERSION + "." );
+		final int numVertices = in.buffer.getInt();
+		final int vertexBytes = in.buffer.getInt();
+		final int numEdges = in.buffer.getInt();
+		final int edgeBytes = in.buffer.getInt();
+		if ( vertexBytes != serializer.getVertexSerializer().getNumBytes() || edgeBytes != serializer.getEdgeSerializer().getNumBytes() )
+			throw new IOException( "Vertex or edge layout in the file does not match the graph layout." );
+		if ( numVertices < 0 || numEdges < 0 )
+			throw new IOException( "Invalid number of vertices or edges in the file: " + numVertices + ", " + numEdges + "." );
+
+		// Vertices.
+		final int[] fileIdToVertexId = new int[ numVertices ];
+		final TIntIntMap vertexFileIdToId = new TIntIntHashMap( 2 * numVertices, 0.5f, -1, -1 );
+		final byte[] vbytes = new byte[ vertexBytes ];
+		final V v1 = graph.vertexRef();
+		final V v2 = graph.vertexRef();
+		for ( int i = 0; i < numVertices; i++ )
+		{
+			in.require( vertexBytes );
+			in.buffer.get( vbytes );
+			graph.addVertex( v1 );
+			serializer.getVertexSerializer().setBytes( v1, vbytes );
+			serializer.getVertexSerializer().notifySet( v1 );
+			final int id = idmap.getVertexId( v1 );
+			fileIdToVertexId[ i ] = id;
+			vertexFileIdToId.put( i, id );
+		}
+
+		// Edges.
+		final TIntIntMap edgeFileIdToId = new TIntIntHashMap( 2 * numEdges, 0.5f, -1, -1 );
+		final byte[] ebytes = new byte[ edgeBytes ];
+		final E eref = graph.edgeRef();
+		for ( int i = 0; i < numEdges; i++ )
+		{
+			in.require( 2 * Integer.BYTES + edgeBytes );
+			final int source = in.buffer.getInt();
+			final int target = in.buffer.getInt();
+			in.buffer.get( ebytes );
+			if ( source < 0 || source >= numVertices || target < 0 || target >= numVertices )
+				throw new IOException( "Edge " + i + " links vertices " + source + " and " + target + ", outside of the " + numVertices + " vertices of the file." );
+			idmap.getVertex( fileIdToVertexId[ source ], v1 );
+			idmap.getVertex( fileIdToVertexId[ target ], v2 );
+			final E e = graph.addEdge( v1, v2, eref );
+			serializer.getEdgeSerializer().setBytes( e, ebytes );
+			serializer.getEdgeSerializer().notifySet( e );
+			edgeFileIdToId.put( i, idmap.getEdgeId( e ) );
+		}
+		graph.releaseRef( v1 );
+		graph.releaseRef( v2 );
+		graph.releaseRef( eref );
+
+		final FileIdToGraphMap< V, E > fileIdMap = new FileIdToGraphMap<>(
+				new FileIdToObjectMap<>( vertexFileIdToId, idmap.vertexIdBimap() ),
+				new FileIdToObjectMap<>( edgeFileIdToId, idmap.edgeIdBimap() ) );
+
+		// Vertex property maps.
+		in.require( Long.BYTES );
+		final long length = in.buffer.getLong();
+		try (final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( in.asInputStream( length ) ) ))
+		{
+			RawPropertyIO.readPropertyMaps( fileIdMap.vertices(), vertexPropertySerializers, ois );
+		}
+		catch ( final ClassNotFoundException e )
+		{
+			throw new IOException( e );
+		}
+
+		return fileIdMap;
+	}
+
+	/**
+	 * Staging buffer in front of a channel.
+	 */
+	private static final class Output
+	{
+		private final WritableByteChannel channel;
+
+		private final ByteBuffer buffer;
+
+		Output( final WritableByteChannel channel )
+		{
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect( BUFFER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+		}
+
+		/**
+		 * Makes sure the buffer can take the specified number of bytes.
+		 */
+		void require( final int n ) throws IOException
+		{
+			if ( buffer.remaining() < n )
+				flush();
+		}
+
+		void flush() throws IOException
+		{
+			buffer.flip();
+			while ( buffer.hasRemaining() )
+				channel.write( buffer );
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Sequential access to the content of a file or stream, through a buffer.
+	 */
+	private static abstract class Input
+	{
+		ByteBuffer buffer;
+
+		/**
+		 * Makes sure the buffer has at least the specified number of bytes
+		 * remaining.
+		 */
+		abstract void require( int n ) throws IOException;
+
+		/**
+		 * Returns a stream over the specified number of bytes of this input.
+		 */
+		InputStream asInputStream( final long length )
+		{
+			return new InputStream()
+			{
+				private long left = length;
+
+				@Override
+				public int read() throws IOException
+				{
+					if ( left <= 0 )
+						return -1;
+					require( 1 );
+					left--;
+					return buffer.get() & 0xff;
+				}
+
+				@Override
+				public int read( final byte[] b, final int off, final int len ) throws IOException
+				{
+					if ( left <= 0 )
+						return -1;
+					final int n = ( int ) Math.min( Math.min( len, left ), BUFFER_SIZE );
+					require( n );
+					buffer.get( b, off, n );
+					left -= n;
+					return n;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Reads a channel, a file channel or a stream, through a direct buffer.
+	 */
+	private static final class StreamInput extends Input
+	{
+		private final ReadableByteChannel channel;
+
+		StreamInput( final ReadableByteChannel channel )
+		{
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect( BUFFER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			buffer.limit( 0 );
+		}
+
+		@Override
+		void require( final int n ) throws IOException
+		{
+			if ( buffer.remaining() >= n )
+				return;
+			buffer.compact();
+			while ( buffer.position() < n )
+				if ( channel.read( buffer ) < 0 )
+					throw new EOFException();
+			buffer.flip();
+		}
+	}
+
+	private BlockRawGraphIO()
+	{}
+}
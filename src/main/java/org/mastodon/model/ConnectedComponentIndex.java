@@ -0,0 +1,539 @@
+package org.mastodon.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.Edges;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Incrementally maintained index of the connected components of a graph
+ * (ignoring edge directions), keyed on vertex ids.
+ * <p>
+ * Instances must be registered as a {@link GraphListener} of the graph.
+ * Components are stored in a union-find structure with path halving and union
+ * by size, so that adding vertices and edges, and querying the component id
+ * and size of a vertex cost O(&alpha;(n)).
+ * <p>
+ * Removing an edge might split a component. In that case, two breadth-first
+ * searches are started from the edge ends and run in lockstep, until they meet
+ * (no split) or until one of them is exhausted. The vertices of the exhausted
+ * side are then moved to a new component. In a forest, this costs a time
+ * proportional to the size of the smaller of the two resulting components.
+ * <p>
+ * Each vertex points to a union-find node. Nodes of components emptied by
+ * vertex removals are reused, but inner nodes left behind by merges and splits
+ * are not. When these dead nodes make up more than half of the nodes, the index
+ * is compacted, in time proportional to the number of vertices.
+ * <p>
+ * Component ids are not node ids: each root node stores the id of its
+ * component, which is kept through compactions. When the graph is rebuilt,
+ * components are numbered from 0 in the iteration order of their first
+ * vertex. A new component takes the smallest id not in use. When two
+ * components merge, the larger one keeps its id, and when a component is
+ * split, the larger part keeps it. Ids of the other components never change,
+ * and stay below the largest number of components the graph had.
+ * <p>
+ * Queries and modifications are synchronized, so the index can be queried
+ * from several threads, for instance under the graph read lock.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ */
+public class ConnectedComponentIndex< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
+{
+
+	private static final int NO_NODE = -1;
+
+	private final ReadOnlyGraph< V, E > graph;
+
+	private final GraphIdBimap< V, E > idmap;
+
+	/**
+	 * Vertex id to union-find node, or {@link #NO_NODE} if there is no vertex
+	 * with this id.
+	 */
+	private int[] node;
+
+	/**
+	 * Union-find node to parent node.
+	 */
+	private int[] parent;
+
+	/**
+	 * Union-find node to number of vertices in the component. Only valid for
+	 * root nodes.
+	 */
+	private int[] size;
+
+	/**
+	 * Union-find node to component id. Only valid for root nodes.
+	 */
+	private int[] componentId;
+
+	/**
+	 * Component ids in use.
+	 */
+	private final BitSet usedIds;
+
+	private int nNodes;
+
+	/**
+	 * Number of indexed vertices.
+	 */
+	private int nVertices;
+
+	/**
+	 * Root nodes of empty components, that can be reused.
+	 */
+	private final TIntArrayList freeNodes;
+
+	/**
+	 * Vertex id to the stamp of the last search that visited it.
+	 */
+	private int[] visited;
+
+	private int stamp;
+
+	private int nComponents;
+
+	private final V ref1;
+
+	private final V ref2;
+
+	private final E eref;
+
+	/**
+	 * Creates a new index, initialized with the current content of the
+	 * specified graph.
+	 *
+	 * @param graph
+	 *            the graph to index.
+	 * @param idmap
+	 *            the id bimap of the graph.
+	 */
+	public ConnectedComponentIndex( final ReadOnlyGraph< V, E > graph, final GraphIdBimap< V, E > idmap )
+	{
+		this.graph = graph;
+		this.idmap = idmap;
+		this.freeNodes = new TIntArrayList();
+		this.usedIds = new BitSet();
+		this.ref1 = graph.vertexRef();
+		this.ref2 = graph.vertexRef();
+		this.eref = graph.edgeRef();
+		this.node = new int[ 0 ];
+		this.parent = new int[ 0 ];
+		this.size = new int[ 0 ];
+		this.componentId = new int[ 0 ];
+		this.visited = new int[ 0 ];
+		graphRebuilt();
+	}
+
+	/**
+	 * Returns the id of the connected component the specified vertex belongs
+	 * to.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @return the component id, or -1 if the vertex is not indexed.
+	 */
+	public synchronized int getComponentId( final V vertex )
+	{
+		final int id = idmap.getVertexId( vertex );
+		if ( id >= node.length || node[ id ] == NO_NODE )
+			return -1;
+		return componentId[ find( node[ id ] ) ];
+	}
+
+	/**
+	 * Returns the number of vertices in the connected component the specified
+	 * vertex belongs to.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @return the component size, or 0 if the vertex is not indexed.
+	 */
+	public synchronized int getComponentSize( final V vertex )
+	{
+		final int id = idmap.getVertexId( vertex );
+		if ( id >= node.length || node[ id ] == NO_NODE )
+			return 0;
+		return size[ find( node[ id ] ) ];
+	}
+
+	/**
+	 * Returns the number of connected components in the graph.
+	 *
+	 * @return the number of components.
+	 */
+	public synchronized int numComponents()
+	{
+		return nComponents;
+	}
+
+	/*
+	 * GraphListener.
+	 */
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		Arrays.fill( node, NO_NODE );
+		nNodes = 0;
+		nVertices = 0;
+		nComponents = 0;
+		freeNodes.clear();
+		usedIds.clear();
+		for ( final V v : graph.vertices() )
+			vertexAdded( v );
+		for ( final E e : graph.edges() )
+			edgeAdded( e );
+
+		// Number the components in the iteration order of their first vertex.
+		final boolean[] numbered = new boolean[ nNodes ];
+		int n = 0;
+		for ( final V v : graph.vertices() )
+		{
+			final int root = find( node[ idmap.getVertexId( v ) ] );
+			if ( !numbered[ root ] )
+			{
+				numbered[ root ] = true;
+				componentId[ root ] = n++;
+			}
+		}
+		usedIds.clear();
+		usedIds.set( 0, n );
+	}
+
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		compactIfNeeded();
+		final int id = idmap.getVertexId( vertex );
+		ensureVertexCapacity( id + 1 );
+		node[ id ] = newComponent( 1 );
+		nVertices++;
+		nComponents++;
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		final int id = idmap.getVertexId( vertex );
+		if ( id >= node.length || node[ id ] == NO_NODE )
+			return;
+
+		compactIfNeeded();
+		final int root = find( node[ id ] );
+		node[ id ] = NO_NODE;
+		nVertices--;
+		size[ root ]--;
+		if ( vertex.edges().isEmpty() )
+		{
+			// Usual case: the edges were removed before.
+			if ( size[ root ] == 0 )
+				removeComponent( root );
+			return;
+		}
+
+		/*
+		 * The vertex is removed before its edges: the component might be
+		 * split in as many parts as the vertex has neighbors. Move each part
+		 * to a new component.
+		 */
+		final Edges< E > edges = vertex.edges();
+		final TIntArrayList part = new TIntArrayList();
+		int largest = NO_NODE;
+		nextStamp();
+		for ( int i = 0; i < edges.size(); i++ )
+		{
+			final int neighbor = neighborId( edges.get( i, eref ), id );
+			if ( neighbor < 0 || node[ neighbor ] == NO_NODE || visited[ neighbor ] == stamp )
+				continue;
+			part.resetQuick();
+			search( neighbor, -1, part );
+			final int newRoot = moveToNewComponent( part, root );
+			nComponents++;
+			if ( largest == NO_NODE || size[ newRoot ] > size[ largest ] )
+				largest = newRoot;
+		}
+		// The old component is now empty. Its largest part keeps its id.
+		if ( size[ root ] == 0 )
+		{
+			if ( largest != NO_NODE )
+			{
+				usedIds.clear( componentId[ largest ] );
+				componentId[ largest ] = componentId[ root ];
+				usedIds.set( componentId[ root ] );
+				freeNodes.add( root );
+				nComponents--;
+			}
+			else
+			{
+				removeComponent( root );
+			}
+		}
+	}
+
+	@Override
+	public synchronized void edgeAdded( final E edge )
+	{
+		final int source = idmap.getVertexId( edge.getSource( ref1 ) );
+		final int target = idmap.getVertexId( edge.getTarget( ref2 ) );
+		if ( node[ source ] == NO_NODE || node[ target ] == NO_NODE )
+			return;
+
+		int r1 = find( node[ source ] );
+		int r2 = find( node[ target ] );
+		if ( r1 == r2 )
+			return;
+
+		// Union by size.
+		if ( size[ r1 ] < size[ r2 ] )
+		{
+			final int tmp = r1;
+			r1 = r2;
+			r2 = tmp;
+		}
+		parent[ r2 ] = r1;
+		size[ r1 ] += size[ r2 ];
+		usedIds.clear( componentId[ r2 ] );
+		nComponents--;
+	}
+
+	@Override
+	public synchronized void edgeRemoved( final E edge )
+	{
+		final int edgeId = idmap.getEdgeId( edge );
+		final int source = idmap.getVertexId( edge.getSource( ref1 ) );
+		final int target = idmap.getVertexId( edge.getTarget( ref2 ) );
+		if ( source >= node.length || target >= node.length
+				|| node[ source ] == NO_NODE || node[ target ] == NO_NODE
+				|| source == target )
+			return;
+
+		compactIfNeeded();
+
+		/*
+		 * Lockstep breadth-first searches from both ends, ignoring the removed
+		 * edge.
+		 */
+		nextStamp();
+		final int stampA = stamp;
+		nextStamp();
+		final int stampB = stamp;
+
+		final TIntArrayList sideA = new TIntArrayList();
+		final TIntArrayList sideB = new TIntArrayList();
+		sideA.add( source );
+		visited[ source ] = stampA;
+		sideB.add( target );
+		visited[ target ] = stampB;
+		int headA = 0;
+		int headB = 0;
+		while ( headA < sideA.size() && headB < sideB.size() )
+		{
+			if ( expand( sideA.getQuick( headA++ ), edgeId, stampA, stampB, sideA ) )
+				return; // Met the other side: no split.
+			if ( headB < sideB.size() && expand( sideB.getQuick( headB++ ), edgeId, stampB, stampA, sideB ) )
+				return;
+		}
+
+		// One side is exhausted, and complete. Move it to a new component.
+		final TIntArrayList smaller = ( headA >= sideA.size() ) ? sideA : sideB;
+		final int root = find( node[ source ] );
+		moveToNewComponent( smaller, root );
+		nComponents++;
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Visits the neighbors of the specified vertex not reached by the search
+	 * with the specified stamp, and adds them to the specified list.
+	 *
+	 * @return <code>true</code> if a neighbor was visited by the other search.
+	 */
+	private boolean expand( final int id, final int ignoredEdge, final int myStamp, final int otherStamp, final TIntArrayList side )
+	{
+		final Edges< E > edges = idmap.getVertex( id, ref1 ).edges();
+		for ( int i = 0; i < edges.size(); i++ )
+		{
+			final E e = edges.get( i, eref );
+			if ( idmap.getEdgeId( e ) == ignoredEdge )
+				continue;
+			final int neighbor = neighborId( e, id );
+			if ( node[ neighbor ] == NO_NODE )
+				continue;
+			if ( visited[ neighbor ] == otherStamp )
+				return true;
+			if ( visited[ neighbor ] != myStamp )
+			{
+				visited[ neighbor ] = myStamp;
+				side.add( neighbor );
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects all the vertices reachable from the specified vertex, ignoring
+	 * the vertex with the specified id.
+	 */
+	private void search( final int start, final int ignoredVertex, final TIntArrayList part )
+	{
+		visited[ start ] = stamp;
+		part.add( start );
+		for ( int head = 0; head < part.size(); head++ )
+		{
+			final int id = part.getQuick( head );
+			final Edges< E > edges = idmap.getVertex( id, ref1 ).edges();
+			for ( int i = 0; i < edges.size(); i++ )
+			{
+				final int neighbor = neighborId( edges.get( i, eref ), id );
+				if ( neighbor == ignoredVertex || node[ neighbor ] == NO_NODE || visited[ neighbor ] == stamp )
+					continue;
+				visited[ neighbor ] = stamp;
+				part.add( neighbor );
+			}
+		}
+	}
+
+	private int neighborId( final E edge, final int id )
+	{
+		final int source = idmap.getVertexId( edge.getSource( ref2 ) );
+		return ( source == id ) ? idmap.getVertexId( edge.getTarget( ref2 ) ) : source;
+	}
+
+	/**
+	 * Moves the vertices with the specified ids to a new component, and
+	 * returns its root node.
+	 */
+	private int moveToNewComponent( final TIntArrayList ids, final int oldRoot )
+	{
+		final int n = ids.size();
+		final int newRoot = newComponent( n );
+		for ( int i = 0; i < n; i++ )
+			node[ ids.getQuick( i ) ] = newRoot;
+		size[ oldRoot ] -= n;
+		return newRoot;
+	}
+
+	/**
+	 * Frees the root node and the id of an empty component.
+	 */
+	private void removeComponent( final int root )
+	{
+		freeNodes.add( root );
+		usedIds.clear( componentId[ root ] );
+		nComponents--;
+	}
+
+	private int newComponent( final int componentSize )
+	{
+		final int n;
+		if ( freeNodes.isEmpty() )
+		{
+			n = nNodes++;
+			ensureNodeCapacity( nNodes );
+		}
+		else
+		{
+			n = freeNodes.removeAt( freeNodes.size() - 1 );
+		}
+		parent[ n ] = n;
+		size[ n ] = componentSize;
+		componentId[ n ] = usedIds.nextClearBit( 0 );
+		usedIds.set( componentId[ n ] );
+		return n;
+	}
+
+	/**
+	 * Compacts the union-find nodes if more than half of them are not used
+	 * anymore. Must not be called while holding node indices.
+	 */
+	private void compactIfNeeded()
+	{
+		final int nUsed = nNodes - freeNodes.size();
+		if ( nUsed <= 2 * nVertices + 16 )
+			return;
+
+		// Root node to new node.
+		final int[] remap = new int[ nNodes ];
+		Arrays.fill( remap, NO_NODE );
+		final int[] newSize = new int[ parent.length ];
+		final int[] newComponentId = new int[ parent.length ];
+		int n = 0;
+		for ( int id = 0; id < node.length; id++ )
+		{
+			if ( node[ id ] == NO_NODE )
+				continue;
+			final int root = find( node[ id ] );
+			if ( remap[ root ] == NO_NODE )
+			{
+				remap[ root ] = n;
+				newSize[ n ] = size[ root ];
+				newComponentId[ n ] = componentId[ root ];
+				n++;
+			}
+			node[ id ] = remap[ root ];
+		}
+		for ( int i = 0; i < n; i++ )
+			parent[ i ] = i;
+		size = newSize;
+		componentId = newComponentId;
+		nNodes = n;
+		freeNodes.clear();
+	}
+
+	private int find( int n )
+	{
+		while ( parent[ n ] != n )
+		{
+			parent[ n ] = parent[ parent[ n ] ];
+			n = parent[ n ];
+		}
+		return n;
+	}
+
+	private void nextStamp()
+	{
+		stamp++;
+		if ( stamp == Integer.MAX_VALUE )
+		{
+			Arrays.fill( visited, 0 );
+			stamp = 1;
+		}
+	}
+
+	private void ensureVertexCapacity( final int capacity )
+	{
+		if ( capacity <= node.length )
+			return;
+		final int newLength = Math.max( capacity, node.length * 3 / 2 + 16 );
+		final int oldLength = node.length;
+		node = Arrays.copyOf( node, newLength );
+		Arrays.fill( node, oldLength, newLength, NO_NODE );
+		visited = Arrays.copyOf( visited, newLength );
+	}
+
+	private void ensureNodeCapacity( final int capacity )
+	{
+		if ( capacity <= parent.length )
+			return;
+		final int newLength = Math.max( capacity, parent.length * 3 / 2 + 16 );
+		parent = Arrays.copyOf( parent, newLength );
+		size = Arrays.copyOf( size, newLength );
+		componentId = Arrays.copyOf( componentId, newLength );
+	}
+}
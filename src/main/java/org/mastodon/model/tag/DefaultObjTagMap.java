@@ -90,6 +90,42 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 		}
 	}
 
+	/**
+	 * Tags all the specified objects with the specified {@code tag}, which may
+	 * be {@code null} to un-tag them. Objects that already have the requested
+	 * tag are not modified, so they do not cause {@code LabelSets} change
+	 * events or undo entries.
+	 */
+	@Override
+	public void setAll( final Collection< O > objects, final T tag )
+	{
+		final LabelSet< O, Integer > ref = idLabelSets.createRef();
+		if ( tag == null )
+		{
+			for ( final O object : objects )
+			{
+				final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
+				if ( getId( labels ) != null )
+					labels.removeAll( ids );
+			}
+		}
+		else
+		{
+			final Integer id = tagToIdFunction.apply( tag );
+			final List< Integer > otherIds = idToOtherIds.get( id );
+			for ( final O object : objects )
+			{
+				final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
+				if ( !id.equals( getId( labels ) ) )
+				{
+					labels.removeAll( otherIds );
+					labels.add( id );
+				}
+			}
+		}
+		idLabelSets.releaseRef( ref );
+	}
+
 	@Override
 	public void remove( final O object )
 	{
@@ -104,11 +140,8 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 		final LabelSet< O, Integer > ref = idLabelSets.createRef();
 		try
 		{
-			final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
-			for ( final Integer id : ids )
-				if ( labels.contains( id ) )
-					return idToTag.get( id );
-			return null;
+			final Integer id = getId( idLabelSets.getLabels( object, ref ) );
+			return id == null ? null : idToTag.get( id );
 		}
 		finally
 		{
@@ -125,6 +158,18 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 		return Collections.unmodifiableCollection( idLabelSets.getLabeledWith( id ) );
 	}
 
+	/**
+	 * Returns the ID of the first tag of this map in the specified labels, or
+	 * {@code null}.
+	 */
+	private Integer getId( final LabelSet< O, Integer > labels )
+	{
+		for ( final Integer id : ids )
+			if ( labels.contains( id ) )
+				return id;
+		return null;
+	}
+
 	/**
 	 * Rebuild internal data structures to handle the given tag set.
 	 */
@@ -29,10 +29,23 @@ public class DefaultObjTags< O > implements ObjTags< O >
 			final LabelSets< O, Integer > idLabelSets,
 			final TagSetStructure tagSetStructure )
 	{
-		this.idLabelSets = idLabelSets;
+		this( idLabelSets );
 		update( tagSetStructure );
 	}
 
+	/**
+	 * Creates an instance without tag maps, for subclasses whose
+	 * {@link #createTagMap(LabelSets, TagSet)} needs their own fields. They
+	 * must call {@link #update(TagSetStructure)} once these are initialized.
+	 *
+	 * @param idLabelSets
+	 *            the backing {@code LabelSets} property.
+	 */
+	protected DefaultObjTags( final LabelSets< O, Integer > idLabelSets )
+	{
+		this.idLabelSets = idLabelSets;
+	}
+
 	@Override
 	public DefaultObjTagMap< O, Tag > tags( final TagSet tagSet )
 	{
@@ -59,6 +72,34 @@ public class DefaultObjTags< O > implements ObjTags< O >
 			return tags( tagToTagSet.get( tag ) ).getTaggedWith( tag );
 	}
 
+	/**
+	 * Returns the tag set containing the specified tag.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @return the tag set, or {@code null} if the tag is not in the
+	 *         {@link TagSetStructure}.
+	 */
+	TagSet getTagSet( final Tag tag )
+	{
+		return tagToTagSet.get( tag );
+	}
+
+	/**
+	 * Creates the {@link ObjTagMap} for the specified tag set. Called by
+	 * {@link #update(TagSetStructure)}.
+	 *
+	 * @param idLabelSets
+	 *            the backing {@code LabelSets} property.
+	 * @param tagSet
+	 *            the tag set.
+	 * @return a new tag map.
+	 */
+	protected DefaultObjTagMap< O, Tag > createTagMap( final LabelSets< O, Integer > idLabelSets, final TagSet tagSet )
+	{
+		return new DefaultObjTagMap<>( idLabelSets, tagSet.getTags(), Tag::id );
+	}
+
 	/**
 	 * Rebuild internal data structures to handle the given
 	 * {@link TagSetStructure}.
@@ -69,7 +110,7 @@ public class DefaultObjTags< O > implements ObjTags< O >
 		tagSetToTagMap.clear();
 		for ( final TagSet tagSet : tagSetStructure.getTagSets() )
 		{
-			tagSetToTagMap.put( tagSet, new DefaultObjTagMap<>( idLabelSets, tagSet.getTags(), Tag::id ) );
+			tagSetToTagMap.put( tagSet, createTagMap( idLabelSets, tagSet ) );
 			for ( final Tag tag : tagSet.getTags() )
 				tagToTagSet.put( tag, tagSet );
 		}
@@ -63,12 +63,31 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		this.tagSetStructure = new TagSetStructure();
 		vertexIdLabelSets = new LabelSets<>( vertexPool );
 		edgeIdLabelSets = new LabelSets<>( edgePool );
-		vertexTags = new DefaultObjTags<>( vertexIdLabelSets, tagSetStructure );
-		edgeTags = new DefaultObjTags<>( edgeIdLabelSets, tagSetStructure );
+		vertexTags = createObjTags( vertexIdLabelSets, vertexPool, tagSetStructure );
+		edgeTags = createObjTags( edgeIdLabelSets, edgePool, tagSetStructure );
 		listeners = new Listeners.SynchronizedList<>();
 		emitEvents = true;
 	}
 
+	/**
+	 * Creates the {@link DefaultObjTags} managing the tags of vertices or
+	 * edges. Called from the constructor.
+	 *
+	 * @param idLabelSets
+	 *            the backing {@code LabelSets} property.
+	 * @param pool
+	 *            the pool of the tagged objects.
+	 * @param tagSetStructure
+	 *            the tag set structure.
+	 * @param <O>
+	 *            the type of object to tag.
+	 * @return a new {@link DefaultObjTags}.
+	 */
+	protected < O > DefaultObjTags< O > createObjTags( final LabelSets< O, Integer > idLabelSets, final RefPool< O > pool, final TagSetStructure tagSetStructure )
+	{
+		return new DefaultObjTags<>( idLabelSets, tagSetStructure );
+	}
+
 	@Override
 	public TagSetStructure getTagSetStructure()
 	{
@@ -44,6 +44,25 @@ public interface ObjTagMap< O, T >
 	 */
 	void set( final O object, final T tag );
 
+	/**
+	 * Tags all the specified objects with the specified {@code tag}. The
+	 * specified {@code tag} may be {@code null}, in which case the objects are
+	 * un-tagged.
+	 * <p>
+	 * The default implementation calls {@link #set(Object, Object)} for each
+	 * object. Implementations may do better.
+	 *
+	 * @param objects
+	 *            the objects to tag.
+	 * @param tag
+	 *            the tag to apply.
+	 */
+	default void setAll( final Collection< O > objects, final T tag )
+	{
+		for ( final O object : objects )
+			set( object, tag );
+	}
+
 	/**
 	 * Un-tag the specified object.
 	 *
@@ -3,6 +3,7 @@ package org.mastodon.model.tag;
 import java.util.Collection;
 
 import org.mastodon.adapter.CollectionAdapter;
+import org.mastodon.adapter.CollectionAdapterReverse;
 import org.mastodon.adapter.RefBimap;
 
 /**
@@ -37,6 +38,12 @@ public class ObjTagMapAdapter< O, WO, T > implements ObjTagMap< WO, T >
 		objTagMap.set( refmap.getLeft( object ), tag );
 	}
 
+	@Override
+	public void setAll( final Collection< WO > objects, final T tag )
+	{
+		objTagMap.setAll( new CollectionAdapterReverse<>( objects, refmap ), tag );
+	}
+
 	@Override
 	public void remove( final WO object )
 	{
@@ -0,0 +1,291 @@
+package org.mastodon.model.tag;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.labels.LabelSets;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.properties.PropertyChangeListener;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * A {@link DefaultObjTagMap} that also stores the tag of each object in a
+ * primitive column, indexed by the internal pool index of the object, so that
+ * {@link #get(Object)} is O(1) and does not allocate. It also maintains, for
+ * each tag, the set of pool indices of the objects with that tag, to quickly
+ * find (combinations of) tagged objects, see {@link TagQuery}.
+ * <p>
+ * The backing {@link LabelSets} property remains the reference, used for
+ * serialization and undo/redo. The column is updated when tags are set
+ * through this map, and when the {@code LabelSets} property changes otherwise
+ * (e.g., on undo). Objects that are added to or removed from the pool must be
+ * reported with {@link #refresh(Object)} and {@link #clear(Object)}, which
+ * {@link PrimitiveTagSetModel} does.
+ *
+ * @param <O>
+ *            the type of object to tag.
+ */
+public class PrimitiveObjTagMap< O > extends DefaultObjTagMap< O, Tag >
+{
+	/**
+	 * Tag index of untagged objects.
+	 */
+	public static final int NO_TAG = -1;
+
+	private final LabelSets< O, Integer > idLabelSets;
+
+	private final RefPool< O > pool;
+
+	private final Tag[] tags;
+
+	private final TIntIntHashMap idToIndex;
+
+	/**
+	 * The index in {@link #tags} of the tag of each object, by pool index.
+	 */
+	private final TIntArrayList tagIndices;
+
+	/**
+	 * The pool indices of the objects with each tag, by index in
+	 * {@link #tags}.
+	 */
+	private final BitSet[] taggedIds;
+
+	private final PropertyChangeListener< O > labelsListener;
+
+	/**
+	 * Whether this map is modifying the {@code LabelSets} property itself, in
+	 * which case the column is already up to date.
+	 */
+	private boolean writing;
+
+	/**
+	 * Create a tag map with the given set of mutually exclusive {@code tags},
+	 * backed by the specified {@code idLabelSets} property. The column is
+	 * initialized from the property.
+	 *
+	 * @param idLabelSets
+	 *            the backing {@code LabelSets} property.
+	 * @param pool
+	 *            the pool of the tagged objects.
+	 * @param tags
+	 *            set of mutually exclusive {@code tags}.
+	 */
+	public PrimitiveObjTagMap(
+			final LabelSets< O, Integer > idLabelSets,
+			final RefPool< O > pool,
+			final Collection< Tag > tags )
+	{
+		super( idLabelSets, tags, Tag::id );
+		this.idLabelSets = idLabelSets;
+		this.pool = pool;
+		this.tags = tags.toArray( new Tag[ tags.size() ] );
+		idToIndex = new TIntIntHashMap( 10, 0.5f, NO_TAG, NO_TAG );
+		for ( int i = 0; i < this.tags.length; ++i )
+			idToIndex.put( this.tags[ i ].id(), i );
+
+		tagIndices = new TIntArrayList();
+		taggedIds = new BitSet[ this.tags.length ];
+		for ( int i = 0; i < this.tags.length; ++i )
+			taggedIds[ i ] = new BitSet();
+		for ( int i = 0; i < this.tags.length; ++i )
+			for ( final O object : idLabelSets.getLabeledWith( this.tags[ i ].id() ) )
+				setIndex( pool.getId( object ), i );
+
+		labelsListener = this::refresh;
+		idLabelSets.addPropertyChangeListener( labelsListener );
+	}
+
+	@Override
+	public void set( final O object, final Tag tag )
+	{
+		if ( tag == null )
+		{
+			remove( object );
+			return;
+		}
+
+		final int index = indexOf( tag );
+		writing = true;
+		try
+		{
+			super.set( object, tag );
+		}
+		finally
+		{
+			writing = false;
+		}
+		setIndex( pool.getId( object ), index );
+	}
+
+	/**
+	 * Tags all the specified objects with the specified {@code tag}, which may
+	 * be {@code null} to un-tag them. The {@code LabelSets} property is only
+	 * modified for the objects whose tag changes, found from the column, and
+	 * the column is updated once for all objects.
+	 */
+	@Override
+	public void setAll( final Collection< O > objects, final Tag tag )
+	{
+		final int index = tag == null ? NO_TAG : indexOf( tag );
+		final RefArrayList< O > changed = new RefArrayList<>( pool );
+		for ( final O object : objects )
+			if ( getTagIndex( object ) != index )
+				changed.add( object );
+		writing = true;
+		try
+		{
+			super.setAll( changed, tag );
+		}
+		finally
+		{
+			writing = false;
+		}
+		for ( final O object : changed )
+			setIndex( pool.getId( object ), index );
+	}
+
+	@Override
+	public void remove( final O object )
+	{
+		writing = true;
+		try
+		{
+			super.remove( object );
+		}
+		finally
+		{
+			writing = false;
+		}
+		setIndex( pool.getId( object ), NO_TAG );
+	}
+
+	@Override
+	public Tag get( final O object )
+	{
+		final int index = getTagIndex( object );
+		return index == NO_TAG ? null : tags[ index ];
+	}
+
+	/**
+	 * Returns the index of the tag of the specified object, in the collection
+	 * of tags this map was created with.
+	 *
+	 * @param object
+	 *            the object.
+	 * @return the tag index, or {@link #NO_TAG}.
+	 */
+	public int getTagIndex( final O object )
+	{
+		final int id = pool.getId( object );
+		return id < tagIndices.size() ? tagIndices.getQuick( id ) : NO_TAG;
+	}
+
+	/**
+	 * Adds the pool indices of the objects with the specified tag to
+	 * {@code ids}.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @param ids
+	 *            the set of pool indices to add to.
+	 */
+	public void addTaggedIds( final Tag tag, final BitSet ids )
+	{
+		ids.or( taggedIds[ indexOf( tag ) ] );
+	}
+
+	/**
+	 * Adds the pool indices of the objects with any tag of this map to
+	 * {@code ids}.
+	 *
+	 * @param ids
+	 *            the set of pool indices to add to.
+	 */
+	public void addTaggedIds( final BitSet ids )
+	{
+		for ( final BitSet t : taggedIds )
+			ids.or( t );
+	}
+
+	/**
+	 * Returns the number of objects with the specified tag.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @return the number of objects with the tag.
+	 */
+	public int countTagged( final Tag tag )
+	{
+		return taggedIds[ indexOf( tag ) ].cardinality();
+	}
+
+	/**
+	 * Updates the column for the specified object from the backing
+	 * {@code LabelSets} property.
+	 *
+	 * @param object
+	 *            the object.
+	 */
+	public void refresh( final O object )
+	{
+		if ( writing )
+			return;
+		final Tag tag = super.get( object );
+		setIndex( pool.getId( object ), tag == null ? NO_TAG : indexOf( tag ) );
+	}
+
+	/**
+	 * Marks the specified object as untagged in the column, without modifying
+	 * the backing {@code LabelSets} property. Used when the object is removed
+	 * from its pool, so that a new object with the same pool index does not
+	 * inherit its tag.
+	 *
+	 * @param object
+	 *            the object.
+	 */
+	public void clear( final O object )
+	{
+		setIndex( pool.getId( object ), NO_TAG );
+	}
+
+	/**
+	 * Stops listening to the backing {@code LabelSets} property. This map
+	 * must not be used afterwards.
+	 */
+	void dispose()
+	{
+		idLabelSets.removePropertyChangeListener( labelsListener );
+	}
+
+	private int indexOf( final Tag tag )
+	{
+		final int index = idToIndex.get( tag.id() );
+		if ( index == NO_TAG )
+			throw new IllegalArgumentException( "tag is not in tag set" );
+		return index;
+	}
+
+	private void setIndex( final int id, final int index )
+	{
+		if ( id >= tagIndices.size() )
+		{
+			if ( index == NO_TAG )
+				return;
+			while ( tagIndices.size() <= id )
+				tagIndices.add( NO_TAG );
+		}
+		final int previous = tagIndices.getQuick( id );
+		if ( previous == index )
+			return;
+		if ( previous != NO_TAG )
+			taggedIds[ previous ].clear( id );
+		if ( index != NO_TAG )
+			taggedIds[ index ].set( id );
+		tagIndices.setQuick( id, index );
+	}
+}
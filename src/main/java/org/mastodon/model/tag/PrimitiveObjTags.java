@@ -0,0 +1,125 @@
+package org.mastodon.model.tag;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.mastodon.RefPool;
+import org.mastodon.labels.LabelSets;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+/**
+ * {@link DefaultObjTags} whose tag maps are {@link PrimitiveObjTagMap}s.
+ * Objects with combinations of tags can be found with {@link #query()}.
+ *
+ * @param <O>
+ *            the type of object to tag.
+ */
+public class PrimitiveObjTags< O > extends DefaultObjTags< O >
+{
+	private final RefPool< O > pool;
+
+	private final List< PrimitiveObjTagMap< O > > tagMaps;
+
+	public PrimitiveObjTags(
+			final LabelSets< O, Integer > idLabelSets,
+			final RefPool< O > pool,
+			final TagSetStructure tagSetStructure )
+	{
+		super( idLabelSets );
+		this.pool = pool;
+		this.tagMaps = new ArrayList<>();
+		update( tagSetStructure );
+	}
+
+	@Override
+	public PrimitiveObjTagMap< O > tags( final TagSet tagSet )
+	{
+		return ( PrimitiveObjTagMap< O > ) super.tags( tagSet );
+	}
+
+	@Override
+	protected PrimitiveObjTagMap< O > createTagMap( final LabelSets< O, Integer > idLabelSets, final TagSet tagSet )
+	{
+		final PrimitiveObjTagMap< O > tagMap = new PrimitiveObjTagMap<>( idLabelSets, pool, tagSet.getTags() );
+		tagMaps.add( tagMap );
+		return tagMap;
+	}
+
+	@Override
+	void update( final TagSetStructure tagSetStructure )
+	{
+		tagMaps.forEach( PrimitiveObjTagMap::dispose );
+		tagMaps.clear();
+		super.update( tagSetStructure );
+	}
+
+	/**
+	 * Creates a new empty {@link TagQuery} over the objects managed by this
+	 * instance.
+	 *
+	 * @return a new query.
+	 */
+	public TagQuery< O > query()
+	{
+		return new TagQuery<>( this, pool );
+	}
+
+	/**
+	 * Adds the pool indices of the objects with the specified tag to
+	 * {@code ids}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the tag is not in the current {@link TagSetStructure}.
+	 */
+	void addTaggedIds( final Tag tag, final BitSet ids )
+	{
+		final TagSet tagSet = getTagSet( tag );
+		if ( tagSet == null )
+			throw new IllegalArgumentException( "Tag " + tag.label() + " (id " + tag.id() + ") is not in the tag set structure." );
+		tags( tagSet ).addTaggedIds( tag, ids );
+	}
+
+	/**
+	 * Adds the pool indices of the objects with any tag of the specified tag
+	 * set to {@code ids}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the tag set is not in the current
+	 *             {@link TagSetStructure}.
+	 */
+	void addTaggedIds( final TagSet tagSet, final BitSet ids )
+	{
+		final PrimitiveObjTagMap< O > tagMap = tags( tagSet );
+		if ( tagMap == null )
+			throw new IllegalArgumentException( "Tag set " + tagSet.getName() + " (id " + tagSet.id() + ") is not in the tag set structure." );
+		tagMap.addTaggedIds( ids );
+	}
+
+	/**
+	 * Updates the tags of the specified object in all tag maps from the
+	 * backing {@code LabelSets} property.
+	 *
+	 * @param object
+	 *            the object.
+	 */
+	void refresh( final O object )
+	{
+		for ( final PrimitiveObjTagMap< O > tagMap : tagMaps )
+			tagMap.refresh( object );
+	}
+
+	/**
+	 * Marks the specified object as untagged in all tag maps, without
+	 * modifying the backing {@code LabelSets} property.
+	 *
+	 * @param object
+	 *            the object.
+	 */
+	void clear( final O object )
+	{
+		for ( final PrimitiveObjTagMap< O > tagMap : tagMaps )
+			tagMap.clear( object );
+	}
+}
@@ -0,0 +1,126 @@
+package org.mastodon.model.tag;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.labels.LabelSets;
+
+/**
+ * A {@link DefaultTagSetModel} that stores, for each tag set, the tag of each
+ * vertex and edge in a primitive column indexed by pool index (see
+ * {@link PrimitiveObjTagMap}). Getting the tag of an object is O(1) and does
+ * not allocate, and many objects can be tagged at once with
+ * {@link PrimitiveObjTagMap#setAll(java.util.Collection, TagSetStructure.Tag)}.
+ * The objects with a combination of tags are found, without visiting all
+ * objects, with {@link #queryVertices()} and {@link #queryEdges()}.
+ * <p>
+ * Tags are still stored in the {@code LabelSets} properties of
+ * {@link DefaultTagSetModel}, so serialization and undo/redo are unchanged.
+ * The columns are kept in sync by listening to the graph.
+ *
+ * @param <V>
+ *            the type of the vertices in the graph.
+ * @param <E>
+ *            the type of the edges in the graph.
+ */
+public class PrimitiveTagSetModel< V extends Vertex< E >, E extends Edge< V > > extends DefaultTagSetModel< V, E >
+{
+	public PrimitiveTagSetModel( final ListenableReadOnlyGraph< V, E > graph )
+	{
+		this( graph, RefCollections.tryGetRefPool( graph.vertices() ), RefCollections.tryGetRefPool( graph.edges() ) );
+	}
+
+	public PrimitiveTagSetModel( final ListenableReadOnlyGraph< V, E > graph, final RefPool< V > vertexPool, final RefPool< E > edgePool )
+	{
+		super( graph, vertexPool, edgePool );
+		graph.addGraphListener( new GraphListener< V, E >()
+		{
+			@Override
+			public void graphRebuilt()
+			{
+				rebuild();
+			}
+
+			@Override
+			public void vertexAdded( final V vertex )
+			{
+				getVertexTags().refresh( vertex );
+			}
+
+			@Override
+			public void vertexRemoved( final V vertex )
+			{
+				getVertexTags().clear( vertex );
+			}
+
+			@Override
+			public void edgeAdded( final E edge )
+			{
+				getEdgeTags().refresh( edge );
+			}
+
+			@Override
+			public void edgeRemoved( final E edge )
+			{
+				getEdgeTags().clear( edge );
+			}
+		} );
+	}
+
+	@Override
+	protected < O > DefaultObjTags< O > createObjTags( final LabelSets< O, Integer > idLabelSets, final RefPool< O > pool, final TagSetStructure tagSetStructure )
+	{
+		return new PrimitiveObjTags<>( idLabelSets, pool, tagSetStructure );
+	}
+
+	@Override
+	public PrimitiveObjTags< V > getVertexTags()
+	{
+		return ( PrimitiveObjTags< V > ) super.getVertexTags();
+	}
+
+	@Override
+	public PrimitiveObjTags< E > getEdgeTags()
+	{
+		return ( PrimitiveObjTags< E > ) super.getEdgeTags();
+	}
+
+	/**
+	 * Creates a new empty {@link TagQuery} over the vertices of the graph.
+	 *
+	 * @return a new query.
+	 */
+	public TagQuery< V > queryVertices()
+	{
+		return getVertexTags().query();
+	}
+
+	/**
+	 * Creates a new empty {@link TagQuery} over the edges of the graph.
+	 *
+	 * @return a new query.
+	 */
+	public TagQuery< E > queryEdges()
+	{
+		return getEdgeTags().query();
+	}
+
+	@Override
+	public void clear()
+	{
+		super.clear();
+		rebuild();
+	}
+
+	/**
+	 * Re-initializes the columns from the {@code LabelSets} properties.
+	 */
+	private void rebuild()
+	{
+		getVertexTags().update( getTagSetStructure() );
+		getEdgeTags().update( getTagSetStructure() );
+	}
+}
@@ -0,0 +1,211 @@
+package org.mastodon.model.tag;
+
+import java.util.BitSet;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+/**
+ * Finds the objects with a combination of tags, using the per-tag indices
+ * maintained by {@link PrimitiveObjTags}.
+ * <p>
+ * A query starts empty, and is built by combining the objects that have a
+ * given tag, or any tag of a given tag set, with the current result. For
+ * example
+ *
+ * <pre>
+ * tags.query().or( a ).or( b ).andNot( c )
+ * </pre>
+ *
+ * matches the objects tagged with {@code a} or {@code b}, but not with
+ * {@code c}. Each step is a bitwise operation over the pool indices of the
+ * objects and does not visit the objects themselves.
+ * <p>
+ * The result reflects the tags at the time each step is applied. Queries
+ * should be built and read while holding the graph read lock.
+ * <p>
+ * Tags and tag sets are looked up by ID in the current
+ * {@link TagSetStructure}. Steps with a tag or tag set that is not in it, for
+ * instance one that was removed or that comes from another model, throw an
+ * {@link IllegalArgumentException}.
+ *
+ * @param <O>
+ *            the type of tagged objects.
+ */
+public class TagQuery< O >
+{
+	private final PrimitiveObjTags< O > objTags;
+
+	private final RefPool< O > pool;
+
+	private final BitSet ids;
+
+	// tmp
+	private final BitSet operand;
+
+	TagQuery( final PrimitiveObjTags< O > objTags, final RefPool< O > pool )
+	{
+		this.objTags = objTags;
+		this.pool = pool;
+		ids = new BitSet();
+		operand = new BitSet();
+	}
+
+	/**
+	 * Adds the objects with the specified tag to the result.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @return this query.
+	 * @throws IllegalArgumentException
+	 *             if the tag is not in the current tag set structure.
+	 */
+	public TagQuery< O > or( final Tag tag )
+	{
+		objTags.addTaggedIds( tag, ids );
+		return this;
+	}
+
+	/**
+	 * Adds the objects with any tag of the specified tag set to the result.
+	 *
+	 * @param tagSet
+	 *            the tag set.
+	 * @return this query.
+	 * @throws IllegalArgumentException
+	 *             if the tag set is not in the current tag set structure.
+	 */
+	public TagQuery< O > or( final TagSet tagSet )
+	{
+		objTags.addTaggedIds( tagSet, ids );
+		return this;
+	}
+
+	/**
+	 * Keeps only the objects of the result that have the specified tag.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @return this query.
+	 * @throws IllegalArgumentException
+	 *             if the tag is not in the current tag set structure.
+	 */
+	public TagQuery< O > and( final Tag tag )
+	{
+		ids.and( operand( tag ) );
+		return this;
+	}
+
+	/**
+	 * Keeps only the objects of the result that have any tag of the specified
+	 * tag set.
+	 *
+	 * @param tagSet
+	 *            the tag set.
+	 * @return this query.
+	 * @throws IllegalArgumentException
+	 *             if the tag set is not in the current tag set structure.
+	 */
+	public TagQuery< O > and( final TagSet tagSet )
+	{
+		ids.and( operand( tagSet ) );
+		return this;
+	}
+
+	/**
+	 * Removes the objects with the specified tag from the result.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @return this query.
+	 * @throws IllegalArgumentException
+	 *             if the tag is not in the current tag set structure.
+	 */
+	public TagQuery< O > andNot( final Tag tag )
+	{
+		ids.andNot( operand( tag ) );
+		return this;
+	}
+
+	/**
+	 * Removes the objects with any tag of the specified tag set from the
+	 * result.
+	 *
+	 * @param tagSet
+	 *            the tag set.
+	 * @return this query.
+	 * @throws IllegalArgumentException
+	 *             if the tag set is not in the current tag set structure.
+	 */
+	public TagQuery< O > andNot( final TagSet tagSet )
+	{
+		ids.andNot( operand( tagSet ) );
+		return this;
+	}
+
+	/**
+	 * Returns the number of objects in the result.
+	 *
+	 * @return the number of objects.
+	 */
+	public int size()
+	{
+		return ids.cardinality();
+	}
+
+	/**
+	 * Returns whether the specified object is in the result.
+	 *
+	 * @param object
+	 *            the object.
+	 * @return {@code true} if the object matches this query.
+	 */
+	public boolean contains( final O object )
+	{
+		return ids.get( pool.getId( object ) );
+	}
+
+	/**
+	 * Returns a copy of the pool indices of the objects in the result.
+	 *
+	 * @return a new {@link BitSet}.
+	 */
+	public BitSet getIds()
+	{
+		return ( BitSet ) ids.clone();
+	}
+
+	/**
+	 * Adds the objects in the result to the specified collection.
+	 *
+	 * @param objects
+	 *            the collection to add to.
+	 * @param <C>
+	 *            the type of the collection.
+	 * @return the collection.
+	 */
+	public < C extends RefCollection< O > > C getObjects( final C objects )
+	{
+		final O ref = pool.createRef();
+		for ( int id = ids.nextSetBit( 0 ); id >= 0; id = ids.nextSetBit( id + 1 ) )
+			objects.add( pool.getObject( id, ref ) );
+		pool.releaseRef( ref );
+		return objects;
+	}
+
+	private BitSet operand( final Tag tag )
+	{
+		operand.clear();
+		objTags.addTaggedIds( tag, operand );
+		return operand;
+	}
+
+	private BitSet operand( final TagSet tagSet )
+	{
+		operand.clear();
+		objTags.addTaggedIds( tagSet, operand );
+		return operand;
+	}
+}
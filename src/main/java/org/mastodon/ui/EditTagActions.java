@@ -379,8 +379,8 @@ public class EditTagActions< V extends Vertex< E >, E extends Edge< V > >
 	{
 		final ObjTagMap< V, Tag > vertexTags = tagModel.getVertexTags().tags( tagSet );
 		final ObjTagMap< E, Tag > edgeTags = tagModel.getEdgeTags().tags( tagSet );
-		vertices.forEach( v -> vertexTags.set( v, tag ) );
-		edges.forEach( e -> edgeTags.set( e, tag ) );
+		vertexTags.setAll( vertices, tag );
+		edgeTags.setAll( edges, tag );
 	}
 
 	private final static Color BACKGROUND_COLOR = new Color( 255, 255, 255, 230 );
@@ -119,8 +119,8 @@ public class TagSetMenu< V extends Vertex< E >, E extends Edge< V > > implements
 			{
 				final ObjTagMap< V, Tag > vertexTags = tagSetModel.getVertexTags().tags( tagSet );
 				final ObjTagMap< E, Tag > edgeTags = tagSetModel.getEdgeTags().tags( tagSet );
-				selectionModel.getSelectedVertices().forEach( v -> vertexTags.set( v, tag ) );
-				selectionModel.getSelectedEdges().forEach( e -> edgeTags.set( e, tag ) );
+				vertexTags.setAll( selectionModel.getSelectedVertices(), tag );
+				edgeTags.setAll( selectionModel.getSelectedEdges(), tag );
 			}
 			finally
 			{
@@ -163,8 +163,8 @@ public class TagSetMenu< V extends Vertex< E >, E extends Edge< V > > implements
 			{
 				final ObjTagMap< V, Tag > vertexTags = tagSetModel.getVertexTags().tags( tagSet );
 				final ObjTagMap< E, Tag > edgeTags = tagSetModel.getEdgeTags().tags( tagSet );
-				selectionModel.getSelectedVertices().forEach( v -> vertexTags.set( v, null ) );
-				selectionModel.getSelectedEdges().forEach( e -> edgeTags.set( e, null ) );
+				vertexTags.setAll( selectionModel.getSelectedVertices(), null );
+				edgeTags.setAll( selectionModel.getSelectedEdges(), null );
 			}
 			finally
 			{
@@ -0,0 +1,153 @@
+package org.mastodon.ui.coloring;
+
+import java.awt.Color;
+
+/**
+ * Cache of {@link Color} instances, keyed by their ARGB value.
+ * <p>
+ * Renderers compute the colors of the objects they paint as ARGB
+ * {@code int}s (from the base color and the selected, ghost, highlighted and
+ * fading states of the object), and get the corresponding {@link Color}
+ * from this cache, instead of creating a new {@link Color} per painted
+ * object and per frame.
+ * <p>
+ * The cache is a direct-mapped table: each ARGB value is stored in a slot
+ * given by a hash of the value, and replaces the color previously stored in
+ * that slot. The memory used by the cache is bounded by its capacity, and a
+ * renderer painting more distinct colors than that, for instance the colors
+ * of a large lookup table at all the fading steps, only reallocates the
+ * colors that collide, instead of the whole cache. The default capacity of
+ * {@value #DEFAULT_CAPACITY} slots is the number of colors of the
+ * {@code 4096} entries of a quantized colormap at {@code 64} fading steps.
+ * <p>
+ * This class is not thread-safe. Each renderer should use its own instance,
+ * from its painting thread.
+ */
+public class ColorCache
+{
+	private static final int DEFAULT_CAPACITY = 1 << 18;
+
+	private final Color[] colors;
+
+	private final int shift;
+
+	private int size;
+
+	public ColorCache()
+	{
+		this( DEFAULT_CAPACITY );
+	}
+
+	/**
+	 * Creates a color cache.
+	 *
+	 * @param capacity
+	 *            the maximal number of colors in the cache, rounded up to a
+	 *            power of two.
+	 */
+	public ColorCache( final int capacity )
+	{
+		if ( capacity < 1 || capacity > 1 << 30 )
+			throw new IllegalArgumentException( "Capacity must be between 1 and 2^30: " + capacity );
+		final int bits = 32 - Integer.numberOfLeadingZeros( capacity - 1 );
+		this.colors = new Color[ 1 << bits ];
+		// An int shifted by 32 is unchanged, a single slot is handled in slot().
+		this.shift = 32 - bits;
+	}
+
+	/**
+	 * Returns the {@link Color} with the specified ARGB value.
+	 *
+	 * @param argb
+	 *            the color, as ARGB bytes packed into an {@code int}.
+	 * @return the color.
+	 */
+	public Color get( final int argb )
+	{
+		final int slot = slot( argb );
+		Color color = colors[ slot ];
+		if ( color == null || color.getRGB() != argb )
+		{
+			if ( color == null )
+				++size;
+			color = new Color( argb, true );
+			colors[ slot ] = color;
+		}
+		return color;
+	}
+
+	/**
+	 * Returns the number of colors in this cache.
+	 *
+	 * @return the number of colors.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the maximal number of colors in this cache.
+	 *
+	 * @return the capacity.
+	 */
+	public int capacity()
+	{
+		return colors.length;
+	}
+
+	/**
+	 * Fibonacci hashing of the ARGB value, so that colors differing in their
+	 * low bits only, like neighbouring entries of a lookup table, are spread
+	 * over the table.
+	 */
+	private int slot( final int argb )
+	{
+		return shift == 32 ? 0 : ( argb * 0x9E3779B9 ) >>> shift;
+	}
+
+	/**
+	 * Packs the specified channels into an ARGB {@code int}. Channel values
+	 * outside the range 0-255 are clamped.
+	 *
+	 * @param r
+	 *            the red channel.
+	 * @param g
+	 *            the green channel.
+	 * @param b
+	 *            the blue channel.
+	 * @param a
+	 *            the alpha channel.
+	 * @return the color, as ARGB bytes packed into an {@code int}.
+	 */
+	public static int argb( final int r, final int g, final int b, final int a )
+	{
+		return ( clamp( a ) << 24 ) | ( clamp( r ) << 16 ) | ( clamp( g ) << 8 ) | clamp( b );
+	}
+
+	/**
+	 * Linearly interpolates two ARGB colors, channel by channel.
+	 *
+	 * @param argb0
+	 *            the color for {@code t = 0}.
+	 * @param argb1
+	 *            the color for {@code t = 1}.
+	 * @param t
+	 *            the interpolation parameter, between 0 and 1.
+	 * @return the interpolated color, as ARGB bytes packed into an
+	 *         {@code int}.
+	 */
+	public static int interpolate( final int argb0, final int argb1, final double t )
+	{
+		final int a = ( int ) ( ( 1 - t ) * ( ( argb0 >>> 24 ) & 0xff ) + t * ( ( argb1 >>> 24 ) & 0xff ) );
+		final int r = ( int ) ( ( 1 - t ) * ( ( argb0 >> 16 ) & 0xff ) + t * ( ( argb1 >> 16 ) & 0xff ) );
+		final int g = ( int ) ( ( 1 - t ) * ( ( argb0 >> 8 ) & 0xff ) + t * ( ( argb1 >> 8 ) & 0xff ) );
+		final int b = ( int ) ( ( 1 - t ) * ( argb0 & 0xff ) + t * ( argb1 & 0xff ) );
+		return argb( r, g, b, a );
+	}
+
+	private static int clamp( final int v )
+	{
+		return Math.min( 255, Math.max( 0, v ) );
+	}
+}
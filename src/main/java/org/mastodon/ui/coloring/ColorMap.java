@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.yaml.snakeyaml.Yaml;
 
@@ -68,6 +69,18 @@ public class ColorMap
 
 	String name;
 
+	/**
+	 * The default number of entries of the lookup tables returned by
+	 * {@link #quantized()}.
+	 */
+	public static final int DEFAULT_LUT_SIZE = 4096;
+
+	/**
+	 * Quantized versions of this colormap, by lookup table size. Created on
+	 * demand, once per colormap.
+	 */
+	private final Map< Integer, ColorMap > quantized = new ConcurrentHashMap<>();
+
 	/** The Jet colormap. Interpolates from blue to green to red. */
 	public static final ColorMap JET;
 
@@ -213,6 +226,56 @@ public class ColorMap
 		return ( a << 24 ) | ( r << 16 ) | ( g << 8 ) | b;
 	}
 
+	/**
+	 * Writes the colors associated with the values of {@code in} to
+	 * {@code out}, as {@link #get(double)} would.
+	 *
+	 * @param in
+	 *            the values.
+	 * @param out
+	 *            the colors (as ARGB bytes packed into {@code int}). Must be
+	 *            at least as long as {@code in}.
+	 */
+	public void get( final double[] in, final int[] out )
+	{
+		for ( int i = 0; i < in.length; i++ )
+			out[ i ] = get( in[ i ] );
+	}
+
+	/**
+	 * Returns a version of this colormap that takes colors from a lookup table
+	 * of {@link #DEFAULT_LUT_SIZE} entries.
+	 *
+	 * @return the quantized colormap.
+	 * @see #quantized(int)
+	 */
+	public ColorMap quantized()
+	{
+		return quantized( DEFAULT_LUT_SIZE );
+	}
+
+	/**
+	 * Returns a version of this colormap that takes colors from a lookup table
+	 * of the specified size, instead of interpolating them. Values are
+	 * rounded to the nearest table entry, which is a good enough
+	 * approximation for 8-bit colors when the table has more than 256
+	 * entries: colors are within one level of the exact ones, except where
+	 * the colormap changes by more than that over half a table step.
+	 * <p>
+	 * The table is built once, the same instance is returned on subsequent
+	 * calls with the same size.
+	 *
+	 * @param size
+	 *            the number of entries of the lookup table, at least 2.
+	 * @return the quantized colormap.
+	 */
+	public ColorMap quantized( final int size )
+	{
+		if ( size < 2 )
+			throw new IllegalArgumentException( "Lookup table size must be at least 2, was " + size );
+		return quantized.computeIfAbsent( size, s -> new QuantizedColorMap( this, s ) );
+	}
+
 	/**
 	 * Returns the jet colormap, that interpolates colors from blue, then green,
 	 * then red.
@@ -309,6 +372,63 @@ public class ColorMap
 		return new ColorMap( "seismic", colors, alphas, Color.BLACK.getRGB() );
 	}
 
+	/**
+	 * A colormap that takes colors from a lookup table sampled from another
+	 * colormap.
+	 */
+	private static final class QuantizedColorMap extends ColorMap
+	{
+		private final ColorMap source;
+
+		private final int[] lut;
+
+		private final double scale;
+
+		QuantizedColorMap( final ColorMap source, final int size )
+		{
+			super( source.name, source.colors, source.alphas, source.notApplicableColor );
+			this.source = source;
+			lut = new int[ size ];
+			for ( int i = 0; i < size; i++ )
+				lut[ i ] = source.get( ( double ) i / ( size - 1 ) );
+			scale = size - 1;
+		}
+
+		@Override
+		public int get( final double val )
+		{
+			if ( Double.isNaN( val ) )
+				return notApplicableColor;
+			return lut[ index( val ) ];
+		}
+
+		@Override
+		public void get( final double[] in, final int[] out )
+		{
+			for ( int i = 0; i < in.length; i++ )
+			{
+				final double val = in[ i ];
+				out[ i ] = Double.isNaN( val ) ? notApplicableColor : lut[ index( val ) ];
+			}
+		}
+
+		@Override
+		public ColorMap quantized( final int size )
+		{
+			return source.quantized( size );
+		}
+
+		private int index( final double val )
+		{
+			final double x = val * scale + 0.5;
+			if ( x <= 0. )
+				return 0;
+			if ( x >= scale )
+				return lut.length - 1;
+			return ( int ) x;
+		}
+	}
+
 	private static void loadColorMaps()
 	{
 		try (final FileReader input = new FileReader( COLORMAP_FILE ))
@@ -1,5 +1,6 @@
 package org.mastodon.ui.coloring;
 
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -161,13 +162,57 @@ public class ColoringModel implements TagSetModel.TagSetModelListener, FeatureCo
 		return true;
 	}
 
-	@SuppressWarnings( "unchecked" )
-	public < V extends Vertex< E >, E extends Edge< V > > GraphColorGenerator< V, E > getFeatureGraphColorGenerator()
+	/**
+	 * Returns the generator for the current feature color mode from the
+	 * specified cache. All the views using the same color mode get the same
+	 * generator, and share the colors it computed.
+	 *
+	 * @param cache
+	 *            the color cache of the graph.
+	 * @param <V>
+	 *            the type of the vertices.
+	 * @param <E>
+	 *            the type of the edges.
+	 * @return the cached generator.
+	 */
+	public < V extends Vertex< E >, E extends Edge< V > > GraphColorGenerator< V, E > getFeatureGraphColorGenerator( final GraphColorCache< V, E > cache )
 	{
 		final FeatureColorMode fcm = featureColorMode;
 		if ( fcm == null )
 			return new DefaultGraphColorGenerator<>();
 
+		/*
+		 * The color mode can be edited, key on what the colors depend on. This
+		 * includes the projection instances, which change when features are
+		 * recomputed or reloaded.
+		 */
+		final Object key = Arrays.asList(
+				fcm.getVertexColorMode(),
+				fcm.getVertexFeatureProjection(),
+				projections.getFeatureProjection( fcm.getVertexFeatureProjection() ),
+				fcm.getVertexColorMap(),
+				fcm.getVertexRangeMin(),
+				fcm.getVertexRangeMax(),
+				fcm.getEdgeColorMode(),
+				fcm.getEdgeFeatureProjection(),
+				projections.getFeatureProjection( fcm.getEdgeFeatureProjection() ),
+				fcm.getEdgeColorMap(),
+				fcm.getEdgeRangeMin(),
+				fcm.getEdgeRangeMax() );
+		return cache.get( key, () -> createFeatureGraphColorGenerator( fcm ) );
+	}
+
+	public < V extends Vertex< E >, E extends Edge< V > > GraphColorGenerator< V, E > getFeatureGraphColorGenerator()
+	{
+		return createFeatureGraphColorGenerator( featureColorMode );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private < V extends Vertex< E >, E extends Edge< V > > GraphColorGenerator< V, E > createFeatureGraphColorGenerator( final FeatureColorMode fcm )
+	{
+		if ( fcm == null )
+			return new DefaultGraphColorGenerator<>();
+
 		// Vertex.
 		final ColorGenerator< V > vertexColorGenerator;
 		final FeatureProjection< ? > vertexProjection = projections.getFeatureProjection( fcm.getVertexFeatureProjection() );
@@ -183,19 +228,19 @@ public class ColoringModel implements TagSetModel.TagSetModelListener, FeatureCo
 			case INCOMING_EDGE:
 				vertexColorGenerator = new FeatureColorGeneratorIncomingEdge<>(
 						( FeatureProjection< E > ) vertexProjection,
-						ColorMap.getColorMap( vertexColorMap ),
+						ColorMap.getColorMap( vertexColorMap ).quantized(),
 						vertexRangeMin, vertexRangeMax );
 				break;
 			case OUTGOING_EDGE:
 				vertexColorGenerator = new FeatureColorGeneratorOutgoingEdge<>(
 						( FeatureProjection< E > ) vertexProjection,
-						ColorMap.getColorMap( vertexColorMap ),
+						ColorMap.getColorMap( vertexColorMap ).quantized(),
 						vertexRangeMin, vertexRangeMax );
 				break;
 			case VERTEX:
 				vertexColorGenerator = new FeatureColorGenerator<>(
 						( FeatureProjection< V > ) vertexProjection,
-						ColorMap.getColorMap( vertexColorMap ),
+						ColorMap.getColorMap( vertexColorMap ).quantized(),
 						vertexRangeMin, vertexRangeMax );
 				break;
 			case NONE:
@@ -220,19 +265,19 @@ public class ColoringModel implements TagSetModel.TagSetModelListener, FeatureCo
 			case SOURCE_VERTEX:
 				edgeColorGenerator = new FeatureColorGeneratorSourceVertex<>(
 						( FeatureProjection< V > ) edgeProjection,
-						ColorMap.getColorMap( edgeColorMap ),
+						ColorMap.getColorMap( edgeColorMap ).quantized(),
 						edgeRangeMin, edgeRangeMax );
 				break;
 			case TARGET_VERTEX:
 				edgeColorGenerator = new FeatureColorGeneratorTargetVertex<>(
 						( FeatureProjection< V > ) edgeProjection,
-						ColorMap.getColorMap( edgeColorMap ),
+						ColorMap.getColorMap( edgeColorMap ).quantized(),
 						edgeRangeMin, edgeRangeMax );
 				break;
 			case EDGE:
 				edgeColorGenerator = new FeatureEdgeColorGenerator<>(
 						( FeatureProjection< E > ) edgeProjection,
-						ColorMap.getColorMap( edgeColorMap ),
+						ColorMap.getColorMap( edgeColorMap ).quantized(),
 						edgeRangeMin, edgeRangeMax );
 				break;
 			case NONE:
@@ -0,0 +1,311 @@
+package org.mastodon.ui.coloring;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureModel.FeatureModelListener;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.properties.PropertyChangeListener;
+
+/**
+ * Caches the colors computed by {@link GraphColorGenerator}s, so that views
+ * showing the same graph with the same coloring share them and do not
+ * recompute them at each repaint.
+ * <p>
+ * Generators are registered with a key describing the coloring, see
+ * {@link #get(Object, Supplier)}. All callers asking for an equal key get the
+ * same cached generator, which stores the color of each vertex and edge by
+ * pool index, computed on first request.
+ * <p>
+ * Each stored color is stamped with the version of the cache at the time it
+ * was computed. The version is incremented when all colors become invalid
+ * (when the {@link FeatureModel} or the whole graph changes), which costs
+ * O(1). It is also incremented when edges are added or removed and when
+ * vertices are removed, because this changes the tracks, and track features
+ * such as the track ID or the track size of all the objects of the track. When
+ * a vertex is added, or when a vertex is modified (this instance must be
+ * registered as a {@link PropertyChangeListener} to the vertex properties that
+ * features depend on), only the colors of the objects that might depend on it
+ * are invalidated: the vertex, its edges and their other vertex.
+ * <p>
+ * Colors can be read concurrently from several views. They are computed and
+ * read under the graph read lock, while invalidation of single objects happens
+ * under the graph write lock.
+ *
+ * @param <V>
+ *            the type of the vertices.
+ * @param <E>
+ *            the type of the edges.
+ */
+public class GraphColorCache< V extends Vertex< E >, E extends Edge< V > >
+		implements GraphListener< V, E >, PropertyChangeListener< V >, FeatureModelListener
+{
+	/**
+	 * Stamp of colors that have not been computed or that have been
+	 * invalidated. Versions start at 1.
+	 */
+	private static final int INVALID = 0;
+
+	private final RefPool< V > vertexPool;
+
+	private final RefPool< E > edgePool;
+
+	private final Map< Object, WeakReference< CachedGraphColorGenerator > > generators;
+
+	private volatile int version;
+
+	/**
+	 * Creates a new cache for the colors of the specified graph. The cache
+	 * registers itself as a listener of the graph and of the feature model.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param featureModel
+	 *            the feature model of the graph.
+	 */
+	public GraphColorCache( final ListenableReadOnlyGraph< V, E > graph, final FeatureModel featureModel )
+	{
+		vertexPool = RefCollections.tryGetRefPool( graph.vertices() );
+		edgePool = RefCollections.tryGetRefPool( graph.edges() );
+		generators = new HashMap<>();
+		version = 1;
+		graph.addGraphListener( this );
+		featureModel.listeners().add( this );
+	}
+
+	/**
+	 * Returns the cached generator for the specified coloring key. If there
+	 * is none yet, a new one is created, computing colors with the generator
+	 * provided by {@code generator}.
+	 * <p>
+	 * Keys must implement {@code equals()} and {@code hashCode()}, and must
+	 * describe everything the colors depend on, apart from the graph and the
+	 * features. The cached generator is discarded when it is not referenced
+	 * anymore.
+	 *
+	 * @param key
+	 *            the key describing the coloring.
+	 * @param generator
+	 *            provides the generator to compute colors with.
+	 * @return the cached generator.
+	 */
+	public synchronized GraphColorGenerator< V, E > get( final Object key, final Supplier< GraphColorGenerator< V, E > > generator )
+	{
+		generators.values().removeIf( ref -> ref.get() == null );
+		final WeakReference< CachedGraphColorGenerator > ref = generators.get( key );
+		CachedGraphColorGenerator cached = ref == null ? null : ref.get();
+		if ( cached == null )
+		{
+			cached = new CachedGraphColorGenerator( generator.get() );
+			generators.put( key, new WeakReference<>( cached ) );
+		}
+		return cached;
+	}
+
+	/**
+	 * Invalidates all cached colors.
+	 */
+	public synchronized void invalidate()
+	{
+		++version;
+	}
+
+	@Override
+	public void featureModelChanged()
+	{
+		invalidate();
+	}
+
+	@Override
+	public void propertyChanged( final V vertex )
+	{
+		final List< CachedGraphColorGenerator > cached = getCachedGenerators();
+		if ( cached.isEmpty() )
+			return;
+
+		final V ref = vertexPool.createRef();
+		for ( final E edge : vertex.edges() )
+		{
+			invalidateEdge( cached, edge );
+			invalidateVertex( cached, edge.getSource( ref ) );
+			invalidateVertex( cached, edge.getTarget( ref ) );
+		}
+		vertexPool.releaseRef( ref );
+		invalidateVertex( cached, vertex );
+	}
+
+	@Override
+	public void graphRebuilt()
+	{
+		invalidate();
+	}
+
+	@Override
+	public void vertexAdded( final V vertex )
+	{
+		invalidateVertex( getCachedGenerators(), vertex );
+	}
+
+	@Override
+	public void vertexRemoved( final V vertex )
+	{
+		invalidate();
+	}
+
+	@Override
+	public void edgeAdded( final E edge )
+	{
+		invalidate();
+	}
+
+	@Override
+	public void edgeRemoved( final E edge )
+	{
+		invalidate();
+	}
+
+	private void invalidateVertex( final List< CachedGraphColorGenerator > cached, final V vertex )
+	{
+		final int id = vertexPool.getId( vertex );
+		for ( final CachedGraphColorGenerator generator : cached )
+			invalidate( generator.vertexColors, id );
+	}
+
+	private void invalidateEdge( final List< CachedGraphColorGenerator > cached, final E edge )
+	{
+		final int id = edgePool.getId( edge );
+		for ( final CachedGraphColorGenerator generator : cached )
+			invalidate( generator.edgeColors, id );
+	}
+
+	private static void invalidate( final AtomicLongArray colors, final int id )
+	{
+		if ( id < colors.length() )
+			colors.set( id, INVALID );
+	}
+
+	private synchronized List< CachedGraphColorGenerator > getCachedGenerators()
+	{
+		if ( generators.isEmpty() )
+			return Collections.emptyList();
+
+		final List< CachedGraphColorGenerator > list = new ArrayList<>( generators.size() );
+		final Iterator< WeakReference< CachedGraphColorGenerator > > it = generators.values().iterator();
+		while ( it.hasNext() )
+		{
+			final CachedGraphColorGenerator cached = it.next().get();
+			if ( cached == null )
+				it.remove();
+			else
+				list.add( cached );
+		}
+		return list;
+	}
+
+	/**
+	 * Packs a color and the version it was computed for.
+	 */
+	private static long entry( final int color, final int version )
+	{
+		return ( ( long ) version << 32 ) | ( color & 0xffffffffL );
+	}
+
+	private class CachedGraphColorGenerator implements GraphColorGenerator< V, E >
+	{
+		private final GraphColorGenerator< V, E > generator;
+
+		/**
+		 * Color and version of each vertex, by pool index, packed with
+		 * {@link GraphColorCache#entry(int, int)}.
+		 */
+		private volatile AtomicLongArray vertexColors;
+
+		/**
+		 * Color and version of each edge, by pool index, packed with
+		 * {@link GraphColorCache#entry(int, int)}.
+		 */
+		private volatile AtomicLongArray edgeColors;
+
+		CachedGraphColorGenerator( final GraphColorGenerator< V, E > generator )
+		{
+			this.generator = generator;
+			vertexColors = new AtomicLongArray( 0 );
+			edgeColors = new AtomicLongArray( 0 );
+		}
+
+		@Override
+		public int color( final V vertex )
+		{
+			final int v = version;
+			final int id = vertexPool.getId( vertex );
+			AtomicLongArray colors = vertexColors;
+			if ( id < colors.length() )
+			{
+				final long entry = colors.get( id );
+				if ( ( int ) ( entry >>> 32 ) == v )
+					return ( int ) entry;
+			}
+			else
+				colors = growVertexColors( id );
+
+			final int color = generator.color( vertex );
+			colors.lazySet( id, entry( color, v ) );
+			return color;
+		}
+
+		@Override
+		public int color( final E edge, final V source, final V target )
+		{
+			final int v = version;
+			final int id = edgePool.getId( edge );
+			AtomicLongArray colors = edgeColors;
+			if ( id < colors.length() )
+			{
+				final long entry = colors.get( id );
+				if ( ( int ) ( entry >>> 32 ) == v )
+					return ( int ) entry;
+			}
+			else
+				colors = growEdgeColors( id );
+
+			final int color = generator.color( edge, source, target );
+			colors.lazySet( id, entry( color, v ) );
+			return color;
+		}
+
+		private synchronized AtomicLongArray growVertexColors( final int id )
+		{
+			if ( id >= vertexColors.length() )
+				vertexColors = grow( vertexColors, id );
+			return vertexColors;
+		}
+
+		private synchronized AtomicLongArray growEdgeColors( final int id )
+		{
+			if ( id >= edgeColors.length() )
+				edgeColors = grow( edgeColors, id );
+			return edgeColors;
+		}
+	}
+
+	private static AtomicLongArray grow( final AtomicLongArray colors, final int id )
+	{
+		final AtomicLongArray grown = new AtomicLongArray( Math.max( id + 1, 2 * colors.length() ) );
+		for ( int i = 0; i < colors.length(); ++i )
+			grown.lazySet( i, colors.get( i ) );
+		return grown;
+	}
+}
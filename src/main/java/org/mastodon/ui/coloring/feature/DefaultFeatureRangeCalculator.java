@@ -1,13 +1,20 @@
 package org.mastodon.ui.coloring.feature;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.DoubleSummaryStatistics;
 
 import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureProjectionStatistics;
+import org.mastodon.feature.SummarizedFeatureProjection;
 
 /**
  * A {@link FeatureRangeCalculator} computing statistics over a
  * {@code Collection<O>} of objects of one specific target type {@code O}.
+ * <p>
+ * For projections that maintain statistics of their values (see
+ * {@link SummarizedFeatureProjection}), the statistics are used instead of
+ * iterating over the objects.
  *
  * @param <O>
  *            target type.
@@ -27,20 +34,56 @@ public class DefaultFeatureRangeCalculator< O > implements FeatureRangeCalculato
 	@Override
 	public double[] computeMinMax( final FeatureProjectionId id )
 	{
-		if ( objs.isEmpty() )
-			return null;
-
-		@SuppressWarnings( "unchecked" )
-		final Class< O > target = ( Class< O > ) objs.iterator().next().getClass();
-
-		final FeatureProjection< O > projection = projections.getFeatureProjection( id, target );
+		final FeatureProjection< O > projection = getFeatureProjection( id );
 		if ( null == projection )
 			return null;
 
+		if ( projection instanceof SummarizedFeatureProjection )
+		{
+			final FeatureProjectionStatistics< O > stats = ( ( SummarizedFeatureProjection< O > ) projection ).getStatistics();
+			return new double[] { stats.getMin(), stats.getMax() };
+		}
+
 		final DoubleSummaryStatistics stats = objs.stream()
 				.filter( projection::isSet )
 				.mapToDouble( projection::value )
 				.summaryStatistics();
 		return new double[] { stats.getMin(), stats.getMax() };
 	}
+
+	@Override
+	public double[] computeQuantiles( final FeatureProjectionId id, final double lower, final double upper )
+	{
+		final FeatureProjection< O > projection = getFeatureProjection( id );
+		if ( null == projection )
+			return null;
+
+		if ( projection instanceof SummarizedFeatureProjection )
+		{
+			final FeatureProjectionStatistics< O > stats = ( ( SummarizedFeatureProjection< O > ) projection ).getStatistics();
+			return new double[] { stats.getQuantile( lower ), stats.getQuantile( upper ) };
+		}
+
+		final double[] values = objs.stream()
+				.filter( projection::isSet )
+				.mapToDouble( projection::value )
+				.toArray();
+		if ( values.length == 0 )
+			return new double[] { Double.NaN, Double.NaN };
+		Arrays.sort( values );
+		return new double[] {
+				values[ ( int ) Math.round( lower * ( values.length - 1 ) ) ],
+				values[ ( int ) Math.round( upper * ( values.length - 1 ) ) ] };
+	}
+
+	private FeatureProjection< O > getFeatureProjection( final FeatureProjectionId id )
+	{
+		if ( objs.isEmpty() )
+			return null;
+
+		@SuppressWarnings( "unchecked" )
+		final Class< O > target = ( Class< O > ) objs.iterator().next().getClass();
+
+		return projections.getFeatureProjection( id, target );
+	}
 }
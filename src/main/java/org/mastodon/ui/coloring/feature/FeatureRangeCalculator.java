@@ -14,4 +14,27 @@ public interface FeatureRangeCalculator
 	 *         feature on.
 	 */
 	public double[] computeMinMax( final FeatureProjectionId projection );
+
+	/**
+	 * Returns the values at the specified quantiles for the specified feature
+	 * projection, for instance {@code 0.01} and {@code 0.99} for a range that
+	 * is robust to outliers.
+	 * <p>
+	 * The default implementation ignores the quantiles and returns
+	 * {@link #computeMinMax(FeatureProjectionId)}.
+	 *
+	 * @param projection
+	 *            the feature projection id.
+	 * @param lower
+	 *            the quantile of the lower bound, from 0 to 1.
+	 * @param upper
+	 *            the quantile of the upper bound, from 0 to 1.
+	 * @return the lower and upper bounds as a new <code>double[]</code>
+	 *         2-elements array, or <code>null</code> under the same
+	 *         conditions as {@link #computeMinMax(FeatureProjectionId)}.
+	 */
+	public default double[] computeQuantiles( final FeatureProjectionId projection, final double lower, final double upper )
+	{
+		return computeMinMax( projection );
+	}
 }
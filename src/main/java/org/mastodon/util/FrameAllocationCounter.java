@@ -0,0 +1,155 @@
+package org.mastodon.util;
+
+import java.lang.management.ManagementFactory;
+
+import org.scijava.log.Logger;
+import org.scijava.log.StderrLogService;
+
+/**
+ * Measures the number of bytes allocated by the painting thread of a
+ * renderer, frame by frame, to verify that its paint loop does not create
+ * garbage in steady state.
+ * <p>
+ * The measurement relies on the HotSpot {@code com.sun.management.ThreadMXBean}
+ * and is only enabled if {@link MastodonDebugSettings#isMeasureFrameAllocations()}
+ * is set. Otherwise, {@link #frameStarted()} and {@link #frameFinished()} do
+ * nothing. When enabled, a summary is logged every {@value #REPORT_INTERVAL}
+ * frames.
+ */
+public class FrameAllocationCounter
+{
+	private static final int REPORT_INTERVAL = 100;
+
+	private final String name;
+
+	private final com.sun.management.ThreadMXBean bean;
+
+	private final Logger log;
+
+	private long threadId;
+
+	private long startBytes;
+
+	private long lastFrameBytes;
+
+	private long maxFrameBytes;
+
+	private long totalBytes;
+
+	private int numFrames;
+
+	/**
+	 * Creates a counter, enabled if the debug settings say so, that logs to
+	 * the standard error stream.
+	 *
+	 * @param name
+	 *            the name of the renderer, used in the logged summaries.
+	 */
+	public FrameAllocationCounter( final String name )
+	{
+		this( name, MastodonDebugSettings.getInstance().isMeasureFrameAllocations() );
+	}
+
+	/**
+	 * Creates a counter that logs to the standard error stream.
+	 *
+	 * @param name
+	 *            the name of the renderer, used in the logged summaries.
+	 * @param enabled
+	 *            whether to measure allocations.
+	 */
+	public FrameAllocationCounter( final String name, final boolean enabled )
+	{
+		this( name, enabled, new StderrLogService() );
+	}
+
+	/**
+	 * Creates a counter.
+	 *
+	 * @param name
+	 *            the name of the renderer, used in the logged summaries.
+	 * @param enabled
+	 *            whether to measure allocations.
+	 * @param log
+	 *            the logger the summaries are written to.
+	 */
+	public FrameAllocationCounter( final String name, final boolean enabled, final Logger log )
+	{
+		this.name = name;
+		this.bean = enabled ? allocationBean() : null;
+		this.log = log;
+	}
+
+	/**
+	 * Returns whether allocations are measured.
+	 *
+	 * @return {@code true} if this counter is enabled and supported by the
+	 *         JVM.
+	 */
+	public boolean isEnabled()
+	{
+		return bean != null;
+	}
+
+	/**
+	 * Marks the start of a frame, on the painting thread.
+	 */
+	public void frameStarted()
+	{
+		if ( bean == null )
+			return;
+		threadId = Thread.currentThread().getId();
+		startBytes = bean.getThreadAllocatedBytes( threadId );
+	}
+
+	/**
+	 * Marks the end of a frame, on the thread that called
+	 * {@link #frameStarted()}.
+	 */
+	public void frameFinished()
+	{
+		if ( bean == null )
+			return;
+		lastFrameBytes = bean.getThreadAllocatedBytes( threadId ) - startBytes;
+		maxFrameBytes = Math.max( maxFrameBytes, lastFrameBytes );
+		totalBytes += lastFrameBytes;
+		if ( ++numFrames == REPORT_INTERVAL )
+		{
+			log.info( String.format( "%s: %d bytes allocated per frame on average, %d at most, over %d frames.",
+					name, totalBytes / numFrames, maxFrameBytes, numFrames ) );
+			numFrames = 0;
+			totalBytes = 0;
+			maxFrameBytes = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated during the last frame.
+	 *
+	 * @return the number of bytes, or 0 if this counter is not enabled.
+	 */
+	public long getLastFrameBytes()
+	{
+		return lastFrameBytes;
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean()
+	{
+		try
+		{
+			final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if ( bean instanceof com.sun.management.ThreadMXBean )
+			{
+				final com.sun.management.ThreadMXBean b = ( com.sun.management.ThreadMXBean ) bean;
+				if ( b.isThreadAllocatedMemorySupported() )
+				{
+					b.setThreadAllocatedMemoryEnabled( true );
+					return b;
+				}
+			}
+		}
+		catch ( final NoClassDefFoundError | UnsupportedOperationException e )
+		{}
+		return null;
+	}
+}
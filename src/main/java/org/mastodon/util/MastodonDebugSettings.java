@@ -31,6 +31,14 @@ public interface MastodonDebugSettings
 	 */
 	boolean isUseMenuAccelerators();
 
+	/**
+	 * Measure the number of bytes allocated per frame by the TrackScheme and
+	 * BDV overlay renderers, and print a summary periodically.
+	 *
+	 * @return whether frame allocations should be measured.
+	 */
+	boolean isMeasureFrameAllocations();
+
 	static MastodonDebugSettings getInstance()
 	{
 		return IO.getInstance();
@@ -45,6 +53,8 @@ public interface MastodonDebugSettings
 		{
 			private boolean useMenuAccelerators = true;
 
+			private boolean measureFrameAllocations = false;
+
 			@Override
 			public boolean isUseMenuAccelerators()
 			{
@@ -55,6 +65,17 @@ public interface MastodonDebugSettings
 			{
 				this.useMenuAccelerators = useMenuAccelerators;
 			}
+
+			@Override
+			public boolean isMeasureFrameAllocations()
+			{
+				return measureFrameAllocations;
+			}
+
+			public void setMeasureFrameAllocations( final boolean measureFrameAllocations )
+			{
+				this.measureFrameAllocations = measureFrameAllocations;
+			}
 		}
 
 		private static DebugSettingsImpl instance;
@@ -0,0 +1,155 @@
+package org.mastodon.views.bdv.overlay;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Paints an {@link OverlayDisplayList} in parallel. The canvas is split into
+ * horizontal bands, one per available processor. Each band is painted into
+ * its own offscreen image by a {@link DisplayListPainter} on a worker thread,
+ * then the images are drawn on the target {@link Graphics2D}.
+ * <p>
+ * The bands have the resolution of the device, given by the scale of the
+ * transform of the target {@link Graphics2D}, so that the overlay is not
+ * upscaled on HiDPI screens.
+ * <p>
+ * The worker threads are shared by all instances. An instance must only be
+ * used by one thread at a time.
+ */
+class BandedDisplayListPainter
+{
+	private static ExecutorService executor;
+
+	private static synchronized ExecutorService getExecutor()
+	{
+		if ( executor == null )
+			executor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), r -> {
+				final Thread thread = new Thread( r, "Mastodon BDV overlay painter" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+		return executor;
+	}
+
+	private final int numBands;
+
+	private final DisplayListPainter[] painters;
+
+	private final BufferedImage[] bands;
+
+	private final List< Callable< Void > > tasks;
+
+	/**
+	 * Height of the bands, in device pixels.
+	 */
+	private int bandHeight;
+
+	/**
+	 * Size of a canvas pixel, in device pixels.
+	 */
+	private double scale;
+
+	BandedDisplayListPainter()
+	{
+		numBands = Runtime.getRuntime().availableProcessors();
+		painters = new DisplayListPainter[ numBands ];
+		for ( int b = 0; b < numBands; ++b )
+			painters[ b ] = new DisplayListPainter();
+		bands = new BufferedImage[ numBands ];
+		tasks = new ArrayList<>( numBands );
+	}
+
+	/**
+	 * Paints the specified display list.
+	 *
+	 * @param graphics
+	 *            the graphics to paint on.
+	 * @param list
+	 *            the display list.
+	 * @param width
+	 *            the width of the canvas.
+	 * @param height
+	 *            the height of the canvas.
+	 * @param antialiasing
+	 *            the value of the {@link RenderingHints#KEY_ANTIALIASING} hint
+	 *            to paint with.
+	 */
+	void paint( final Graphics2D graphics, final OverlayDisplayList list, final int width, final int height, final Object antialiasing )
+	{
+		if ( width <= 0 || height <= 0 )
+			return;
+
+		scale = OverlayGraphRenderer.getDeviceScale( graphics );
+		final int w = ( int ) Math.ceil( width * scale );
+		final int h = ( ( int ) Math.ceil( height * scale ) + numBands - 1 ) / numBands;
+		if ( h != bandHeight || bands[ 0 ] == null || bands[ 0 ].getWidth() != w )
+		{
+			bandHeight = h;
+			for ( int b = 0; b < numBands; ++b )
+				bands[ b ] = new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB_PRE );
+		}
+
+		tasks.clear();
+		for ( int b = 0; b < numBands; ++b )
+		{
+			final int band = b;
+			tasks.add( () -> {
+				paintBand( band, list, antialiasing );
+				return null;
+			} );
+		}
+
+		try
+		{
+			for ( final Future< Void > future : getExecutor().invokeAll( tasks ) )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		catch ( final ExecutionException e )
+		{
+			e.printStackTrace();
+			return;
+		}
+
+		final AffineTransform transform = graphics.getTransform();
+		graphics.scale( 1 / scale, 1 / scale );
+		for ( int b = 0; b < numBands; ++b )
+			graphics.drawImage( bands[ b ], 0, b * bandHeight, null );
+		graphics.setTransform( transform );
+	}
+
+	private void paintBand( final int band, final OverlayDisplayList list, final Object antialiasing )
+	{
+		final BufferedImage image = bands[ band ];
+		final int y0 = band * bandHeight;
+		final Graphics2D g = image.createGraphics();
+		try
+		{
+			g.setComposite( AlphaComposite.Clear );
+			g.fillRect( 0, 0, image.getWidth(), image.getHeight() );
+			g.setComposite( AlphaComposite.SrcOver );
+			g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, antialiasing );
+			g.translate( 0, -y0 );
+			g.scale( scale, scale );
+			painters[ band ].paint( g, list, y0 / scale, ( y0 + bandHeight ) / scale );
+		}
+		finally
+		{
+			g.dispose();
+		}
+	}
+}
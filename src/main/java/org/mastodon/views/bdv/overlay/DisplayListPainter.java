@@ -0,0 +1,157 @@
+package org.mastodon.views.bdv.overlay;
+
+import static org.mastodon.views.bdv.overlay.OverlayDisplayList.EDGE;
+import static org.mastodon.views.bdv.overlay.OverlayDisplayList.ELLIPSE;
+import static org.mastodon.views.bdv.overlay.OverlayDisplayList.STYLE_FOCUSED;
+import static org.mastodon.views.bdv.overlay.OverlayDisplayList.STYLE_HIGHLIGHTED;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+
+import org.mastodon.ui.coloring.ColorCache;
+import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
+
+/**
+ * Paints an {@link OverlayDisplayList} on a {@link Graphics2D}.
+ * <p>
+ * This class is not thread-safe. Painting several parts of a display list in
+ * parallel requires one painter per thread.
+ */
+class DisplayListPainter
+{
+	private static final BasicStroke defaultVertexStroke = new BasicStroke();
+
+	private static final BasicStroke highlightedVertexStroke = new BasicStroke( 4f );
+
+	private static final BasicStroke focusedVertexStroke = new BasicStroke( 2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1f, new float[] { 8f, 3f }, 0 );
+
+	private static final BasicStroke defaultEdgeStroke = new BasicStroke();
+
+	private static final BasicStroke highlightedEdgeStroke = new BasicStroke( 3f );
+
+	/**
+	 * Number of segments of an edge painted with a color gradient.
+	 */
+	private static final int GRADIENT_STEPS = 4;
+
+	private final ColorCache colorCache = new ColorCache();
+
+	private final Ellipse2D.Double ellipse2D = new Ellipse2D.Double();
+
+	private final Ellipse labelEllipse = new Ellipse();
+
+	/**
+	 * Paints the primitives of the specified display list that intersect the
+	 * specified range of Y coordinates.
+	 *
+	 * @param graphics
+	 *            the graphics to paint on.
+	 * @param list
+	 *            the display list.
+	 * @param minY
+	 *            the minimal Y coordinate to paint.
+	 * @param maxY
+	 *            the maximal Y coordinate to paint.
+	 */
+	void paint( final Graphics2D graphics, final OverlayDisplayList list, final double minY, final double maxY )
+	{
+		final AffineTransform torig = graphics.getTransform();
+		for ( int i = 0; i < list.size(); ++i )
+		{
+			if ( list.maxY( i ) < minY || list.minY( i ) > maxY )
+				continue;
+
+			switch ( list.type( i ) )
+			{
+			case EDGE:
+				paintEdge( graphics, list, i );
+				break;
+			case ELLIPSE:
+				paintEllipse( graphics, list, i, torig );
+				break;
+			default:
+				paintPoint( graphics, list, i );
+				break;
+			}
+		}
+	}
+
+	private void paintEdge( final Graphics2D graphics, final OverlayDisplayList list, final int i )
+	{
+		final int x0 = ( int ) list.get( i, 0 );
+		final int y0 = ( int ) list.get( i, 1 );
+		final int x1 = ( int ) list.get( i, 2 );
+		final int y1 = ( int ) list.get( i, 3 );
+		final int argb0 = list.argb0( i );
+		final int argb1 = list.argb1( i );
+
+		graphics.setStroke( list.style( i ) == STYLE_HIGHLIGHTED ? highlightedEdgeStroke : defaultEdgeStroke );
+		if ( argb0 == argb1 )
+		{
+			graphics.setPaint( colorCache.get( argb1 ) );
+			graphics.drawLine( x0, y0, x1, y1 );
+		}
+		else
+		{
+			// Approximate the gradient with segments of interpolated colors,
+			// instead of creating a GradientPaint per edge and per frame.
+			int xa = x0;
+			int ya = y0;
+			for ( int s = 1; s <= GRADIENT_STEPS; ++s )
+			{
+				final int xb = x0 + ( x1 - x0 ) * s / GRADIENT_STEPS;
+				final int yb = y0 + ( y1 - y0 ) * s / GRADIENT_STEPS;
+				final double t = ( s - 0.5 ) / GRADIENT_STEPS;
+				graphics.setPaint( colorCache.get( ColorCache.interpolate( argb0, argb1, t ) ) );
+				graphics.drawLine( xa, ya, xb, yb );
+				xa = xb;
+				ya = yb;
+			}
+		}
+	}
+
+	private void paintEllipse( final Graphics2D graphics, final OverlayDisplayList list, final int i, final AffineTransform torig )
+	{
+		final double cx = list.get( i, 0 );
+		final double cy = list.get( i, 1 );
+		final double w = list.get( i, 3 );
+		final double h = list.get( i, 4 );
+		final int style = list.style( i );
+
+		graphics.setColor( colorCache.get( list.argb0( i ) ) );
+		graphics.setStroke( style == STYLE_HIGHLIGHTED
+				? highlightedVertexStroke
+				: style == STYLE_FOCUSED
+						? focusedVertexStroke
+						: defaultVertexStroke );
+		ellipse2D.setFrame( -w, -h, 2. * w, 2. * h );
+		graphics.translate( cx, cy );
+		graphics.rotate( list.get( i, 2 ) );
+		graphics.draw( ellipse2D );
+		graphics.setTransform( torig );
+
+		final String label = list.label( i );
+		if ( label != null )
+		{
+			labelEllipse.setCenter( cx, cy );
+			OverlayGraphRenderer.drawEllipseLabel( graphics, labelEllipse, label );
+		}
+	}
+
+	private void paintPoint( final Graphics2D graphics, final OverlayDisplayList list, final int i )
+	{
+		final double x = list.get( i, 0 );
+		final double y = list.get( i, 1 );
+		final double radius = list.get( i, 2 );
+		graphics.setColor( colorCache.get( list.argb0( i ) ) );
+		final int ox = ( int ) ( x - radius );
+		final int oy = ( int ) ( y - radius );
+		final int ow = ( int ) ( 2 * radius );
+		if ( list.style( i ) == STYLE_FOCUSED )
+			graphics.fillRect( ox, oy, ow, ow );
+		else
+			graphics.fillOval( ox, oy, ow, ow );
+	}
+}
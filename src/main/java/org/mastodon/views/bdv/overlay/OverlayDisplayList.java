@@ -0,0 +1,192 @@
+package org.mastodon.views.bdv.overlay;
+
+import java.util.ArrayList;
+
+import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * The primitives painted by an {@link OverlayGraphRenderer} in one frame, in
+ * painting order, with their final screen coordinates and colors.
+ * <p>
+ * The renderer fills the display list while holding the graph lock, and
+ * paints it afterwards with a {@link DisplayListPainter}, possibly in several
+ * horizontal bands in parallel. Storage is reused from frame to frame.
+ */
+class OverlayDisplayList
+{
+	static final int EDGE = 0;
+
+	static final int ELLIPSE = 1;
+
+	static final int POINT = 2;
+
+	/**
+	 * Style of an edge or ellipse drawn with the default stroke, or of a round
+	 * point.
+	 */
+	static final int STYLE_DEFAULT = 0;
+
+	/**
+	 * Style of a highlighted edge or ellipse.
+	 */
+	static final int STYLE_HIGHLIGHTED = 1;
+
+	/**
+	 * Style of a focused ellipse, or of a square point.
+	 */
+	static final int STYLE_FOCUSED = 2;
+
+	/**
+	 * How far, in pixels, strokes and labels extend beyond the geometry of a
+	 * primitive.
+	 */
+	private static final double MARGIN = 10;
+
+	private static final int NUM_INTS = 4;
+
+	private static final int NUM_DOUBLES = 5;
+
+	/**
+	 * {@code type, argb0, argb1, style} for each primitive.
+	 */
+	private final TIntArrayList ints;
+
+	/**
+	 * For each primitive, {@code x0, y0, x1, y1} for edges,
+	 * {@code cx, cy, theta, halfWidth, halfHeight} for ellipses, and
+	 * {@code x, y, radius} for points.
+	 */
+	private final TDoubleArrayList doubles;
+
+	/**
+	 * The label of each primitive, or {@code null}.
+	 */
+	private final ArrayList< String > labels;
+
+	OverlayDisplayList()
+	{
+		ints = new TIntArrayList();
+		doubles = new TDoubleArrayList();
+		labels = new ArrayList<>();
+	}
+
+	void clear()
+	{
+		ints.resetQuick();
+		doubles.resetQuick();
+		labels.clear();
+	}
+
+	int size()
+	{
+		return labels.size();
+	}
+
+	/**
+	 * Adds an edge, painted with a gradient from {@code argb0} to
+	 * {@code argb1}.
+	 */
+	void addEdge( final int x0, final int y0, final int x1, final int y1, final int argb0, final int argb1, final boolean isHighlighted )
+	{
+		add( EDGE, argb0, argb1, isHighlighted ? STYLE_HIGHLIGHTED : STYLE_DEFAULT, x0, y0, x1, y1, 0, null );
+	}
+
+	/**
+	 * Adds the outline of an ellipse, with an optional label at its center.
+	 */
+	void addEllipse( final Ellipse ellipse, final int argb, final int style, final String label )
+	{
+		final double[] c = ellipse.getCenter();
+		add( ELLIPSE, argb, argb, style, c[ 0 ], c[ 1 ], ellipse.getTheta(), ellipse.getHalfWidth(), ellipse.getHalfHeight(), label );
+	}
+
+	/**
+	 * Adds a filled point, round or square.
+	 */
+	void addPoint( final double x, final double y, final double radius, final int argb, final boolean isSquare )
+	{
+		add( POINT, argb, argb, isSquare ? STYLE_FOCUSED : STYLE_DEFAULT, x, y, radius, 0, 0, null );
+	}
+
+	private void add( final int type, final int argb0, final int argb1, final int style, final double d0, final double d1, final double d2, final double d3, final double d4, final String label )
+	{
+		ints.add( type );
+		ints.add( argb0 );
+		ints.add( argb1 );
+		ints.add( style );
+		doubles.add( d0 );
+		doubles.add( d1 );
+		doubles.add( d2 );
+		doubles.add( d3 );
+		doubles.add( d4 );
+		labels.add( label );
+	}
+
+	int type( final int i )
+	{
+		return ints.get( NUM_INTS * i );
+	}
+
+	int argb0( final int i )
+	{
+		return ints.get( NUM_INTS * i + 1 );
+	}
+
+	int argb1( final int i )
+	{
+		return ints.get( NUM_INTS * i + 2 );
+	}
+
+	int style( final int i )
+	{
+		return ints.get( NUM_INTS * i + 3 );
+	}
+
+	/**
+	 * Returns the {@code k}th coordinate of primitive {@code i}.
+	 */
+	double get( final int i, final int k )
+	{
+		return doubles.get( NUM_DOUBLES * i + k );
+	}
+
+	String label( final int i )
+	{
+		return labels.get( i );
+	}
+
+	/**
+	 * Returns the minimal Y coordinate painted by primitive {@code i}.
+	 */
+	double minY( final int i )
+	{
+		switch ( type( i ) )
+		{
+		case EDGE:
+			return Math.min( get( i, 1 ), get( i, 3 ) ) - MARGIN;
+		case ELLIPSE:
+			return get( i, 1 ) - Math.max( get( i, 3 ), get( i, 4 ) ) - MARGIN;
+		default:
+			return get( i, 1 ) - get( i, 2 ) - MARGIN;
+		}
+	}
+
+	/**
+	 * Returns the maximal Y coordinate painted by primitive {@code i}.
+	 */
+	double maxY( final int i )
+	{
+		switch ( type( i ) )
+		{
+		case EDGE:
+			return Math.max( get( i, 1 ), get( i, 3 ) ) + MARGIN;
+		case ELLIPSE:
+			return get( i, 1 ) + Math.max( get( i, 3 ), get( i, 4 ) ) + MARGIN;
+		default:
+			return get( i, 1 ) + get( i, 2 ) + MARGIN;
+		}
+	}
+}
@@ -1,9 +1,6 @@
 package org.mastodon.views.bdv.overlay;
 
-import java.awt.BasicStroke;
-import java.awt.Color;
 import java.awt.Font;
-import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -24,12 +21,14 @@ import org.mastodon.model.SelectionModel;
 import org.mastodon.spatial.SpatialIndex;
 import org.mastodon.spatial.SpatioTemporalIndex;
 import org.mastodon.ui.coloring.GraphColorGenerator;
+import org.mastodon.util.FrameAllocationCounter;
 import org.mastodon.util.GeometryUtil;
 import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
 import org.mastodon.views.bdv.overlay.util.BdvRendererUtil;
 
 import bdv.util.Affine3DHelpers;
 import bdv.viewer.TimePointListener;
+import gnu.trove.list.array.TIntArrayList;
 import net.imglib2.RealPoint;
 import net.imglib2.algorithm.kdtree.ConvexPolytope;
 import net.imglib2.neighborsearch.NearestNeighborSearch;
@@ -92,6 +91,87 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 
 	private RenderSettings settings;
 
+	/**
+	 * Number of levels to which fading factors are rounded, to bound the
+	 * number of distinct colors painted.
+	 */
+	private static final int FADE_STEPS = 64;
+
+	/**
+	 * The primitives of the frame being painted. Only accessed by
+	 * {@link #drawOverlays(Graphics)}.
+	 */
+	private final OverlayDisplayList displayList;
+
+	/**
+	 * Paints the display list on the calling thread. Only accessed by
+	 * {@link #drawOverlays(Graphics)}.
+	 */
+	private final DisplayListPainter painter;
+
+	/**
+	 * Paints the display list in parallel, if
+	 * {@link RenderSettings#getUseMultiThreading()}. Created on first use.
+	 * Only accessed by {@link #drawOverlays(Graphics)}.
+	 */
+	private BandedDisplayListPainter bandedPainter;
+
+	/**
+	 * Rasterizes the display list when many spots are visible, if
+	 * {@link RenderSettings#getUseFastRendering()}. Created on first use.
+	 * Only accessed by {@link #drawOverlays(Graphics)}.
+	 */
+	private RasterDisplayListPainter rasterPainter;
+
+	private final FrameAllocationCounter allocationCounter;
+
+	/**
+	 * Screen-space index of the objects painted in the last frame, used by
+	 * {@link #getEdgeAt(int, int, double, OverlayEdge)},
+	 * {@link #getVertexAt(int, int, double, OverlayVertex)} and
+	 * {@link #getVisibleVertices(AffineTransform3D, int)} instead of searching
+	 * all visible objects. Guarded by {@code this}.
+	 */
+	private ScreenHitIndex< V, E > hitIndex;
+
+	/**
+	 * The index filled while painting a frame. Only accessed by
+	 * {@link #drawOverlays(Graphics)}, and swapped with {@link #hitIndex} at
+	 * the end of the frame.
+	 */
+	private ScreenHitIndex< V, E > pendingHitIndex;
+
+	/**
+	 * Incremented by {@link #invalidateScreenCaches()}. An index or a cached
+	 * projection is only valid if it was computed with the current count.
+	 * Guarded by {@code this}.
+	 */
+	private int modCount;
+
+	/**
+	 * The projections of the vertices painted in the previous frames. Only
+	 * accessed by {@link #drawOverlays(Graphics)}.
+	 */
+	private final ProjectionCache projections;
+
+	/**
+	 * Computes the projections of the vertices painted in a frame that are
+	 * not in {@link #projections}. Only accessed by
+	 * {@link #drawOverlays(Graphics)}.
+	 */
+	private final ScreenVertexMathBatch batch;
+
+	/**
+	 * Candidates of the hit index queries. Guarded by {@code this}.
+	 */
+	private final TIntArrayList hitCandidates;
+
+	/**
+	 * Used to test the candidates of the hit index queries. Guarded by
+	 * {@code this}.
+	 */
+	private final ScreenVertexMath hitScreenVertexMath;
+
 	public OverlayGraphRenderer(
 			final OverlayGraph< V, E > graph,
 			final HighlightModel< V, E > highlight,
@@ -106,6 +186,15 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		this.coloring = coloring;
 		index = graph.getIndex();
 		renderTransform = new AffineTransform3D();
+		displayList = new OverlayDisplayList();
+		painter = new DisplayListPainter();
+		allocationCounter = new FrameAllocationCounter( "BDV overlay" );
+		hitIndex = new ScreenHitIndex<>( graph );
+		pendingHitIndex = new ScreenHitIndex<>( graph );
+		projections = new ProjectionCache();
+		batch = new ScreenVertexMathBatch();
+		hitCandidates = new TIntArrayList();
+		hitScreenVertexMath = new ScreenVertexMath();
 		setRenderSettings( RenderSettings.defaultStyle() ); // default RenderSettings
 	}
 
@@ -136,6 +225,20 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		this.settings = settings;
 	}
 
+	/**
+	 * Invalidates the projections of the vertices and the screen-space index
+	 * of the objects painted in the previous frames, so that they are
+	 * recomputed when the next frame is painted, and finding the objects at a
+	 * screen location does not rely on them until then. Must be called when
+	 * the graph, the vertex positions or shapes, or the render settings
+	 * change.
+	 */
+	public synchronized void invalidateScreenCaches()
+	{
+		++modCount;
+		hitIndex.invalidate();
+	}
+
 	public static final double pointRadius = 2.5;
 
 	/**
@@ -208,9 +311,10 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 	 * @param isSelected
 	 *            whether to use selected or un-selected color scheme.
 	 * @param color the color assigned to the object when using a coloring scheme.
-	 * @return vertex/edge color suitable for display in a BDV.
+	 * @return vertex/edge color suitable for display in a BDV, as ARGB bytes
+	 *         packed into an {@code int}.
 	 */
-	private static Color getColor( final double sd, final double td, final double sdFade, final double tdFade, final boolean isSelected, final boolean isHighlighted, final int color )
+	private static int getARGB( final double sd, final double td, final double sdFade, final double tdFade, final boolean isSelected, final boolean isHighlighted, final int color )
 	{
 		/*
 		 * |sf| = {                  0  for  |sd| <= sdFade,
@@ -238,6 +342,21 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 			tf = -Math.max( 0, ( -td - tdFade ) / ( 1 - tdFade ) );
 		}
 
+		return getARGB( td, quantizeFade( sf ), quantizeFade( tf ), isSelected, isHighlighted, color );
+	}
+
+	/**
+	 * Rounds a fading factor to one of {@link #FADE_STEPS} levels, so that
+	 * objects at similar distances share the same color.
+	 */
+	private static double quantizeFade( final double f )
+	{
+		return Math.round( f * FADE_STEPS ) / ( double ) FADE_STEPS;
+	}
+
+	private static int getARGB( final double td, final double sf, final double tf, final boolean isSelected, final boolean isHighlighted, final int color )
+	{
+
 		if ( color == 0 )
 		{
 			final double i1 = -2 * td;
@@ -248,7 +367,7 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 			final double a = Math.max(
 					isHighlighted ? 0.8 : ( isSelected ? 0.6 : 0.4 ),
 					( 1 + tf ) * ( 1 - Math.abs( sf ) ) );
-			return new Color( truncRGBA( r, g, b, a ), true );
+			return truncRGBA( r, g, b, a );
 		}
 		else
 		{
@@ -267,7 +386,7 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 			final double a = Math.max(
 					isHighlighted ? 0.8 : ( isSelected ? 0.6 : 0.4 ),
 					a0 / 255f * ( 1 + tf ) * ( 1 - Math.abs( sf ) ) );
-			return new Color( truncRGBA( r, g, b, a ), true );
+			return truncRGBA( r, g, b, a );
 		}
 	}
 
@@ -400,9 +519,18 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		void apply( final E edge, final double td0, final double td1, final double sd0, final double sd1, final int x0, final int y0, final int x1, final int y1 );
 	}
 
+	/**
+	 * Calls the specified operation for each edge visible with the specified
+	 * transform and timepoint.
+	 *
+	 * @param projections
+	 *            the cache of the vertex projections for this transform, or
+	 *            {@code null} to project all vertices.
+	 */
 	private void forEachVisibleEdge(
 			final AffineTransform3D transform,
 			final int currentTimepoint,
+			final ProjectionCache projections,
 			final EdgeOperation< E > edgeOperation )
 	{
 		if ( !settings.getDrawLinks())
@@ -425,8 +553,13 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 			ccp.clip( getVisiblePolytopeGlobal( transform, t ) );
 			for ( final V vertex : ccp.getInsideValues() )
 			{
-				vertex.localize( gPos );
-				transform.apply( gPos, lPos );
+				if ( projections != null )
+					projections.getViewPos( vertex, gPos, lPos );
+				else
+				{
+					vertex.localize( gPos );
+					transform.apply( gPos, lPos );
+				}
 				final int x1 = ( int ) lPos[ 0 ];
 				final int y1 = ( int ) lPos[ 1 ];
 
@@ -436,8 +569,13 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 				for ( final E edge : vertex.incomingEdges() )
 				{
 					final V source = edge.getSource( ref );
-					source.localize( gPos );
-					transform.apply( gPos, lPos );
+					if ( projections != null )
+						projections.getViewPos( source, gPos, lPos );
+					else
+					{
+						source.localize( gPos );
+						transform.apply( gPos, lPos );
+					}
 					final int x0 = ( int ) lPos[ 0 ];
 					final int y0 = ( int ) lPos[ 1 ];
 
@@ -458,12 +596,8 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
+		allocationCounter.frameStarted();
 		final Graphics2D graphics = ( Graphics2D ) g;
-		final BasicStroke defaultVertexStroke = new BasicStroke();
-		final BasicStroke highlightedVertexStroke = new BasicStroke( 4f );
-		final BasicStroke focusedVertexStroke = new BasicStroke( 2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1f, new float[] { 8f, 3f }, 0 );
-		final BasicStroke defaultEdgeStroke = new BasicStroke();
-		final BasicStroke highlightedEdgeStroke = new BasicStroke( 3f );
 
 		final AffineTransform3D transform = getRenderTransformCopy();
 		final int currentTimepoint = renderTimepoint;
@@ -484,11 +618,20 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		final double sliceDistanceFade = settings.getEllipsoidFadeDepth();
 		final double timepointDistanceFade = 0.5;
 
+		final ScreenHitIndex< V, E > building = pendingHitIndex;
+		synchronized ( this )
+		{
+			building.reset( transform, currentTimepoint, width, height, settings, modCount );
+			projections.validate( transform, currentTimepoint, modCount );
+		}
+
 		final ScreenVertexMath screenVertexMath = new ScreenVertexMath();
 		final boolean drawPointsAlways = drawPointsAlways();
 		final boolean drawPointsMaybe = drawPointsMaybe();
 		final boolean useGradient = settings.getUseGradient();
 
+		displayList.clear();
+		int numVisibleSpots = 0;
 		graph.getLock().readLock().lock();
 		index.readLock().lock();
 		try
@@ -496,26 +639,19 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 			if ( settings.getDrawLinks())
 			{
 				final E highlighted = highlight.getHighlightedEdge( ref3 );
-				graphics.setStroke( defaultEdgeStroke );
-				forEachVisibleEdge( transform, currentTimepoint, ( edge, td0, td1, sd0, sd1, x0, y0, x1, y1 ) -> {
+				forEachVisibleEdge( transform, currentTimepoint, projections, ( edge, td0, td1, sd0, sd1, x0, y0, x1, y1 ) -> {
+					building.addEdge( edge, x0, y0, x1, y1 );
 					final boolean isHighlighted = edge.equals( highlighted );
 
 					edge.getSource( source );
 					edge.getTarget( target );
 					final int edgeColor = coloring.color( edge, source, target );
-					final Color c1 = getColor( sd1, td1, sliceDistanceFade, timepointDistanceFade, selection.isSelected( edge ), isHighlighted, edgeColor );
-					if ( useGradient )
-					{
-						final Color c0 = getColor( sd0, td0, sliceDistanceFade, timepointDistanceFade, selection.isSelected( edge ), isHighlighted, edgeColor );
-						graphics.setPaint( new GradientPaint( x0, y0, c0, x1, y1, c1 ) );
-					}
-					else
-					{
-						graphics.setPaint( c1 );
-					}
-					if ( isHighlighted )
-						graphics.setStroke( highlightedEdgeStroke );
-					graphics.drawLine( x0, y0, x1, y1 );
+					final boolean isSelected = selection.isSelected( edge );
+					final int argb1 = getARGB( sd1, td1, sliceDistanceFade, timepointDistanceFade, isSelected, isHighlighted, edgeColor );
+					final int argb0 = useGradient
+							? getARGB( sd0, td0, sliceDistanceFade, timepointDistanceFade, isSelected, isHighlighted, edgeColor )
+							: argb1;
+					displayList.addEdge( x0, y0, x1, y1, argb0, argb1, isHighlighted );
 
 					// Draw arrows for edge direction.
 					/*
@@ -531,9 +667,6 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 					graphics.drawLine( x1, y1, x1a, y1a );
 					graphics.drawLine( x1, y1, x1b, y1b );
 					*/
-
-					if ( isHighlighted )
-						graphics.setStroke( defaultEdgeStroke );
 				} );
 			}
 
@@ -548,19 +681,22 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 				final V highlighted = highlight.getHighlightedVertex( ref1 );
 				final V focused = focus.getFocusedVertex( ref2 );
 
-				graphics.setStroke( defaultVertexStroke );
-				final AffineTransform torig = graphics.getTransform();
-
 				final ConvexPolytope cropPolytopeGlobal = getVisiblePolytopeGlobal( transform, currentTimepoint );
 				final ClipConvexPolytope< V > ccp = index.getSpatialIndex( currentTimepoint ).getClipConvexPolytope();
 				ccp.clip( cropPolytopeGlobal );
+				projections.initAll( ccp.getInsideValues(), batch, screenVertexMath );
 				for ( final V vertex : ccp.getInsideValues() )
 				{
 					final int color = coloring.color( vertex );
 					final boolean isHighlighted = vertex.equals( highlighted );
 					final boolean isFocused = vertex.equals( focused );
+					final int style = isHighlighted
+							? OverlayDisplayList.STYLE_HIGHLIGHTED
+							: isFocused
+									? OverlayDisplayList.STYLE_FOCUSED
+									: OverlayDisplayList.STYLE_DEFAULT;
 
-					screenVertexMath.init( vertex, transform );
+					projections.init( vertex, screenVertexMath );
 
 					final double x = screenVertexMath.getViewPos()[ 0 ];
 					final double y = screenVertexMath.getViewPos()[ 1 ];
@@ -571,19 +707,11 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 					{
 						if ( screenVertexMath.intersectsViewPlane() )
 						{
-							final Ellipse ellipse = screenVertexMath.getIntersectEllipse();
-
-							graphics.setColor( getColor( 0, 0, ellipsoidFadeDepth, timepointDistanceFade, selection.isSelected( vertex ), isHighlighted, color ) );
-							if ( isHighlighted )
-								graphics.setStroke( highlightedVertexStroke );
-							else if ( isFocused )
-								graphics.setStroke( focusedVertexStroke );
-							drawEllipse( graphics, ellipse, torig );
-							if ( isHighlighted || isFocused )
-								graphics.setStroke( defaultVertexStroke );
-
-							if ( !drawEllipsoidSliceProjection && drawSpotLabels )
-								drawEllipseLabel( graphics, ellipse, vertex.getLabel() );
+							displayList.addEllipse(
+									screenVertexMath.getIntersectEllipse(),
+									getARGB( 0, 0, ellipsoidFadeDepth, timepointDistanceFade, selection.isSelected( vertex ), isHighlighted, color ),
+									style,
+									( !drawEllipsoidSliceProjection && drawSpotLabels ) ? vertex.getLabel() : null );
 						}
 					}
 
@@ -591,40 +719,41 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 					{
 						if ( drawEllipsoidSliceProjection )
 						{
-							final Ellipse ellipse = screenVertexMath.getProjectEllipse();
-
-							graphics.setColor( getColor( sd, 0, ellipsoidFadeDepth, timepointDistanceFade, selection.isSelected( vertex ), isHighlighted, color ) );
-							if ( isHighlighted )
-								graphics.setStroke( highlightedVertexStroke );
-							else if ( isFocused )
-								graphics.setStroke( focusedVertexStroke );
-							drawEllipse( graphics, ellipse, torig );
-							if ( isHighlighted || isFocused )
-								graphics.setStroke( defaultVertexStroke );
-
-							if ( drawSpotLabels )
-								drawEllipseLabel( graphics, ellipse, vertex.getLabel() );
-
-							graphics.setTransform( torig );
+							displayList.addEllipse(
+									screenVertexMath.getProjectEllipse(),
+									getARGB( sd, 0, ellipsoidFadeDepth, timepointDistanceFade, selection.isSelected( vertex ), isHighlighted, color ),
+									style,
+									drawSpotLabels ? vertex.getLabel() : null );
 						}
 
 						if ( drawPointsAlways || ( drawPointsMaybe && !screenVertexMath.intersectsViewPlane() ) )
 						{
-							graphics.setColor( getColor( sd, 0, pointFadeDepth, timepointDistanceFade, selection.isSelected( vertex ), isHighlighted, color ) );
-							double radius = pointRadius;
-							if ( isHighlighted || isFocused )
-								radius *= 2;
-							final int ox = ( int ) ( x - radius );
-							final int oy = ( int ) ( y - radius );
-							final int ow = ( int ) ( 2 * radius );
-							if ( isFocused )
-								graphics.fillRect( ox, oy, ow, ow );
-							else
-								graphics.fillOval( ox, oy, ow, ow );
+							final double radius = ( isHighlighted || isFocused ) ? 2 * pointRadius : pointRadius;
+							displayList.addPoint( x, y, radius,
+									getARGB( sd, 0, pointFadeDepth, timepointDistanceFade, selection.isSelected( vertex ), isHighlighted, color ),
+									isFocused );
 						}
 					}
+
+					final boolean intersects = screenVertexMath.intersectsViewPlane();
+					final boolean inDepth = sd > -1 && sd < 1;
+					if ( intersects || inDepth )
+					{
+						++numVisibleSpots;
+						building.addVertex( vertex, x, y,
+								( drawEllipsoidSliceIntersection && intersects ) ? screenVertexMath.getIntersectEllipse() : null,
+								( drawEllipsoidSliceProjection && inDepth ) ? screenVertexMath.getProjectEllipse() : null,
+								isVisible( screenVertexMath, maxDepth, drawPointsAlways, drawPointsMaybe, drawEllipsoidSliceIntersection, drawEllipsoidSliceProjection ) );
+					}
 				}
 			}
+
+			building.finish();
+			synchronized ( this )
+			{
+				pendingHitIndex = hitIndex;
+				hitIndex = building;
+			}
 		}
 		finally
 		{
@@ -636,6 +765,23 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		graph.releaseRef( ref3 );
 		graph.releaseRef( source );
 		graph.releaseRef( target );
+
+		// Paint outside of the graph lock, so that edits do not wait for it.
+		if ( settings.getUseFastRendering() && numVisibleSpots > settings.getFastRenderingSpotCount() )
+		{
+			if ( rasterPainter == null )
+				rasterPainter = new RasterDisplayListPainter();
+			rasterPainter.paint( graphics, displayList, width, height );
+		}
+		else if ( settings.getUseMultiThreading() )
+		{
+			if ( bandedPainter == null )
+				bandedPainter = new BandedDisplayListPainter();
+			bandedPainter.paint( graphics, displayList, width, height, antialiasing );
+		}
+		else
+			painter.paint( graphics, displayList, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY );
+		allocationCounter.frameFinished();
 	}
 
 	static void drawEllipse( final Graphics2D graphics, final Ellipse ellipse, AffineTransform torig )
@@ -670,6 +816,22 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		layout.draw( graphics, tx, ty );
 	}
 
+	/**
+	 * Returns the size of a user space pixel of the specified graphics, in
+	 * device pixels. It is larger than 1 on HiDPI screens. The transform of
+	 * the graphics is assumed to be a uniform scaling, possibly with a
+	 * translation.
+	 *
+	 * @param graphics
+	 *            the graphics to paint on.
+	 * @return the scale of the graphics transform, or 1 if it is degenerate.
+	 */
+	static double getDeviceScale( final Graphics2D graphics )
+	{
+		final double scale = Math.sqrt( Math.abs( graphics.getTransform().getDeterminant() ) );
+		return scale > 0 && !Double.isInfinite( scale ) ? scale : 1;
+	}
+
 	/**
 	 * Returns the edge currently painted close to the specified location.
 	 * <p>
@@ -713,6 +875,12 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		final AffineTransform3D transform = getRenderTransformCopy();
 		final int currentTimepoint = renderTimepoint;
 
+		synchronized ( this )
+		{
+			if ( hitIndex.isValid( transform, currentTimepoint, width, height, settings, modCount ) )
+				return hitIndex.getEdgeAt( x, y, tolerance, hitCandidates, ref );
+		}
+
 		class Op implements EdgeOperation< E >
 		{
 			final double squTolerance = tolerance * tolerance;
@@ -736,7 +904,7 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		index.readLock().lock();
 		try
 		{
-			forEachVisibleEdge( transform, currentTimepoint, op );
+			forEachVisibleEdge( transform, currentTimepoint, null, op );
 		}
 		finally
 		{
@@ -833,6 +1001,12 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		final ScreenVertexMath screenVertexMath = new ScreenVertexMath();
 		transform.applyInverse( gPos, lPos );
 
+		synchronized ( this )
+		{
+			if ( hitIndex.isValid( transform, currentTimepoint, width, height, settings, modCount ) )
+				return getIndexedVertexAt( x, y, tolerance, gPos, maxDepth, transform, ref );
+		}
+
 		boolean found = false;
 
 		index.readLock().lock();
@@ -916,6 +1090,99 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		return found ? ref : null;
 	}
 
+	/**
+	 * Same searches as {@link #getVertexAt(int, int, double, OverlayVertex)},
+	 * restricted to the candidates found in the hit index. Must be called
+	 * while holding the lock on {@code this}.
+	 */
+	private V getIndexedVertexAt( final int x, final int y, final double tolerance, final double[] gPos, final double maxDepth, final AffineTransform3D transform, final V ref )
+	{
+		final double dr = pointRadius + tolerance;
+		hitIndex.getVertexCandidates( x, y, dr, hitCandidates );
+		if ( hitCandidates.isEmpty() )
+			return null;
+
+		final ScreenVertexMath screenVertexMath = hitScreenVertexMath;
+		final V vertex = graph.vertexRef();
+		final double[] xy = new double[] { x, y };
+		final double[] vPos = new double[ 3 ];
+		double minDist = Double.MAX_VALUE;
+		boolean found = false;
+
+		if ( settings.getDrawEllipsoidSliceProjection() )
+		{
+			for ( int i = 0; i < hitCandidates.size(); ++i )
+			{
+				hitIndex.getVertex( hitCandidates.get( i ), vertex );
+				screenVertexMath.init( vertex, transform );
+				final double z = screenVertexMath.getViewPos()[ 2 ];
+				final double sd = sliceDistance( z, maxDepth );
+				if ( sd > -1 && sd < 1 && screenVertexMath.projectionContainsView( xy ) )
+				{
+					found = true;
+					vertex.localize( vPos );
+					final double d = LinAlgHelpers.squareDistance( vPos, gPos );
+					if ( d < minDist )
+					{
+						minDist = d;
+						ref.refTo( vertex );
+					}
+				}
+			}
+		}
+
+		if ( !found && settings.getDrawEllipsoidSliceIntersection() )
+		{
+			for ( int i = 0; i < hitCandidates.size(); ++i )
+			{
+				hitIndex.getVertex( hitCandidates.get( i ), vertex );
+				screenVertexMath.init( vertex, transform );
+				if ( screenVertexMath.containsGlobal( gPos ) )
+				{
+					found = true;
+					vertex.localize( vPos );
+					final double d = LinAlgHelpers.squareDistance( vPos, gPos );
+					if ( d < minDist )
+					{
+						minDist = d;
+						ref.refTo( vertex );
+					}
+				}
+			}
+		}
+
+		if ( !found && settings.getDrawSpotCenters() )
+		{
+			for ( int i = 0; i < hitCandidates.size(); ++i )
+			{
+				hitIndex.getVertex( hitCandidates.get( i ), vertex );
+				screenVertexMath.init( vertex, transform );
+				final double z = screenVertexMath.getViewPos()[ 2 ];
+				final double sd = sliceDistance( z, maxDepth );
+				if ( sd > -1 && sd < 1 )
+				{
+					final double[] p = screenVertexMath.getViewPos();
+					final double dx = p[ 0 ] - x;
+					final double dy = p[ 1 ] - y;
+					if ( dx * dx + dy * dy <= dr * dr )
+					{
+						found = true;
+						vertex.localize( vPos );
+						final double d = LinAlgHelpers.squareDistance( vPos, gPos );
+						if ( d < minDist )
+						{
+							minDist = d;
+							ref.refTo( vertex );
+						}
+					}
+				}
+			}
+		}
+
+		graph.releaseRef( vertex );
+		return found ? ref : null;
+	}
+
 	/**
 	 * Get all vertices that would be visible with the current display settings
 	 * and the specified {@code transform} and {@code timepoint}. This is used
@@ -936,52 +1203,83 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 	RefCollection< V > getVisibleVertices( final AffineTransform3D transform, final int timepoint )
 	{
 		final RefList< V > contextList = RefCollections.createRefList( graph.vertices() );
+
+		synchronized ( this )
+		{
+			if ( settings.getDrawSpots() && hitIndex.isValid( transform, timepoint, width, height, settings, modCount ) )
+			{
+				hitIndex.getVisibleVertices( contextList );
+				return contextList;
+			}
+		}
+
 		final double maxDepth = getMaxDepth( transform );
 		final boolean drawPointsAlways = drawPointsAlways();
 		final boolean drawPointsMaybe = drawPointsMaybe();
 		final boolean drawEllipsoidSliceIntersection = settings.getDrawEllipsoidSliceIntersection();
 		final boolean drawEllipsoidSliceProjection = settings.getDrawEllipsoidSliceProjection();
 		final ScreenVertexMath screenVertexMath = new ScreenVertexMath();
+		final ScreenVertexMathBatch candidatesMath = new ScreenVertexMathBatch();
+		final RefList< V > candidates = RefCollections.createRefList( graph.vertices() );
 
 		final ConvexPolytope cropPolytopeGlobal = getVisiblePolytopeGlobal( transform, timepoint );
 		final ClipConvexPolytope< V > ccp = index.getSpatialIndex( timepoint ).getClipConvexPolytope();
 		ccp.clip( cropPolytopeGlobal );
 		for ( final V vertex : ccp.getInsideValues() )
 		{
-			screenVertexMath.init( vertex, transform );
+			candidates.add( vertex );
+			candidatesMath.add( vertex );
+		}
+		candidatesMath.compute( transform );
 
-			if ( drawEllipsoidSliceIntersection )
-			{
-				if ( screenVertexMath.intersectsViewPlane()
-						&& screenVertexMath.intersectionIntersectsViewInterval( 0, width, 0, height ) )
-				{
-					contextList.add( vertex );
-					continue;
-				}
-			}
+		final V ref = graph.vertexRef();
+		for ( int i = 0; i < candidates.size(); ++i )
+		{
+			screenVertexMath.init( candidatesMath, i, transform );
+			if ( isVisible( screenVertexMath, maxDepth, drawPointsAlways, drawPointsMaybe, drawEllipsoidSliceIntersection, drawEllipsoidSliceProjection ) )
+				contextList.add( candidates.get( i, ref ) );
+		}
+		graph.releaseRef( ref );
 
-			final double z = screenVertexMath.getViewPos()[ 2 ];
-			final double sd = sliceDistance( z, maxDepth );
-			if ( -1 < sd && sd < 1 )
-			{
-				if ( drawEllipsoidSliceProjection
-						&& screenVertexMath.projectionIntersectsViewInterval( 0, width, 0, height ) )
-				{
-					contextList.add( vertex );
-					continue;
-				}
+		return contextList;
+	}
 
-				if ( drawPointsAlways || ( drawPointsMaybe && !screenVertexMath.intersectsViewPlane() ) )
-				{
-					final double x = screenVertexMath.getViewPos()[ 0 ];
-					final double y = screenVertexMath.getViewPos()[ 1 ];
-					if ( 0 <= x && x <= width && 0 <= y && y <= height )
-						contextList.add( vertex );
-				}
-			}
+	/**
+	 * Returns whether the vertex for which the specified
+	 * {@link ScreenVertexMath} was initialized is visible on the canvas with
+	 * the current display settings.
+	 */
+	private boolean isVisible(
+			final ScreenVertexMath screenVertexMath,
+			final double maxDepth,
+			final boolean drawPointsAlways,
+			final boolean drawPointsMaybe,
+			final boolean drawEllipsoidSliceIntersection,
+			final boolean drawEllipsoidSliceProjection )
+	{
+		if ( drawEllipsoidSliceIntersection )
+		{
+			if ( screenVertexMath.intersectsViewPlane()
+					&& screenVertexMath.intersectionIntersectsViewInterval( 0, width, 0, height ) )
+				return true;
 		}
 
-		return contextList;
+		final double z = screenVertexMath.getViewPos()[ 2 ];
+		final double sd = sliceDistance( z, maxDepth );
+		if ( -1 < sd && sd < 1 )
+		{
+			if ( drawEllipsoidSliceProjection
+					&& screenVertexMath.projectionIntersectsViewInterval( 0, width, 0, height ) )
+				return true;
+
+			if ( drawPointsAlways || ( drawPointsMaybe && !screenVertexMath.intersectsViewPlane() ) )
+			{
+				final double x = screenVertexMath.getViewPos()[ 0 ];
+				final double y = screenVertexMath.getViewPos()[ 1 ];
+				return 0 <= x && x <= width && 0 <= y && y <= height;
+			}
+		}
+		return false;
 	}
 
 	/**
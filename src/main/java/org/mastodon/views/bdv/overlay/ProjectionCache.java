@@ -0,0 +1,211 @@
+package org.mastodon.views.bdv.overlay;
+
+import java.util.Arrays;
+
+import org.mastodon.views.bdv.overlay.util.BdvRendererUtil;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Screen-space projections of vertices, kept between the frames painted by an
+ * {@link OverlayGraphRenderer}, so that repainting with the same viewer
+ * transform (e.g., when the highlight or the selection changes) does not
+ * recompute them.
+ * <p>
+ * Two kinds of projections are cached, keyed by the internal pool index of
+ * the vertex:
+ * <ul>
+ * <li>the full state of a {@link ScreenVertexMath}, for painted vertices;</li>
+ * <li>the viewer coordinates of the center, for the endpoints of painted
+ * edges.</li>
+ * </ul>
+ * All projections are discarded when the viewer transform or the current
+ * timepoint changes, and when the modification count of the renderer changes,
+ * i.e. when vertices were added, removed, moved or reshaped. The cache thus
+ * only holds the projections of the vertices painted around one timepoint, and
+ * its size is bounded by {@link #MAX_SIZE}: above that, it is cleared and its
+ * storage released.
+ * <p>
+ * This class is not thread-safe.
+ */
+class ProjectionCache
+{
+	/**
+	 * The number of projections of each kind above which the cache is
+	 * cleared. Bounds the storage of the projections to about 16 MB.
+	 */
+	private static final int MAX_SIZE = 1 << 16;
+
+	/**
+	 * The initial number of projections of each kind the storage can hold.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final AffineTransform3D transform;
+
+	private int timepoint;
+
+	private int modCount;
+
+	private final TIntIntMap vertexToState;
+
+	private double[] states;
+
+	private final TIntIntMap vertexToPosition;
+
+	private double[] positions;
+
+	// tmp
+	private final TIntArrayList pending;
+
+	ProjectionCache()
+	{
+		transform = new AffineTransform3D();
+		timepoint = -1;
+		modCount = -1;
+		vertexToState = new TIntIntHashMap( INITIAL_CAPACITY, 0.5f, -1, -1 );
+		states = new double[ INITIAL_CAPACITY * ScreenVertexMath.STATE_SIZE ];
+		vertexToPosition = new TIntIntHashMap( INITIAL_CAPACITY, 0.5f, -1, -1 );
+		positions = new double[ INITIAL_CAPACITY * 3 ];
+		pending = new TIntArrayList();
+	}
+
+	/**
+	 * Discards all projections if the specified transform, timepoint or
+	 * modification count differs from the ones they were computed for.
+	 *
+	 * @param transform
+	 *            the viewer transform of the frame to paint.
+	 * @param timepoint
+	 *            the timepoint of the frame to paint.
+	 * @param modCount
+	 *            the modification count of the renderer.
+	 */
+	void validate( final AffineTransform3D transform, final int timepoint, final int modCount )
+	{
+		if ( this.modCount != modCount || this.timepoint != timepoint || !BdvRendererUtil.isEqual( this.transform, transform ) )
+		{
+			this.transform.set( transform );
+			this.timepoint = timepoint;
+			this.modCount = modCount;
+			vertexToState.clear();
+			vertexToPosition.clear();
+		}
+	}
+
+	/**
+	 * Initializes the specified {@link ScreenVertexMath} for the specified
+	 * vertex and the current viewer transform, from the cache if possible.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @param screenVertexMath
+	 *            the {@link ScreenVertexMath} to initialize.
+	 */
+	void init( final OverlayVertex< ?, ? > vertex, final ScreenVertexMath screenVertexMath )
+	{
+		final int id = vertex.getInternalPoolIndex();
+		final int slot = vertexToState.get( id );
+		if ( slot >= 0 )
+		{
+			screenVertexMath.restore( states, slot * ScreenVertexMath.STATE_SIZE, transform );
+			return;
+		}
+
+		screenVertexMath.init( vertex, transform );
+		put( id, screenVertexMath );
+	}
+
+	/**
+	 * Computes the projections of those of the specified vertices that are
+	 * not in the cache yet, all at once with a {@link ScreenVertexMathBatch}.
+	 * Subsequent calls to {@link #init(OverlayVertex, ScreenVertexMath)} for
+	 * these vertices restore them from the cache.
+	 *
+	 * @param vertices
+	 *            the vertices.
+	 * @param batch
+	 *            used to compute the projections.
+	 * @param screenVertexMath
+	 *            temporary {@link ScreenVertexMath}.
+	 */
+	void initAll( final Iterable< ? extends OverlayVertex< ?, ? > > vertices, final ScreenVertexMathBatch batch, final ScreenVertexMath screenVertexMath )
+	{
+		batch.clear();
+		pending.resetQuick();
+		for ( final OverlayVertex< ?, ? > vertex : vertices )
+		{
+			final int id = vertex.getInternalPoolIndex();
+			if ( !vertexToState.containsKey( id ) )
+			{
+				batch.add( vertex );
+				pending.add( id );
+			}
+		}
+		if ( pending.isEmpty() )
+			return;
+
+		batch.compute( transform );
+		for ( int i = 0; i < pending.size(); ++i )
+		{
+			screenVertexMath.init( batch, i, transform );
+			put( pending.getQuick( i ), screenVertexMath );
+		}
+	}
+
+	private void put( final int id, final ScreenVertexMath screenVertexMath )
+	{
+		if ( vertexToState.size() >= MAX_SIZE )
+		{
+			vertexToState.clear();
+			states = new double[ INITIAL_CAPACITY * ScreenVertexMath.STATE_SIZE ];
+		}
+		final int slot = vertexToState.size();
+		states = ensureCapacity( states, ( slot + 1 ) * ScreenVertexMath.STATE_SIZE );
+		screenVertexMath.store( states, slot * ScreenVertexMath.STATE_SIZE );
+		vertexToState.put( id, slot );
+	}
+
+	/**
+	 * Gets the viewer coordinates of the center of the specified vertex, from
+	 * the cache if possible.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @param gPos
+	 *            temporary array of size 3.
+	 * @param lPos
+	 *            receives the viewer coordinates.
+	 */
+	void getViewPos( final OverlayVertex< ?, ? > vertex, final double[] gPos, final double[] lPos )
+	{
+		final int id = vertex.getInternalPoolIndex();
+		int slot = vertexToPosition.get( id );
+		if ( slot < 0 )
+		{
+			vertex.localize( gPos );
+			transform.apply( gPos, lPos );
+			if ( vertexToPosition.size() >= MAX_SIZE )
+			{
+				vertexToPosition.clear();
+				positions = new double[ INITIAL_CAPACITY * 3 ];
+			}
+			slot = vertexToPosition.size();
+			positions = ensureCapacity( positions, 3 * ( slot + 1 ) );
+			System.arraycopy( lPos, 0, positions, 3 * slot, 3 );
+			vertexToPosition.put( id, slot );
+		}
+		else
+			System.arraycopy( positions, 3 * slot, lPos, 0, 3 );
+	}
+
+	private static double[] ensureCapacity( final double[] array, final int size )
+	{
+		return array.length >= size
+				? array
+				: Arrays.copyOf( array, Math.max( size, 2 * array.length ) );
+	}
+}
@@ -0,0 +1,399 @@
+package org.mastodon.views.bdv.overlay;
+
+import static org.mastodon.views.bdv.overlay.OverlayDisplayList.EDGE;
+import static org.mastodon.views.bdv.overlay.OverlayDisplayList.ELLIPSE;
+import static org.mastodon.views.bdv.overlay.OverlayDisplayList.STYLE_FOCUSED;
+import static org.mastodon.views.bdv.overlay.OverlayDisplayList.STYLE_HIGHLIGHTED;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import org.mastodon.ui.coloring.ColorCache;
+import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
+
+/**
+ * Paints an {@link OverlayDisplayList} by writing pixels directly into the
+ * {@code int[]} of an ARGB image, which is then drawn on the target
+ * {@link Graphics2D}. This is much faster than stroking shapes with Java2D
+ * when tens of thousands of spots are in view.
+ * <p>
+ * Edges are drawn with Bresenham's algorithm, ellipse outlines and points are
+ * filled scanline by scanline. The result is not antialiased, and follows the
+ * strokes of {@link DisplayListPainter} approximately. Labels are still drawn
+ * with Java2D.
+ * <p>
+ * The image has the resolution of the device, given by the scale of the
+ * transform of the target {@link Graphics2D}, so that the overlay is not
+ * upscaled on HiDPI screens.
+ * <p>
+ * This class is not thread-safe.
+ */
+class RasterDisplayListPainter
+{
+	/**
+	 * Length in pixels of the dashes and gaps of focused ellipses.
+	 */
+	private static final int DASH = 8, GAP = 3;
+
+	private final ColorCache colorCache = new ColorCache();
+
+	private final Ellipse labelEllipse = new Ellipse();
+
+	// tmp
+	private final double[] p = new double[ 4 ];
+
+	// tmp
+	private final double[] q = new double[ 4 ];
+
+	// tmp
+	private final double[] outer = new double[ 3 ];
+
+	// tmp
+	private final double[] inner = new double[ 3 ];
+
+	private BufferedImage image;
+
+	private int[] pixels;
+
+	private int width;
+
+	private int height;
+
+	/**
+	 * Size of a canvas pixel, in image pixels.
+	 */
+	private double scale;
+
+	/**
+	 * Paints the specified display list.
+	 *
+	 * @param graphics
+	 *            the graphics to paint on.
+	 * @param list
+	 *            the display list.
+	 * @param width
+	 *            the width of the canvas.
+	 * @param height
+	 *            the height of the canvas.
+	 */
+	void paint( final Graphics2D graphics, final OverlayDisplayList list, final int width, final int height )
+	{
+		if ( width <= 0 || height <= 0 )
+			return;
+
+		scale = OverlayGraphRenderer.getDeviceScale( graphics );
+		final int w = ( int ) Math.ceil( width * scale );
+		final int h = ( int ) Math.ceil( height * scale );
+		if ( image == null || image.getWidth() != w || image.getHeight() != h )
+		{
+			image = new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB_PRE );
+			pixels = ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData();
+		}
+		else
+			Arrays.fill( pixels, 0 );
+		this.width = w;
+		this.height = h;
+
+		for ( int i = 0; i < list.size(); ++i )
+		{
+			switch ( list.type( i ) )
+			{
+			case EDGE:
+				rasterizeEdge( list, i );
+				break;
+			case ELLIPSE:
+				rasterizeEllipse( list, i );
+				break;
+			default:
+				rasterizePoint( list, i );
+				break;
+			}
+		}
+
+		final AffineTransform transform = graphics.getTransform();
+		graphics.scale( 1 / scale, 1 / scale );
+		graphics.drawImage( image, 0, 0, null );
+		graphics.setTransform( transform );
+
+		for ( int i = 0; i < list.size(); ++i )
+		{
+			final String label = list.label( i );
+			if ( label != null )
+			{
+				graphics.setColor( colorCache.get( list.argb0( i ) ) );
+				labelEllipse.setCenter( list.get( i, 0 ), list.get( i, 1 ) );
+				OverlayGraphRenderer.drawEllipseLabel( graphics, labelEllipse, label );
+			}
+		}
+	}
+
+	private void rasterizeEdge( final OverlayDisplayList list, final int i )
+	{
+		// Same end points as Graphics2D.drawLine.
+		final int x0 = ( int ) ( ( int ) list.get( i, 0 ) * scale );
+		final int y0 = ( int ) ( ( int ) list.get( i, 1 ) * scale );
+		final int x1 = ( int ) ( ( int ) list.get( i, 2 ) * scale );
+		final int y1 = ( int ) ( ( int ) list.get( i, 3 ) * scale );
+		final int argb0 = list.argb0( i );
+		final int argb1 = list.argb1( i );
+		final int thickness = Math.max( 1, ( int ) Math.round( ( list.style( i ) == STYLE_HIGHLIGHTED ? 3 : 1 ) * scale ) );
+		final int minOffset = -thickness / 2;
+		final int maxOffset = minOffset + thickness - 1;
+
+		// Only walk the part of the line that is on the canvas.
+		final int dx = x1 - x0;
+		final int dy = y1 - y0;
+		final int n = Math.max( Math.abs( dx ), Math.abs( dy ) );
+		if ( n == 0 )
+			return;
+		final int m = thickness + 1;
+		double t0 = 0;
+		double t1 = 1;
+		p[ 0 ] = -dx;
+		p[ 1 ] = dx;
+		p[ 2 ] = -dy;
+		p[ 3 ] = dy;
+		q[ 0 ] = x0 + m;
+		q[ 1 ] = width + m - x0;
+		q[ 2 ] = y0 + m;
+		q[ 3 ] = height + m - y0;
+		for ( int k = 0; k < 4; ++k )
+		{
+			if ( p[ k ] == 0 )
+			{
+				if ( q[ k ] < 0 )
+					return;
+			}
+			else
+			{
+				final double t = q[ k ] / p[ k ];
+				if ( p[ k ] < 0 )
+					t0 = Math.max( t0, t );
+				else
+					t1 = Math.min( t1, t );
+			}
+		}
+		if ( t0 > t1 )
+			return;
+		final int first = ( int ) Math.floor( t0 * n );
+		final int last = ( int ) Math.ceil( t1 * n );
+
+		final boolean xMajor = Math.abs( dx ) >= Math.abs( dy );
+		final int sx = dx > 0 ? 1 : -1;
+		final int sy = dy > 0 ? 1 : -1;
+		final int adx = Math.abs( dx );
+		final int ady = Math.abs( dy );
+
+		for ( int s = first; s <= last; ++s )
+		{
+			// Bresenham, evaluated at step s: the minor coordinate is the
+			// rounded position of the line at the major coordinate.
+			final int x;
+			final int y;
+			if ( xMajor )
+			{
+				x = x0 + sx * s;
+				y = y0 + sy * ( int ) ( ( 2L * s * ady + adx ) / ( 2L * adx ) );
+			}
+			else
+			{
+				y = y0 + sy * s;
+				x = x0 + sx * ( int ) ( ( 2L * s * adx + ady ) / ( 2L * ady ) );
+			}
+			final int argb = argb0 == argb1 ? argb1 : ColorCache.interpolate( argb0, argb1, ( double ) s / n );
+			for ( int o = minOffset; o <= maxOffset; ++o )
+			{
+				if ( xMajor )
+					plot( x, y + o, argb );
+				else
+					plot( x + o, y, argb );
+			}
+		}
+	}
+
+	private void rasterizeEllipse( final OverlayDisplayList list, final int i )
+	{
+		final int style = list.style( i );
+		final double strokeWidth = style == STYLE_HIGHLIGHTED
+				? 4
+				: style == STYLE_FOCUSED
+						? 2
+						: 1;
+		final double half = 0.5 * strokeWidth * scale;
+		final double w = list.get( i, 3 ) * scale;
+		final double h = list.get( i, 4 ) * scale;
+		fillEllipse(
+				list.get( i, 0 ) * scale, list.get( i, 1 ) * scale, list.get( i, 2 ),
+				w + half, h + half,
+				w - half, h - half,
+				style == STYLE_FOCUSED,
+				list.argb0( i ) );
+	}
+
+	private void rasterizePoint( final OverlayDisplayList list, final int i )
+	{
+		// Same pixels as Graphics2D.fillOval and fillRect.
+		final double x = list.get( i, 0 );
+		final double y = list.get( i, 1 );
+		final double radius = list.get( i, 2 );
+		final int ox = ( int ) ( x - radius );
+		final int oy = ( int ) ( y - radius );
+		final int ow = ( int ) ( 2 * radius );
+		final int argb = list.argb0( i );
+		if ( list.style( i ) == STYLE_FOCUSED )
+		{
+			final int minX = ( int ) Math.round( ox * scale );
+			final int minY = ( int ) Math.round( oy * scale );
+			final int maxX = ( int ) Math.round( ( ox + ow ) * scale );
+			final int maxY = ( int ) Math.round( ( oy + ow ) * scale );
+			for ( int py = Math.max( minY, 0 ); py < Math.min( maxY, height ); ++py )
+				for ( int px = Math.max( minX, 0 ); px < Math.min( maxX, width ); ++px )
+					plot( px, py, argb );
+		}
+		else
+		{
+			final double r = 0.5 * ow;
+			fillEllipse( ( ox + r ) * scale, ( oy + r ) * scale, 0, r * scale, r * scale, 0, 0, false, argb );
+		}
+	}
+
+	/**
+	 * Fills the pixels whose centers are inside the outer ellipse and outside
+	 * the inner ellipse, scanline by scanline. Both ellipses have the same
+	 * center and rotation. Coordinates are in image pixels.
+	 *
+	 * @param cx
+	 *            x coordinate of the center.
+	 * @param cy
+	 *            y coordinate of the center.
+	 * @param theta
+	 *            rotation angle (in radians).
+	 * @param ow
+	 *            half-width of the outer ellipse.
+	 * @param oh
+	 *            half-height of the outer ellipse.
+	 * @param iw
+	 *            half-width of the inner ellipse, or 0 to fill the outer
+	 *            ellipse.
+	 * @param ih
+	 *            half-height of the inner ellipse, or 0 to fill the outer
+	 *            ellipse.
+	 * @param dashed
+	 *            whether to leave gaps along the outline.
+	 * @param argb
+	 *            the color.
+	 */
+	private void fillEllipse( final double cx, final double cy, final double theta, final double ow, final double oh, final double iw, final double ih, final boolean dashed, final int argb )
+	{
+		final double c = Math.cos( theta );
+		final double s = Math.sin( theta );
+		quadric( c, s, ow, oh, outer );
+		final boolean hasInner = iw > 0 && ih > 0;
+		if ( hasInner )
+			quadric( c, s, iw, ih, inner );
+
+		// half of the vertical extent of the outer ellipse.
+		final double ey = Math.sqrt( ow * ow * s * s + oh * oh * c * c );
+		final int minY = Math.max( ( int ) Math.ceil( cy - ey - 0.5 ), 0 );
+		final int maxY = Math.min( ( int ) Math.floor( cy + ey - 0.5 ), height - 1 );
+
+		// circumference of the outline, and angle of one dash period.
+		final double perimeter = Math.PI * ( 3 * ( ow + oh ) - Math.sqrt( ( 3 * ow + oh ) * ( ow + 3 * oh ) ) );
+		final double period = 2 * Math.PI * ( DASH + GAP ) * scale / perimeter;
+
+		for ( int py = minY; py <= maxY; ++py )
+		{
+			final double dy = py + 0.5 - cy;
+			final double ox0, ox1;
+			{
+				final double b = outer[ 1 ] * dy;
+				final double disc = b * b - 4 * outer[ 0 ] * ( outer[ 2 ] * dy * dy - 1 );
+				if ( disc < 0 )
+					continue;
+				final double sq = Math.sqrt( disc );
+				ox0 = ( -b - sq ) / ( 2 * outer[ 0 ] );
+				ox1 = ( -b + sq ) / ( 2 * outer[ 0 ] );
+			}
+			double ix0 = Double.POSITIVE_INFINITY;
+			double ix1 = Double.POSITIVE_INFINITY;
+			if ( hasInner )
+			{
+				final double b = inner[ 1 ] * dy;
+				final double disc = b * b - 4 * inner[ 0 ] * ( inner[ 2 ] * dy * dy - 1 );
+				if ( disc >= 0 )
+				{
+					final double sq = Math.sqrt( disc );
+					ix0 = ( -b - sq ) / ( 2 * inner[ 0 ] );
+					ix1 = ( -b + sq ) / ( 2 * inner[ 0 ] );
+				}
+			}
+
+			final int minX = Math.max( ( int ) Math.ceil( cx + ox0 - 0.5 ), 0 );
+			final int maxX = Math.min( ( int ) Math.floor( cx + ox1 - 0.5 ), width - 1 );
+			final int offset = py * width;
+			for ( int px = minX; px <= maxX; ++px )
+			{
+				final double dx = px + 0.5 - cx;
+				if ( dx > ix0 && dx < ix1 )
+				{
+					// skip the inside of the inner ellipse.
+					px = Math.max( px, ( int ) Math.floor( cx + ix1 - 0.5 ) );
+					continue;
+				}
+				if ( dashed )
+				{
+					final double angle = Math.atan2( ( -s * dx + c * dy ) / oh, ( c * dx + s * dy ) / ow ) + Math.PI;
+					if ( angle % period > period * DASH / ( DASH + GAP ) )
+						continue;
+				}
+				blend( offset + px, argb );
+			}
+		}
+	}
+
+	/**
+	 * Computes the coefficients {@code A, B, C} of the ellipse
+	 * {@code A dx^2 + B dx dy + C dy^2 = 1} with the specified rotation and
+	 * half-axes.
+	 */
+	private static void quadric( final double c, final double s, final double w, final double h, final double[] coefficients )
+	{
+		final double iw2 = 1 / ( w * w );
+		final double ih2 = 1 / ( h * h );
+		coefficients[ 0 ] = c * c * iw2 + s * s * ih2;
+		coefficients[ 1 ] = 2 * c * s * ( iw2 - ih2 );
+		coefficients[ 2 ] = s * s * iw2 + c * c * ih2;
+	}
+
+	private void plot( final int x, final int y, final int argb )
+	{
+		if ( x >= 0 && x < width && y >= 0 && y < height )
+			blend( y * width + x, argb );
+	}
+
+	/**
+	 * Blends the specified non-premultiplied color over the premultiplied
+	 * pixel at the specified index.
+	 */
+	private void blend( final int index, final int argb )
+	{
+		final int a = argb >>> 24;
+		if ( a == 0 )
+			return;
+		final int ia = 255 - a;
+		final int dst = pixels[ index ];
+		final int ra = a + div255( ( dst >>> 24 ) * ia );
+		final int rr = div255( ( ( argb >> 16 ) & 0xff ) * a ) + div255( ( ( dst >> 16 ) & 0xff ) * ia );
+		final int rg = div255( ( ( argb >> 8 ) & 0xff ) * a ) + div255( ( ( dst >> 8 ) & 0xff ) * ia );
+		final int rb = div255( ( argb & 0xff ) * a ) + div255( ( dst & 0xff ) * ia );
+		pixels[ index ] = ( ra << 24 ) | ( rr << 16 ) | ( rg << 8 ) | rb;
+	}
+
+	private static int div255( final int x )
+	{
+		return ( x + 1 + ( x >> 8 ) ) >> 8;
+	}
+}
@@ -17,6 +17,9 @@ public class RenderSettings implements Style< RenderSettings >
 	public static final double DEFAULT_LIMIT_FOCUS_RANGE = 100.;
 	public static final boolean DEFAULT_USE_ANTI_ALIASING = true;
 	public static final boolean DEFAULT_USE_GRADIENT = false;
+	public static final boolean DEFAULT_USE_MULTI_THREADING = false;
+	public static final boolean DEFAULT_USE_FAST_RENDERING = true;
+	public static final int DEFAULT_FAST_RENDERING_SPOT_COUNT = 10000;
 	public static final boolean DEFAULT_DRAW_SPOTS = true;
 	public static final boolean DEFAULT_DRAW_LINKS = true;
 	public static final boolean DEFAULT_DRAW_ELLIPSE = true;
@@ -68,6 +71,9 @@ public class RenderSettings implements Style< RenderSettings >
 		name = settings.name;
 		useAntialiasing = settings.useAntialiasing;
 		useGradient = settings.useGradient;
+		useMultiThreading = settings.useMultiThreading;
+		useFastRendering = settings.useFastRendering;
+		fastRenderingSpotCount = settings.fastRenderingSpotCount;
 		timeLimit = settings.timeLimit;
 		drawLinks = settings.drawLinks;
 		drawSpots = settings.drawSpots;
@@ -114,6 +120,22 @@ public class RenderSettings implements Style< RenderSettings >
 	 */
 	private boolean useGradient;
 
+	/**
+	 * If {@code true}, paint the overlay in horizontal bands, in parallel.
+	 */
+	private boolean useMultiThreading;
+
+	/**
+	 * If {@code true}, rasterize the overlay directly into an image buffer
+	 * when more than {@link #fastRenderingSpotCount} spots are visible.
+	 */
+	private boolean useFastRendering;
+
+	/**
+	 * The number of visible spots above which fast rendering is used.
+	 */
+	private int fastRenderingSpotCount;
+
 	/**
 	 * Maximum number of timepoints into the past for which outgoing edges
 	 * should be drawn.
@@ -257,6 +279,87 @@ public class RenderSettings implements Style< RenderSettings >
 		}
 	}
 
+	/**
+	 * Returns whether the overlay is painted by several threads.
+	 *
+	 * @return {@code true} if the overlay is painted in parallel.
+	 */
+	public boolean getUseMultiThreading()
+	{
+		return useMultiThreading;
+	}
+
+	/**
+	 * Sets whether to paint the overlay by several threads, each painting a
+	 * horizontal band of the view.
+	 *
+	 * @param useMultiThreading
+	 *            whether to paint the overlay in parallel.
+	 */
+	public synchronized void setUseMultiThreading( final boolean useMultiThreading )
+	{
+		if ( this.useMultiThreading != useMultiThreading )
+		{
+			this.useMultiThreading = useMultiThreading;
+			notifyListeners();
+		}
+	}
+
+	/**
+	 * Returns whether the overlay is rasterized directly into an image buffer
+	 * when many spots are visible. For the number of spots, see
+	 * {@link #getFastRenderingSpotCount()}.
+	 *
+	 * @return {@code true} if fast rendering is used for dense views.
+	 */
+	public boolean getUseFastRendering()
+	{
+		return useFastRendering;
+	}
+
+	/**
+	 * Sets whether to rasterize the overlay directly into an image buffer,
+	 * without anti-aliasing, when many spots are visible. For the number of
+	 * spots, see {@link #setFastRenderingSpotCount(int)}.
+	 *
+	 * @param useFastRendering
+	 *            whether to use fast rendering for dense views.
+	 */
+	public synchronized void setUseFastRendering( final boolean useFastRendering )
+	{
+		if ( this.useFastRendering != useFastRendering )
+		{
+			this.useFastRendering = useFastRendering;
+			notifyListeners();
+		}
+	}
+
+	/**
+	 * Gets the number of visible spots above which fast rendering is used.
+	 *
+	 * @return the number of visible spots above which fast rendering is used.
+	 */
+	public int getFastRenderingSpotCount()
+	{
+		return fastRenderingSpotCount;
+	}
+
+	/**
+	 * Sets the number of visible spots above which fast rendering is used.
+	 *
+	 * @param fastRenderingSpotCount
+	 *            the number of visible spots above which fast rendering is
+	 *            used.
+	 */
+	public synchronized void setFastRenderingSpotCount( final int fastRenderingSpotCount )
+	{
+		if ( this.fastRenderingSpotCount != fastRenderingSpotCount )
+		{
+			this.fastRenderingSpotCount = fastRenderingSpotCount;
+			notifyListeners();
+		}
+	}
+
 	/**
 	 * Returns whether a gradient is used for drawing links.
 	 *
@@ -681,6 +784,9 @@ public class RenderSettings implements Style< RenderSettings >
 		df = new RenderSettings();
 		df.useAntialiasing = DEFAULT_USE_ANTI_ALIASING;
 		df.useGradient = DEFAULT_USE_GRADIENT;
+		df.useMultiThreading = DEFAULT_USE_MULTI_THREADING;
+		df.useFastRendering = DEFAULT_USE_FAST_RENDERING;
+		df.fastRenderingSpotCount = DEFAULT_FAST_RENDERING_SPOT_COUNT;
 		df.timeLimit = DEFAULT_LIMIT_TIME_RANGE;
 		df.drawLinks = DEFAULT_DRAW_LINKS;
 		df.drawSpots = DEFAULT_DRAW_SPOTS;
@@ -29,9 +29,18 @@ public class ScreenEdgeMath< V extends OverlayVertex< V, E >, E extends OverlayE
 
 	private final V ref2;
 
-	private final ScreenVertexMath svmSource = new ScreenVertexMath();
+	/**
+	 * source position in viewer coordinate system.
+	 */
+	private final double[] vPosSource = new double[ 3 ];
+
+	/**
+	 * target position in viewer coordinate system.
+	 */
+	private final double[] vPosTarget = new double[ 3 ];
 
-	private final ScreenVertexMath svmTarget = new ScreenVertexMath();
+	// tmp
+	private final double[] pos = new double[ 3 ];
 
 	/**
 	 * min of edge bounding box in viewer coordinate system.
@@ -57,10 +66,11 @@ public class ScreenEdgeMath< V extends OverlayVertex< V, E >, E extends OverlayE
 
 	public void init( final E edge, final AffineTransform3D viewerTransform )
 	{
-		svmSource.init( edge.getSource( ref1 ), viewerTransform );
-		svmTarget.init( edge.getTarget( ref2 ), viewerTransform );
-		final double[] vPosSource = svmSource.getViewPos();
-		final double[] vPosTarget = svmTarget.getViewPos();
+		// Only the vertex positions are needed, not their ellipsoids.
+		edge.getSource( ref1 ).localize( pos );
+		viewerTransform.apply( pos, vPosSource );
+		edge.getTarget( ref2 ).localize( pos );
+		viewerTransform.apply( pos, vPosTarget );
 		for ( int d = 0; d < 3; ++d )
 		{
 			if ( vPosSource[ d ] < vPosTarget[ d ] )
@@ -0,0 +1,367 @@
+package org.mastodon.views.bdv.overlay;
+
+import java.util.Arrays;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.util.GeometryUtil;
+import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
+import org.mastodon.views.bdv.overlay.util.BdvRendererUtil;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Screen-space index of the vertices and edges painted by an
+ * {@link OverlayGraphRenderer} in one frame, used to find the objects under
+ * the mouse without iterating and re-projecting all visible objects.
+ * <p>
+ * Vertices and edges are stored with their screen bounding boxes in a uniform
+ * grid of {@link #CELL_SIZE} pixels covering the canvas. The index is filled
+ * while a frame is painted, and is only valid for the viewer transform,
+ * timepoint, canvas size and render settings it was painted with, as long as
+ * the graph does not change. This is checked with
+ * {@link #isValid(AffineTransform3D, int, int, int, RenderSettings, int)}.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <V>
+ *            the type of model vertex.
+ * @param <E>
+ *            the type of model edge.
+ */
+class ScreenHitIndex< V extends OverlayVertex< V, E >, E extends OverlayEdge< E, V > >
+{
+	/**
+	 * The width and height of a grid cell, in pixels.
+	 */
+	static final int CELL_SIZE = 32;
+
+	private final AffineTransform3D transform;
+
+	private int timepoint;
+
+	private int width;
+
+	private int height;
+
+	private RenderSettings settings;
+
+	private int modCount;
+
+	private boolean valid;
+
+	private final RefList< V > vertices;
+
+	private final RefList< V > visibleVertices;
+
+	private final RefList< E > edges;
+
+	/**
+	 * The screen coordinates of the edges, {@code x0, y0, x1, y1} for each
+	 * edge.
+	 */
+	private final TIntArrayList edgeCoords;
+
+	private final Grid vertexGrid;
+
+	private final Grid edgeGrid;
+
+	private final double[] bounds = new double[ 4 ];
+
+	ScreenHitIndex( final OverlayGraph< V, E > graph )
+	{
+		transform = new AffineTransform3D();
+		vertices = RefCollections.createRefList( graph.vertices() );
+		visibleVertices = RefCollections.createRefList( graph.vertices() );
+		edges = RefCollections.createRefList( graph.edges() );
+		edgeCoords = new TIntArrayList();
+		vertexGrid = new Grid();
+		edgeGrid = new Grid();
+		valid = false;
+	}
+
+	/**
+	 * Empties this index, to fill it with the objects of a new frame.
+	 *
+	 * @param transform
+	 *            the viewer transform of the frame.
+	 * @param timepoint
+	 *            the timepoint of the frame.
+	 * @param width
+	 *            the width of the canvas.
+	 * @param height
+	 *            the height of the canvas.
+	 * @param settings
+	 *            the render settings of the frame.
+	 * @param modCount
+	 *            the modification count of the renderer when the frame
+	 *            started.
+	 */
+	void reset( final AffineTransform3D transform, final int timepoint, final int width, final int height, final RenderSettings settings, final int modCount )
+	{
+		this.transform.set( transform );
+		this.timepoint = timepoint;
+		this.width = width;
+		this.height = height;
+		this.settings = settings;
+		this.modCount = modCount;
+		valid = false;
+		vertices.clear();
+		visibleVertices.clear();
+		edges.clear();
+		edgeCoords.resetQuick();
+		vertexGrid.reset( width, height );
+		edgeGrid.reset( width, height );
+	}
+
+	/**
+	 * Adds a painted edge.
+	 */
+	void addEdge( final E edge, final int x0, final int y0, final int x1, final int y1 )
+	{
+		final int i = edges.size();
+		edges.add( edge );
+		edgeCoords.add( x0 );
+		edgeCoords.add( y0 );
+		edgeCoords.add( x1 );
+		edgeCoords.add( y1 );
+		edgeGrid.add( i, Math.min( x0, x1 ), Math.min( y0, y1 ), Math.max( x0, x1 ), Math.max( y0, y1 ) );
+	}
+
+	/**
+	 * Adds a vertex that might be hit.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @param x
+	 *            the X coordinate of its center on screen.
+	 * @param y
+	 *            the Y coordinate of its center on screen.
+	 * @param intersectEllipse
+	 *            the intersection of the vertex with the view plane if it is
+	 *            painted, or {@code null}.
+	 * @param projectEllipse
+	 *            the projection of the vertex on the view plane if it is
+	 *            painted, or {@code null}.
+	 * @param visible
+	 *            whether the vertex is part of the visible vertices of the
+	 *            frame.
+	 */
+	void addVertex( final V vertex, final double x, final double y, final Ellipse intersectEllipse, final Ellipse projectEllipse, final boolean visible )
+	{
+		bounds[ 0 ] = x;
+		bounds[ 1 ] = y;
+		bounds[ 2 ] = x;
+		bounds[ 3 ] = y;
+		if ( intersectEllipse != null )
+			addBounds( intersectEllipse, bounds );
+		if ( projectEllipse != null )
+			addBounds( projectEllipse, bounds );
+		final int i = vertices.size();
+		vertices.add( vertex );
+		vertexGrid.add( i, bounds[ 0 ], bounds[ 1 ], bounds[ 2 ], bounds[ 3 ] );
+		if ( visible )
+			visibleVertices.add( vertex );
+	}
+
+	/**
+	 * Finishes filling this index, and makes it valid.
+	 */
+	void finish()
+	{
+		vertexGrid.build();
+		edgeGrid.build();
+		valid = true;
+	}
+
+	/**
+	 * Marks this index as invalid.
+	 */
+	void invalidate()
+	{
+		valid = false;
+	}
+
+	/**
+	 * Returns whether this index holds the objects painted with the specified
+	 * parameters.
+	 */
+	boolean isValid( final AffineTransform3D transform, final int timepoint, final int width, final int height, final RenderSettings settings, final int modCount )
+	{
+		return valid
+				&& this.modCount == modCount
+				&& this.timepoint == timepoint
+				&& this.width == width
+				&& this.height == height
+				&& this.settings == settings
+				&& BdvRendererUtil.isEqual( this.transform, transform );
+	}
+
+	/**
+	 * Returns the painted edge closest to the specified location.
+	 *
+	 * @return the closest edge within tolerance, or {@code null} if there is
+	 *         none.
+	 */
+	E getEdgeAt( final int x, final int y, final double tolerance, final TIntArrayList tmp, final E ref )
+	{
+		edgeGrid.query( x - tolerance, y - tolerance, x + tolerance, y + tolerance, tmp );
+		final double squTolerance = tolerance * tolerance;
+		double bestSquDist = Double.POSITIVE_INFINITY;
+		int best = -1;
+		for ( int k = 0; k < tmp.size(); ++k )
+		{
+			final int i = tmp.get( k );
+			final double squDist = GeometryUtil.squSegmentDist( x, y,
+					edgeCoords.get( 4 * i ), edgeCoords.get( 4 * i + 1 ),
+					edgeCoords.get( 4 * i + 2 ), edgeCoords.get( 4 * i + 3 ) );
+			if ( squDist <= squTolerance && squDist < bestSquDist )
+			{
+				bestSquDist = squDist;
+				best = i;
+			}
+		}
+		return best < 0 ? null : edges.get( best, ref );
+	}
+
+	/**
+	 * Collects the indices of the vertices that might be hit within the
+	 * specified distance of the specified location. Indices might be
+	 * repeated.
+	 */
+	void getVertexCandidates( final double x, final double y, final double distance, final TIntArrayList candidates )
+	{
+		vertexGrid.query( x - distance, y - distance, x + distance, y + distance, candidates );
+	}
+
+	/**
+	 * Returns the vertex with the specified index.
+	 */
+	V getVertex( final int i, final V ref )
+	{
+		return vertices.get( i, ref );
+	}
+
+	/**
+	 * Adds the visible vertices of the frame to the specified list.
+	 */
+	void getVisibleVertices( final RefList< V > list )
+	{
+		list.addAll( visibleVertices );
+	}
+
+	/**
+	 * Extends the bounding box {@code minX, minY, maxX, maxY} to contain the
+	 * specified ellipse.
+	 */
+	private static void addBounds( final Ellipse ellipse, final double[] bounds )
+	{
+		final double[] c = ellipse.getCenter();
+		final double r = Math.max( ellipse.getHalfWidth(), ellipse.getHalfHeight() );
+		bounds[ 0 ] = Math.min( bounds[ 0 ], c[ 0 ] - r );
+		bounds[ 1 ] = Math.min( bounds[ 1 ], c[ 1 ] - r );
+		bounds[ 2 ] = Math.max( bounds[ 2 ], c[ 0 ] + r );
+		bounds[ 3 ] = Math.max( bounds[ 3 ], c[ 1 ] + r );
+	}
+
+	/**
+	 * Uniform grid of entries with bounding boxes. Entries are accumulated
+	 * with {@link #add(int, double, double, double, double)}, then sorted by
+	 * cell by {@link #build()}. Bounding boxes outside the grid are clamped to
+	 * its border cells.
+	 */
+	private static final class Grid
+	{
+		private int numCellsX;
+
+		private int numCellsY;
+
+		/**
+		 * The entries and their cell ranges, {@code entry, cx0, cy0, cx1, cy1}
+		 * for each entry.
+		 */
+		private final TIntArrayList ranges = new TIntArrayList();
+
+		/**
+		 * The entries of cell {@code c} are
+		 * {@code cellEntries[cellStart[c]]} to
+		 * {@code cellEntries[cellStart[c+1]-1]}.
+		 */
+		private int[] cellStart = new int[ 1 ];
+
+		private int[] cellEntries = new int[ 0 ];
+
+		void reset( final int width, final int height )
+		{
+			numCellsX = Math.max( 1, ( width + CELL_SIZE - 1 ) / CELL_SIZE );
+			numCellsY = Math.max( 1, ( height + CELL_SIZE - 1 ) / CELL_SIZE );
+			ranges.resetQuick();
+		}
+
+		void add( final int entry, final double minX, final double minY, final double maxX, final double maxY )
+		{
+			ranges.add( entry );
+			ranges.add( cellX( minX ) );
+			ranges.add( cellY( minY ) );
+			ranges.add( cellX( maxX ) );
+			ranges.add( cellY( maxY ) );
+		}
+
+		void build()
+		{
+			final int numCells = numCellsX * numCellsY;
+			if ( cellStart.length < numCells + 1 )
+				cellStart = new int[ numCells + 1 ];
+			Arrays.fill( cellStart, 0, numCells + 1, 0 );
+
+			// Count the entries of each cell.
+			for ( int k = 0; k < ranges.size(); k += 5 )
+				for ( int cy = ranges.get( k + 2 ); cy <= ranges.get( k + 4 ); ++cy )
+					for ( int cx = ranges.get( k + 1 ); cx <= ranges.get( k + 3 ); ++cx )
+						++cellStart[ cy * numCellsX + cx + 1 ];
+			for ( int c = 0; c < numCells; ++c )
+				cellStart[ c + 1 ] += cellStart[ c ];
+
+			// Fill the cells, using cellStart[c] as the insertion position in
+			// cell c. Afterwards, cellStart[c] is the start of cell c+1.
+			final int numEntries = cellStart[ numCells ];
+			if ( cellEntries.length < numEntries )
+				cellEntries = new int[ numEntries ];
+			for ( int k = 0; k < ranges.size(); k += 5 )
+				for ( int cy = ranges.get( k + 2 ); cy <= ranges.get( k + 4 ); ++cy )
+					for ( int cx = ranges.get( k + 1 ); cx <= ranges.get( k + 3 ); ++cx )
+						cellEntries[ cellStart[ cy * numCellsX + cx ]++ ] = ranges.get( k );
+			// Shift back.
+			for ( int c = numCells; c > 0; --c )
+				cellStart[ c ] = cellStart[ c - 1 ];
+			cellStart[ 0 ] = 0;
+		}
+
+		void query( final double minX, final double minY, final double maxX, final double maxY, final TIntArrayList result )
+		{
+			result.resetQuick();
+			final int cx0 = cellX( minX );
+			final int cx1 = cellX( maxX );
+			final int cy0 = cellY( minY );
+			final int cy1 = cellY( maxY );
+			for ( int cy = cy0; cy <= cy1; ++cy )
+				for ( int cx = cx0; cx <= cx1; ++cx )
+				{
+					final int c = cy * numCellsX + cx;
+					for ( int k = cellStart[ c ]; k < cellStart[ c + 1 ]; ++k )
+						result.add( cellEntries[ k ] );
+				}
+		}
+
+		private int cellX( final double x )
+		{
+			return Math.max( 0, Math.min( numCellsX - 1, ( int ) Math.floor( x / CELL_SIZE ) ) );
+		}
+
+		private int cellY( final double y )
+		{
+			return Math.max( 0, Math.min( numCellsY - 1, ( int ) Math.floor( y / CELL_SIZE ) ) );
+		}
+	}
+}
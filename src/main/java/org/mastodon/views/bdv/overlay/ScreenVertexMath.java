@@ -1,7 +1,5 @@
 package org.mastodon.views.bdv.overlay;
 
-import org.mastodon.views.bdv.overlay.util.JamaEigenvalueDecomposition;
-
 import net.imglib2.RealLocalizable;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.util.LinAlgHelpers;
@@ -156,12 +154,6 @@ public class ScreenVertexMath
 
 	private boolean projectedPrecisionComputed;
 
-	// tmp
-	private final JamaEigenvalueDecomposition eig2 = new JamaEigenvalueDecomposition( 2 );
-
-	// tmp
-	private final JamaEigenvalueDecomposition eig3 = new JamaEigenvalueDecomposition( 3 );
-
 	// tmp
 	private final double[][] T = new double[ 3 ][ 3 ];
 
@@ -207,11 +199,42 @@ public class ScreenVertexMath
 	 *            the transform.
 	 */
 	public void init( final OverlayVertex< ?, ? > vertex, final AffineTransform3D viewerTransform )
+	{
+		vertex.getCovariance( S );
+		vertex.localize( pos );
+		init( viewerTransform );
+	}
+
+	/**
+	 * (Re-)initialize for a vertex with the specified position and covariance,
+	 * and the given viewer transform.
+	 *
+	 * @param position
+	 *            the position of the vertex.
+	 * @param covariance
+	 *            the covariance of the vertex.
+	 * @param viewerTransform
+	 *            the transform.
+	 */
+	void init( final double[] position, final double[][] covariance, final AffineTransform3D viewerTransform )
+	{
+		for ( int r = 0; r < 3; ++r )
+		{
+			pos[ r ] = position[ r ];
+			for ( int c = 0; c < 3; ++c )
+				S[ r ][ c ] = covariance[ r ][ c ];
+		}
+		init( viewerTransform );
+	}
+
+	/**
+	 * Transforms {@link #pos} and {@link #S} to the viewer coordinate system.
+	 */
+	private void init( final AffineTransform3D viewerTransform )
 	{
 		this.transform = viewerTransform;
 
 		// transform spot covariance into viewer coordinates => vS
-		vertex.getCovariance( S );
 		for ( int r = 0; r < 3; ++r )
 			for ( int c = 0; c < 3; ++c )
 				T[ r ][ c ] = transform.get( r, c );
@@ -219,7 +242,6 @@ public class ScreenVertexMath
 		LinAlgHelpers.multABT( TS, T, vS );
 
 		// transform spot position into viewer coordinates => vPos
-		vertex.localize( pos );
 		transform.apply( pos, vPos );
 
 		projectionComputed = false;
@@ -228,6 +250,151 @@ public class ScreenVertexMath
 		projectedPrecisionComputed = false;
 	}
 
+	/**
+	 * (Re-)initialize for vertex {@code i} of the specified batch, after
+	 * {@link ScreenVertexMathBatch#compute(AffineTransform3D)}. This is
+	 * equivalent to {@link #init(OverlayVertex, AffineTransform3D)} with that
+	 * vertex and transform, using the values computed by the batch.
+	 *
+	 * @param batch
+	 *            the batch.
+	 * @param i
+	 *            the index of the vertex in the batch.
+	 * @param viewerTransform
+	 *            the transform the batch was computed with.
+	 */
+	void init( final ScreenVertexMathBatch batch, final int i, final AffineTransform3D viewerTransform )
+	{
+		this.transform = viewerTransform;
+
+		final double[][] data = batch.data;
+		for ( int d = 0; d < 3; ++d )
+		{
+			pos[ d ] = data[ ScreenVertexMathBatch.X + d ][ i ];
+			vPos[ d ] = data[ ScreenVertexMathBatch.VX + d ][ i ];
+		}
+		S[ 0 ][ 0 ] = data[ ScreenVertexMathBatch.S00 ][ i ];
+		S[ 0 ][ 1 ] = S[ 1 ][ 0 ] = data[ ScreenVertexMathBatch.S01 ][ i ];
+		S[ 0 ][ 2 ] = S[ 2 ][ 0 ] = data[ ScreenVertexMathBatch.S02 ][ i ];
+		S[ 1 ][ 1 ] = data[ ScreenVertexMathBatch.S11 ][ i ];
+		S[ 1 ][ 2 ] = S[ 2 ][ 1 ] = data[ ScreenVertexMathBatch.S12 ][ i ];
+		S[ 2 ][ 2 ] = data[ ScreenVertexMathBatch.S22 ][ i ];
+		vS[ 0 ][ 0 ] = data[ ScreenVertexMathBatch.V00 ][ i ];
+		vS[ 0 ][ 1 ] = vS[ 1 ][ 0 ] = data[ ScreenVertexMathBatch.V01 ][ i ];
+		vS[ 0 ][ 2 ] = vS[ 2 ][ 0 ] = data[ ScreenVertexMathBatch.V02 ][ i ];
+		vS[ 1 ][ 1 ] = data[ ScreenVertexMathBatch.V11 ][ i ];
+		vS[ 1 ][ 2 ] = vS[ 2 ][ 1 ] = data[ ScreenVertexMathBatch.V12 ][ i ];
+		vS[ 2 ][ 2 ] = data[ ScreenVertexMathBatch.V22 ][ i ];
+
+		projectEllipse.setTheta( data[ ScreenVertexMathBatch.P_THETA ][ i ] );
+		projectEllipse.setAxisHalfLength( data[ ScreenVertexMathBatch.P_W ][ i ], data[ ScreenVertexMathBatch.P_H ][ i ] );
+		projectEllipse.setCenter( vPos );
+
+		intersectsViewPlane = batch.intersects[ i ];
+		intersectEllipse.setTheta( data[ ScreenVertexMathBatch.I_THETA ][ i ] );
+		intersectEllipse.setAxisHalfLength( data[ ScreenVertexMathBatch.I_W ][ i ], data[ ScreenVertexMathBatch.I_H ][ i ] );
+		intersectEllipse.setCenter( data[ ScreenVertexMathBatch.I_X ][ i ], data[ ScreenVertexMathBatch.I_Y ][ i ] );
+		iS[ 0 ][ 0 ] = data[ ScreenVertexMathBatch.I00 ][ i ];
+		iS[ 0 ][ 1 ] = iS[ 1 ][ 0 ] = data[ ScreenVertexMathBatch.I01 ][ i ];
+		iS[ 1 ][ 1 ] = data[ ScreenVertexMathBatch.I11 ][ i ];
+
+		projectionComputed = true;
+		intersectionComputed = true;
+		precisionComputed = false;
+		projectedPrecisionComputed = false;
+	}
+
+	/**
+	 * The number of values written by {@link #store(double[], int)}.
+	 */
+	static final int STATE_SIZE = 30;
+
+	/**
+	 * Computes all the values derived from the vertex and viewer transform,
+	 * and writes them to the specified array, so that they can be restored
+	 * with {@link #restore(double[], int, AffineTransform3D)} for the same
+	 * vertex and transform.
+	 *
+	 * @param data
+	 *            the array to write to.
+	 * @param offset
+	 *            the index of the first of the {@link #STATE_SIZE} values to
+	 *            write.
+	 */
+	void store( final double[] data, final int offset )
+	{
+		computeProjection();
+		computeIntersection();
+		int i = offset;
+		for ( int r = 0; r < 3; ++r )
+		{
+			data[ i++ ] = pos[ r ];
+			data[ i++ ] = vPos[ r ];
+			for ( int c = r; c < 3; ++c )
+			{
+				data[ i++ ] = S[ r ][ c ];
+				data[ i++ ] = vS[ r ][ c ];
+			}
+		}
+		data[ i++ ] = intersectsViewPlane ? 1 : 0;
+		data[ i++ ] = projectEllipse.getTheta();
+		data[ i++ ] = projectEllipse.getHalfWidth();
+		data[ i++ ] = projectEllipse.getHalfHeight();
+		data[ i++ ] = intersectEllipse.getTheta();
+		data[ i++ ] = intersectEllipse.getHalfWidth();
+		data[ i++ ] = intersectEllipse.getHalfHeight();
+		data[ i++ ] = intersectEllipse.getCenter()[ 0 ];
+		data[ i++ ] = intersectEllipse.getCenter()[ 1 ];
+		data[ i++ ] = iS[ 0 ][ 0 ];
+		data[ i++ ] = iS[ 0 ][ 1 ];
+		data[ i++ ] = iS[ 1 ][ 1 ];
+	}
+
+	/**
+	 * Re-initializes from values written by {@link #store(double[], int)}.
+	 * This is equivalent to {@link #init(OverlayVertex, AffineTransform3D)}
+	 * with the vertex and viewer transform they were computed for, without
+	 * recomputing them.
+	 *
+	 * @param data
+	 *            the array to read from.
+	 * @param offset
+	 *            the index of the first of the {@link #STATE_SIZE} values to
+	 *            read.
+	 * @param viewerTransform
+	 *            the transform.
+	 */
+	void restore( final double[] data, final int offset, final AffineTransform3D viewerTransform )
+	{
+		this.transform = viewerTransform;
+		int i = offset;
+		for ( int r = 0; r < 3; ++r )
+		{
+			pos[ r ] = data[ i++ ];
+			vPos[ r ] = data[ i++ ];
+			for ( int c = r; c < 3; ++c )
+			{
+				S[ r ][ c ] = S[ c ][ r ] = data[ i++ ];
+				vS[ r ][ c ] = vS[ c ][ r ] = data[ i++ ];
+			}
+		}
+		intersectsViewPlane = data[ i++ ] != 0;
+		projectEllipse.setTheta( data[ i++ ] );
+		projectEllipse.setAxisHalfLength( data[ i++ ], data[ i++ ] );
+		projectEllipse.setCenter( vPos );
+		intersectEllipse.setTheta( data[ i++ ] );
+		intersectEllipse.setAxisHalfLength( data[ i++ ], data[ i++ ] );
+		intersectEllipse.setCenter( data[ i++ ], data[ i++ ] );
+		iS[ 0 ][ 0 ] = data[ i++ ];
+		iS[ 0 ][ 1 ] = iS[ 1 ][ 0 ] = data[ i++ ];
+		iS[ 1 ][ 1 ] = data[ i++ ];
+
+		projectionComputed = true;
+		intersectionComputed = true;
+		precisionComputed = false;
+		projectedPrecisionComputed = false;
+	}
+
 	/**
 	 * Get spot position in viewer coordinate system.
 	 *
@@ -461,16 +628,8 @@ public class ScreenVertexMath
 		 * decompose the upper 2x2 sub-matrix of S, i.e., the spot
 		 * covariance in XY of the viewer coordinate system.
 		 */
-		eig2.decomposeSymmetric( vS );
-		final double[] eigVals2 = eig2.getRealEigenvalues();
-		final double w = Math.sqrt( eigVals2[ 0 ] );
-		final double h = Math.sqrt( eigVals2[ 1 ] );
-		final double c = eig2.getV()[ 0 ][ 0 ];
-		final double s = eig2.getV()[ 1 ][ 0 ];
-
-		projectEllipse.setTheta( Math.atan2( s, c ) );
+		setEllipse( projectEllipse, vS[ 0 ][ 0 ], vS[ 0 ][ 1 ], vS[ 1 ][ 1 ] );
 		projectEllipse.setCenter( vPos );
-		projectEllipse.setAxisHalfLength( w, h );
 
 		projectionComputed = true;
 	}
@@ -480,34 +639,15 @@ public class ScreenVertexMath
 		if ( intersectionComputed )
 			return;
 
-		eig3.decomposeSymmetric( vS );
-		final double[] eigVals = eig3.getRealEigenvalues();
-		final double[][] V = eig3.getV();
-		for ( int i = 0; i < 3; ++i )
-		{
-			final double e = Math.sqrt( eigVals[ i ] );
-			final double inve = 1.0 / e;
-			for ( int j = 0; j < 3; ++j )
-			{
-				T[ j ][ i ] = e * V[ j ][ i ];
-				TS[ j ][ i ] = inve * V[ j ][ i ];
-			}
-		}
 		/*
-		 * now T and TS^T transform from unit sphere to covariance ellipsoid and
-		 * vice versa
+		 * The intersection of the ellipsoid with the z=0 plane is the ellipse
+		 * of the XY covariance conditioned on z=0, scaled by the squared
+		 * radius of the slice through the unit ellipsoid.
 		 */
-
-		final double[] vx = TS[ 0 ];
-		final double[] vy = TS[ 1 ];
-		final double[] vz = TS[ 2 ];
-
 		final double z = vPos[ 2 ];
-		LinAlgHelpers.cross( vx, vy, vn );
-		LinAlgHelpers.normalize( vn );
-		LinAlgHelpers.scale( vz, z, vz );
-		final double d = LinAlgHelpers.dot( vn, vz );
-		if ( Math.abs( d ) >= 1 )
+		final double inv = 1.0 / vS[ 2 ][ 2 ];
+		final double radius2 = 1.0 - z * z * inv;
+		if ( !( radius2 > 0 ) )
 		{
 			intersectsViewPlane = false;
 		}
@@ -515,38 +655,32 @@ public class ScreenVertexMath
 		{
 			intersectsViewPlane = true;
 
-			final double radius2 = 1.0 - d * d;
-			LinAlgHelpers.scale( vn, LinAlgHelpers.dot( vn, vz ), vn );
-			LinAlgHelpers.subtract( vz, vn, vz );
-			LinAlgHelpers.mult( T, vz, vn );
-			final double xshift = vn[ 0 ];
-			final double yshift = vn[ 1 ];
-
-			final double c2 = LinAlgHelpers.squareLength( vx );
-			final double c = Math.sqrt( c2 );
-			final double a = LinAlgHelpers.dot( vx, vy ) / c;
-			final double a2 = a * a;
-			final double b2 = LinAlgHelpers.squareLength( vy ) - a2;
-			iS[ 0 ][ 0 ] = radius2 * ( 1.0 / c2 + a2 / ( b2 * c2 ) );
-			iS[ 0 ][ 1 ] = radius2 * -a / ( b2 * c );
+			iS[ 0 ][ 0 ] = radius2 * ( vS[ 0 ][ 0 ] - vS[ 0 ][ 2 ] * vS[ 0 ][ 2 ] * inv );
+			iS[ 0 ][ 1 ] = radius2 * ( vS[ 0 ][ 1 ] - vS[ 0 ][ 2 ] * vS[ 1 ][ 2 ] * inv );
 			iS[ 1 ][ 0 ] = iS[ 0 ][ 1 ];
-			iS[ 1 ][ 1 ] = radius2 / b2;
-			/*
-			 * now iS is the 2D covariance ellipsoid of transformed circle with radius
-			 */
-
-			eig2.decomposeSymmetric( iS );
-			final double[] eigVals2 = eig2.getRealEigenvalues();
-			final double w = Math.sqrt( eigVals2[ 0 ] );
-			final double h = Math.sqrt( eigVals2[ 1 ] );
-			final double ci = eig2.getV()[ 0 ][ 0 ];
-			final double si = eig2.getV()[ 1 ][ 0 ];
-
-			intersectEllipse.setTheta( Math.atan2( si, ci ) );
-			intersectEllipse.setCenter( vPos[ 0 ] + xshift, vPos[ 1 ] + yshift );
-			intersectEllipse.setAxisHalfLength( w, h );
+			iS[ 1 ][ 1 ] = radius2 * ( vS[ 1 ][ 1 ] - vS[ 1 ][ 2 ] * vS[ 1 ][ 2 ] * inv );
+
+			setEllipse( intersectEllipse, iS[ 0 ][ 0 ], iS[ 0 ][ 1 ], iS[ 1 ][ 1 ] );
+			intersectEllipse.setCenter(
+					vPos[ 0 ] - z * vS[ 0 ][ 2 ] * inv,
+					vPos[ 1 ] - z * vS[ 1 ][ 2 ] * inv );
 		}
 
 		intersectionComputed = true;
 	}
+
+	/**
+	 * Sets the axes and rotation of an ellipse from its symmetric 2x2
+	 * covariance {@code [a b; b d]}, with the closed-form eigendecomposition.
+	 * The half-width is along the smallest axis, and theta is the angle of
+	 * that axis.
+	 */
+	private static void setEllipse( final Ellipse ellipse, final double a, final double b, final double d )
+	{
+		final double m = 0.5 * ( a + d );
+		final double hd = 0.5 * ( a - d );
+		final double disc = Math.sqrt( hd * hd + b * b );
+		ellipse.setAxisHalfLength( Math.sqrt( Math.max( m - disc, 0 ) ), Math.sqrt( Math.max( m + disc, 0 ) ) );
+		ellipse.setTheta( 0.5 * Math.atan2( 2 * b, a - d ) + 0.5 * Math.PI );
+	}
 }
@@ -0,0 +1,224 @@
+package org.mastodon.views.bdv.overlay;
+
+import java.util.Arrays;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Computes the screen ellipses of many vertices at once, for the same viewer
+ * transform.
+ * <p>
+ * This is the batch counterpart of {@link ScreenVertexMath}. The positions
+ * and covariances of the vertices are added with
+ * {@link #add(OverlayVertex)}, then {@link #compute(AffineTransform3D)}
+ * computes their viewer coordinates, projected ellipses and intersection
+ * ellipses, which are then read back by
+ * {@link ScreenVertexMath#init(ScreenVertexMathBatch, int, AffineTransform3D)}.
+ * <p>
+ * Values are stored in one array per component, and each step is a separate
+ * loop over all vertices without branches, so that the JIT compiler can
+ * vectorize them. The 2D ellipses are computed with the closed-form
+ * eigendecomposition of symmetric 2x2 matrices. The intersection with the z=0
+ * plane is obtained by conditioning the covariance on z, which does not need
+ * the 3x3 eigendecomposition.
+ * <p>
+ * This class is not thread-safe.
+ */
+class ScreenVertexMathBatch
+{
+	/*
+	 * Indices of the components in data.
+	 */
+
+	// position and covariance in global coordinate system.
+	static final int X = 0, Y = 1, Z = 2, S00 = 3, S01 = 4, S02 = 5, S11 = 6, S12 = 7, S22 = 8;
+
+	// position and covariance in viewer coordinate system.
+	static final int VX = 9, VY = 10, VZ = 11, V00 = 12, V01 = 13, V02 = 14, V11 = 15, V12 = 16, V22 = 17;
+
+	// ellipse obtained by projecting the ellipsoid to the z=0 plane.
+	static final int P_THETA = 18, P_W = 19, P_H = 20;
+
+	// ellipse obtained by intersecting the ellipsoid with the z=0 plane.
+	static final int I_X = 21, I_Y = 22, I_THETA = 23, I_W = 24, I_H = 25, I00 = 26, I01 = 27, I11 = 28;
+
+	private static final int NUM_COMPONENTS = 29;
+
+	/**
+	 * {@code data[c][i]} is the component {@code c} of vertex {@code i}.
+	 */
+	final double[][] data;
+
+	/**
+	 * Whether the ellipsoid of each vertex intersects the z=0 plane.
+	 */
+	boolean[] intersects;
+
+	private int size;
+
+	// tmp
+	private final double[] pos = new double[ 3 ];
+
+	// tmp
+	private final double[][] cov = new double[ 3 ][ 3 ];
+
+	ScreenVertexMathBatch()
+	{
+		data = new double[ NUM_COMPONENTS ][ 16 ];
+		intersects = new boolean[ 16 ];
+	}
+
+	void clear()
+	{
+		size = 0;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Adds the position and covariance of the specified vertex.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 */
+	void add( final OverlayVertex< ?, ? > vertex )
+	{
+		vertex.localize( pos );
+		vertex.getCovariance( cov );
+		add( pos, cov );
+	}
+
+	/**
+	 * Adds the specified position and covariance.
+	 *
+	 * @param position
+	 *            the position of the vertex.
+	 * @param covariance
+	 *            the covariance of the vertex.
+	 */
+	void add( final double[] position, final double[][] covariance )
+	{
+		if ( size == intersects.length )
+		{
+			final int capacity = 2 * size;
+			for ( int c = 0; c < NUM_COMPONENTS; ++c )
+				data[ c ] = Arrays.copyOf( data[ c ], capacity );
+			intersects = Arrays.copyOf( intersects, capacity );
+		}
+
+		final int i = size++;
+		data[ X ][ i ] = position[ 0 ];
+		data[ Y ][ i ] = position[ 1 ];
+		data[ Z ][ i ] = position[ 2 ];
+		data[ S00 ][ i ] = covariance[ 0 ][ 0 ];
+		data[ S01 ][ i ] = covariance[ 0 ][ 1 ];
+		data[ S02 ][ i ] = covariance[ 0 ][ 2 ];
+		data[ S11 ][ i ] = covariance[ 1 ][ 1 ];
+		data[ S12 ][ i ] = covariance[ 1 ][ 2 ];
+		data[ S22 ][ i ] = covariance[ 2 ][ 2 ];
+	}
+
+	/**
+	 * Computes the screen ellipses of all added vertices for the specified
+	 * viewer transform.
+	 *
+	 * @param transform
+	 *            the viewer transform.
+	 */
+	void compute( final AffineTransform3D transform )
+	{
+		transform( transform );
+		ellipses( data[ V00 ], data[ V01 ], data[ V11 ], data[ P_THETA ], data[ P_W ], data[ P_H ], size );
+		intersect();
+		ellipses( data[ I00 ], data[ I01 ], data[ I11 ], data[ I_THETA ], data[ I_W ], data[ I_H ], size );
+	}
+
+	/**
+	 * Transforms positions and covariances to the viewer coordinate system.
+	 */
+	private void transform( final AffineTransform3D t )
+	{
+		final double t00 = t.get( 0, 0 ), t01 = t.get( 0, 1 ), t02 = t.get( 0, 2 ), t03 = t.get( 0, 3 );
+		final double t10 = t.get( 1, 0 ), t11 = t.get( 1, 1 ), t12 = t.get( 1, 2 ), t13 = t.get( 1, 3 );
+		final double t20 = t.get( 2, 0 ), t21 = t.get( 2, 1 ), t22 = t.get( 2, 2 ), t23 = t.get( 2, 3 );
+
+		final double[] x = data[ X ], y = data[ Y ], z = data[ Z ];
+		final double[] vx = data[ VX ], vy = data[ VY ], vz = data[ VZ ];
+		for ( int i = 0; i < size; ++i )
+		{
+			vx[ i ] = t00 * x[ i ] + t01 * y[ i ] + t02 * z[ i ] + t03;
+			vy[ i ] = t10 * x[ i ] + t11 * y[ i ] + t12 * z[ i ] + t13;
+			vz[ i ] = t20 * x[ i ] + t21 * y[ i ] + t22 * z[ i ] + t23;
+		}
+
+		// vS = T * S * T^T
+		final double[] s00 = data[ S00 ], s01 = data[ S01 ], s02 = data[ S02 ], s11 = data[ S11 ], s12 = data[ S12 ], s22 = data[ S22 ];
+		final double[] v00 = data[ V00 ], v01 = data[ V01 ], v02 = data[ V02 ], v11 = data[ V11 ], v12 = data[ V12 ], v22 = data[ V22 ];
+		for ( int i = 0; i < size; ++i )
+		{
+			final double a00 = t00 * s00[ i ] + t01 * s01[ i ] + t02 * s02[ i ];
+			final double a01 = t00 * s01[ i ] + t01 * s11[ i ] + t02 * s12[ i ];
+			final double a02 = t00 * s02[ i ] + t01 * s12[ i ] + t02 * s22[ i ];
+			final double a10 = t10 * s00[ i ] + t11 * s01[ i ] + t12 * s02[ i ];
+			final double a11 = t10 * s01[ i ] + t11 * s11[ i ] + t12 * s12[ i ];
+			final double a12 = t10 * s02[ i ] + t11 * s12[ i ] + t12 * s22[ i ];
+			final double a20 = t20 * s00[ i ] + t21 * s01[ i ] + t22 * s02[ i ];
+			final double a21 = t20 * s01[ i ] + t21 * s11[ i ] + t22 * s12[ i ];
+			final double a22 = t20 * s02[ i ] + t21 * s12[ i ] + t22 * s22[ i ];
+			v00[ i ] = a00 * t00 + a01 * t01 + a02 * t02;
+			v01[ i ] = a00 * t10 + a01 * t11 + a02 * t12;
+			v02[ i ] = a00 * t20 + a01 * t21 + a02 * t22;
+			v11[ i ] = a10 * t10 + a11 * t11 + a12 * t12;
+			v12[ i ] = a10 * t20 + a11 * t21 + a12 * t22;
+			v22[ i ] = a20 * t20 + a21 * t21 + a22 * t22;
+		}
+	}
+
+	/**
+	 * Intersects the ellipsoids with the z=0 plane. The covariance of the
+	 * intersection ellipse is the covariance in XY conditioned on z, scaled by
+	 * the squared radius of the slice through the unit ellipsoid.
+	 */
+	private void intersect()
+	{
+		final double[] vx = data[ VX ], vy = data[ VY ], vz = data[ VZ ];
+		final double[] v00 = data[ V00 ], v01 = data[ V01 ], v02 = data[ V02 ], v11 = data[ V11 ], v12 = data[ V12 ], v22 = data[ V22 ];
+		final double[] ix = data[ I_X ], iy = data[ I_Y ], i00 = data[ I00 ], i01 = data[ I01 ], i11 = data[ I11 ];
+		for ( int i = 0; i < size; ++i )
+		{
+			final double inv = 1.0 / v22[ i ];
+			final double z = vz[ i ];
+			final double r2 = 1.0 - z * z * inv;
+			intersects[ i ] = r2 > 0;
+			final double radius2 = Math.max( r2, 0 );
+			ix[ i ] = vx[ i ] - z * v02[ i ] * inv;
+			iy[ i ] = vy[ i ] - z * v12[ i ] * inv;
+			i00[ i ] = radius2 * ( v00[ i ] - v02[ i ] * v02[ i ] * inv );
+			i01[ i ] = radius2 * ( v01[ i ] - v02[ i ] * v12[ i ] * inv );
+			i11[ i ] = radius2 * ( v11[ i ] - v12[ i ] * v12[ i ] * inv );
+		}
+	}
+
+	/**
+	 * Computes the ellipses with the specified 2x2 covariances. As in
+	 * {@link ScreenVertexMath}, the half-width is along the smallest
+	 * axis, and theta is the angle of that axis.
+	 */
+	private static void ellipses( final double[] a, final double[] b, final double[] d, final double[] theta, final double[] w, final double[] h, final int n )
+	{
+		for ( int i = 0; i < n; ++i )
+		{
+			final double m = 0.5 * ( a[ i ] + d[ i ] );
+			final double hd = 0.5 * ( a[ i ] - d[ i ] );
+			final double disc = Math.sqrt( hd * hd + b[ i ] * b[ i ] );
+			w[ i ] = Math.sqrt( Math.max( m - disc, 0 ) );
+			h[ i ] = Math.sqrt( Math.max( m + disc, 0 ) );
+		}
+		// atan2 is not vectorized, keep it out of the loop above.
+		for ( int i = 0; i < n; ++i )
+			theta[ i ] = 0.5 * Math.atan2( 2 * b[ i ], a[ i ] - d[ i ] ) + 0.5 * Math.PI;
+	}
+}
@@ -152,6 +152,9 @@ public class RenderSettingsIO
 			mapping.put( "name", s.getName() );
 
 			mapping.put( "antialiasing", s.getUseAntialiasing() );
+			mapping.put( "multiThreadedRendering", s.getUseMultiThreading() );
+			mapping.put( "fastRendering", s.getUseFastRendering() );
+			mapping.put( "fastRenderingSpotCount", s.getFastRenderingSpotCount() );
 			mapping.put( "drawLinks", s.getDrawLinks() );
 			mapping.put( "timeRangeForLinks", s.getTimeLimit() );
 			mapping.put( "gradientForLinks", s.getUseGradient() );
@@ -190,6 +193,12 @@ public class RenderSettingsIO
 				s.setName( ( String ) mapping.get( "name") );
 
 				s.setUseAntialiasing( ( boolean ) mapping.get( "antialiasing" ) );
+				if ( mapping.containsKey( "multiThreadedRendering" ) )
+					s.setUseMultiThreading( ( boolean ) mapping.get( "multiThreadedRendering" ) );
+				if ( mapping.containsKey( "fastRendering" ) )
+					s.setUseFastRendering( ( boolean ) mapping.get( "fastRendering" ) );
+				if ( mapping.containsKey( "fastRenderingSpotCount" ) )
+					s.setFastRenderingSpotCount( ( int ) mapping.get( "fastRenderingSpotCount" ) );
 				s.setDrawLinks( ( boolean ) mapping.get( "drawLinks" ) );
 				s.setTimeLimit( ( int ) mapping.get( "timeRangeForLinks" ) );
 				s.setUseGradient( ( boolean ) mapping.get( "gradientForLinks" ) );
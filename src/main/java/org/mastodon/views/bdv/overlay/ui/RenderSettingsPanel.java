@@ -110,6 +110,9 @@ public class RenderSettingsPanel extends JPanel
 	{
 		return Arrays.asList(
 				booleanElement( "anti-aliasing", style::getUseAntialiasing, style::setUseAntialiasing ),
+				booleanElement( "multi-threaded rendering", style::getUseMultiThreading, style::setUseMultiThreading ),
+				booleanElement( "fast rendering of dense views", style::getUseFastRendering, style::setUseFastRendering ),
+				intElement( "spot count for fast rendering", 0, 100000, style::getFastRenderingSpotCount, style::setFastRenderingSpotCount ),
 
 				separator(),
 
@@ -69,4 +69,22 @@ public class BdvRendererUtil
 
 	private BdvRendererUtil()
 	{}
+
+	/**
+	 * Tests whether two transforms have the same coefficients.
+	 *
+	 * @param a
+	 *            the first transform.
+	 * @param b
+	 *            the second transform.
+	 * @return {@code true} if the transforms are equal.
+	 */
+	public static boolean isEqual( final AffineTransform3D a, final AffineTransform3D b )
+	{
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 4; ++c )
+				if ( a.get( r, c ) != b.get( r, c ) )
+					return false;
+		return true;
+	}
 }
@@ -0,0 +1,294 @@
+package org.mastodon.views.trackscheme;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Multi-resolution summary of the current layout of a
+ * {@link LineageTreeLayout}, used to paint the layout when it is zoomed out
+ * so far that individual vertices cannot be distinguished.
+ * <p>
+ * At a given resolution level, the layout is divided into cells of
+ * {@code 2^xLevel} layout X units by {@code 2^tLevel} timepoints. For each
+ * occupied cell, the summary stores the number of vertices, the range of
+ * layout X coordinates they span, and the number of edges entering the cell
+ * from an earlier timepoint bin. A level is computed from the ordered vertex
+ * lists of the layout the first time it is requested, and kept until
+ * {@link #clear()} is called, when the layout changes.
+ */
+class LayoutSummary
+{
+	/**
+	 * The largest resolution level in X and in T.
+	 */
+	static final int MAX_LEVEL = 30;
+
+	/**
+	 * The occupied cells of one row of timepoint bins.
+	 */
+	static final class Row
+	{
+		/**
+		 * The X bins of the cells, in ascending order.
+		 */
+		final int[] xBins;
+
+		/**
+		 * The number of vertices in each cell.
+		 */
+		final int[] counts;
+
+		/**
+		 * The number of edges entering each cell from an earlier timepoint
+		 * bin.
+		 */
+		final int[] edges;
+
+		/**
+		 * The minimal layout X coordinate of the vertices of each cell.
+		 */
+		final double[] minX;
+
+		/**
+		 * The maximal layout X coordinate of the vertices of each cell.
+		 */
+		final double[] maxX;
+
+		private Row( final int size )
+		{
+			xBins = new int[ size ];
+			counts = new int[ size ];
+			edges = new int[ size ];
+			minX = new double[ size ];
+			maxX = new double[ size ];
+		}
+
+		int size()
+		{
+			return xBins.length;
+		}
+
+		/**
+		 * Returns the index of the first cell whose X bin is greater or equal
+		 * to the specified bin.
+		 */
+		int lowerBound( final int xBin )
+		{
+			final int i = Arrays.binarySearch( xBins, xBin );
+			return i < 0 ? -1 - i : i;
+		}
+	}
+
+	/**
+	 * The summary at one resolution level.
+	 */
+	static final class Level
+	{
+		final int xLevel;
+
+		final int tLevel;
+
+		/**
+		 * The timepoint bin of the first row.
+		 */
+		final int firstBin;
+
+		/**
+		 * The rows of timepoint bins {@code firstBin}, {@code firstBin+1},
+		 * ... Rows without vertices are {@code null}.
+		 */
+		final Row[] rows;
+
+		private Level( final int xLevel, final int tLevel, final int firstBin, final Row[] rows )
+		{
+			this.xLevel = xLevel;
+			this.tLevel = tLevel;
+			this.firstBin = firstBin;
+			this.rows = rows;
+		}
+
+		/**
+		 * Returns the row of the specified timepoint bin, or {@code null} if
+		 * it has no vertices.
+		 */
+		Row getRow( final int bin )
+		{
+			final int i = bin - firstBin;
+			return ( i < 0 || i >= rows.length ) ? null : rows[ i ];
+		}
+	}
+
+	private final TrackSchemeGraph< ?, ? > graph;
+
+	private final TIntArrayList timepoints;
+
+	private final TIntObjectMap< TrackSchemeVertexList > timepointToOrderedVertices;
+
+	private final TIntObjectMap< Level > levels;
+
+	LayoutSummary(
+			final TrackSchemeGraph< ?, ? > graph,
+			final TIntArrayList timepoints,
+			final TIntObjectMap< TrackSchemeVertexList > timepointToOrderedVertices )
+	{
+		this.graph = graph;
+		this.timepoints = timepoints;
+		this.timepointToOrderedVertices = timepointToOrderedVertices;
+		this.levels = new TIntObjectHashMap<>();
+	}
+
+	/**
+	 * Discards all levels. Must be called when the layout changes.
+	 */
+	void clear()
+	{
+		levels.clear();
+	}
+
+	/**
+	 * Returns the summary at the specified resolution level, computing it if
+	 * needed.
+	 *
+	 * @param xLevel
+	 *            the level in X, cells are {@code 2^xLevel} layout units wide.
+	 * @param tLevel
+	 *            the level in T, cells are {@code 2^tLevel} timepoints high.
+	 * @return the summary at this level.
+	 */
+	Level getLevel( final int xLevel, final int tLevel )
+	{
+		final int key = xLevel * ( MAX_LEVEL + 1 ) + tLevel;
+		Level level = levels.get( key );
+		if ( level == null )
+		{
+			level = build( xLevel, tLevel );
+			levels.put( key, level );
+		}
+		return level;
+	}
+
+	private Level build( final int xLevel, final int tLevel )
+	{
+		if ( timepoints.isEmpty() )
+			return new Level( xLevel, tLevel, 0, new Row[ 0 ] );
+
+		final double binWidth = Math.scalb( 1.0, xLevel );
+		final int firstBin = timepoints.get( 0 ) >> tLevel;
+		final int lastBin = timepoints.get( timepoints.size() - 1 ) >> tLevel;
+		final Row[] rows = new Row[ lastBin - firstBin + 1 ];
+
+		final RowBuilder builder = new RowBuilder();
+		final TrackSchemeVertex v = graph.vertexRef();
+		final TrackSchemeVertex s = graph.vertexRef();
+		int bin = firstBin;
+		for ( int i = 0; i < timepoints.size(); ++i )
+		{
+			final int timepoint = timepoints.get( i );
+			final int tBin = timepoint >> tLevel;
+			if ( tBin != bin )
+			{
+				rows[ bin - firstBin ] = builder.build();
+				bin = tBin;
+			}
+
+			final TrackSchemeVertexList vertexList = timepointToOrderedVertices.get( timepoint );
+			if ( vertexList == null )
+				continue;
+			for ( int j = 0; j < vertexList.size(); ++j )
+			{
+				vertexList.get( j, v );
+				final double x = v.getLayoutX();
+				int entering = 0;
+				for ( final TrackSchemeEdge edge : v.incomingEdges() )
+					if ( ( edge.getSource( s ).getTimepoint() >> tLevel ) < tBin )
+						++entering;
+				builder.add( ( int ) Math.floor( x / binWidth ), x, entering );
+			}
+		}
+		rows[ bin - firstBin ] = builder.build();
+		graph.releaseRef( v );
+		graph.releaseRef( s );
+		return new Level( xLevel, tLevel, firstBin, rows );
+	}
+
+	/**
+	 * Accumulates the cells of one row, in any order.
+	 */
+	private static final class RowBuilder
+	{
+		private final TIntIntMap xBinToCell = new TIntIntHashMap( 16, 0.5f, Integer.MIN_VALUE, -1 );
+
+		private final TIntArrayList xBins = new TIntArrayList();
+
+		private final TIntArrayList counts = new TIntArrayList();
+
+		private final TIntArrayList edges = new TIntArrayList();
+
+		private final TDoubleArrayList minX = new TDoubleArrayList();
+
+		private final TDoubleArrayList maxX = new TDoubleArrayList();
+
+		void add( final int xBin, final double x, final int entering )
+		{
+			final int cell = xBinToCell.get( xBin );
+			if ( cell < 0 )
+			{
+				xBinToCell.put( xBin, xBins.size() );
+				xBins.add( xBin );
+				counts.add( 1 );
+				edges.add( entering );
+				minX.add( x );
+				maxX.add( x );
+			}
+			else
+			{
+				counts.set( cell, counts.get( cell ) + 1 );
+				edges.set( cell, edges.get( cell ) + entering );
+				minX.set( cell, Math.min( minX.get( cell ), x ) );
+				maxX.set( cell, Math.max( maxX.get( cell ), x ) );
+			}
+		}
+
+		/**
+		 * Returns the accumulated cells sorted by X bin, or {@code null} if
+		 * there are none, and resets this builder.
+		 */
+		Row build()
+		{
+			final int size = xBins.size();
+			if ( size == 0 )
+				return null;
+
+			// Sort cell indices by X bin.
+			final long[] order = new long[ size ];
+			for ( int i = 0; i < size; ++i )
+				order[ i ] = ( ( long ) xBins.get( i ) << 32 ) | i;
+			Arrays.sort( order );
+
+			final Row row = new Row( size );
+			for ( int i = 0; i < size; ++i )
+			{
+				final int cell = ( int ) order[ i ];
+				row.xBins[ i ] = xBins.get( cell );
+				row.counts[ i ] = counts.get( cell );
+				row.edges[ i ] = edges.get( cell );
+				row.minX[ i ] = minX.get( cell );
+				row.maxX[ i ] = maxX.get( cell );
+			}
+
+			xBinToCell.clear();
+			xBins.resetQuick();
+			counts.resetQuick();
+			edges.resetQuick();
+			minX.resetQuick();
+			maxX.resetQuick();
+			return row;
+		}
+	}
+}
@@ -1,19 +1,23 @@
 package org.mastodon.views.trackscheme;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edges;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.ui.coloring.GraphColorGenerator;
 import org.mastodon.views.trackscheme.ScreenEdge.ScreenEdgePool;
 import org.mastodon.views.trackscheme.ScreenVertex.ScreenVertexPool;
 import org.mastodon.views.trackscheme.ScreenVertexRange.ScreenVertexRangePool;
+import org.mastodon.views.trackscheme.util.AlphanumCompare;
 import org.scijava.listeners.Listeners;
 
 import gnu.trove.iterator.TIntAlternatingIterator;
@@ -67,6 +71,22 @@ public class LineageTreeLayout
 		public void layoutChanged( LineageTreeLayout layout );
 	}
 
+	/**
+	 * Thrown by the {@code layout(...)} methods when the layout is canceled
+	 * by the {@link #setCancelCondition(BooleanSupplier) cancel condition}.
+	 * The previous layout is then restored, and the layout must be done
+	 * again.
+	 */
+	public static class LayoutCanceledException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		public LayoutCanceledException()
+		{
+			super( "Layout canceled" );
+		}
+	}
+
 	private final TrackSchemeGraph< ?, ? > graph;
 
 	private final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection;
@@ -80,8 +100,9 @@ public class LineageTreeLayout
 
 	/**
 	 * The timestamp used in the current layout. This is incremented at the
-	 * beginning of {@link #layout(Collection, int)}. It is also incremented
-	 * when {@link #nextLayoutTimestamp()} is called.
+	 * beginning of {@link #layout(Collection, int)} and of incremental
+	 * updates. It is also incremented when {@link #nextLayoutTimestamp()} is
+	 * called.
 	 */
 	private int timestamp;
 
@@ -137,6 +158,79 @@ public class LineageTreeLayout
 	 */
 	private final RefList< TrackSchemeVertex > currentLayoutColumnRoot;
 
+	/**
+	 * If {@code true}, {@link #layout()} only lays out again the trees that
+	 * were modified since the last layout, when possible.
+	 */
+	private boolean incremental;
+
+	/**
+	 * Whether the current layout is a layout of all the graph roots (last
+	 * call of {@link #layout()}), that can be updated incrementally.
+	 */
+	private boolean canUpdate;
+
+	/**
+	 * Above this number of vertices removed since the last layout, a full
+	 * layout is done instead of an update.
+	 */
+	private static final int MAX_REMOVED_VERTICES_FOR_UPDATE = 1000;
+
+	/**
+	 * The columns of the current layout that contain vertices or edges that
+	 * were modified.
+	 */
+	private final BitSet dirtyColumns;
+
+	/**
+	 * The vertices whose tree must be laid out again.
+	 */
+	private final RefSet< TrackSchemeVertex > touchedVertices;
+
+	private int numRemovedVertices;
+
+	/**
+	 * Whether an update is in progress. Laid out vertices are then collected
+	 * in {@link #updatedVertices} instead of
+	 * {@link #timepointToOrderedVertices}.
+	 */
+	private boolean updating;
+
+	private final TIntObjectMap< TrackSchemeVertexList > updatedVertices;
+
+	/**
+	 * Checked between two trees during layout. If it returns {@code true},
+	 * the layout is canceled. Can be {@code null}.
+	 */
+	private volatile BooleanSupplier cancelCondition;
+
+	/**
+	 * The layout to restore if the layout in progress is canceled, or
+	 * {@code null} if it cannot be canceled.
+	 */
+	private SavedLayout savedLayout;
+
+	/**
+	 * Multi-resolution summary of the current layout, used by
+	 * {@link #cropAndScale} when zoomed out beyond
+	 * {@link #levelOfDetailThreshold}.
+	 */
+	private final LayoutSummary summary;
+
+	/**
+	 * When the screen distance between consecutive timepoints or consecutive
+	 * layout X coordinates is smaller than this value, in pixels,
+	 * {@link #cropAndScale} paints tiles from the layout summary instead of
+	 * individual vertices and edges.
+	 */
+	private double levelOfDetailThreshold;
+
+	/**
+	 * The minimal size in pixels of the tiles painted from the layout
+	 * summary.
+	 */
+	private static final double LEVEL_OF_DETAIL_TILE_SIZE = 4;
+
 	public LineageTreeLayout(
 			final TrackSchemeGraph< ?, ? > graph,
 			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection )
@@ -152,6 +246,64 @@ public class LineageTreeLayout
 		currentLayoutColumnRoot = RefCollections.createRefList( graph.vertices() );
 		stack = new ArrayList<>();
 		stack.add( new StackFrame( null ) );
+		incremental = true;
+		dirtyColumns = new BitSet();
+		touchedVertices = RefCollections.createRefSet( graph.vertices() );
+		updatedVertices = new TIntObjectArrayMap<>();
+		summary = new LayoutSummary( graph, timepoints, timepointToOrderedVertices );
+		levelOfDetailThreshold = 1;
+		graph.graphListeners().add( new ChangeTracker() );
+	}
+
+	/**
+	 * Sets whether {@link #layout()} only lays out again the trees that were
+	 * modified since the last layout. In that case, the X coordinates of the
+	 * modified trees are computed again, the trees to their right are
+	 * shifted, and the ordered vertex lists are patched. A full layout is
+	 * done when the modifications involve vertices with several parents, or
+	 * when too many vertices were removed.
+	 *
+	 * @param incremental
+	 *            whether to update the layout incrementally.
+	 */
+	public void setIncremental( final boolean incremental )
+	{
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Sets the condition to cancel a layout in progress. The condition is
+	 * checked after each tree is laid out. When it returns {@code true}, the
+	 * previous layout is restored, and the layout throws a
+	 * {@link LayoutCanceledException}. The previous layout is then the current
+	 * layout, stamped with a new timestamp, until the next layout. Context
+	 * layouts, that mark the vertices to lay out, are never canceled.
+	 *
+	 * @param cancelCondition
+	 *            the cancel condition, or {@code null} to never cancel a
+	 *            layout.
+	 */
+	public void setCancelCondition( final BooleanSupplier cancelCondition )
+	{
+		this.cancelCondition = cancelCondition;
+	}
+
+	/**
+	 * Sets the zoom level beyond which {@link #cropAndScale} creates
+	 * aggregated tiles instead of individual vertices and edges. Tiles are
+	 * created when the screen distance between consecutive timepoints, or
+	 * between consecutive layout X coordinates, is smaller than the specified
+	 * threshold. The tiles are {@link ScreenVertexRange}s computed from a
+	 * summary of the layout, so that their number is bounded by the screen
+	 * size, regardless of the number of vertices.
+	 *
+	 * @param threshold
+	 *            the threshold in pixels. {@code 0} to always create
+	 *            individual vertices and edges.
+	 */
+	public void setLevelOfDetailThreshold( final double threshold )
+	{
+		this.levelOfDetailThreshold = threshold;
 	}
 
 	/**
@@ -159,10 +311,16 @@ public class LineageTreeLayout
 	 * <p>
 	 * This calls {@link #layout(Collection, int)} with parameter {@code mark = -1},
 	 * that is, no vertices will me marked as ghosts.
+	 *
+	 * @throws LayoutCanceledException
+	 *             if the layout was canceled by the cancel condition.
 	 */
 	public void layout()
 	{
+		if ( incremental && canUpdate && update() )
+			return;
 		layout( LexicographicalVertexOrder.sort( graph, graph.getRoots() ), -1 );
+		canUpdate = true;
 	}
 
 	/**
@@ -199,9 +357,16 @@ public class LineageTreeLayout
 	 * @param mark
 	 *            timestamp value that was used to mark vertices to be laid out.
 	 *            (Ghost vertices were marked with {@code mark-1}.)
+	 * @throws LayoutCanceledException
+	 *             if {@code mark < 0} and the layout was canceled by the
+	 *             cancel condition.
 	 */
 	public void layout( final Collection< TrackSchemeVertex > layoutRoots, final int mark )
 	{
+		final BooleanSupplier cancelCondition = ( mark < 0 ) ? this.cancelCondition : null;
+		savedLayout = ( cancelCondition != null ) ? new SavedLayout() : null;
+		canUpdate = false;
+		clearChanges();
 		++timestamp;
 		rightmost = 0;
 		timepoints.clear();
@@ -213,25 +378,149 @@ public class LineageTreeLayout
 		this.mark = mark;
 		boolean first = true;
 		currentLayoutColumnX.add( rightmost );
-		for ( final TrackSchemeVertex root : layoutRoots )
+		try
 		{
-			layoutX_iterative( root );
-			getGraphRoot( root, currentGraphRoot );
-			if ( first || !currentGraphRoot.equals( previousGraphRoot ) )
+			for ( final TrackSchemeVertex root : layoutRoots )
 			{
-				currentLayoutColumnRoot.add( currentGraphRoot );
-				currentLayoutColumnX.add( rightmost );
-				first = false;
-				previousGraphRoot.refTo( currentGraphRoot );
+				layoutX_iterative( root );
+				getGraphRoot( root, currentGraphRoot );
+				if ( first || !currentGraphRoot.equals( previousGraphRoot ) )
+				{
+					currentLayoutColumnRoot.add( currentGraphRoot );
+					currentLayoutColumnX.add( rightmost );
+					first = false;
+					previousGraphRoot.refTo( currentGraphRoot );
+				}
+				if ( cancelCondition != null && cancelCondition.getAsBoolean() )
+				{
+					savedLayout.restore( previousGraphRoot );
+					throw new LayoutCanceledException();
+				}
 			}
+			currentLayoutMinX = 0;
+			currentLayoutMaxX = rightmost - 1;
+		}
+		finally
+		{
+			savedLayout = null;
+			summary.clear();
+			graph.releaseRef( previousGraphRoot );
+			graph.releaseRef( currentGraphRoot );
 		}
-		currentLayoutMinX = 0;
-		currentLayoutMaxX = rightmost - 1;
-		graph.releaseRef( previousGraphRoot );
-		graph.releaseRef( currentGraphRoot );
 		notifyListeners();
 	}
 
+	/**
+	 * The current layout, saved before a layout that can be canceled, to
+	 * restore it if it is.
+	 * <p>
+	 * The ordered vertex lists and the columns are replaced by a layout, so
+	 * they are saved by reference or copied, which does not depend on the
+	 * number of vertices. The layout X coordinate and ghost flag of a vertex
+	 * are only recorded when the new layout overwrites them, so that the
+	 * vertices of the trees that are not laid out before the layout is
+	 * canceled cost nothing.
+	 */
+	private class SavedLayout
+	{
+		private final TIntArrayList savedTimepoints;
+
+		private final TIntObjectMap< TrackSchemeVertexList > savedOrderedVertices;
+
+		/**
+		 * The vertices laid out by the new layout, in the order they were
+		 * {@link #record(TrackSchemeVertex) recorded}.
+		 */
+		private final RefList< TrackSchemeVertex > overwritten;
+
+		/**
+		 * Layout X coordinates of the {@link #overwritten} vertices before the
+		 * new layout.
+		 */
+		private final TDoubleArrayList savedLayoutX;
+
+		/**
+		 * Ghost flags of the {@link #overwritten} vertices before the new
+		 * layout.
+		 */
+		private final BitSet savedGhosts;
+
+		private final TDoubleArrayList savedColumnX;
+
+		private final RefList< TrackSchemeVertex > savedColumnRoot;
+
+		private final double savedMinX;
+
+		private final double savedMaxX;
+
+		private final double savedRightmost;
+
+		private final int savedMark;
+
+		SavedLayout()
+		{
+			savedTimepoints = new TIntArrayList( timepoints );
+			// A layout creates new lists, the current ones are not modified.
+			savedOrderedVertices = new TIntObjectArrayMap<>();
+			savedOrderedVertices.putAll( timepointToOrderedVertices );
+			overwritten = RefCollections.createRefList( graph.vertices() );
+			savedLayoutX = new TDoubleArrayList();
+			savedGhosts = new BitSet();
+			savedColumnX = new TDoubleArrayList( currentLayoutColumnX );
+			savedColumnRoot = RefCollections.createRefList( graph.vertices(), currentLayoutColumnRoot.size() );
+			savedColumnRoot.addAll( currentLayoutColumnRoot );
+			savedMinX = currentLayoutMinX;
+			savedMaxX = currentLayoutMaxX;
+			savedRightmost = rightmost;
+			savedMark = mark;
+		}
+
+		/**
+		 * Records the layout X coordinate and ghost flag of the specified
+		 * vertex, before the new layout overwrites them. Called once per
+		 * vertex laid out.
+		 */
+		void record( final TrackSchemeVertex v )
+		{
+			savedGhosts.set( overwritten.size(), v.isGhost() );
+			overwritten.add( v );
+			savedLayoutX.add( v.getLayoutX() );
+		}
+
+		/**
+		 * Restores the saved layout, in place of the partial layout done
+		 * since. The restored vertices are stamped with the current
+		 * timestamp, and the vertices of the partial layout with an older
+		 * one. The layout cannot be updated incrementally after that.
+		 */
+		void restore( final TrackSchemeVertex ref )
+		{
+			for ( int i = 0; i < overwritten.size(); ++i )
+			{
+				final TrackSchemeVertex v = overwritten.get( i, ref );
+				v.setLayoutX( savedLayoutX.get( i ) );
+				v.setGhost( savedGhosts.get( i ) );
+				v.setLayoutTimestamp( timestamp - 1 );
+			}
+
+			timepoints.clear();
+			timepoints.addAll( savedTimepoints );
+			timepointToOrderedVertices.clear();
+			timepointToOrderedVertices.putAll( savedOrderedVertices );
+			stampOrderedVertices( ref );
+
+			currentLayoutColumnX.clear();
+			currentLayoutColumnX.addAll( savedColumnX );
+			currentLayoutColumnRoot.clear();
+			currentLayoutColumnRoot.addAll( savedColumnRoot );
+			currentLayoutMinX = savedMinX;
+			currentLayoutMaxX = savedMaxX;
+			rightmost = savedRightmost;
+			mark = savedMark;
+			canUpdate = false;
+		}
+	}
+
 	/**
 	 * Get the minimum layoutX coordinate assigned to any vertex in the current
 	 * layout (last call of one of the {@code layout(...)} methods).
@@ -278,6 +567,7 @@ public class LineageTreeLayout
 	 */
 	public int nextLayoutTimestamp()
 	{
+		canUpdate = false;
 		++timestamp;
 		return timestamp;
 	}
@@ -305,6 +595,66 @@ public class LineageTreeLayout
 			final int decorationsOffsetX,
 			final int decorationsOffsetY,
 			final GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator )
+	{
+		final double minX = transform.getMinX();
+		final double maxX = transform.getMaxX();
+		final double xScale = transform.getScaleX();
+		final double yScale = transform.getScaleY();
+		screenEntities.screenTransform().set( transform );
+
+		if ( xScale < levelOfDetailThreshold || yScale < levelOfDetailThreshold )
+			cropAndScaleSummary( transform, screenEntities, decorationsOffsetX, decorationsOffsetY );
+		else
+			cropAndScaleVertices( transform, screenEntities, decorationsOffsetX, decorationsOffsetY, colorGenerator );
+
+		/*
+		 * Columns
+		 */
+
+		final List< ScreenColumn > screenColumns = screenEntities.getColumns();
+		int minC = currentLayoutColumnX.binarySearch( minX );
+		if ( minC < 0 )
+		{
+			minC = -1 - minC;
+		}
+		minC = Math.max( 0, minC - 1 ); // at least 1 column out
+
+		int maxC = currentLayoutColumnX.binarySearch( maxX + 0.5, minC, currentLayoutColumnX.size() );
+		if ( maxC < 0 )
+		{
+			maxC = -1 - maxC;
+		}
+		maxC = Math.min( currentLayoutColumnX.size(), maxC + 1 );
+
+		// Build screen columns.
+		final double scaledMinWidth = MIN_COLUMN_WIDTH / xScale;
+		for ( int ic = minC + 1; ic < maxC; ic++ )
+		{
+			final double cLeft = currentLayoutColumnX.get( ic - 1 );
+			final double cRight = currentLayoutColumnX.get( ic );
+			if ( cRight - cLeft < scaledMinWidth )
+				continue;
+
+			final int xRight = ( int ) ( ( cRight - minX - 0.5 ) * xScale + decorationsOffsetX );
+			final int xLeft = ( int ) ( ( cLeft - minX - 0.5 ) * xScale + decorationsOffsetX );
+			final int columnWidth = xRight - xLeft;
+
+			final TrackSchemeVertex root = currentLayoutColumnRoot.get( ic - 1 );
+			final ScreenColumn column = new ScreenColumn( root.getLabel(), xLeft, columnWidth );
+			screenColumns.add( column );
+		}
+	}
+
+	/**
+	 * Creates the screen vertices, edges and dense ranges of the visible part
+	 * of the current layout.
+	 */
+	private void cropAndScaleVertices(
+			final ScreenTransform transform,
+			final ScreenEntities screenEntities,
+			final int decorationsOffsetX,
+			final int decorationsOffsetY,
+			final GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator )
 	{
 		final double minX = transform.getMinX();
 		final double maxX = transform.getMaxX();
@@ -312,7 +662,6 @@ public class LineageTreeLayout
 		final double maxY = transform.getMaxY();
 		final double xScale = transform.getScaleX();
 		final double yScale = transform.getScaleY();
-		screenEntities.screenTransform().set( transform );
 
 		final RefList< ScreenVertex > screenVertices = screenEntities.getVertices();
 		final RefList< ScreenEdge > screenEdges = screenEntities.getEdges();
@@ -440,43 +789,74 @@ public class LineageTreeLayout
 		screenVertexPool.releaseRef( sv );
 		graph.releaseRef( v1 );
 		graph.releaseRef( v2 );
+	}
 
-		/*
-		 * Columns
-		 */
+	/**
+	 * Creates tiles for the visible part of the current layout from the
+	 * layout summary, at the resolution level where tiles are at least
+	 * {@link #LEVEL_OF_DETAIL_TILE_SIZE} pixels wide and high. A tile spans
+	 * the vertices of one summary cell, and extends up to the previous
+	 * timepoint if edges enter the cell from above.
+	 */
+	private void cropAndScaleSummary(
+			final ScreenTransform transform,
+			final ScreenEntities screenEntities,
+			final int decorationsOffsetX,
+			final int decorationsOffsetY )
+	{
+		final double minX = transform.getMinX();
+		final double maxX = transform.getMaxX();
+		final double minY = transform.getMinY();
+		final double maxY = transform.getMaxY();
+		final double xScale = transform.getScaleX();
+		final double yScale = transform.getScaleY();
 
-		final List< ScreenColumn > screenColumns = screenEntities.getColumns();
-		int minC = currentLayoutColumnX.binarySearch( minX );
-		if ( minC < 0 )
-		{
-			minC = -1 - minC;
-		}
-		minC = Math.max( 0, minC - 1 ); // at least 1 column out
+		final RefList< ScreenVertexRange > vertexRanges = screenEntities.getRanges();
+		final ScreenVertexRangePool screenRangePool = screenEntities.getRangePool();
+		final ScreenVertexRange sr = screenRangePool.createRef();
 
-		int maxC = currentLayoutColumnX.binarySearch( maxX + 0.5, minC, currentLayoutColumnX.size() );
-		if ( maxC < 0 )
-		{
-			maxC = -1 - maxC;
-		}
-		maxC = Math.min( currentLayoutColumnX.size(), maxC + 1 );
+		final int xLevel = summaryLevel( LEVEL_OF_DETAIL_TILE_SIZE / xScale );
+		final int tLevel = summaryLevel( LEVEL_OF_DETAIL_TILE_SIZE / yScale );
+		final LayoutSummary.Level level = summary.getLevel( xLevel, tLevel );
+		final double binWidth = Math.scalb( 1.0, xLevel );
+		final int minXBin = ( int ) Math.floor( minX / binWidth ) - 1;
+		final int maxXBin = ( int ) Math.floor( maxX / binWidth ) + 1;
+		final int minTBin = ( ( int ) Math.floor( minY ) - 1 ) >> tLevel;
+		final int maxTBin = ( ( int ) Math.ceil( maxY ) + 1 ) >> tLevel;
 
-		// Build screen columns.
-		final double scaledMinWidth = MIN_COLUMN_WIDTH / xScale;
-		for ( int ic = minC + 1; ic < maxC; ic++ )
+		for ( int tBin = minTBin; tBin <= maxTBin; ++tBin )
 		{
-			final double cLeft = currentLayoutColumnX.get( ic - 1 );
-			final double cRight = currentLayoutColumnX.get( ic );
-			if ( cRight - cLeft < scaledMinWidth )
+			final LayoutSummary.Row row = level.getRow( tBin );
+			if ( row == null )
 				continue;
 
-			final int xRight = ( int ) ( ( cRight - minX - 0.5 ) * xScale + decorationsOffsetX );
-			final int xLeft = ( int ) ( ( cLeft - minX - 0.5 ) * xScale + decorationsOffsetX );
-			final int columnWidth = xRight - xLeft;
-
-			final TrackSchemeVertex root = currentLayoutColumnRoot.get( ic - 1 );
-			final ScreenColumn column = new ScreenColumn( root.getLabel(), xLeft, columnWidth );
-			screenColumns.add( column );
+			final int firstTimepoint = tBin << tLevel;
+			final int lastTimepoint = firstTimepoint + ( 1 << tLevel ) - 1;
+			final double y0 = ( firstTimepoint - minY ) * yScale + decorationsOffsetY;
+			final double y1 = ( lastTimepoint - minY ) * yScale + decorationsOffsetY;
+			for ( int i = row.lowerBound( minXBin ); i < row.size() && row.xBins[ i ] <= maxXBin; ++i )
+			{
+				final double svMinX = ( row.minX[ i ] - minX ) * xScale + decorationsOffsetX;
+				final double svMaxX = ( row.maxX[ i ] - minX ) * xScale + decorationsOffsetX;
+				final double svMinY = row.edges[ i ] > 0 ? y0 - yScale : y0;
+				vertexRanges.add( screenRangePool.create( sr ).init(
+						svMinX, Math.max( svMaxX, svMinX + 1 ),
+						svMinY, Math.max( y1, svMinY + 1 ) ) );
+			}
 		}
+
+		screenRangePool.releaseRef( sr );
+	}
+
+	/**
+	 * Returns the smallest summary level whose cells are at least the
+	 * specified size, in layout units.
+	 */
+	private static int summaryLevel( final double size )
+	{
+		if ( !( size > 1 ) )
+			return 0;
+		return Math.min( LayoutSummary.MAX_LEVEL, ( int ) Math.ceil( Math.log( size ) / Math.log( 2 ) ) );
 	}
 
 	/**
@@ -813,6 +1193,8 @@ A:		while ( true )
 				f.numLaidOutChildren = 0;
 				final boolean ghost = v.getLayoutTimestamp() < mark;
 				final boolean terminate = v.getLayoutTimestamp() < mark - 1;
+				if ( savedLayout != null )
+					savedLayout.record( v );
 				v.setGhost( ghost );
 				v.setLayoutTimestamp( timestamp );
 
@@ -899,6 +1281,8 @@ A:		while ( true )
 
 		final boolean ghost = v.getLayoutTimestamp() < mark;
 		final boolean terminate = v.getLayoutTimestamp() < mark - 1;
+		if ( savedLayout != null )
+			savedLayout.record( v );
 		v.setGhost( ghost );
 		v.setLayoutTimestamp( timestamp );
 
@@ -941,12 +1325,14 @@ A:		while ( true )
 	private void appendToOrderedVertices( final TrackSchemeVertex v )
 	{
 		final int tp = v.getTimepoint();
-		TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+		final TIntObjectMap< TrackSchemeVertexList > map = updating ? updatedVertices : timepointToOrderedVertices;
+		TrackSchemeVertexList vlist = map.get( tp );
 		if ( vlist == null )
 		{
 			vlist = new TrackSchemeVertexList( graph );
-			timepointToOrderedVertices.put( tp, vlist );
-			timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
+			map.put( tp, vlist );
+			if ( !updating )
+				timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
 		}
 		vlist.add( v );
 	}
@@ -962,8 +1348,376 @@ A:		while ( true )
 			graphRoot.incomingEdges().iterator().next().getSource( graphRoot );
 	}
 
+	/*
+	 * Incremental layout.
+	 */
+
+	/**
+	 * Lays out again the trees touched since the last layout, shifts the
+	 * columns to their right, and patches {@link #timepointToOrderedVertices}.
+	 * The root order is the one of {@link #layout()}. As for a full layout,
+	 * the timestamp is incremented, and all the vertices of the layout are
+	 * stamped with it.
+	 *
+	 * @return {@code false} if the layout cannot be updated, and a full layout
+	 *         must be done.
+	 */
+	private boolean update()
+	{
+		final TrackSchemeVertex ref1 = graph.vertexRef();
+		final TrackSchemeVertex ref2 = graph.vertexRef();
+		try
+		{
+			mark = -1;
+
+			// Roots of the trees to lay out again.
+			final RefSet< TrackSchemeVertex > roots = RefCollections.createRefSet( graph.vertices() );
+			for ( final TrackSchemeVertex v : touchedVertices )
+			{
+				if ( !getTreeRoot( v, ref1 ) )
+					return false;
+				roots.add( ref1 );
+			}
+
+			// Remove the vertices of dirty columns from the ordered lists.
+			for ( int c = dirtyColumns.previousSetBit( dirtyColumns.length() ); c >= 0; c = dirtyColumns.previousSetBit( c - 1 ) )
+				if ( !removeColumn( c, ref1, ref2 ) )
+					return false;
+			for ( final TrackSchemeVertex root : roots )
+				if ( root.getLayoutTimestamp() == timestamp )
+					return false;
+
+			// Like a full layout, the update uses a new timestamp.
+			++timestamp;
+
+			// Merge the clean columns and the new trees, ordered by root label.
+			final RefList< TrackSchemeVertex > sortedRoots = LexicographicalVertexOrder.sort( graph, roots );
+			final int nColumns = currentLayoutColumnRoot.size();
+			final double[] shift = new double[ nColumns ];
+			final TDoubleArrayList columnX = new TDoubleArrayList( nColumns + sortedRoots.size() + 1 );
+			final RefList< TrackSchemeVertex > columnRoot = RefCollections.createRefList( graph.vertices(), nColumns + sortedRoots.size() );
+			double firstChangeX = Double.POSITIVE_INFINITY;
+			String previousLabel = null;
+			updating = true;
+			updatedVertices.clear();
+			rightmost = 0;
+			columnX.add( rightmost );
+			int c = 0;
+			int r = 0;
+			while ( c < nColumns || r < sortedRoots.size() )
+			{
+				if ( c < nColumns && dirtyColumns.get( c ) )
+				{
+					firstChangeX = Math.min( firstChangeX, currentLayoutColumnX.get( c ) );
+					++c;
+					continue;
+				}
+
+				final boolean clean;
+				if ( c >= nColumns )
+					clean = false;
+				else if ( r >= sortedRoots.size() )
+					clean = true;
+				else
+					clean = AlphanumCompare.compare(
+							currentLayoutColumnRoot.get( c, ref1 ).getLabel(),
+							sortedRoots.get( r, ref2 ).getLabel() ) <= 0;
+
+				if ( clean )
+				{
+					final TrackSchemeVertex root = currentLayoutColumnRoot.get( c, ref1 );
+					final String label = root.getLabel();
+					if ( previousLabel != null && AlphanumCompare.compare( previousLabel, label ) > 0 )
+						return false; // A root label changed.
+					previousLabel = label;
+					final double x0 = currentLayoutColumnX.get( c );
+					shift[ c ] = rightmost - x0;
+					if ( shift[ c ] != 0 )
+						firstChangeX = Math.min( firstChangeX, x0 );
+					rightmost += currentLayoutColumnX.get( c + 1 ) - x0;
+					columnRoot.add( root );
+					++c;
+				}
+				else
+				{
+					firstChangeX = Math.min( firstChangeX, rightmost );
+					final TrackSchemeVertex root = sortedRoots.get( r++, ref2 );
+					layoutX_iterative( root );
+					columnRoot.add( root );
+				}
+				columnX.add( rightmost );
+			}
+			updating = false;
+
+			patchOrderedVertices( firstChangeX, shift, ref1, ref2 );
+			stampOrderedVertices( ref1 );
+
+			currentLayoutColumnX.clear();
+			currentLayoutColumnX.addAll( columnX );
+			currentLayoutColumnRoot.clear();
+			currentLayoutColumnRoot.addAll( columnRoot );
+			currentLayoutMinX = 0;
+			currentLayoutMaxX = rightmost - 1;
+			clearChanges();
+			notifyListeners();
+			return true;
+		}
+		finally
+		{
+			updating = false;
+			updatedVertices.clear();
+			graph.releaseRef( ref1 );
+			graph.releaseRef( ref2 );
+		}
+	}
+
+	/**
+	 * Shifts the vertices of clean columns in the ordered lists, and merges
+	 * the newly laid out vertices in.
+	 */
+	private void patchOrderedVertices( final double firstChangeX, final double[] shift, final TrackSchemeVertex ref1, final TrackSchemeVertex ref2 )
+	{
+		final TIntArrayList merged = new TIntArrayList();
+		for ( final int tp : timepoints.toArray() )
+		{
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+			final TrackSchemeVertexList fresh = updatedVertices.get( tp );
+			final TIntArrayList indices = vlist.getIndexCollection();
+			// Vertices left of the first change are unchanged.
+			final int prefix = vlist.binarySearch( Math.nextDown( firstChangeX ) ) + 1;
+			if ( prefix == indices.size() && fresh == null )
+				continue;
+
+			merged.resetQuick();
+			int ci = prefix < indices.size() ? columnIndex( vlist.get( prefix, ref1 ).getLayoutX() ) : 0;
+			int fi = 0;
+			for ( int i = prefix; i < indices.size(); ++i )
+			{
+				final double x = vlist.get( i, ref1 ).getLayoutX();
+				while ( currentLayoutColumnX.get( ci + 1 ) <= x )
+					++ci;
+				final double nx = x + shift[ ci ];
+				ref1.setLayoutX( nx );
+				if ( fresh != null )
+					while ( fi < fresh.size() && fresh.get( fi, ref2 ).getLayoutX() < nx )
+						merged.add( fresh.getIndexCollection().getQuick( fi++ ) );
+				merged.add( indices.getQuick( i ) );
+			}
+			if ( fresh != null )
+				while ( fi < fresh.size() )
+					merged.add( fresh.getIndexCollection().getQuick( fi++ ) );
+
+			indices.remove( prefix, indices.size() - prefix );
+			indices.addAll( merged );
+			vlist.invalidateCachedValues();
+			if ( indices.isEmpty() )
+			{
+				timepointToOrderedVertices.remove( tp );
+				timepoints.remove( tp );
+			}
+		}
+
+		// Timepoints that only contain new vertices.
+		for ( final int tp : updatedVertices.keys() )
+		{
+			if ( timepointToOrderedVertices.containsKey( tp ) )
+				continue;
+			timepointToOrderedVertices.put( tp, updatedVertices.get( tp ) );
+			timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
+		}
+	}
+
+	/**
+	 * Sets the layout timestamp of all the vertices of the ordered lists to
+	 * the current timestamp.
+	 */
+	private void stampOrderedVertices( final TrackSchemeVertex ref )
+	{
+		final TIntIterator iter = timepoints.iterator();
+		while ( iter.hasNext() )
+		{
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( iter.next() );
+			for ( int i = 0; i < vlist.size(); ++i )
+				vlist.get( i, ref ).setLayoutTimestamp( timestamp );
+		}
+	}
+
+	/**
+	 * Removes the vertices of the specified column from the ordered lists, and
+	 * marks them for layout.
+	 *
+	 * @return {@code false} if the column contains vertices with more than
+	 *         one parent.
+	 */
+	private boolean removeColumn( final int c, final TrackSchemeVertex ref1, final TrackSchemeVertex ref2 )
+	{
+		final double x0 = currentLayoutColumnX.get( c );
+		final double x1 = currentLayoutColumnX.get( c + 1 );
+		final TIntIterator iter = timepoints.iterator();
+		while ( iter.hasNext() )
+		{
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( iter.next() );
+			final int from = vlist.binarySearch( Math.nextDown( x0 ) ) + 1;
+			final int to = vlist.binarySearch( Math.nextDown( x1 ) ) + 1;
+			for ( int i = from; i < to; ++i )
+			{
+				final TrackSchemeVertex v = vlist.get( i, ref1 );
+				if ( v.incomingEdges().size() > 1 )
+					return false;
+				for ( final TrackSchemeEdge edge : v.outgoingEdges() )
+					if ( edge.getTarget( ref2 ).incomingEdges().size() > 1 )
+						return false;
+				v.setLayoutTimestamp( timestamp - 1 );
+			}
+			if ( to > from )
+			{
+				vlist.getIndexCollection().remove( from, to - from );
+				vlist.invalidateCachedValues();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the root of the tree of the specified vertex.
+	 *
+	 * @return {@code false} if a vertex with more than one parent is found.
+	 */
+	private boolean getTreeRoot( final TrackSchemeVertex v, final TrackSchemeVertex root )
+	{
+		root.refTo( v );
+		while ( !root.incomingEdges().isEmpty() )
+		{
+			if ( root.incomingEdges().size() > 1 )
+				return false;
+			root.incomingEdges().iterator().next().getSource( root );
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the column of the current layout that contains
+	 * the specified layoutX, or -1.
+	 */
+	private int columnIndex( final double x )
+	{
+		final int i = currentLayoutColumnX.binarySearch( x );
+		final int c = ( i >= 0 ) ? i : -( i + 1 ) - 1;
+		return ( c >= 0 && c < currentLayoutColumnRoot.size() ) ? c : -1;
+	}
+
+	private void clearChanges()
+	{
+		dirtyColumns.clear();
+		touchedVertices.clear();
+		numRemovedVertices = 0;
+	}
+
+	/**
+	 * Records the trees touched by modifications of the graph, for the next
+	 * incremental layout. Vertices are removed from the ordered lists right
+	 * away, while they are still valid.
+	 */
+	private class ChangeTracker implements GraphListener< TrackSchemeVertex, TrackSchemeEdge >
+	{
+		private final TrackSchemeVertex ref = graph.vertexRef();
+
+		private final TrackSchemeVertex rootRef = graph.vertexRef();
+
+		@Override
+		public void graphRebuilt()
+		{
+			canUpdate = false;
+		}
+
+		@Override
+		public void vertexAdded( final TrackSchemeVertex vertex )
+		{
+			if ( canUpdate )
+				touchedVertices.add( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final TrackSchemeVertex vertex )
+		{
+			if ( !canUpdate )
+				return;
+			for ( final TrackSchemeEdge edge : vertex.edges() )
+			{
+				edge.getSource( ref );
+				if ( ref.equals( vertex ) )
+					edge.getTarget( ref );
+				touch( ref );
+			}
+			if ( vertex.getLayoutTimestamp() == timestamp )
+			{
+				markColumn( vertex );
+				removeFromOrderedVertices( vertex );
+				if ( ++numRemovedVertices > MAX_REMOVED_VERTICES_FOR_UPDATE )
+					canUpdate = false;
+			}
+			// Last, the vertex might be the root of a column marked above.
+			touchedVertices.remove( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final TrackSchemeEdge edge )
+		{
+			if ( !canUpdate )
+				return;
+			touch( edge.getSource( ref ) );
+			touch( edge.getTarget( ref ) );
+		}
+
+		@Override
+		public void edgeRemoved( final TrackSchemeEdge edge )
+		{
+			edgeAdded( edge );
+		}
+
+		private void touch( final TrackSchemeVertex v )
+		{
+			touchedVertices.add( v );
+			markColumn( v );
+		}
+
+		private void markColumn( final TrackSchemeVertex v )
+		{
+			if ( v.getLayoutTimestamp() != timestamp )
+				return;
+			final int c = columnIndex( v.getLayoutX() );
+			if ( c < 0 || dirtyColumns.get( c ) )
+				return;
+			dirtyColumns.set( c );
+			// The root of a column is valid until the column is dirty.
+			touchedVertices.add( currentLayoutColumnRoot.get( c, rootRef ) );
+		}
+
+		private void removeFromOrderedVertices( final TrackSchemeVertex v )
+		{
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( v.getTimepoint() );
+			if ( vlist == null )
+				return;
+			final TIntArrayList indices = vlist.getIndexCollection();
+			final int id = v.getInternalPoolIndex();
+			final double x = v.getLayoutX();
+			for ( int i = vlist.binarySearch( x ); i >= 0; --i )
+			{
+				if ( indices.getQuick( i ) == id )
+				{
+					indices.removeAt( i );
+					vlist.invalidateCachedValues();
+					return;
+				}
+				if ( vlist.get( i, ref ).getLayoutX() < x )
+					return;
+			}
+		}
+	}
+
 	private void notifyListeners()
 	{
+		summary.clear();
 		for ( final LayoutListener l : listeners.list )
 			l.layoutChanged( this );
 	}
@@ -117,6 +117,8 @@ public class TrackSchemeGraph<
 
 	private final Listeners.List< GraphChangeListener > listeners;
 
+	private final Listeners.List< GraphListener< TrackSchemeVertex, TrackSchemeEdge > > graphListeners;
+
 	private final RefBimap< V, TrackSchemeVertex > vertexMap;
 
 	private final RefBimap< E, TrackSchemeEdge > edgeMap;
@@ -200,6 +202,7 @@ public class TrackSchemeGraph<
 		tsv2 = vertexRef();
 		tse = edgeRef();
 		listeners = new Listeners.SynchronizedList<>();
+		graphListeners = new Listeners.SynchronizedList<>();
 		vertexMap = new TrackSchemeVertexBimap<>( this );
 		edgeMap = new TrackSchemeEdgeBimap<>( this );
 
@@ -311,6 +314,19 @@ public class TrackSchemeGraph<
 		return listeners;
 	}
 
+	/**
+	 * Get the list of GraphListeners. This can be used to add (or remove) a
+	 * GraphListener that will be notified of structural changes of this
+	 * TrackSchemeGraph. Listeners are notified after a vertex or an edge is
+	 * added, and before it is removed.
+	 *
+	 * @return list of GraphListeners
+	 */
+	public Listeners< GraphListener< TrackSchemeVertex, TrackSchemeEdge > > graphListeners()
+	{
+		return graphListeners;
+	}
+
 	public ReentrantReadWriteLock getLock()
 	{
 		return lock;
@@ -435,6 +451,8 @@ public class TrackSchemeGraph<
 			super.insertEdge( tsv, e.getSourceOutIndex(), tsv2, e.getTargetInIndex(), tse ).initModelId( id );
 			idToTrackSchemeEdge.put( id, tse );
 		}
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.graphRebuilt();
 	}
 
 	@Override
@@ -444,6 +462,8 @@ public class TrackSchemeGraph<
 		super.addVertex( tsv ).initModelId( id );
 		idToTrackSchemeVertex.put( id, tsv );
 		roots.add( tsv );
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.vertexAdded( tsv );
 	}
 
 	@Override
@@ -452,6 +472,8 @@ public class TrackSchemeGraph<
 		final int id = idmap.getVertexId( vertex );
 		if ( idToTrackSchemeVertex.remove( id, tsv ) != null )
 		{
+			for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+				l.vertexRemoved( tsv );
 			if ( tsv.incomingEdges().isEmpty() )
 				roots.remove( tsv );
 			super.remove( tsv );
@@ -468,6 +490,8 @@ public class TrackSchemeGraph<
 			roots.remove( tsv2 );
 		super.insertEdge( tsv, edge.getSourceOutIndex(), tsv2, edge.getTargetInIndex(), tse ).initModelId( id );
 		idToTrackSchemeEdge.put( id, tse );
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.edgeAdded( tse );
 	}
 
 	@Override
@@ -476,6 +500,8 @@ public class TrackSchemeGraph<
 		final int id = idmap.getEdgeId( edge );
 		if ( idToTrackSchemeEdge.remove( id, tse ) != null )
 		{
+			for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+				l.edgeRemoved( tse );
 			if ( tse.getTarget( tsv ).incomingEdges().size() == 1 )
 				roots.add( tsv );
 			super.remove( tse );
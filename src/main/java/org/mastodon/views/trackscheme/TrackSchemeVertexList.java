@@ -20,7 +20,7 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 	private double cachedMinLayoutXDistance;
 
 	// TODO: needs to be reset to false when the graph is laid out again.
-	// TODO: needs to be reset when the list is modified.
+	// Reset with invalidateCachedValues() when the list is modified.
 	private boolean cachedMinLayoutXDistanceValid;
 
 	public TrackSchemeVertexList( final TrackSchemeGraph< ?, ? > graph )
@@ -44,6 +44,15 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 		cachedMinLayoutXDistanceValid = false;
 	}
 
+	/**
+	 * Invalidates the values computed from the list content, after the list
+	 * or the layoutX of its vertices were modified.
+	 */
+	void invalidateCachedValues()
+	{
+		cachedMinLayoutXDistanceValid = false;
+	}
+
 	@Override
 	public TrackSchemeVertexList subList( final int fromIndex, final int toIndex )
 	{
@@ -7,11 +7,13 @@ import static org.mastodon.views.trackscheme.ScreenVertex.Transition.SELECTING;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
 import java.awt.geom.Rectangle2D;
 
 import org.mastodon.collection.RefList;
+import org.mastodon.ui.coloring.ColorCache;
 import org.mastodon.util.GeometryUtil;
 import org.mastodon.views.trackscheme.ScreenEdge;
 import org.mastodon.views.trackscheme.ScreenEntities;
@@ -71,6 +73,13 @@ public class PaintGraph
 	private static final double minDisplaySimplifiedVertexDist = 5.0;
 	private static final double avgLabelLetterWidth = 5.0;
 
+	/**
+	 * Distance, in pixels, around the screen position of a vertex within
+	 * which it may be painted (a disappearing, highlighted vertex of maximal
+	 * size, and its outline).
+	 */
+	private static final double paintMargin = maxDisplayVertexSize + 10.0;
+
 	/*
 	 * FIELDS
 	 */
@@ -85,6 +94,12 @@ public class PaintGraph
 
 	protected TrackSchemeStyle style;
 
+	/**
+	 * The colors of the painted entities, to avoid creating a {@link Color}
+	 * per entity and per frame.
+	 */
+	protected final ColorCache colorCache = new ColorCache();
+
 	public void paintGraph(
 			final Graphics2D g2,
 			final ScreenEntities entities,
@@ -92,6 +107,40 @@ public class PaintGraph
 			final int highlightedEdgeId,
 			final int focusedVertexId,
 			final TrackSchemeStyle style )
+	{
+		paintGraph( g2, entities, highlightedVertexId, highlightedEdgeId, focusedVertexId, style, null );
+	}
+
+	/**
+	 * Paints the entities that may be visible in the specified screen
+	 * rectangle. Entities that are farther from the rectangle than they can be
+	 * painted are skipped, which speeds up painting a small region of a large
+	 * graph, such as a tile.
+	 *
+	 * @param g2
+	 *            the graphics to paint to.
+	 * @param entities
+	 *            the entities to paint.
+	 * @param highlightedVertexId
+	 *            the id of the highlighted vertex, or {@code -1}.
+	 * @param highlightedEdgeId
+	 *            the id of the highlighted edge, or {@code -1}.
+	 * @param focusedVertexId
+	 *            the id of the focused vertex, or {@code -1}.
+	 * @param style
+	 *            the style to paint with.
+	 * @param bounds
+	 *            the screen rectangle to paint, or {@code null} to paint all
+	 *            entities.
+	 */
+	public void paintGraph(
+			final Graphics2D g2,
+			final ScreenEntities entities,
+			final int highlightedVertexId,
+			final int highlightedEdgeId,
+			final int focusedVertexId,
+			final TrackSchemeStyle style,
+			final Rectangle bounds )
 	{
 		this.g2 = g2;
 		this.highlightedVertexId = highlightedVertexId;
@@ -111,25 +160,115 @@ public class PaintGraph
 		{
 			vertices.get( edge.getSourceScreenVertexIndex(), vs );
 			vertices.get( edge.getTargetScreenVertexIndex(), vt );
-			drawEdge( edge, vs, vt );
+			if ( bounds == null || intersects( bounds,
+					Math.min( vs.getX(), vt.getX() ), Math.min( vs.getY(), vt.getY() ),
+					Math.max( vs.getX(), vt.getX() ), Math.max( vs.getY(), vt.getY() ), paintMargin ) )
+				drawEdge( edge, vs, vt );
 		}
 
 		beforeDrawVertices();
 		for ( final ScreenVertex vertex : vertices )
 		{
-			drawVertex( vertex );
+			if ( bounds == null || intersects( bounds, vertex.getX(), vertex.getY(), vertex.getX(), vertex.getY(), paintMargin ) )
+				drawVertex( vertex );
 		}
 
 		beforeDrawVertexRanges();
 		for ( final ScreenVertexRange range : vertexRanges )
 		{
-			drawVertexRange( range );
+			if ( bounds == null || intersects( bounds, range.getMinX(), range.getMinY(), range.getMaxX(), range.getMaxY(), 1 ) )
+				drawVertexRange( range );
 		}
 
 		vertices.releaseRef( vs );
 		vertices.releaseRef( vt );
 	}
 
+	/**
+	 * Paints the highlighted edge and the highlighted and focused vertices
+	 * over a graph that was painted without highlight and focus. The vertices
+	 * of the highlighted edge are painted again after the edge, so that the
+	 * edge does not cover them.
+	 *
+	 * @param g2
+	 *            the graphics to paint to.
+	 * @param entities
+	 *            the painted entities.
+	 * @param highlightedScreenVertexIndex
+	 *            the index of the highlighted vertex in the screen vertices
+	 *            of {@code entities}, or {@code -1}.
+	 * @param highlightedScreenEdgeIndex
+	 *            the index of the highlighted edge in the screen edges of
+	 *            {@code entities}, or {@code -1}.
+	 * @param focusedScreenVertexIndex
+	 *            the index of the focused vertex in the screen vertices of
+	 *            {@code entities}, or {@code -1}.
+	 * @param style
+	 *            the style to paint with.
+	 */
+	public void paintHighlights(
+			final Graphics2D g2,
+			final ScreenEntities entities,
+			final int highlightedScreenVertexIndex,
+			final int highlightedScreenEdgeIndex,
+			final int focusedScreenVertexIndex,
+			final TrackSchemeStyle style )
+	{
+		this.g2 = g2;
+		this.style = style;
+
+		final RefList< ScreenEdge > edges = entities.getEdges();
+		final RefList< ScreenVertex > vertices = entities.getVertices();
+		final ScreenVertex vt = vertices.createRef();
+		final ScreenVertex vs = vertices.createRef();
+		final ScreenEdge se = edges.createRef();
+
+		highlightedVertexId = ( highlightedScreenVertexIndex < 0 )
+				? -1
+				: vertices.get( highlightedScreenVertexIndex, vs ).getTrackSchemeVertexId();
+		focusedVertexId = ( focusedScreenVertexIndex < 0 )
+				? -1
+				: vertices.get( focusedScreenVertexIndex, vs ).getTrackSchemeVertexId();
+		highlightedEdgeId = -1;
+
+		if ( highlightedScreenEdgeIndex >= 0 )
+		{
+			final ScreenEdge edge = edges.get( highlightedScreenEdgeIndex, se );
+			highlightedEdgeId = edge.getTrackSchemeEdgeId();
+			vertices.get( edge.getSourceScreenVertexIndex(), vs );
+			vertices.get( edge.getTargetScreenVertexIndex(), vt );
+			beforeDrawEdges();
+			drawEdge( edge, vs, vt );
+			beforeDrawVertices();
+			drawVertex( vs );
+			drawVertex( vt );
+		}
+
+		beforeDrawVertices();
+		if ( highlightedScreenVertexIndex >= 0 )
+			drawVertex( vertices.get( highlightedScreenVertexIndex, vs ) );
+		if ( focusedScreenVertexIndex >= 0 && focusedScreenVertexIndex != highlightedScreenVertexIndex )
+			drawVertex( vertices.get( focusedScreenVertexIndex, vs ) );
+
+		edges.releaseRef( se );
+		vertices.releaseRef( vs );
+		vertices.releaseRef( vt );
+	}
+
+	private static boolean intersects(
+			final Rectangle bounds,
+			final double minX,
+			final double minY,
+			final double maxX,
+			final double maxY,
+			final double margin )
+	{
+		return maxX + margin >= bounds.x
+				&& minX - margin <= bounds.x + bounds.width
+				&& maxY + margin >= bounds.y
+				&& minY - margin <= bounds.y + bounds.height;
+	}
+
 	/**
 	 * Returns the distance from a <b>screen</b> position to a specified edge.
 	 *
@@ -445,7 +584,7 @@ public class PaintGraph
 			else if ( specifiedColor == 0 )
 				return normalColor;
 			else
-				return new Color( specifiedColor, true );
+				return colorCache.get( specifiedColor );
 		}
 		else
 		{
@@ -477,10 +616,15 @@ public class PaintGraph
 			}
 			if ( fade )
 				a = ( int ) ( a * ( 1 - ratio ) );
-			final Color color = new Color( r, g, b, a );
-			return isGhost
-					? TrackSchemeStyle.mixGhostColor( color, style.getBackgroundColor() )
-					: color;
+			if ( isGhost )
+			{
+				// Same as TrackSchemeStyle.mixGhostColor().
+				final Color bg = style.getBackgroundColor();
+				r = ( r + bg.getRed() ) / 2;
+				g = ( g + bg.getGreen() ) / 2;
+				b = ( b + bg.getBlue() ) / 2;
+			}
+			return colorCache.get( ColorCache.argb( r, g, b, a ) );
 		}
 	}
 }
@@ -0,0 +1,150 @@
+package org.mastodon.views.trackscheme.display;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the offscreen tiles painted by {@link TrackSchemeOverlay}.
+ * <p>
+ * Tiles are square images of {@link #TILE_SIZE} pixels, identified by their
+ * tile coordinates on the canvas and the current timepoint they were painted
+ * for. All tiles belong to one generation of the painted content: when the
+ * generation changes (new screen entities, new canvas size, new style...),
+ * all tiles are discarded. Within a generation, the least recently used
+ * tiles are evicted when the total size of the tiles exceeds the byte
+ * budget.
+ */
+class TileCache
+{
+	/**
+	 * The width and height of a tile, in pixels.
+	 */
+	static final int TILE_SIZE = 256;
+
+	private static final class Key
+	{
+		private final int timepoint;
+
+		private final int tx;
+
+		private final int ty;
+
+		Key( final int timepoint, final int tx, final int ty )
+		{
+			this.timepoint = timepoint;
+			this.tx = tx;
+			this.ty = ty;
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( !( o instanceof Key ) )
+				return false;
+			final Key k = ( Key ) o;
+			return timepoint == k.timepoint && tx == k.tx && ty == k.ty;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ( timepoint * 31 + tx ) * 31 + ty;
+		}
+	}
+
+	private final LinkedHashMap< Key, BufferedImage > tiles;
+
+	private long maxBytes;
+
+	private long bytes;
+
+	private long generation;
+
+	/**
+	 * Creates a tile cache.
+	 *
+	 * @param maxBytes
+	 *            the byte budget of the cache.
+	 */
+	TileCache( final long maxBytes )
+	{
+		this.tiles = new LinkedHashMap<>( 64, 0.75f, true );
+		this.maxBytes = maxBytes;
+		this.generation = -1;
+	}
+
+	/**
+	 * Sets the generation of the painted content. Discards all the tiles if
+	 * it differs from the current generation.
+	 *
+	 * @param generation
+	 *            the generation.
+	 */
+	void setGeneration( final long generation )
+	{
+		if ( this.generation != generation )
+		{
+			clear();
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * Returns the tile at the specified coordinates, painted for the specified
+	 * timepoint.
+	 *
+	 * @return the tile, or {@code null} if it is not in the cache.
+	 */
+	BufferedImage get( final int timepoint, final int tx, final int ty )
+	{
+		return tiles.get( new Key( timepoint, tx, ty ) );
+	}
+
+	/**
+	 * Stores a tile, and evicts the least recently used tiles if the byte
+	 * budget is exceeded.
+	 */
+	void put( final int timepoint, final int tx, final int ty, final BufferedImage tile )
+	{
+		final BufferedImage previous = tiles.put( new Key( timepoint, tx, ty ), tile );
+		if ( previous != null )
+			bytes -= bytes( previous );
+		bytes += bytes( tile );
+		evict();
+	}
+
+	/**
+	 * Sets the byte budget of this cache.
+	 *
+	 * @param maxBytes
+	 *            the byte budget.
+	 */
+	void setMaxBytes( final long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	void clear()
+	{
+		tiles.clear();
+		bytes = 0;
+	}
+
+	private void evict()
+	{
+		final Iterator< Map.Entry< Key, BufferedImage > > it = tiles.entrySet().iterator();
+		while ( bytes > maxBytes && it.hasNext() )
+		{
+			bytes -= bytes( it.next().getValue() );
+			it.remove();
+		}
+	}
+
+	private static long bytes( final BufferedImage tile )
+	{
+		return 4L * tile.getWidth() * tile.getHeight();
+	}
+}
@@ -96,6 +96,23 @@ public class TrackSchemeOptions
 		return this;
 	}
 
+	/**
+	 * Sets whether the layout of the graph can be interrupted to let the graph
+	 * be edited. If {@code true}, a layout in progress is canceled when
+	 * another thread waits to lock the graph, and is done again once the
+	 * graph is unlocked. The screen entities of the previous layout stay
+	 * displayed meanwhile.
+	 *
+	 * @param interruptible
+	 *            whether the layout can be interrupted.
+	 * @return this instance.
+	 */
+	public TrackSchemeOptions interruptibleLayout( final boolean interruptible )
+	{
+		values.interruptibleLayout = interruptible;
+		return this;
+	}
+
 	/**
 	 * Sets the {@link KeyPressedManager} to share
 	 * {@link KeyListener#keyPressed(java.awt.event.KeyEvent)} events with other
@@ -179,6 +196,8 @@ public class TrackSchemeOptions
 
 		private long animationDurationMillis = 250;
 
+		private boolean interruptibleLayout = false;
+
 		private KeyPressedManager keyPressedManager = null;
 
 		private NavigationEtiquette navigationEtiquette = NavigationEtiquette.MINIMAL;
@@ -195,6 +214,7 @@ public class TrackSchemeOptions
 				width( width ).
 				height( height ).
 				animationDurationMillis( animationDurationMillis ).
+				interruptibleLayout( interruptibleLayout ).
 				navigationEtiquette( navigationEtiquette ).
 				style( style ).
 				trackSchemeOverlayFactory( trackSchemeOverlayFactory ).
@@ -216,6 +236,11 @@ public class TrackSchemeOptions
 			return animationDurationMillis;
 		}
 
+		public boolean isInterruptibleLayout()
+		{
+			return interruptibleLayout;
+		}
+
 		public KeyPressedManager getKeyPressedManager()
 		{
 			return keyPressedManager;
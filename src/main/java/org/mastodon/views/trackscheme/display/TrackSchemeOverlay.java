@@ -2,12 +2,16 @@ package org.mastodon.views.trackscheme.display;
 
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.mastodon.collection.RefList;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.HighlightModel;
+import org.mastodon.util.FrameAllocationCounter;
 import org.mastodon.views.trackscheme.ScreenEdge;
 import org.mastodon.views.trackscheme.ScreenEntities;
 import org.mastodon.views.trackscheme.ScreenVertex;
@@ -18,6 +22,8 @@ import org.mastodon.views.trackscheme.TrackSchemeVertex;
 import org.mastodon.views.trackscheme.display.OffsetHeaders.OffsetHeadersListener;
 import org.mastodon.views.trackscheme.display.style.TrackSchemeStyle;
 
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
 import net.imglib2.ui.OverlayRenderer;
 
 /**
@@ -47,6 +53,14 @@ import net.imglib2.ui.OverlayRenderer;
  * to paint header decorations.</li>
  * </ol>
  * <p>
+ * When the overlay is painted again without new screen entities, for instance
+ * because only the highlight or the focus changed, the background and the
+ * graph painted without highlight and focus are taken from a cache of
+ * offscreen tiles, and only the highlighted and focused entities and the
+ * headers are painted over them. Tiles are painted the first time the same
+ * screen entities are painted twice, so that animations do not pay for the
+ * cache. The cache is not used when extra overlay renderers are added.
+ * <p>
  * It also offers facilities to interrogate what has been painted where, to
  * facilitate writing user interfaces. For instance, it can return the
  * TrackScheme edge or vertex id near a screen {@code (x, y)} coordinate.
@@ -102,6 +116,45 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 	 */
 	private final CopyOnWriteArrayList< OverlayRenderer > overlayRenderers;
 
+	/**
+	 * The default byte budget of the tile cache.
+	 */
+	private static final long DEFAULT_TILE_CACHE_SIZE = 64 * 1024 * 1024;
+
+	private final TileCache tileCache;
+
+	private volatile long tileCacheSize = DEFAULT_TILE_CACHE_SIZE;
+
+	/**
+	 * Incremented whenever the painted content changes in a way that
+	 * invalidates the cached tiles.
+	 */
+	private long generation;
+
+	/**
+	 * The generation that was last painted.
+	 */
+	private long paintedGeneration = -1;
+
+	/**
+	 * The generation of {@link #vertexIdToIndex} and {@link #edgeIdToIndex}.
+	 */
+	private long indexedGeneration = -1;
+
+	/**
+	 * Maps TrackScheme vertex ids to their index in the screen vertices of
+	 * {@link #entities}.
+	 */
+	private final TIntIntMap vertexIdToIndex;
+
+	/**
+	 * Maps TrackScheme edge ids to their index in the screen edges of
+	 * {@link #entities}.
+	 */
+	private final TIntIntMap edgeIdToIndex;
+
+	private final FrameAllocationCounter allocationCounter;
+
 	/**
 	 * Creates a new overlay for the specified TrackScheme graph.
 	 *
@@ -137,15 +190,21 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 		height = options.values.getHeight();
 		entities = new ScreenEntities( graph );
 		overlayRenderers = new CopyOnWriteArrayList<>();
+		tileCache = new TileCache( DEFAULT_TILE_CACHE_SIZE );
+		vertexIdToIndex = new TIntIntHashMap( 16, 0.5f, -1, -1 );
+		edgeIdToIndex = new TIntIntHashMap( 16, 0.5f, -1, -1 );
+		allocationCounter = new FrameAllocationCounter( "TrackScheme overlay" );
 	}
 
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
+		allocationCounter.frameStarted();
 		final Graphics2D g2 = ( Graphics2D ) g;
 		g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
 
 		swapScreenEntities();
+		final long generation = getGeneration();
 
 		final TrackSchemeVertex ref = graph.vertexRef();
 		final TrackSchemeEdge eref = graph.edgeRef();
@@ -161,6 +220,18 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 
 		graph.releaseRef( ref );
 
+		final boolean useCache = generation == paintedGeneration
+				&& tileCacheSize > 0
+				&& overlayRenderers.isEmpty()
+				&& ( g2.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION ) == 0;
+		paintedGeneration = generation;
+		if ( useCache )
+		{
+			paintFromCache( g2, generation, highlightedVertexId, highlightedEdgeId, focusedVertexId );
+			allocationCounter.frameFinished();
+			return;
+		}
+
 		paintDecorations.paintBackground( g2, width, height, headerWidth, headerHeight, entities, currentTimepoint, style );
 
 		// Paint extra overlay if any.
@@ -175,6 +246,125 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 			g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
 
 		paintDecorations.paintHeaders( g2, width, height, headerWidth, headerHeight, entities, currentTimepoint, style );
+		allocationCounter.frameFinished();
+	}
+
+	/**
+	 * Paints the background and the graph from cached tiles, then the
+	 * highlighted and focused entities and the headers over them.
+	 */
+	private void paintFromCache(
+			final Graphics2D g2,
+			final long generation,
+			final int highlightedVertexId,
+			final int highlightedEdgeId,
+			final int focusedVertexId )
+	{
+		tileCache.setMaxBytes( tileCacheSize );
+		tileCache.setGeneration( generation );
+		final int tileSize = TileCache.TILE_SIZE;
+		final Rectangle clip = g2.getClipBounds();
+		final int minTx = clip == null ? 0 : Math.max( 0, clip.x / tileSize );
+		final int minTy = clip == null ? 0 : Math.max( 0, clip.y / tileSize );
+		final int maxTx = ( clip == null ? width - 1 : Math.min( width, clip.x + clip.width ) - 1 ) / tileSize;
+		final int maxTy = ( clip == null ? height - 1 : Math.min( height, clip.y + clip.height ) - 1 ) / tileSize;
+		for ( int ty = minTy; ty <= maxTy; ++ty )
+		{
+			for ( int tx = minTx; tx <= maxTx; ++tx )
+			{
+				BufferedImage tile = tileCache.get( currentTimepoint, tx, ty );
+				if ( tile == null )
+				{
+					tile = paintTile( tx, ty );
+					tileCache.put( currentTimepoint, tx, ty, tile );
+				}
+				g2.drawImage( tile, tx * tileSize, ty * tileSize, null );
+			}
+		}
+
+		if ( indexedGeneration != generation )
+		{
+			indexScreenEntities();
+			indexedGeneration = generation;
+		}
+		final int hv = ( highlightedVertexId < 0 ) ? -1 : vertexIdToIndex.get( highlightedVertexId );
+		final int he = ( highlightedEdgeId < 0 ) ? -1 : edgeIdToIndex.get( highlightedEdgeId );
+		final int fv = ( focusedVertexId < 0 ) ? -1 : vertexIdToIndex.get( focusedVertexId );
+		if ( hv >= 0 || he >= 0 || fv >= 0 )
+			paintGraph.paintHighlights( g2, entities, hv, he, fv, style );
+
+		paintDecorations.paintHeaders( g2, width, height, headerWidth, headerHeight, entities, currentTimepoint, style );
+	}
+
+	/**
+	 * Paints the background and the graph, without highlight and focus, in
+	 * a new tile.
+	 */
+	private BufferedImage paintTile( final int tx, final int ty )
+	{
+		final int tileSize = TileCache.TILE_SIZE;
+		final int x0 = tx * tileSize;
+		final int y0 = ty * tileSize;
+		final BufferedImage tile = new BufferedImage( tileSize, tileSize, BufferedImage.TYPE_INT_RGB );
+		final Graphics2D g2 = tile.createGraphics();
+		g2.translate( -x0, -y0 );
+		g2.setClip( x0, y0, tileSize, tileSize );
+		g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+		paintDecorations.paintBackground( g2, width, height, headerWidth, headerHeight, entities, currentTimepoint, style );
+		if ( entities.getVertices().size() > 10000 )
+			g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF );
+		paintGraph.paintGraph( g2, entities, -1, -1, -1, style, new Rectangle( x0, y0, tileSize, tileSize ) );
+		g2.dispose();
+		return tile;
+	}
+
+	/**
+	 * Fills the maps from TrackScheme ids to screen entity indices.
+	 */
+	private void indexScreenEntities()
+	{
+		vertexIdToIndex.clear();
+		edgeIdToIndex.clear();
+		final RefList< ScreenVertex > vertices = entities.getVertices();
+		final ScreenVertex v = vertices.createRef();
+		for ( int i = 0; i < vertices.size(); ++i )
+		{
+			final int id = vertices.get( i, v ).getTrackSchemeVertexId();
+			if ( id >= 0 )
+				vertexIdToIndex.put( id, i );
+		}
+		vertices.releaseRef( v );
+		final RefList< ScreenEdge > edges = entities.getEdges();
+		final ScreenEdge e = edges.createRef();
+		for ( int i = 0; i < edges.size(); ++i )
+			edgeIdToIndex.put( edges.get( i, e ).getTrackSchemeEdgeId(), i );
+		edges.releaseRef( e );
+	}
+
+	/**
+	 * Discards the cached tiles of this overlay, for instance when the style
+	 * changed.
+	 */
+	public synchronized void invalidateCache()
+	{
+		++generation;
+	}
+
+	/**
+	 * Sets the byte budget of the cache of offscreen tiles. When it is
+	 * exceeded, the least recently used tiles are discarded.
+	 *
+	 * @param bytes
+	 *            the byte budget. {@code 0} disables the cache.
+	 */
+	public void setTileCacheSize( final long bytes )
+	{
+		tileCacheSize = bytes;
+	}
+
+	private synchronized long getGeneration()
+	{
+		return generation;
 	}
 
 	/**
@@ -281,6 +471,7 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 	{
 		this.width = width;
 		this.height = height;
+		invalidateCache();
 		for ( final OverlayRenderer overlay : overlayRenderers )
 			overlay.setCanvasSize( width, height );
 	}
@@ -290,6 +481,7 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 	{
 		headerWidth = width;
 		headerHeight = height;
+		invalidateCache();
 	}
 
 	/**
@@ -362,6 +554,7 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 			{
 				entities.set( pendingEntities );
 				pending = false;
+				++generation;
 			}
 		}
 		return entities;
@@ -32,6 +32,7 @@ import org.mastodon.views.context.Context;
 import org.mastodon.views.context.ContextListener;
 import org.mastodon.views.trackscheme.ContextLayout;
 import org.mastodon.views.trackscheme.LineageTreeLayout;
+import org.mastodon.views.trackscheme.LineageTreeLayout.LayoutCanceledException;
 import org.mastodon.views.trackscheme.ScreenEntities;
 import org.mastodon.views.trackscheme.ScreenEntitiesInterpolator;
 import org.mastodon.views.trackscheme.ScreenTransform;
@@ -110,6 +111,19 @@ public class TrackSchemePanel extends JPanel implements
 	// TODO rename
 	private final Flags flags;
 
+	/**
+	 * After this number of successive canceled layouts, the next layout is
+	 * not interruptible, so that the display is eventually updated when the
+	 * graph is edited continuously.
+	 */
+	private static final int MAX_CANCELED_LAYOUTS = 3;
+
+	/**
+	 * The number of layouts canceled since the last complete layout. Only
+	 * accessed by the painter thread.
+	 */
+	private int numCanceledLayouts;
+
 	/**
 	 * Minimum timepoint in dataset.
 	 */
@@ -218,6 +232,8 @@ public class TrackSchemePanel extends JPanel implements
 		screenTransform = new ScreenTransform();
 		layout = new LineageTreeLayout( graph, selection );
 		contextLayout = new ContextLayout( graph, layout );
+		if ( options.isInterruptibleLayout() )
+			layout.setCancelCondition( () -> numCanceledLayouts < MAX_CANCELED_LAYOUTS && graph.getLock().hasQueuedThreads() );
 		colorGenerator = options.getGraphColorGenerator();
 		layout.layoutListeners().add( transformEventHandler );
 		entityAnimator = new ScreenEntityAnimator();
@@ -330,6 +346,15 @@ public class TrackSchemePanel extends JPanel implements
 			painterThread.requestRepaint();
 	}
 
+	/**
+	 * Lays out the graph if needed and computes the screen entities, while
+	 * holding the read lock of the graph, then displays the new screen
+	 * entities without the lock.
+	 * <p>
+	 * If the layout is interruptible and a thread waits for the lock, the
+	 * layout is canceled, the lock released, and the repaint requested again.
+	 * The previous screen entities stay displayed meanwhile.
+	 */
 	@Override
 	public void paint()
 	{
@@ -344,81 +369,102 @@ public class TrackSchemePanel extends JPanel implements
 			}
 
 			final Flags flags = this.flags.clear();
-			if ( flags.graphChanged )
+			try
 			{
-//				System.out.println( "paint: graphChanged" );
-				layout.layout();
-				layoutMinX = layout.getCurrentLayoutMinX();
-				layoutMaxX = layout.getCurrentLayoutMaxX();
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+				computeScreenEntities( flags, transform );
+				numCanceledLayouts = 0;
 			}
-			else if ( flags.transformChanged )
+			catch ( final LayoutCanceledException e )
 			{
-//				System.out.println( "paint: transformChanged" );
-//				entityAnimator.startAnimation( transform, 0 );
-				if ( context != null && contextLayout.buildContext( context, transform, false ) )
-				{
-					layoutMinX = layout.getCurrentLayoutMinX();
-					layoutMaxX = layout.getCurrentLayoutMaxX();
-					entityAnimator.continueAnimation( transform, ANIMATION_MILLISECONDS );
-				}
-				else
-					entityAnimator.continueAnimation( transform, 0 );
-//					entityAnimator.startAnimation( transform, 0 );
-//				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+				++numCanceledLayouts;
+				this.flags.restore( flags );
+				painterThread.requestRepaint();
+				return;
 			}
-			else if ( flags.selectionChanged )
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		entityAnimator.setTime( System.currentTimeMillis() );
+		entityAnimator.setPaintEntities( graphOverlay );
+		display.repaint();
+
+		// adjust scrollbars sizes
+		final ScreenTransform t = new ScreenTransform();
+		entityAnimator.getLastComputedScreenEntities().getScreenTransform( t );
+		xScrollScale = 10000.0 / ( layoutMaxX - layoutMinX + 2 );
+		final int xval = ( int ) ( xScrollScale * t.getMinX() );
+		final int xext = ( int ) ( xScrollScale * ( t.getMaxX() - t.getMinX() ) );
+		final int xmin = ( int ) ( xScrollScale * ( layoutMinX - boundXLayoutBorder ) );
+		final int xmax = ( int ) ( xScrollScale * ( layoutMaxX + boundXLayoutBorder ) );
+		yScrollScale = 10000.0 / ( layoutMaxY - layoutMinY + 2 );
+		final int yval = ( int ) ( yScrollScale * t.getMinY() );
+		final int yext = ( int ) ( yScrollScale * ( t.getMaxY() - t.getMinY() ) );
+		final int ymin = ( int ) ( yScrollScale * ( layoutMinY - boundYLayoutBorder ) );
+		final int ymax = ( int ) ( yScrollScale * ( layoutMaxY + boundYLayoutBorder ) );
+		ignoreScrollBarChanges = true;
+		xScrollBar.setValues( xval, xext, xmin, xmax );
+		yScrollBar.setValues( yval, yext, ymin, ymax );
+		ignoreScrollBarChanges = false;
+	}
+
+	/**
+	 * Lays out the graph and computes the screen entities as required by the
+	 * specified flags. Must be called while holding the read lock of the
+	 * graph.
+	 */
+	private void computeScreenEntities( final Flags flags, final ScreenTransform transform )
+	{
+		if ( flags.graphChanged )
+		{
+//			System.out.println( "paint: graphChanged" );
+			layout.layout();
+			layoutMinX = layout.getCurrentLayoutMinX();
+			layoutMaxX = layout.getCurrentLayoutMaxX();
+			entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+		}
+		else if ( flags.transformChanged )
+		{
+//			System.out.println( "paint: transformChanged" );
+//			entityAnimator.startAnimation( transform, 0 );
+			if ( context != null && contextLayout.buildContext( context, transform, false ) )
 			{
-//				System.out.println( "paint: selectionChanged" );
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+				layoutMinX = layout.getCurrentLayoutMinX();
+				layoutMaxX = layout.getCurrentLayoutMaxX();
+				entityAnimator.continueAnimation( transform, ANIMATION_MILLISECONDS );
 			}
-			else if ( flags.contextChanged )
+			else
+				entityAnimator.continueAnimation( transform, 0 );
+//				entityAnimator.startAnimation( transform, 0 );
+//			entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+		}
+		else if ( flags.selectionChanged )
+		{
+//			System.out.println( "paint: selectionChanged" );
+			entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+		}
+		else if ( flags.contextChanged )
+		{
+//			System.out.println( "paint: contextChanged" );
+			if ( context == null )
 			{
-//				System.out.println( "paint: contextChanged" );
-				if ( context == null )
-				{
-					layout.layout();
-					layoutMinX = layout.getCurrentLayoutMinX();
-					layoutMaxX = layout.getCurrentLayoutMaxX();
-				}
-				else if ( contextLayout.buildContext( context, transform, true ) )
-				{
-					layoutMinX = layout.getCurrentLayoutMinX();
-					layoutMaxX = layout.getCurrentLayoutMaxX();
-				}
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+				layout.layout();
+				layoutMinX = layout.getCurrentLayoutMinX();
+				layoutMaxX = layout.getCurrentLayoutMaxX();
 			}
-			else if ( flags.entitiesAttributesChanged )
+			else if ( contextLayout.buildContext( context, transform, true ) )
 			{
-//				System.out.println( "paint: entitiesAttributesChanged" ); // DEBUG
-				entityAnimator.continueAnimation( transform, 0 );
+				layoutMinX = layout.getCurrentLayoutMinX();
+				layoutMaxX = layout.getCurrentLayoutMaxX();
 			}
-
-			entityAnimator.setTime( System.currentTimeMillis() );
-			entityAnimator.setPaintEntities( graphOverlay );
-			display.repaint();
-
-			// adjust scrollbars sizes
-			final ScreenTransform t = new ScreenTransform();
-			entityAnimator.getLastComputedScreenEntities().getScreenTransform( t );
-			xScrollScale = 10000.0 / ( layoutMaxX - layoutMinX + 2 );
-			final int xval = ( int ) ( xScrollScale * t.getMinX() );
-			final int xext = ( int ) ( xScrollScale * ( t.getMaxX() - t.getMinX() ) );
-			final int xmin = ( int ) ( xScrollScale * ( layoutMinX - boundXLayoutBorder ) );
-			final int xmax = ( int ) ( xScrollScale * ( layoutMaxX + boundXLayoutBorder ) );
-			yScrollScale = 10000.0 / ( layoutMaxY - layoutMinY + 2 );
-			final int yval = ( int ) ( yScrollScale * t.getMinY() );
-			final int yext = ( int ) ( yScrollScale * ( t.getMaxY() - t.getMinY() ) );
-			final int ymin = ( int ) ( yScrollScale * ( layoutMinY - boundYLayoutBorder ) );
-			final int ymax = ( int ) ( yScrollScale * ( layoutMaxY + boundYLayoutBorder ) );
-			ignoreScrollBarChanges = true;
-			xScrollBar.setValues( xval, xext, xmin, xmax );
-			yScrollBar.setValues( yval, yext, ymin, ymax );
-			ignoreScrollBarChanges = false;
+			entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
 		}
-		finally
+		else if ( flags.entitiesAttributesChanged )
 		{
-			lock.readLock().unlock();
+//			System.out.println( "paint: entitiesAttributesChanged" ); // DEBUG
+			entityAnimator.continueAnimation( transform, 0 );
 		}
 	}
 
@@ -983,6 +1029,22 @@ public class TrackSchemePanel extends JPanel implements
 			entitiesAttributesChanged = true;
 		}
 
+		/**
+		 * Sets the flags that are set in the specified flags, for instance
+		 * to handle again changes whose handling was canceled.
+		 *
+		 * @param f
+		 *            the flags to restore.
+		 */
+		public synchronized void restore( final Flags f )
+		{
+			transformChanged |= f.transformChanged;
+			selectionChanged |= f.selectionChanged;
+			graphChanged |= f.graphChanged;
+			contextChanged |= f.contextChanged;
+			entitiesAttributesChanged |= f.entitiesAttributesChanged;
+		}
+
 		public synchronized Flags clear()
 		{
 			final Flags copy = new Flags( this );
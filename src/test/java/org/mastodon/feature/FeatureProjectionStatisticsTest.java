@@ -0,0 +1,203 @@
+package org.mastodon.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.properties.IntPropertyMap;
+
+/**
+ * Compares the {@link FeatureProjectionStatistics} of a feature with the
+ * statistics computed from all the values, through value changes, value
+ * removals and object deletions.
+ */
+public class FeatureProjectionStatisticsTest
+{
+
+	private static final double[] QUANTILES = { 0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1 };
+
+	private Model model;
+
+	private ModelGraph graph;
+
+	private TestFeature feature;
+
+	private FeatureProjectionStatistics< Spot > statistics;
+
+	private Spot s0, s1, s2, s3;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		s0 = addSpot( 0 );
+		s1 = addSpot( 1 );
+		s2 = addSpot( 2 );
+		s3 = addSpot( 3 );
+		feature = new TestFeature( graph );
+		model.getFeatureModel().declareFeature( feature );
+		statistics = feature.getStatistics();
+		feature.set( s0, 1 );
+		feature.set( s1, 5 );
+		feature.set( s2, 3 );
+	}
+
+	@Test
+	public void testSet()
+	{
+		assertStatistics( 3, 1, 5 );
+
+		feature.set( s3, 7 );
+		assertStatistics( 4, 1, 7 );
+
+		// Lower the max.
+		feature.set( s3, 2 );
+		assertStatistics( 4, 1, 5 );
+
+		// Raise the min.
+		feature.set( s0, 4 );
+		assertStatistics( 4, 2, 5 );
+	}
+
+	@Test
+	public void testRemove()
+	{
+		feature.invalidate( s2 );
+		assertStatistics( 2, 1, 5 );
+
+		feature.invalidate( s1 );
+		assertStatistics( 1, 1, 1 );
+
+		feature.invalidate( s0 );
+		assertStatistics( 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY );
+		assertEquals( Double.NaN, statistics.getQuantile( 0.5 ), 0 );
+	}
+
+	@Test
+	public void testDeleteAndAdd()
+	{
+		assertStatistics( 3, 1, 5 );
+
+		// The value of s1, the max, is removed from the map silently.
+		graph.remove( s1 );
+		final Spot spot = addSpot( 4 );
+		feature.set( spot, 2 );
+		assertStatistics( 3, 1, 3 );
+
+		graph.remove( s0 );
+		assertStatistics( 2, 2, 3 );
+	}
+
+	@Test
+	public void testQuantiles()
+	{
+		final Random random = new Random( 1l );
+		for ( int i = 0; i < 1000; i++ )
+			feature.set( addSpot( i ), random.nextGaussian() );
+		assertStatistics( 1003, Double.NaN, Double.NaN );
+
+		// Sorted values are recomputed after a change.
+		final double max = statistics.getQuantile( 1 );
+		feature.set( s3, max + 1 );
+		assertEquals( max + 1, statistics.getQuantile( 1 ), 0 );
+		assertStatistics( 1004, Double.NaN, Double.NaN );
+	}
+
+	@Test
+	public void testNearestRank()
+	{
+		final IntPropertyMap< Spot > map = new IntPropertyMap<>( graph.vertices().getRefPool(), -1 );
+		final FeatureProjectionStatistics< Spot > stats = FeatureProjectionStatistics.of( map );
+		for ( int i = 0; i < 100; i++ )
+			map.set( addSpot( i ), 100 - i );
+		assertEquals( 1, stats.getQuantile( 0 ), 0 );
+		assertEquals( 2, stats.getQuantile( 0.01 ), 0 );
+		assertEquals( 51, stats.getQuantile( 0.5 ), 0 );
+		assertEquals( 99, stats.getQuantile( 0.99 ), 0 );
+		assertEquals( 100, stats.getQuantile( 1 ), 0 );
+		assertEquals( 100, stats.getQuantile( 2 ), 0 );
+		assertEquals( 50.5, stats.getMean(), 0 );
+	}
+
+	/**
+	 * Checks the count, min and max of the statistics, unless {@code NaN},
+	 * then compares all the statistics with the ones computed from the values
+	 * of all the spots.
+	 */
+	private void assertStatistics( final int count, final double min, final double max )
+	{
+		assertEquals( count, statistics.getCount() );
+		if ( !Double.isNaN( min ) )
+			assertEquals( min, statistics.getMin(), 0 );
+		if ( !Double.isNaN( max ) )
+			assertEquals( max, statistics.getMax(), 0 );
+
+		final double[] values = graph.vertices().stream()
+				.filter( feature::isSet )
+				.mapToDouble( feature::value )
+				.sorted()
+				.toArray();
+		assertEquals( values.length, statistics.getCount() );
+		if ( values.length == 0 )
+			return;
+
+		assertEquals( values[ 0 ], statistics.getMin(), 0 );
+		assertEquals( values[ values.length - 1 ], statistics.getMax(), 0 );
+		assertEquals( Arrays.stream( values ).average().getAsDouble(), statistics.getMean(), 1e-9 );
+		for ( final double q : QUANTILES )
+		{
+			final double quantile = statistics.getQuantile( q );
+			assertEquals( values[ ( int ) Math.round( q * ( values.length - 1 ) ) ], quantile, 0 );
+			assertTrue( quantile >= statistics.getMin() && quantile <= statistics.getMax() );
+		}
+	}
+
+	private Spot addSpot( final int timepoint )
+	{
+		return graph.addVertex().init( timepoint, new double[] { timepoint, 0, 0 }, 1. );
+	}
+
+	/**
+	 * Feature with values set by the test.
+	 */
+	private static class TestFeature extends DoubleScalarFeature< Spot >
+	{
+
+		static final String KEY = "Test feature";
+
+		static final Spec SPEC = new Spec();
+
+		TestFeature( final ModelGraph graph )
+		{
+			super( KEY, Dimension.NONE, "", graph.vertices().getRefPool() );
+		}
+
+		FeatureProjectionStatistics< Spot > getStatistics()
+		{
+			return ( ( SummarizedFeatureProjection< Spot > ) projections().iterator().next() ).getStatistics();
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+
+		static class Spec extends FeatureSpec< TestFeature, Spot >
+		{
+			Spec()
+			{
+				super( KEY, "", TestFeature.class, Spot.class, Multiplicity.SINGLE,
+						new FeatureProjectionSpec( KEY, Dimension.NONE ) );
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package org.mastodon.feature.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.feature.Dimension;
+import org.mastodon.feature.DoubleScalarFeature;
+import org.mastodon.feature.FeatureProjectionSpec;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.LazyFeature;
+import org.mastodon.feature.Multiplicity;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.SpotPool;
+import org.scijava.log.StderrLogService;
+
+/**
+ * Checks that the vertex property listener invalidates the values of moved
+ * spots, without loading the {@link LazyFeature}s.
+ */
+public class GraphFeatureUpdateListenersTest
+{
+
+	private ModelGraph graph;
+
+	private Spot a, b;
+
+	private TestFeature feature;
+
+	private LazyFeature< Spot > lazy;
+
+	private int nLoads;
+
+	@Before
+	public void setUp()
+	{
+		final Model model = new Model();
+		graph = model.getGraph();
+		a = addSpot( 0 );
+		b = addSpot( 1 );
+		feature = new TestFeature( graph );
+		feature.set( a, 1. );
+		feature.set( b, 2. );
+		lazy = new LazyFeature<>( TestFeature.SPEC, () -> {
+			nLoads++;
+			return feature;
+		}, graph.vertices(), new StderrLogService() );
+		model.getFeatureModel().declareFeature( lazy );
+
+		final SpotPool spotPool = ( SpotPool ) graph.vertices().getRefPool();
+		spotPool.positionProperty().addPropertyChangeListener(
+				GraphFeatureUpdateListeners.vertexPropertyListener( model.getFeatureModel(), Spot.class, Link.class ) );
+	}
+
+	@Test
+	public void testNotLoaded()
+	{
+		a.setPosition( 10., 0 );
+		assertFalse( lazy.isLoaded() );
+		assertEquals( 0, nLoads );
+
+		// The moved spot is invalidated when the feature is loaded.
+		lazy.get();
+		assertEquals( 1, nLoads );
+		assertFalse( feature.isSet( a ) );
+		assertTrue( feature.isSet( b ) );
+	}
+
+	@Test
+	public void testLoaded()
+	{
+		lazy.get();
+		b.setPosition( 10., 0 );
+		assertEquals( 1, nLoads );
+		assertTrue( feature.isSet( a ) );
+		assertFalse( feature.isSet( b ) );
+	}
+
+	private Spot addSpot( final int timepoint )
+	{
+		return graph.addVertex().init( timepoint, new double[] { timepoint, 0, 0 }, 1. );
+	}
+
+	/**
+	 * Feature with values set by the test.
+	 */
+	private static class TestFeature extends DoubleScalarFeature< Spot >
+	{
+
+		static final String KEY = "Test feature";
+
+		static final Spec SPEC = new Spec();
+
+		TestFeature( final ModelGraph graph )
+		{
+			super( KEY, Dimension.NONE, "", graph.vertices().getRefPool() );
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+
+		static class Spec extends FeatureSpec< TestFeature, Spot >
+		{
+			Spec()
+			{
+				super( KEY, "", TestFeature.class, Spot.class, Multiplicity.SINGLE,
+						new FeatureProjectionSpec( KEY, Dimension.NONE ) );
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.mastodon.mamut.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Compares the kernels shifted by the separable engine of the
+ * {@link SpotGaussFilteredIntensityFeatureComputer} with the kernels computed
+ * directly.
+ */
+public class SpotGaussFilteredIntensityFeatureComputerTest
+{
+
+	private static final double[] OFFSETS = { -0.5, -0.3, -0.01, 0., 0.01, 0.3, 0.5 };
+
+	@Test
+	public void testShift()
+	{
+		for ( int q = 1; q <= 1024; q++ )
+			for ( final double offset : OFFSETS )
+				assertShift( q / 64., offset );
+	}
+
+	/**
+	 * Below about 0.026 pixel, the centred weights underflow to 0 and the
+	 * geometric factor overflows. 1/64 pixel is the smallest quantized sigma.
+	 */
+	@Test
+	public void testShiftSmallSigma()
+	{
+		for ( final double sigma : new double[] { 1. / 64, 0.02, 0.026, 0.03 } )
+			for ( final double offset : OFFSETS )
+				assertShift( sigma, offset );
+
+		// A spot with a large sigma along X and a tiny one along Z.
+		final int size = 40;
+		for ( final double offset : OFFSETS )
+			assertShift( 1. / 64, offset, size );
+	}
+
+	private static void assertShift( final double sigma, final double offset )
+	{
+		assertShift( sigma, offset, SpotGaussFilteredIntensityFeatureComputer.halfkernelsize( sigma ) );
+	}
+
+	private static void assertShift( final double sigma, final double offset, final int size )
+	{
+		final int length = 2 * size - 1;
+		final double[] centred = new double[ length ];
+		final double[] expected = new double[ length ];
+		final double[] actual = new double[ length ];
+		SpotGaussFilteredIntensityFeatureComputer.halfkernel( sigma, 0., size, centred );
+		SpotGaussFilteredIntensityFeatureComputer.halfkernel( sigma, offset, size, expected );
+		SpotGaussFilteredIntensityFeatureComputer.shift( centred, sigma, offset, size, actual );
+
+		// Shifted weights are only defined relative to their sum.
+		double sum = 0.;
+		for ( int i = 0; i < length; i++ )
+		{
+			assertTrue( "Weight is not finite for sigma " + sigma + " and offset " + offset, Double.isFinite( actual[ i ] ) );
+			sum += actual[ i ];
+		}
+		assertTrue( "Weights sum to " + sum + " for sigma " + sigma + " and offset " + offset, sum > 0 && Double.isFinite( sum ) );
+		for ( int i = 0; i < length; i++ )
+			assertEquals( "Weight " + i + " for sigma " + sigma + " and offset " + offset, expected[ i ], actual[ i ] / sum, 1e-12 );
+	}
+}
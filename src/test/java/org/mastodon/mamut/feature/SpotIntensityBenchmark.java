@@ -4,6 +4,7 @@ import java.io.IOException;
 
 import org.jdom2.JDOMException;
 import org.mastodon.mamut.WindowManager;
+import org.mastodon.mamut.feature.SpotGaussFilteredIntensityFeatureComputer.KernelEngine;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.project.MamutProject;
@@ -22,7 +23,12 @@ public class SpotIntensityBenchmark
 		 * 1. Load a regular Mastodon project.
 		 */
 
-		final MamutProject project = new MamutProjectIO().load( "/Users/tinevez/Projects/JYTinevez/MaMuT/Mastodon-dataset/MaMuT_Parhyale_demo.mastodon" );
+		if ( args.length < 1 )
+		{
+			System.err.println( "Usage: SpotIntensityBenchmark <path to a .mastodon project>" );
+			return;
+		}
+		final MamutProject project = new MamutProjectIO().load( args[ 0 ] );
 		final WindowManager windowManager = new WindowManager( new Context() );
 		windowManager.getProjectManager().open( project );
 		final Model model = windowManager.getAppModel().getModel();
@@ -48,13 +54,18 @@ public class SpotIntensityBenchmark
 		final MamutFeatureComputerService featureComputerService = context.getService( MamutFeatureComputerService.class );
 		featureComputerService.setModel( model );
 		featureComputerService.setSharedBdvData( windowManager.getAppModel().getSharedBdvData() );
-		System.out.println( "Computing spot intensity..." );
-		for ( int i = 0; i < 5; i++ )
+		final SpotGaussFilteredIntensityFeatureComputer computer = ( SpotGaussFilteredIntensityFeatureComputer ) featureComputerService.getFeatureComputerFor( SpotGaussFilteredIntensityFeature.SPEC );
+		for ( final KernelEngine engine : KernelEngine.values() )
 		{
-			final StopWatch stopWatch = StopWatch.createAndStart();
-			featureComputerService.compute( SpotGaussFilteredIntensityFeature.SPEC );
-			stopWatch.stop();
-			System.out.println( String.format( "Done in %.2f s.", stopWatch.nanoTime() / 1e9 ) );
+			computer.setKernelEngine( engine );
+			System.out.println( "Computing spot intensity with the " + engine + " engine..." );
+			for ( int i = 0; i < 5; i++ )
+			{
+				final StopWatch stopWatch = StopWatch.createAndStart();
+				featureComputerService.compute( true, SpotGaussFilteredIntensityFeature.SPEC );
+				stopWatch.stop();
+				System.out.println( String.format( "Done in %.2f s.", stopWatch.nanoTime() / 1e9 ) );
+			}
 		}
 	}
 }
@@ -0,0 +1,68 @@
+package org.mastodon.mamut.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.model.BlockRawGraphIO;
+
+/**
+ * Reads back model graphs written in the {@link BlockRawGraphIO block raw
+ * format}, and checks that corrupt files are rejected.
+ */
+public class ModelGraphRawIOTest
+{
+
+	private static final int HEADER_SIZE = 6 * Integer.BYTES;
+
+	private ModelGraph graph;
+
+	@Before
+	public void setUp()
+	{
+		graph = new ModelGraph();
+		final Spot a = graph.addVertex().init( 0, new double[] { 1, 2, 3 }, 4. );
+		final Spot b = graph.addVertex().init( 1, new double[] { 5, 6, 7 }, 8. );
+		a.setLabel( "a" );
+		graph.addEdge( a, b ).init();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final ModelGraph read = new ModelGraph();
+		read.loadRaw( new ByteArrayInputStream( write() ), ModelSerializer.getInstance() );
+		assertEquals( 2, read.vertices().size() );
+		assertEquals( 1, read.edges().size() );
+		final Link link = read.edges().iterator().next();
+		final Spot source = link.getSource();
+		assertEquals( "a", source.getLabel() );
+		assertEquals( 0, source.getTimepoint() );
+		assertEquals( 2., source.getDoublePosition( 1 ), 0 );
+		assertEquals( 1, link.getTarget().getTimepoint() );
+	}
+
+	@Test( expected = IOException.class )
+	public void testCorruptEdge() throws IOException
+	{
+		final ByteBuffer bytes = ByteBuffer.wrap( write() ).order( ByteOrder.LITTLE_ENDIAN );
+		final int numVertices = bytes.getInt( 2 * Integer.BYTES );
+		final int vertexBytes = bytes.getInt( 3 * Integer.BYTES );
+		// Source file id of the first edge.
+		bytes.putInt( HEADER_SIZE + numVertices * vertexBytes, numVertices );
+		new ModelGraph().loadRaw( new ByteArrayInputStream( bytes.array() ), ModelSerializer.getInstance() );
+	}
+
+	private byte[] write() throws IOException
+	{
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		graph.saveBlockRaw( os, ModelSerializer.getInstance() );
+		return os.toByteArray();
+	}
+}
@@ -0,0 +1,161 @@
+package org.mastodon.mamut.project;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mastodon.mamut.project.WriteZip.Compression;
+
+public class WriteZipTest
+{
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		final File file = new File( folder.getRoot(), "test.mastodon" );
+		final Random random = new Random( 1l );
+		final List< byte[] > contents = new ArrayList<>();
+		final Compression[] compressions = Compression.values();
+		for ( int i = 0; i < 3 * compressions.length; i++ )
+		{
+			// Compressible content, of various sizes.
+			final byte[] content = new byte[ random.nextInt( 3 * 1024 * 1024 ) ];
+			for ( int j = 0; j < content.length; j++ )
+				content[ j ] = ( byte ) random.nextInt( 16 );
+			contents.add( content );
+		}
+
+		// Write the entries concurrently.
+		final WriteZip zip = new WriteZip( file, Compression.FAST );
+		final List< Thread > threads = new ArrayList<>();
+		for ( int i = 0; i < contents.size(); i++ )
+		{
+			final OutputStream os = zip.getOutputStream( "entry" + i, compressions[ i % compressions.length ] );
+			final byte[] content = contents.get( i );
+			final Thread thread = new Thread( () -> {
+				try
+				{
+					os.write( content );
+					os.close();
+				}
+				catch ( final IOException e )
+				{
+					throw new RuntimeException( e );
+				}
+			} );
+			threads.add( thread );
+			thread.start();
+		}
+		for ( final Thread thread : threads )
+			thread.join();
+		zip.close();
+
+		try (final ZipFile zf = new ZipFile( file ))
+		{
+			assertEquals( contents.size(), zf.size() );
+			for ( int i = 0; i < contents.size(); i++ )
+			{
+				final ZipEntry entry = zf.getEntry( "entry" + i );
+				assertNotNull( entry );
+				assertEquals( compressions[ i % compressions.length ] == Compression.STORED ? ZipEntry.STORED : ZipEntry.DEFLATED, entry.getMethod() );
+				assertArrayEquals( contents.get( i ), read( zf, entry ) );
+			}
+		}
+		assertEquals( "Temporary files were not deleted.", 1, folder.getRoot().list().length );
+	}
+
+	@Test
+	public void testZip64EntryCount() throws Exception
+	{
+		final File file = new File( folder.getRoot(), "many.mastodon" );
+		final int n = 0xFFFF + 2;
+		final WriteZip zip = new WriteZip( file );
+		for ( int i = 0; i < n; i++ )
+		{
+			final OutputStream os = zip.getOutputStream( "e" + i );
+			os.write( Integer.toString( i ).getBytes( StandardCharsets.UTF_8 ) );
+			os.close();
+		}
+		zip.close();
+
+		try (final ZipFile zf = new ZipFile( file ))
+		{
+			assertEquals( n, zf.size() );
+			final int i = n - 1;
+			assertEquals( Integer.toString( i ), new String( read( zf, zf.getEntry( "e" + i ) ), StandardCharsets.UTF_8 ) );
+		}
+	}
+
+	@Test
+	public void testAbortKeepsExistingFile() throws Exception
+	{
+		final File file = new File( folder.getRoot(), "existing.mastodon" );
+		final byte[] existing = "previous project".getBytes( StandardCharsets.UTF_8 );
+		Files.write( file.toPath(), existing );
+
+		final WriteZip zip = new WriteZip( file );
+		final OutputStream os = zip.getOutputStream( "entry" );
+		os.write( new byte[ 1024 ] );
+		os.close();
+		// A writer failed.
+		zip.abort();
+		zip.close();
+
+		assertArrayEquals( existing, Files.readAllBytes( file.toPath() ) );
+		assertEquals( "Temporary files were not deleted.", 1, folder.getRoot().list().length );
+	}
+
+	@Test
+	public void testOpenEntryKeepsExistingFile() throws Exception
+	{
+		final File file = new File( folder.getRoot(), "existing.mastodon" );
+		final byte[] existing = "previous project".getBytes( StandardCharsets.UTF_8 );
+		Files.write( file.toPath(), existing );
+
+		final WriteZip zip = new WriteZip( file );
+		zip.getOutputStream( "entry" ).write( new byte[ 1024 ] );
+		try
+		{
+			zip.close();
+			fail( "Closing with an open entry should fail." );
+		}
+		catch ( final IOException e )
+		{
+			// Expected.
+		}
+		assertArrayEquals( existing, Files.readAllBytes( file.toPath() ) );
+	}
+
+	private static byte[] read( final ZipFile zf, final ZipEntry entry ) throws IOException
+	{
+		try (final InputStream is = zf.getInputStream( entry ))
+		{
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[ 8192 ];
+			int n;
+			while ( ( n = is.read( buffer ) ) >= 0 )
+				bos.write( buffer, 0, n );
+			return bos.toByteArray();
+		}
+	}
+}
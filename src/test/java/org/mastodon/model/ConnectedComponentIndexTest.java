@@ -0,0 +1,235 @@
+package org.mastodon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefSet;
+import org.mastodon.graph.algorithm.ConnectedComponents;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class ConnectedComponentIndexTest
+{
+
+	private Model model;
+
+	private ModelGraph graph;
+
+	private ConnectedComponentIndex< Spot, Link > index;
+
+	private Spot a, b, c, d, e;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		index = model.getTrackIndex();
+		a = addSpot( 0 );
+		b = addSpot( 1 );
+		c = addSpot( 2 );
+		d = addSpot( 3 );
+		e = addSpot( 0 );
+		addLink( a, b );
+		addLink( b, c );
+		addLink( c, d );
+		model.setUndoPoint();
+	}
+
+	@Test
+	public void testMerge()
+	{
+		assertEquals( 2, index.numComponents() );
+		assertEquals( 4, index.getComponentSize( a ) );
+		assertEquals( 1, index.getComponentSize( e ) );
+		assertEquals( index.getComponentId( a ), index.getComponentId( d ) );
+		assertNotEquals( index.getComponentId( a ), index.getComponentId( e ) );
+
+		addLink( d, e );
+		assertEquals( 1, index.numComponents() );
+		assertEquals( 5, index.getComponentSize( e ) );
+		assertEquals( index.getComponentId( a ), index.getComponentId( e ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testSplit()
+	{
+		graph.remove( getLink( b, c ) );
+		assertEquals( 3, index.numComponents() );
+		assertEquals( 2, index.getComponentSize( a ) );
+		assertEquals( 2, index.getComponentSize( d ) );
+		assertEquals( index.getComponentId( a ), index.getComponentId( b ) );
+		assertEquals( index.getComponentId( c ), index.getComponentId( d ) );
+		assertNotEquals( index.getComponentId( b ), index.getComponentId( c ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testRemoveVertex()
+	{
+		graph.remove( b );
+		assertEquals( 3, index.numComponents() );
+		assertEquals( 1, index.getComponentSize( a ) );
+		assertEquals( 2, index.getComponentSize( c ) );
+		assertEquals( 0, index.getComponentSize( b ) );
+		assertEquals( -1, index.getComponentId( b ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testUndoRedo()
+	{
+		graph.remove( getLink( b, c ) );
+		model.setUndoPoint();
+		assertEquals( 2, index.getComponentSize( a ) );
+
+		model.undo();
+		assertEquals( 2, index.numComponents() );
+		assertEquals( 4, index.getComponentSize( a ) );
+		assertEquals( index.getComponentId( a ), index.getComponentId( d ) );
+		assertConsistent();
+
+		model.redo();
+		assertEquals( 3, index.numComponents() );
+		assertEquals( 2, index.getComponentSize( a ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testUndoVertexRemoval()
+	{
+		graph.remove( c );
+		model.setUndoPoint();
+		assertEquals( 3, index.numComponents() );
+
+		model.undo();
+		assertEquals( 2, index.numComponents() );
+		assertConsistent();
+	}
+
+	@Test
+	public void testRebuild()
+	{
+		graph.remove( getLink( b, c ) );
+		addLink( d, e );
+		index.graphRebuilt();
+		assertEquals( 2, index.numComponents() );
+		assertEquals( 2, index.getComponentSize( a ) );
+		assertEquals( 3, index.getComponentSize( e ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testRepeatedSplitAndMerge()
+	{
+		// Each split creates a new node, each merge leaves an inner node.
+		for ( int i = 0; i < 1000; i++ )
+		{
+			graph.remove( getLink( b, c ) );
+			addLink( b, c );
+			graph.remove( getLink( c, d ) );
+			addLink( c, d );
+		}
+		assertEquals( 2, index.numComponents() );
+		assertEquals( 4, index.getComponentSize( d ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testIdsAfterRebuild()
+	{
+		index.graphRebuilt();
+		assertEquals( 0, index.getComponentId( a ) );
+		assertEquals( 0, index.getComponentId( d ) );
+		assertEquals( 1, index.getComponentId( e ) );
+	}
+
+	@Test
+	public void testStableIds()
+	{
+		index.graphRebuilt();
+
+		// The larger part of a split keeps its id, the other ids do not change.
+		graph.remove( getLink( c, d ) );
+		assertEquals( 0, index.getComponentId( a ) );
+		assertEquals( 1, index.getComponentId( e ) );
+		assertEquals( 2, index.getComponentId( d ) );
+
+		// The larger component of a merge keeps its id.
+		addLink( c, d );
+		assertEquals( 0, index.getComponentId( d ) );
+		assertEquals( 1, index.getComponentId( e ) );
+
+		// The id of a removed component is reused.
+		graph.remove( e );
+		final Spot f = addSpot( 4 );
+		assertEquals( 0, index.getComponentId( a ) );
+		assertEquals( 1, index.getComponentId( f ) );
+
+		// The largest part of a component split by a vertex removal keeps its id.
+		graph.remove( b );
+		assertEquals( 0, index.getComponentId( c ) );
+		assertEquals( 1, index.getComponentId( f ) );
+		assertEquals( 2, index.getComponentId( a ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testIdsKeptByCompaction()
+	{
+		index.graphRebuilt();
+		for ( int i = 0; i < 1000; i++ )
+		{
+			graph.remove( getLink( c, d ) );
+			addLink( c, d );
+			assertEquals( 0, index.getComponentId( a ) );
+			assertEquals( 1, index.getComponentId( e ) );
+		}
+		assertConsistent();
+	}
+
+	/**
+	 * Compares the index with the connected components computed from
+	 * scratch.
+	 */
+	private void assertConsistent()
+	{
+		final Set< RefSet< Spot > > components = new ConnectedComponents<>( graph, 1 ).get();
+		assertEquals( components.size(), index.numComponents() );
+		final Set< Integer > ids = new HashSet<>();
+		for ( final RefSet< Spot > component : components )
+		{
+			final int id = index.getComponentId( component.iterator().next() );
+			ids.add( id );
+			for ( final Spot spot : component )
+			{
+				assertEquals( id, index.getComponentId( spot ) );
+				assertEquals( component.size(), index.getComponentSize( spot ) );
+			}
+		}
+		assertEquals( components.size(), ids.size() );
+	}
+
+	private Spot addSpot( final int timepoint )
+	{
+		return graph.addVertex().init( timepoint, new double[] { timepoint, 0, 0 }, 1. );
+	}
+
+	private void addLink( final Spot source, final Spot target )
+	{
+		graph.addEdge( source, target ).init();
+	}
+
+	private Link getLink( final Spot source, final Spot target )
+	{
+		return graph.getEdge( source, target );
+	}
+}
@@ -0,0 +1,287 @@
+package org.mastodon.model.tag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.labels.LabelSets;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+/**
+ * Checks that the columns of the {@link PrimitiveObjTagMap}s give the same
+ * tags as the backing {@code LabelSets} properties, through tag edits, graph
+ * edits, undo/redo and tag set structure changes.
+ */
+public class PrimitiveObjTagMapTest
+{
+
+	private Model model;
+
+	private ModelGraph graph;
+
+	private PrimitiveTagSetModel< Spot, Link > tagSetModel;
+
+	private LabelSets< Spot, Integer > vertexLabelSets;
+
+	private LabelSets< Link, Integer > edgeLabelSets;
+
+	private TagSet tagSet;
+
+	private Tag a, b;
+
+	private Spot s0, s1, s2;
+
+	private Link l01;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		tagSetModel = ( PrimitiveTagSetModel< Spot, Link > ) model.getTagSetModel();
+		final DefaultTagSetModel.SerialisationAccess< Spot, Link > access = new DefaultTagSetModel.SerialisationAccess<>( tagSetModel );
+		vertexLabelSets = access.getVertexIdLabelSets();
+		edgeLabelSets = access.getEdgeIdLabelSets();
+
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet ts = tss.createTagSet( "fate" );
+		ts.createTag( "a", 0xffff0000 );
+		ts.createTag( "b", 0xff00ff00 );
+		tss.createTagSet( "other" ).createTag( "c", 0xff0000ff );
+		tagSetModel.setTagSetStructure( tss );
+		tagSet = tagSetModel.getTagSetStructure().getTagSets().get( 0 );
+		a = tagSet.getTags().get( 0 );
+		b = tagSet.getTags().get( 1 );
+
+		s0 = addSpot( 0 );
+		s1 = addSpot( 1 );
+		s2 = addSpot( 2 );
+		l01 = graph.addEdge( s0, s1 ).init();
+		model.setUndoPoint();
+	}
+
+	@Test
+	public void testSetAndRemove()
+	{
+		vertexTags().set( s0, a );
+		vertexTags().set( s1, b );
+		edgeTags().set( l01, b );
+		assertEquals( a, vertexTags().get( s0 ) );
+		assertEquals( b, edgeTags().get( l01 ) );
+		assertConsistent();
+
+		vertexTags().set( s0, b );
+		vertexTags().remove( s1 );
+		edgeTags().set( l01, null );
+		assertEquals( b, vertexTags().get( s0 ) );
+		assertNull( vertexTags().get( s1 ) );
+		assertNull( edgeTags().get( l01 ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testSetAll()
+	{
+		final RefList< Spot > spots = RefCollections.createRefList( graph.vertices() );
+		spots.addAll( Arrays.asList( s0, s1, s2 ) );
+		vertexTags().set( s1, a );
+		vertexTags().setAll( spots, b );
+		assertEquals( 3, vertexTags().countTagged( b ) );
+		assertConsistent();
+
+		spots.remove( s0 );
+		vertexTags().setAll( spots, null );
+		assertEquals( b, vertexTags().get( s0 ) );
+		assertEquals( 1, vertexTags().countTagged( b ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testUndoRedoSet()
+	{
+		vertexTags().set( s0, a );
+		edgeTags().set( l01, a );
+		model.setUndoPoint();
+		vertexTags().set( s0, b );
+		vertexTags().set( s1, b );
+		edgeTags().remove( l01 );
+		model.setUndoPoint();
+
+		model.undo();
+		assertEquals( a, vertexTags().get( s0 ) );
+		assertNull( vertexTags().get( s1 ) );
+		assertEquals( a, edgeTags().get( l01 ) );
+		assertConsistent();
+
+		model.undo();
+		assertNull( vertexTags().get( s0 ) );
+		assertConsistent();
+
+		model.redo();
+		model.redo();
+		assertEquals( b, vertexTags().get( s0 ) );
+		assertEquals( b, vertexTags().get( s1 ) );
+		assertNull( edgeTags().get( l01 ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testUndoRedoSetAll()
+	{
+		final RefList< Spot > spots = RefCollections.createRefList( graph.vertices() );
+		spots.addAll( Arrays.asList( s0, s1, s2 ) );
+		vertexTags().setAll( spots, a );
+		model.setUndoPoint();
+
+		model.undo();
+		assertEquals( 0, vertexTags().countTagged( a ) );
+		assertConsistent();
+
+		model.redo();
+		assertEquals( 3, vertexTags().countTagged( a ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testVertexDeleteUndo()
+	{
+		vertexTags().set( s1, a );
+		edgeTags().set( l01, b );
+		model.setUndoPoint();
+
+		// Also removes l01.
+		graph.remove( s1 );
+		model.setUndoPoint();
+		assertEquals( 0, vertexTags().countTagged( a ) );
+		assertEquals( 0, edgeTags().countTagged( b ) );
+		assertConsistent();
+
+		model.undo();
+		assertEquals( 1, vertexTags().countTagged( a ) );
+		assertEquals( 1, edgeTags().countTagged( b ) );
+		assertConsistent();
+
+		model.redo();
+		assertEquals( 0, vertexTags().countTagged( a ) );
+		assertEquals( 0, edgeTags().countTagged( b ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testEdgeDeleteUndo()
+	{
+		edgeTags().set( l01, a );
+		model.setUndoPoint();
+
+		graph.remove( l01 );
+		model.setUndoPoint();
+		assertEquals( 0, edgeTags().countTagged( a ) );
+		assertConsistent();
+
+		model.undo();
+		assertEquals( 1, edgeTags().countTagged( a ) );
+		assertConsistent();
+
+		model.redo();
+		assertEquals( 0, edgeTags().countTagged( a ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testPoolIndexReuse()
+	{
+		vertexTags().set( s2, b );
+		final int id = s2.getInternalPoolIndex();
+		graph.remove( s2 );
+		final Spot spot = addSpot( 3 );
+		assertEquals( id, spot.getInternalPoolIndex() );
+		assertNull( vertexTags().get( spot ) );
+		assertEquals( PrimitiveObjTagMap.NO_TAG, vertexTags().getTagIndex( spot ) );
+		assertConsistent();
+	}
+
+	@Test
+	public void testTagSetStructureChange()
+	{
+		vertexTags().set( s0, a );
+		vertexTags().set( s1, b );
+		model.setUndoPoint();
+
+		final TagSetStructure tss = new TagSetStructure();
+		tss.set( tagSetModel.getTagSetStructure() );
+		final TagSet ts = tss.getTagSets().get( 0 );
+		ts.removeTag( a );
+		ts.createTag( "d", 0xffffffff );
+		tagSetModel.setTagSetStructure( tss );
+		model.setUndoPoint();
+		tagSet = tagSetModel.getTagSetStructure().getTagSets().get( 0 );
+		assertNull( vertexTags().get( s0 ) );
+		assertEquals( b, vertexTags().get( s1 ) );
+		assertEquals( 0, vertexTags().getTagIndex( s1 ) );
+		assertConsistent();
+
+		model.undo();
+		tagSet = tagSetModel.getTagSetStructure().getTagSets().get( 0 );
+		assertEquals( a, vertexTags().get( s0 ) );
+		assertConsistent();
+	}
+
+	private PrimitiveObjTagMap< Spot > vertexTags()
+	{
+		return tagSetModel.getVertexTags().tags( tagSet );
+	}
+
+	private PrimitiveObjTagMap< Link > edgeTags()
+	{
+		return tagSetModel.getEdgeTags().tags( tagSet );
+	}
+
+	/**
+	 * Compares the tags and tag indices of all vertices and edges, for all
+	 * tag sets, with the tags read from the {@code LabelSets} properties.
+	 */
+	private void assertConsistent()
+	{
+		for ( final TagSet ts : tagSetModel.getTagSetStructure().getTagSets() )
+		{
+			final List< Tag > tags = ts.getTags();
+			final PrimitiveObjTagMap< Spot > vertexTags = tagSetModel.getVertexTags().tags( ts );
+			final DefaultObjTagMap< Spot, Tag > vertexReference = new DefaultObjTagMap<>( vertexLabelSets, tags, Tag::id );
+			for ( final Spot spot : graph.vertices() )
+			{
+				final Tag expected = vertexReference.get( spot );
+				assertEquals( expected, vertexTags.get( spot ) );
+				assertEquals( expected == null ? PrimitiveObjTagMap.NO_TAG : tags.indexOf( expected ), vertexTags.getTagIndex( spot ) );
+			}
+			final PrimitiveObjTagMap< Link > edgeTags = tagSetModel.getEdgeTags().tags( ts );
+			final DefaultObjTagMap< Link, Tag > edgeReference = new DefaultObjTagMap<>( edgeLabelSets, tags, Tag::id );
+			for ( final Link link : graph.edges() )
+			{
+				final Tag expected = edgeReference.get( link );
+				assertEquals( expected, edgeTags.get( link ) );
+				assertEquals( expected == null ? PrimitiveObjTagMap.NO_TAG : tags.indexOf( expected ), edgeTags.getTagIndex( link ) );
+			}
+			for ( final Tag tag : tags )
+			{
+				assertEquals( vertexReference.getTaggedWith( tag ).size(), vertexTags.countTagged( tag ) );
+				assertEquals( edgeReference.getTaggedWith( tag ).size(), edgeTags.countTagged( tag ) );
+			}
+		}
+	}
+
+	private Spot addSpot( final int timepoint )
+	{
+		return graph.addVertex().init( timepoint, new double[] { timepoint, 0, 0 }, 1. );
+	}
+}
@@ -0,0 +1,217 @@
+package org.mastodon.model.tag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.BitSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+public class TagQueryTest
+{
+
+	private Model model;
+
+	private ModelGraph graph;
+
+	private PrimitiveTagSetModel< Spot, Link > tagSetModel;
+
+	private TagSet fate, other;
+
+	private Tag a, b, c;
+
+	private Spot s0, s1, s2, s3;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		tagSetModel = ( PrimitiveTagSetModel< Spot, Link > ) model.getTagSetModel();
+
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet ts = tss.createTagSet( "fate" );
+		ts.createTag( "a", 0xffff0000 );
+		ts.createTag( "b", 0xff00ff00 );
+		tss.createTagSet( "other" ).createTag( "c", 0xff0000ff );
+		tagSetModel.setTagSetStructure( tss );
+		fate = tagSetModel.getTagSetStructure().getTagSets().get( 0 );
+		other = tagSetModel.getTagSetStructure().getTagSets().get( 1 );
+		a = fate.getTags().get( 0 );
+		b = fate.getTags().get( 1 );
+		c = other.getTags().get( 0 );
+
+		s0 = addSpot( 0 );
+		s1 = addSpot( 1 );
+		s2 = addSpot( 2 );
+		s3 = addSpot( 3 );
+		final PrimitiveObjTags< Spot > tags = tagSetModel.getVertexTags();
+		tags.tags( fate ).set( s0, a );
+		tags.tags( fate ).set( s1, b );
+		tags.tags( fate ).set( s2, a );
+		tags.tags( other ).set( s0, c );
+		tags.tags( other ).set( s3, c );
+		model.setUndoPoint();
+	}
+
+	@Test
+	public void testSet()
+	{
+		assertQuery( query().or( a ), s0, s2 );
+		assertQuery( query().or( a ).or( b ), s0, s1, s2 );
+		assertQuery( query().or( fate ), s0, s1, s2 );
+		assertQuery( query().or( a ).and( c ), s0 );
+		assertQuery( query().or( fate ).and( other ), s0 );
+		assertQuery( query().or( fate ).andNot( c ), s1, s2 );
+		assertQuery( query().or( other ).andNot( fate ), s3 );
+		assertQuery( query() );
+
+		tagSetModel.getVertexTags().tags( fate ).set( s3, b );
+		assertQuery( query().or( b ), s1, s3 );
+	}
+
+	@Test
+	public void testRemove()
+	{
+		tagSetModel.getVertexTags().tags( fate ).remove( s0 );
+		tagSetModel.getVertexTags().tags( fate ).set( s2, b );
+		assertQuery( query().or( a ) );
+		assertQuery( query().or( b ), s1, s2 );
+		assertQuery( query().or( c ), s0, s3 );
+	}
+
+	@Test
+	public void testClearOnDeletion()
+	{
+		graph.remove( s2 );
+		assertQuery( query().or( a ), s0 );
+		graph.remove( s0 );
+		assertQuery( query().or( a ) );
+		assertQuery( query().or( c ), s3 );
+	}
+
+	@Test
+	public void testPoolIndexReuse()
+	{
+		final int id = s2.getInternalPoolIndex();
+		graph.remove( s2 );
+		final Spot spot = addSpot( 4 );
+		assertEquals( id, spot.getInternalPoolIndex() );
+		assertFalse( query().or( fate ).contains( spot ) );
+		assertQuery( query().or( a ), s0 );
+
+		tagSetModel.getVertexTags().tags( fate ).set( spot, b );
+		assertQuery( query().or( b ), s1, spot );
+	}
+
+	@Test
+	public void testUndo()
+	{
+		tagSetModel.getVertexTags().tags( fate ).set( s3, a );
+		tagSetModel.getVertexTags().tags( fate ).remove( s0 );
+		model.setUndoPoint();
+		assertQuery( query().or( a ), s2, s3 );
+
+		model.undo();
+		assertQuery( query().or( a ), s0, s2 );
+
+		model.redo();
+		assertQuery( query().or( a ), s2, s3 );
+
+		graph.remove( s2 );
+		model.setUndoPoint();
+		assertQuery( query().or( a ), s3 );
+
+		// The restored spot is tagged again.
+		model.undo();
+		assertEquals( 2, query().or( a ).size() );
+		assertTrue( query().or( a ).contains( s3 ) );
+
+		model.redo();
+		assertQuery( query().or( a ), s3 );
+	}
+
+	@Test
+	public void testTagSetStructureChange()
+	{
+		final TagSetStructure tss = new TagSetStructure();
+		tss.set( tagSetModel.getTagSetStructure() );
+		tss.getTagSets().get( 0 ).removeTag( a );
+		tss.getTagSets().get( 0 ).createTag( "d", 0xffffffff );
+		tagSetModel.setTagSetStructure( tss );
+
+		// Tags of the previous structure are looked up by ID.
+		assertQuery( query().or( b ), s1 );
+		assertQuery( query().or( fate ), s1 );
+		try
+		{
+			query().or( a );
+			fail( "A removed tag should be rejected." );
+		}
+		catch ( final IllegalArgumentException e )
+		{
+			// Expected.
+		}
+
+		model.setUndoPoint();
+		model.undo();
+		assertQuery( query().or( a ), s0, s2 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testForeignTag()
+	{
+		final TagSetStructure tss = new TagSetStructure();
+		final Tag foreign = tss.createTagSet( "foreign" ).createTag( "x", 0xff000000 );
+		query().or( foreign );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testForeignTagSet()
+	{
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet foreign = tss.createTagSet( "foreign" );
+		query().or( a ).and( foreign );
+	}
+
+	private TagQuery< Spot > query()
+	{
+		return tagSetModel.queryVertices();
+	}
+
+	/**
+	 * Checks that the query matches exactly the specified spots, through all
+	 * the accessors of the result.
+	 */
+	private void assertQuery( final TagQuery< Spot > query, final Spot... expected )
+	{
+		assertEquals( expected.length, query.size() );
+		final BitSet ids = new BitSet();
+		for ( final Spot spot : expected )
+		{
+			assertTrue( query.contains( spot ) );
+			ids.set( spot.getInternalPoolIndex() );
+		}
+		assertEquals( ids, query.getIds() );
+		final RefSet< Spot > objects = query.getObjects( RefCollections.createRefSet( graph.vertices() ) );
+		assertEquals( expected.length, objects.size() );
+		for ( final Spot spot : expected )
+			assertTrue( objects.contains( spot ) );
+	}
+
+	private Spot addSpot( final int timepoint )
+	{
+		return graph.addVertex().init( timepoint, new double[] { timepoint, 0, 0 }, 1. );
+	}
+}
@@ -0,0 +1,71 @@
+package org.mastodon.ui.coloring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link ColorCache} returns the requested colors, stays
+ * within its capacity, and keeps most colors of a working set larger than its
+ * capacity.
+ */
+public class ColorCacheTest
+{
+
+	@Test
+	public void testGet()
+	{
+		final ColorCache cache = new ColorCache();
+		final int argb = ColorCache.argb( 10, 20, 30, 40 );
+		final Color color = cache.get( argb );
+		assertEquals( new Color( 10, 20, 30, 40 ), color );
+		assertSame( color, cache.get( argb ) );
+		assertEquals( 1, cache.size() );
+	}
+
+	@Test
+	public void testCapacity()
+	{
+		final ColorCache cache = new ColorCache( 1000 );
+		assertEquals( 1024, cache.capacity() );
+		for ( int i = 0; i < 100_000; i++ )
+			assertEquals( i | 0xff000000, cache.get( i | 0xff000000 ).getRGB() );
+		assertTrue( cache.size() <= cache.capacity() );
+
+		final ColorCache single = new ColorCache( 1 );
+		assertEquals( 0xff000001, single.get( 0xff000001 ).getRGB() );
+		assertEquals( 0xff000002, single.get( 0xff000002 ).getRGB() );
+		assertEquals( 1, single.size() );
+	}
+
+	/**
+	 * Paints the colors of a lookup table of 4096 entries at 64 fading steps
+	 * twice. Most colors of the second pass are found in the cache, instead of
+	 * none if the cache was cleared when full.
+	 */
+	@Test
+	public void testLargeWorkingSet()
+	{
+		final ColorCache cache = new ColorCache();
+		final int[] lut = new int[ 4096 ];
+		for ( int i = 0; i < lut.length; i++ )
+			lut[ i ] = ColorMap.JET.get( i / ( lut.length - 1. ) );
+		final int fadeSteps = 64;
+
+		final Color[] first = new Color[ lut.length * fadeSteps ];
+		for ( int i = 0; i < lut.length; i++ )
+			for ( int f = 0; f < fadeSteps; f++ )
+				first[ i * fadeSteps + f ] = cache.get( ColorCache.interpolate( lut[ i ], 0, ( double ) f / fadeSteps ) );
+
+		int hits = 0;
+		for ( int i = 0; i < lut.length; i++ )
+			for ( int f = 0; f < fadeSteps; f++ )
+				if ( first[ i * fadeSteps + f ] == cache.get( ColorCache.interpolate( lut[ i ], 0, ( double ) f / fadeSteps ) ) )
+					++hits;
+		assertTrue( "Only " + hits + " hits.", hits > first.length / 2 );
+	}
+}
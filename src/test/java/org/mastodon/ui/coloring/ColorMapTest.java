@@ -0,0 +1,125 @@
+package org.mastodon.ui.coloring;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Compares the colors of the quantized colormaps with the colors interpolated
+ * by the exact ones.
+ */
+public class ColorMapTest
+{
+
+	/**
+	 * Number of values sampled between -0.5 and 1.5. Not a multiple of the
+	 * lookup table size, so that most values fall between table entries.
+	 */
+	private static final int NUM_SAMPLES = 100_003;
+
+	/**
+	 * Maximal difference of a color channel, in 8-bit levels, on top of the
+	 * change of the exact color over half a table step.
+	 */
+	private static final int CHANNEL_TOLERANCE = 1;
+
+	/**
+	 * Half the distance between two entries of the default lookup table.
+	 */
+	private static final double HALF_STEP = 0.5 / ( ColorMap.DEFAULT_LUT_SIZE - 1 );
+
+	@Test
+	public void testQuantized()
+	{
+		for ( final String name : ColorMap.getColorMapNames() )
+		{
+			final ColorMap exact = ColorMap.getColorMap( name );
+			final ColorMap quantized = exact.quantized();
+			assertSame( quantized, exact.quantized() );
+			assertSame( quantized, quantized.quantized() );
+			for ( int i = 0; i <= NUM_SAMPLES; i++ )
+				assertColor( name, exact, quantized, -0.5 + 2. * i / NUM_SAMPLES );
+
+			final double[] special = { Double.NaN, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, -Double.MIN_VALUE, 0, 1, Math.nextUp( 1. ), -1e300, 1e300 };
+			for ( final double val : special )
+				assertColor( name, exact, quantized, val );
+			assertEquals( exact.get( Double.NaN ), quantized.get( Double.NaN ) );
+			assertEquals( exact.get( 0 ), quantized.get( 0 ) );
+			assertEquals( exact.get( 1 ), quantized.get( 1 ) );
+		}
+	}
+
+	@Test
+	public void testBulkGet()
+	{
+		final double[] in = new double[ 1001 ];
+		for ( int i = 0; i < in.length; i++ )
+			in[ i ] = -0.5 + 2. * i / ( in.length - 1 );
+		in[ 0 ] = Double.NaN;
+		in[ 1 ] = Double.NEGATIVE_INFINITY;
+		in[ 2 ] = Double.POSITIVE_INFINITY;
+		for ( final String name : ColorMap.getColorMapNames() )
+		{
+			for ( final ColorMap cm : new ColorMap[] { ColorMap.getColorMap( name ), ColorMap.getColorMap( name ).quantized() } )
+			{
+				final int[] expected = new int[ in.length ];
+				for ( int i = 0; i < in.length; i++ )
+					expected[ i ] = cm.get( in[ i ] );
+
+				// The output array can be longer than the input one.
+				final int[] out = new int[ in.length + 1 ];
+				out[ in.length ] = 42;
+				cm.get( in, out );
+				assertArrayEquals( name, expected, Arrays.copyOf( out, in.length ) );
+				assertEquals( 42, out[ in.length ] );
+			}
+		}
+	}
+
+	@Test
+	public void testSmallTable()
+	{
+		final ColorMap quantized = ColorMap.JET.quantized( 2 );
+		assertEquals( ColorMap.JET.get( 0 ), quantized.get( 0.49 ) );
+		assertEquals( ColorMap.JET.get( 1 ), quantized.get( 0.51 ) );
+		assertEquals( ColorMap.JET.get( 0 ), quantized.get( -1 ) );
+		assertEquals( ColorMap.JET.get( 1 ), quantized.get( 2 ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidSize()
+	{
+		ColorMap.JET.quantized( 1 );
+	}
+
+	/**
+	 * Checks that the quantized color of the specified value differs from the
+	 * exact one by at most {@link #CHANNEL_TOLERANCE}, plus the change of the
+	 * exact color between the neighbouring table entries. Colormaps with a
+	 * steep change, like {@code oxy}, differ by more than one level there.
+	 */
+	private static void assertColor( final String name, final ColorMap exact, final ColorMap quantized, final double val )
+	{
+		final int expected = exact.get( val );
+		final int actual = quantized.get( val );
+		final int before = exact.get( val - HALF_STEP );
+		final int after = exact.get( val + HALF_STEP );
+		for ( int shift = 0; shift < 32; shift += 8 )
+		{
+			final int tolerance = CHANNEL_TOLERANCE + Math.abs( channel( after, shift ) - channel( before, shift ) );
+			final int difference = Math.abs( channel( expected, shift ) - channel( actual, shift ) );
+			if ( difference > tolerance )
+				fail( String.format( "Colormap %s at %s: expected %08x, got %08x", name, val, expected, actual ) );
+		}
+	}
+
+	private static int channel( final int argb, final int shift )
+	{
+		return ( argb >>> shift ) & 0xff;
+	}
+}
@@ -0,0 +1,201 @@
+package org.mastodon.ui.coloring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.collection.RefSet;
+import org.mastodon.feature.Dimension;
+import org.mastodon.feature.DoubleScalarFeature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureProjectionSpec;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.Multiplicity;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.ui.coloring.feature.FeatureColorMode;
+import org.mastodon.ui.coloring.feature.FeatureColorMode.EdgeColorMode;
+import org.mastodon.ui.coloring.feature.FeatureColorMode.VertexColorMode;
+import org.mastodon.ui.coloring.feature.FeatureColorModeManager;
+import org.mastodon.ui.coloring.feature.FeatureProjectionId;
+import org.mastodon.ui.coloring.feature.TargetType;
+
+/**
+ * Checks that the colors cached by the {@link GraphColorCache} are invalidated
+ * when the graph or the features they depend on change.
+ */
+public class GraphColorCacheTest
+{
+
+	private Model model;
+
+	private ModelGraph graph;
+
+	private GraphColorCache< Spot, Link > cache;
+
+	/**
+	 * A track of three spots.
+	 */
+	private Spot a, b, c;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		cache = new GraphColorCache<>( graph, model.getFeatureModel() );
+		a = addSpot( 0 );
+		b = addSpot( 1 );
+		c = addSpot( 2 );
+		graph.addEdge( a, b ).init();
+		graph.addEdge( b, c ).init();
+	}
+
+	@Test
+	public void testEdgeAdded()
+	{
+		final GraphColorGenerator< Spot, Link > generator = cache.get( "track size", TrackSizeColorGenerator::new );
+		final Spot d = addSpot( 3 );
+		final Spot e = addSpot( 4 );
+		assertEquals( 3, generator.color( a ) );
+		assertEquals( 1, generator.color( d ) );
+
+		final Link link = graph.addEdge( d, e ).init();
+		assertEquals( 2, generator.color( d ) );
+		assertEquals( 2, generator.color( link, d, e ) );
+		graph.addEdge( c, d ).init();
+		assertEquals( 5, generator.color( a ) );
+		assertEquals( 5, generator.color( link, d, e ) );
+	}
+
+	@Test
+	public void testEdgeRemoved()
+	{
+		final GraphColorGenerator< Spot, Link > generator = cache.get( "track size", TrackSizeColorGenerator::new );
+		final Link link = a.outgoingEdges().iterator().next();
+		assertEquals( 3, generator.color( a ) );
+		assertEquals( 3, generator.color( link, a, b ) );
+
+		graph.remove( b.outgoingEdges().iterator().next() );
+		assertEquals( 2, generator.color( a ) );
+		assertEquals( 2, generator.color( link, a, b ) );
+		assertEquals( 1, generator.color( c ) );
+	}
+
+	@Test
+	public void testVertexRemoved()
+	{
+		final GraphColorGenerator< Spot, Link > generator = cache.get( "track size", TrackSizeColorGenerator::new );
+		assertEquals( 3, generator.color( a ) );
+
+		graph.remove( c );
+		assertEquals( 2, generator.color( a ) );
+		assertEquals( 2, generator.color( b ) );
+	}
+
+	@Test
+	public void testFeatureRecomputed()
+	{
+		final FeatureModel featureModel = model.getFeatureModel();
+		final ColoringModel coloringModel = new ColoringModel( model.getTagSetModel(), new FeatureColorModeManager( false ), featureModel );
+		final FeatureColorMode mode = FeatureColorMode.defaultMode().copy( "test" );
+		mode.setVertexColorMode( VertexColorMode.VERTEX );
+		mode.setVertexFeatureProjection( new FeatureProjectionId( TestFeature.KEY, TestFeature.KEY, TargetType.VERTEX ) );
+		mode.setVertexRange( 0, 1 );
+		mode.setEdgeColorMode( EdgeColorMode.NONE );
+		coloringModel.colorByFeature( mode );
+
+		featureModel.declareFeature( new TestFeature( graph, 0 ) );
+		final GraphColorGenerator< Spot, Link > generator = coloringModel.getFeatureGraphColorGenerator( cache );
+		assertSame( generator, coloringModel.getFeatureGraphColorGenerator( cache ) );
+		final int color = generator.color( a );
+
+		// A recomputed feature is a new instance, with new values.
+		featureModel.declareFeature( new TestFeature( graph, 1 ) );
+		final GraphColorGenerator< Spot, Link > recomputed = coloringModel.getFeatureGraphColorGenerator( cache );
+		assertNotSame( generator, recomputed );
+		assertNotEquals( color, recomputed.color( a ) );
+	}
+
+	private Spot addSpot( final int timepoint )
+	{
+		return graph.addVertex().init( timepoint, new double[] { timepoint, 0, 0 }, 1. );
+	}
+
+	/**
+	 * Colors objects with the number of spots in their track.
+	 */
+	private class TrackSizeColorGenerator implements GraphColorGenerator< Spot, Link >
+	{
+
+		@Override
+		public int color( final Spot vertex )
+		{
+			final RefSet< Spot > visited = RefCollections.createRefSet( graph.vertices() );
+			final RefList< Spot > track = RefCollections.createRefList( graph.vertices() );
+			final Spot ref = graph.vertexRef();
+			final Spot other = graph.vertexRef();
+			visited.add( vertex );
+			track.add( vertex );
+			for ( int i = 0; i < track.size(); ++i )
+			{
+				for ( final Link link : track.get( i, ref ).edges() )
+				{
+					if ( visited.add( link.getSource( other ) ) )
+						track.add( other );
+					if ( visited.add( link.getTarget( other ) ) )
+						track.add( other );
+				}
+			}
+			graph.releaseRef( other );
+			graph.releaseRef( ref );
+			return track.size();
+		}
+
+		@Override
+		public int color( final Link edge, final Spot source, final Spot target )
+		{
+			return color( source );
+		}
+	}
+
+	/**
+	 * Feature giving the same value to all spots.
+	 */
+	private static class TestFeature extends DoubleScalarFeature< Spot >
+	{
+
+		static final String KEY = "Test feature";
+
+		static final Spec SPEC = new Spec();
+
+		TestFeature( final ModelGraph graph, final double value )
+		{
+			super( KEY, Dimension.NONE, "", graph.vertices().getRefPool() );
+			for ( final Spot spot : graph.vertices() )
+				set( spot, value );
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+
+		static class Spec extends FeatureSpec< TestFeature, Spot >
+		{
+			Spec()
+			{
+				super( KEY, "", TestFeature.class, Spot.class, Multiplicity.SINGLE,
+						new FeatureProjectionSpec( KEY, Dimension.NONE ) );
+			}
+		}
+	}
+}
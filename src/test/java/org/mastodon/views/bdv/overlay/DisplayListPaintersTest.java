@@ -0,0 +1,217 @@
+package org.mastodon.views.bdv.overlay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
+
+/**
+ * Compares the pixels painted by the {@link RasterDisplayListPainter} and the
+ * {@link BandedDisplayListPainter} with the pixels painted by the
+ * {@link DisplayListPainter} for random display lists, at the resolution of
+ * regular and HiDPI screens.
+ */
+public class DisplayListPaintersTest
+{
+
+	private static final int WIDTH = 400;
+
+	private static final int HEIGHT = 300;
+
+	private static final int NUM_PRIMITIVES = 200;
+
+	private static final double[] SCALES = { 1, 1.5, 2 };
+
+	/**
+	 * Maximal fraction of the pixels painted by the {@link DisplayListPainter}
+	 * that the {@link RasterDisplayListPainter} may paint differently.
+	 */
+	private static final double MAX_RASTER_MISMATCH = 0.06;
+
+	/**
+	 * Maximal difference of a color channel for a pixel to be considered the
+	 * same.
+	 */
+	private static final int CHANNEL_TOLERANCE = 32;
+
+	private static final int EDGES = 1, ELLIPSES = 2, POINTS = 4;
+
+	@Test
+	public void testRasterEdges()
+	{
+		for ( final double scale : SCALES )
+			assertRasterMatches( randomList( EDGES, 1l ), scale );
+	}
+
+	@Test
+	public void testRasterEllipses()
+	{
+		for ( final double scale : SCALES )
+			assertRasterMatches( randomList( ELLIPSES, 2l ), scale );
+	}
+
+	@Test
+	public void testRasterPoints()
+	{
+		for ( final double scale : SCALES )
+			assertRasterMatches( randomList( POINTS, 3l ), scale );
+	}
+
+	/**
+	 * Checks that the raster painter paints at the resolution of the device,
+	 * instead of painting at the resolution of the canvas and upscaling.
+	 */
+	@Test
+	public void testRasterResolution()
+	{
+		final OverlayDisplayList list = new OverlayDisplayList();
+		final Ellipse ellipse = new Ellipse();
+		ellipse.setCenter( 20.3, 15.6 );
+		ellipse.setAxisHalfLength( 10.25, 6.75 );
+		ellipse.setTheta( 0.3 );
+		list.addEllipse( ellipse, 0xffffffff, OverlayDisplayList.STYLE_DEFAULT, null );
+		final BufferedImage image = paint( ( g, w, h ) -> new RasterDisplayListPainter().paint( g, list, w, h ), 2 );
+		boolean upscaled = true;
+		for ( int y = 0; y < image.getHeight(); y += 2 )
+			for ( int x = 0; x < image.getWidth(); x += 2 )
+				upscaled &= image.getRGB( x, y ) == image.getRGB( x + 1, y )
+						&& image.getRGB( x, y ) == image.getRGB( x, y + 1 )
+						&& image.getRGB( x, y ) == image.getRGB( x + 1, y + 1 );
+		assertTrue( "The overlay was painted at the canvas resolution.", !upscaled );
+	}
+
+	@Test
+	public void testBanded()
+	{
+		final OverlayDisplayList list = randomList( EDGES | ELLIPSES | POINTS, 4l );
+		for ( final double scale : SCALES )
+		{
+			final BufferedImage expected = paint( ( g, w, h ) -> new DisplayListPainter().paint( g, list, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY ), scale );
+			final BufferedImage actual = paint( ( g, w, h ) -> new BandedDisplayListPainter().paint( g, list, w, h, RenderingHints.VALUE_ANTIALIAS_OFF ), scale );
+			assertEquals( "Mismatch at scale " + scale, 0, mismatch( expected, actual, 0 ), 0 );
+		}
+	}
+
+	private static void assertRasterMatches( final OverlayDisplayList list, final double scale )
+	{
+		final BufferedImage expected = paint( ( g, w, h ) -> new DisplayListPainter().paint( g, list, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY ), scale );
+		final BufferedImage actual = paint( ( g, w, h ) -> new RasterDisplayListPainter().paint( g, list, w, h ), scale );
+		// The raster painter follows the strokes within one canvas pixel.
+		final double mismatch = mismatch( expected, actual, ( int ) Math.ceil( scale ) );
+		assertTrue( "Mismatch of " + mismatch + " at scale " + scale, mismatch <= MAX_RASTER_MISMATCH );
+	}
+
+	private interface Painter
+	{
+		void paint( Graphics2D graphics, int width, int height );
+	}
+
+	/**
+	 * Paints on a transparent device image, with the specified device scale.
+	 */
+	private static BufferedImage paint( final Painter painter, final double scale )
+	{
+		final BufferedImage image = new BufferedImage(
+				( int ) Math.ceil( WIDTH * scale ),
+				( int ) Math.ceil( HEIGHT * scale ),
+				BufferedImage.TYPE_INT_ARGB_PRE );
+		final Graphics2D g = image.createGraphics();
+		g.setComposite( AlphaComposite.SrcOver );
+		g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF );
+		g.scale( scale, scale );
+		painter.paint( g, WIDTH, HEIGHT );
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Returns the number of pixels that differ between the two images,
+	 * relative to the number of pixels painted in the expected image. With a
+	 * positive {@code radius}, a pixel only differs if no pixel of the other
+	 * image within this distance (in device pixels) has the same color.
+	 */
+	private static double mismatch( final BufferedImage expected, final BufferedImage actual, final int radius )
+	{
+		assertEquals( expected.getWidth(), actual.getWidth() );
+		assertEquals( expected.getHeight(), actual.getHeight() );
+		int painted = 0;
+		int different = 0;
+		for ( int y = 0; y < expected.getHeight(); ++y )
+		{
+			for ( int x = 0; x < expected.getWidth(); ++x )
+			{
+				if ( expected.getRGB( x, y ) != 0 )
+					++painted;
+				if ( !hasNear( expected.getRGB( x, y ), actual, x, y, radius )
+						|| !hasNear( actual.getRGB( x, y ), expected, x, y, radius ) )
+					++different;
+			}
+		}
+		assertTrue( painted > 0 );
+		return ( double ) different / painted;
+	}
+
+	/**
+	 * Whether the specified image has a pixel of the specified color near the
+	 * specified position.
+	 */
+	private static boolean hasNear( final int argb, final BufferedImage image, final int x, final int y, final int radius )
+	{
+		for ( int ny = Math.max( y - radius, 0 ); ny <= Math.min( y + radius, image.getHeight() - 1 ); ++ny )
+			for ( int nx = Math.max( x - radius, 0 ); nx <= Math.min( x + radius, image.getWidth() - 1 ); ++nx )
+				if ( isSame( argb, image.getRGB( nx, ny ) ) )
+					return true;
+		return false;
+	}
+
+	private static boolean isSame( final int argb0, final int argb1 )
+	{
+		for ( int shift = 0; shift < 32; shift += 8 )
+			if ( Math.abs( ( ( argb0 >>> shift ) & 0xff ) - ( ( argb1 >>> shift ) & 0xff ) ) > CHANNEL_TOLERANCE )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Creates a display list with random primitives of the specified types,
+	 * some of them partly outside of the canvas.
+	 */
+	private static OverlayDisplayList randomList( final int types, final long seed )
+	{
+		final Random random = new Random( seed );
+		final OverlayDisplayList list = new OverlayDisplayList();
+		final Ellipse ellipse = new Ellipse();
+		for ( int i = 0; i < NUM_PRIMITIVES; ++i )
+		{
+			final int argb = randomColor( random );
+			if ( ( types & EDGES ) != 0 )
+				list.addEdge(
+						random.nextInt( WIDTH + 40 ) - 20, random.nextInt( HEIGHT + 40 ) - 20,
+						random.nextInt( WIDTH + 40 ) - 20, random.nextInt( HEIGHT + 40 ) - 20,
+						argb, random.nextBoolean() ? argb : randomColor( random ),
+						random.nextInt( 4 ) == 0 );
+			if ( ( types & ELLIPSES ) != 0 )
+			{
+				ellipse.setCenter( random.nextDouble() * WIDTH, random.nextDouble() * HEIGHT );
+				ellipse.setAxisHalfLength( 5 + 30 * random.nextDouble(), 5 + 30 * random.nextDouble() );
+				ellipse.setTheta( Math.PI * random.nextDouble() );
+				list.addEllipse( ellipse, argb, random.nextInt( 3 ), null );
+			}
+			if ( ( types & POINTS ) != 0 )
+				list.addPoint( random.nextDouble() * WIDTH, random.nextDouble() * HEIGHT, 1 + 4 * random.nextDouble(), argb, random.nextBoolean() );
+		}
+		return list;
+	}
+
+	private static int randomColor( final Random random )
+	{
+		return 0xff000000 | random.nextInt( 0x1000000 );
+	}
+}
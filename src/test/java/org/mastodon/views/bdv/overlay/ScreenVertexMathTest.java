@@ -0,0 +1,277 @@
+package org.mastodon.views.bdv.overlay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
+import org.mastodon.views.bdv.overlay.util.JamaEigenvalueDecomposition;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.LinAlgHelpers;
+
+/**
+ * Compares the closed-form ellipses of {@link ScreenVertexMath} and
+ * {@link ScreenVertexMathBatch} with ellipses computed from the
+ * eigendecomposition of the covariances, on random ellipsoids and viewer
+ * transforms.
+ */
+public class ScreenVertexMathTest
+{
+
+	private static final int NUM_TRANSFORMS = 100;
+
+	private static final int NUM_ELLIPSOIDS = 100;
+
+	/**
+	 * Relative tolerance on the ellipse axes and center.
+	 */
+	private static final double EPS = 1e-8;
+
+	/**
+	 * Tolerance on the ellipse angles, in radians.
+	 */
+	private static final double EPS_THETA = 1e-6;
+
+	private final JamaEigenvalueDecomposition eig2 = new JamaEigenvalueDecomposition( 2 );
+
+	private final JamaEigenvalueDecomposition eig3 = new JamaEigenvalueDecomposition( 3 );
+
+	@Test
+	public void testEllipses()
+	{
+		final Random random = new Random( 1l );
+		final ScreenVertexMath svm = new ScreenVertexMath();
+		final ScreenVertexMath svmFromBatch = new ScreenVertexMath();
+		final ScreenVertexMathBatch batch = new ScreenVertexMathBatch();
+		final Ellipse expectedProjection = new Ellipse();
+		final Ellipse expectedIntersection = new Ellipse();
+		final double[][] positions = new double[ NUM_ELLIPSOIDS ][];
+		final double[][][] covariances = new double[ NUM_ELLIPSOIDS ][][];
+		int numIntersecting = 0;
+		int numNotIntersecting = 0;
+		for ( int t = 0; t < NUM_TRANSFORMS; ++t )
+		{
+			final AffineTransform3D transform = randomTransform( random );
+			batch.clear();
+			for ( int i = 0; i < NUM_ELLIPSOIDS; ++i )
+			{
+				positions[ i ] = new double[] {
+						20 * random.nextDouble() - 10,
+						20 * random.nextDouble() - 10,
+						20 * random.nextDouble() - 10 };
+				covariances[ i ] = randomCovariance( random );
+				batch.add( positions[ i ], covariances[ i ] );
+			}
+			batch.compute( transform );
+
+			for ( int i = 0; i < NUM_ELLIPSOIDS; ++i )
+			{
+				svm.init( positions[ i ], covariances[ i ], transform );
+				svmFromBatch.init( batch, i, transform );
+				final double[][] vS = new double[ 3 ][ 3 ];
+				final double[] vPos = new double[ 3 ];
+				transform( positions[ i ], covariances[ i ], transform, vPos, vS );
+
+				project( vPos, vS, expectedProjection );
+				assertEllipse( expectedProjection, svm.getProjectEllipse() );
+				assertEllipse( expectedProjection, svmFromBatch.getProjectEllipse() );
+
+				final double distance = intersect( vPos, vS, expectedIntersection );
+				// Skip ellipsoids that barely touch the plane.
+				if ( Math.abs( distance - 1 ) < 1e-6 )
+					continue;
+				final boolean intersects = distance < 1;
+				assertEquals( intersects, svm.intersectsViewPlane() );
+				assertEquals( intersects, svmFromBatch.intersectsViewPlane() );
+				if ( intersects )
+				{
+					++numIntersecting;
+					assertEllipse( expectedIntersection, svm.getIntersectEllipse() );
+					assertEllipse( expectedIntersection, svmFromBatch.getIntersectEllipse() );
+				}
+				else
+					++numNotIntersecting;
+			}
+		}
+		assertTrue( numIntersecting > NUM_TRANSFORMS * NUM_ELLIPSOIDS / 10 );
+		assertTrue( numNotIntersecting > NUM_TRANSFORMS * NUM_ELLIPSOIDS / 10 );
+	}
+
+	private static void assertEllipse( final Ellipse expected, final Ellipse actual )
+	{
+		final double w = expected.getHalfWidth();
+		final double h = expected.getHalfHeight();
+		final double tolerance = EPS * Math.max( 1, h );
+		assertEquals( expected.getCenter()[ 0 ], actual.getCenter()[ 0 ], tolerance );
+		assertEquals( expected.getCenter()[ 1 ], actual.getCenter()[ 1 ], tolerance );
+		assertEquals( w, actual.getHalfWidth(), tolerance );
+		assertEquals( h, actual.getHalfHeight(), tolerance );
+		// The angle of a nearly circular ellipse is undefined.
+		if ( ( h * h - w * w ) > 1e-3 * h * h )
+		{
+			// Ellipses rotated by pi are the same.
+			double d = actual.getTheta() - expected.getTheta();
+			d -= Math.PI * Math.round( d / Math.PI );
+			assertEquals( 0, d, EPS_THETA );
+		}
+	}
+
+	/**
+	 * Computes the ellipse obtained by projecting the ellipsoid to the z=0
+	 * plane, from the eigendecomposition of its 2x2 covariance.
+	 */
+	private void project( final double[] vPos, final double[][] vS, final Ellipse ellipse )
+	{
+		eig2.decomposeSymmetric( new double[][] {
+				{ vS[ 0 ][ 0 ], vS[ 0 ][ 1 ] },
+				{ vS[ 1 ][ 0 ], vS[ 1 ][ 1 ] } } );
+		final double[] eigVals = eig2.getRealEigenvalues();
+		final double[][] V = eig2.getV();
+		ellipse.setCenter( vPos );
+		ellipse.setAxisHalfLength( Math.sqrt( eigVals[ 0 ] ), Math.sqrt( eigVals[ 1 ] ) );
+		ellipse.setTheta( Math.atan2( V[ 1 ][ 0 ], V[ 0 ][ 0 ] ) );
+	}
+
+	/**
+	 * Computes the ellipse obtained by intersecting the ellipsoid with the z=0
+	 * plane, by transforming the ellipsoid to the unit sphere with the
+	 * eigendecomposition of its 3x3 covariance.
+	 *
+	 * @return the distance of the plane to the center of the sphere. The
+	 *         ellipsoid intersects the plane if it is smaller than 1.
+	 */
+	private double intersect( final double[] vPos, final double[][] vS, final Ellipse ellipse )
+	{
+		eig3.decomposeSymmetric( vS );
+		final double[] eigVals = eig3.getRealEigenvalues();
+		final double[][] V = eig3.getV();
+		final double[][] T = new double[ 3 ][ 3 ];
+		final double[][] TS = new double[ 3 ][ 3 ];
+		for ( int i = 0; i < 3; ++i )
+		{
+			final double e = Math.sqrt( eigVals[ i ] );
+			for ( int j = 0; j < 3; ++j )
+			{
+				T[ j ][ i ] = e * V[ j ][ i ];
+				TS[ j ][ i ] = V[ j ][ i ] / e;
+			}
+		}
+		final double[] vx = TS[ 0 ];
+		final double[] vy = TS[ 1 ];
+		final double[] vz = TS[ 2 ];
+
+		final double[] vn = new double[ 3 ];
+		LinAlgHelpers.cross( vx, vy, vn );
+		LinAlgHelpers.normalize( vn );
+		LinAlgHelpers.scale( vz, vPos[ 2 ], vz );
+		final double d = LinAlgHelpers.dot( vn, vz );
+		if ( Math.abs( d ) >= 1 )
+			return Math.abs( d );
+
+		final double radius2 = 1.0 - d * d;
+		LinAlgHelpers.scale( vn, d, vn );
+		LinAlgHelpers.subtract( vz, vn, vz );
+		LinAlgHelpers.mult( T, vz, vn );
+
+		final double c2 = LinAlgHelpers.squareLength( vx );
+		final double c = Math.sqrt( c2 );
+		final double a = LinAlgHelpers.dot( vx, vy ) / c;
+		final double a2 = a * a;
+		final double b2 = LinAlgHelpers.squareLength( vy ) - a2;
+		final double[][] iS = new double[ 2 ][ 2 ];
+		iS[ 0 ][ 0 ] = radius2 * ( 1.0 / c2 + a2 / ( b2 * c2 ) );
+		iS[ 0 ][ 1 ] = radius2 * -a / ( b2 * c );
+		iS[ 1 ][ 0 ] = iS[ 0 ][ 1 ];
+		iS[ 1 ][ 1 ] = radius2 / b2;
+
+		eig2.decomposeSymmetric( iS );
+		final double[] eigVals2 = eig2.getRealEigenvalues();
+		final double[][] V2 = eig2.getV();
+		ellipse.setCenter( vPos[ 0 ] + vn[ 0 ], vPos[ 1 ] + vn[ 1 ] );
+		ellipse.setAxisHalfLength( Math.sqrt( eigVals2[ 0 ] ), Math.sqrt( eigVals2[ 1 ] ) );
+		ellipse.setTheta( Math.atan2( V2[ 1 ][ 0 ], V2[ 0 ][ 0 ] ) );
+		return Math.abs( d );
+	}
+
+	/**
+	 * Transforms a position and covariance to the viewer coordinate system.
+	 */
+	private static void transform( final double[] pos, final double[][] S, final AffineTransform3D transform, final double[] vPos, final double[][] vS )
+	{
+		final double[][] T = new double[ 3 ][ 3 ];
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				T[ r ][ c ] = transform.get( r, c );
+		final double[][] TS = new double[ 3 ][ 3 ];
+		LinAlgHelpers.mult( T, S, TS );
+		LinAlgHelpers.multABT( TS, T, vS );
+		transform.apply( pos, vPos );
+	}
+
+	/**
+	 * Returns the covariance of an ellipsoid with random orientation and
+	 * radii.
+	 */
+	private static double[][] randomCovariance( final Random random )
+	{
+		final double[][] R = randomRotation( random );
+		final double[][] D = new double[ 3 ][ 3 ];
+		for ( int d = 0; d < 3; ++d )
+		{
+			final double radius = 1 + 9 * random.nextDouble();
+			D[ d ][ d ] = radius * radius;
+		}
+		final double[][] RD = new double[ 3 ][ 3 ];
+		final double[][] S = new double[ 3 ][ 3 ];
+		LinAlgHelpers.mult( R, D, RD );
+		LinAlgHelpers.multABT( RD, R, S );
+		return S;
+	}
+
+	/**
+	 * Returns a random viewer transform: a rotation, an anisotropic scaling,
+	 * another rotation, and a translation in the XY plane.
+	 */
+	private static AffineTransform3D randomTransform( final Random random )
+	{
+		final double[][] R1 = randomRotation( random );
+		final double[][] R2 = randomRotation( random );
+		for ( int r = 0; r < 3; ++r )
+		{
+			final double scale = 0.5 + 2.5 * random.nextDouble();
+			for ( int c = 0; c < 3; ++c )
+				R1[ r ][ c ] *= scale;
+		}
+		final double[][] M = new double[ 3 ][ 3 ];
+		LinAlgHelpers.mult( R2, R1, M );
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				M[ 0 ][ 0 ], M[ 0 ][ 1 ], M[ 0 ][ 2 ], 1000 * random.nextDouble(),
+				M[ 1 ][ 0 ], M[ 1 ][ 1 ], M[ 1 ][ 2 ], 1000 * random.nextDouble(),
+				M[ 2 ][ 0 ], M[ 2 ][ 1 ], M[ 2 ][ 2 ], 0 );
+		return transform;
+	}
+
+	/**
+	 * Returns a random rotation matrix, from a random unit quaternion.
+	 */
+	private static double[][] randomRotation( final Random random )
+	{
+		final double[] q = new double[ 4 ];
+		double norm = 0;
+		for ( int i = 0; i < 4; ++i )
+		{
+			q[ i ] = random.nextGaussian();
+			norm += q[ i ] * q[ i ];
+		}
+		norm = Math.sqrt( norm );
+		final double w = q[ 0 ] / norm, x = q[ 1 ] / norm, y = q[ 2 ] / norm, z = q[ 3 ] / norm;
+		return new double[][] {
+				{ 1 - 2 * ( y * y + z * z ), 2 * ( x * y - w * z ), 2 * ( x * z + w * y ) },
+				{ 2 * ( x * y + w * z ), 1 - 2 * ( x * x + z * z ), 2 * ( y * z - w * x ) },
+				{ 2 * ( x * z - w * y ), 2 * ( y * z + w * x ), 1 - 2 * ( x * x + y * y ) } };
+	}
+}
@@ -0,0 +1,289 @@
+package org.mastodon.views.trackscheme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.ModelGraphTrackSchemeProperties;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.views.trackscheme.LineageTreeLayout.LayoutCanceledException;
+
+import gnu.trove.map.TIntDoubleMap;
+import gnu.trove.map.hash.TIntDoubleHashMap;
+
+/**
+ * Checks that the incremental updates of the {@link LineageTreeLayout} give
+ * the same layout as a full layout, and that a canceled layout restores the
+ * previous one.
+ */
+public class LineageTreeLayoutTest
+{
+
+	private ModelGraph graph;
+
+	private TrackSchemeGraph< Spot, Link > trackSchemeGraph;
+
+	private LineageTreeLayout layout;
+
+	/**
+	 * Roots of three tracks, that divide.
+	 */
+	private Spot a, b, c;
+
+	@Before
+	public void setUp()
+	{
+		final Model model = new Model();
+		graph = model.getGraph();
+		trackSchemeGraph = new TrackSchemeGraph<>( graph, model.getGraphIdBimap(), new ModelGraphTrackSchemeProperties( graph ) );
+		layout = new LineageTreeLayout( trackSchemeGraph, new SelectionModelAdapter<>(
+				new DefaultSelectionModel<>( graph, model.getGraphIdBimap() ),
+				trackSchemeGraph.getVertexMap(),
+				trackSchemeGraph.getEdgeMap() ) );
+		a = addTrack( "a" );
+		b = addTrack( "b" );
+		c = addTrack( "c" );
+		layout.layout();
+		assertAllActive();
+	}
+
+	@Test
+	public void testAddVertex()
+	{
+		addSpot( "b2", 0 );
+		assertSameAsFullLayout();
+	}
+
+	@Test
+	public void testAddEdge()
+	{
+		final Spot spot = addSpot( "b2", 0 );
+		assertSameAsFullLayout();
+		addLink( getLeaf( b ), spot );
+		assertSameAsFullLayout();
+	}
+
+	@Test
+	public void testAddDivision()
+	{
+		final Spot parent = getLeaf( a );
+		final Spot child = addSpot( "a-child", parent.getTimepoint() + 1 );
+		addLink( parent, child );
+		assertSameAsFullLayout();
+	}
+
+	@Test
+	public void testRemoveEdge()
+	{
+		graph.remove( b.outgoingEdges().iterator().next() );
+		assertSameAsFullLayout();
+	}
+
+	@Test
+	public void testRemoveVertex()
+	{
+		final Spot child = b.outgoingEdges().iterator().next().getTarget();
+		graph.remove( child );
+		assertSameAsFullLayout();
+	}
+
+	@Test
+	public void testRemoveRoot()
+	{
+		graph.remove( a );
+		assertSameAsFullLayout();
+		graph.remove( c );
+		assertSameAsFullLayout();
+	}
+
+	@Test
+	public void testSuccessiveChanges()
+	{
+		for ( int i = 0; i < 10; i++ )
+		{
+			final Spot spot = addSpot( "b" + i, i );
+			addLink( getLeaf( c ), spot );
+			assertSameAsFullLayout();
+			graph.remove( spot );
+			assertSameAsFullLayout();
+		}
+	}
+
+	@Test
+	public void testCanceledLayout()
+	{
+		// Make one tree a ghost, so that the restored ghost flags are checked.
+		final int mark = layout.nextLayoutTimestamp();
+		for ( final TrackSchemeVertex v : trackSchemeGraph.vertices() )
+			v.setLayoutTimestamp( v.getLabel().startsWith( "b" ) ? mark - 1 : mark );
+		layout.layout( trackSchemeGraph.getRoots(), mark );
+		final int timestamp = layout.getCurrentLayoutTimestamp();
+		final TIntDoubleMap layoutX = getLayoutX();
+		final List< String > ghosts = getGhosts();
+		final List< String > orderedVertices = getOrderedVertices();
+		final double minX = layout.getCurrentLayoutMinX();
+		final double maxX = layout.getCurrentLayoutMaxX();
+		assertEquals( 4, ghosts.size() );
+
+		// A new track before the others shifts all their layout X.
+		addTrack( "0" );
+		final int[] numTrees = { 0 };
+		layout.setCancelCondition( () -> ++numTrees[ 0 ] == 2 );
+		layout.setIncremental( false );
+		try
+		{
+			layout.layout();
+			fail( "The layout was not canceled." );
+		}
+		catch ( final LayoutCanceledException e )
+		{}
+		assertTrue( layout.getCurrentLayoutTimestamp() > timestamp );
+
+		for ( final TrackSchemeVertex v : trackSchemeGraph.vertices() )
+		{
+			if ( v.getLabel().startsWith( "0" ) )
+			{
+				assertNotEquals( "Vertex " + v.getLabel() + " is in the current layout.", layout.getCurrentLayoutTimestamp(), v.getLayoutTimestamp() );
+				continue;
+			}
+			assertEquals( "Vertex " + v.getLabel() + " is not in the current layout.", layout.getCurrentLayoutTimestamp(), v.getLayoutTimestamp() );
+			assertEquals( "Layout X of vertex " + v.getLabel(), layoutX.get( v.getModelVertexId() ), v.getLayoutX(), 0 );
+		}
+		assertEquals( ghosts, getGhosts() );
+		assertEquals( orderedVertices, getOrderedVertices() );
+		assertEquals( minX, layout.getCurrentLayoutMinX(), 0 );
+		assertEquals( maxX, layout.getCurrentLayoutMaxX(), 0 );
+
+		// The next layout is complete.
+		layout.setCancelCondition( null );
+		layout.layout();
+		assertAllActive();
+		assertTrue( getGhosts().isEmpty() );
+	}
+
+	/**
+	 * Updates the layout incrementally, then checks that a full layout gives
+	 * the same layout X coordinates.
+	 */
+	private void assertSameAsFullLayout()
+	{
+		final int timestamp = layout.getCurrentLayoutTimestamp();
+		layout.layout();
+		assertTrue( "The layout timestamp was not incremented.", layout.getCurrentLayoutTimestamp() > timestamp );
+		assertAllActive();
+		final TIntDoubleMap incremental = getLayoutX();
+		final double incrementalMaxX = layout.getCurrentLayoutMaxX();
+
+		layout.setIncremental( false );
+		layout.layout();
+		layout.setIncremental( true );
+		assertAllActive();
+		assertEquals( layout.getCurrentLayoutMaxX(), incrementalMaxX, 0 );
+		final TIntDoubleMap full = getLayoutX();
+		assertEquals( full.size(), incremental.size() );
+		for ( final int id : full.keys() )
+			assertEquals( "Layout X of vertex " + id, full.get( id ), incremental.get( id ), 0 );
+	}
+
+	/**
+	 * Checks that all the vertices are stamped with the timestamp of the
+	 * current layout.
+	 */
+	private void assertAllActive()
+	{
+		final int timestamp = layout.getCurrentLayoutTimestamp();
+		for ( final TrackSchemeVertex v : trackSchemeGraph.vertices() )
+			assertEquals( "Vertex " + v.getLabel() + " is not in the current layout.", timestamp, v.getLayoutTimestamp() );
+	}
+
+	private TIntDoubleMap getLayoutX()
+	{
+		final TIntDoubleMap map = new TIntDoubleHashMap();
+		for ( final TrackSchemeVertex v : trackSchemeGraph.vertices() )
+			map.put( v.getModelVertexId(), v.getLayoutX() );
+		return map;
+	}
+
+	/**
+	 * Returns the labels of the ghost vertices.
+	 */
+	private List< String > getGhosts()
+	{
+		final List< String > ghosts = new ArrayList<>();
+		for ( final TrackSchemeVertex v : trackSchemeGraph.vertices() )
+			if ( v.isGhost() )
+				ghosts.add( v.getLabel() );
+		return ghosts;
+	}
+
+	/**
+	 * Returns the labels of the vertices of the ordered lists of the current
+	 * layout, timepoint by timepoint.
+	 */
+	private List< String > getOrderedVertices()
+	{
+		final List< String > labels = new ArrayList<>();
+		for ( final int tp : layout.getTimepoints().toArray() )
+		{
+			labels.add( "t" + tp );
+			for ( final TrackSchemeVertex v : layout.getTimepointToOrderedVertices().get( tp ) )
+				labels.add( v.getLabel() );
+		}
+		return labels;
+	}
+
+	/**
+	 * Adds a track of 4 timepoints, whose root divides at timepoint 1.
+	 */
+	private Spot addTrack( final String label )
+	{
+		final Spot root = addSpot( label, 0 );
+		final Spot left = addSpot( label + "-l", 1 );
+		final Spot right = addSpot( label + "-r", 1 );
+		final Spot leaf = addSpot( label + "-rr", 2 );
+		addLink( root, left );
+		addLink( root, right );
+		addLink( right, leaf );
+		return root;
+	}
+
+	/**
+	 * Follows the last outgoing edge of each spot from the specified one, and
+	 * returns the leaf that is reached.
+	 */
+	private Spot getLeaf( final Spot root )
+	{
+		Spot spot = root;
+		while ( !spot.outgoingEdges().isEmpty() )
+		{
+			Link last = null;
+			for ( final Link link : spot.outgoingEdges() )
+				last = link;
+			spot = last.getTarget();
+		}
+		return spot;
+	}
+
+	private Spot addSpot( final String label, final int timepoint )
+	{
+		final Spot spot = graph.addVertex().init( timepoint, new double[] { timepoint, 0, 0 }, 1. );
+		spot.setLabel( label );
+		return spot;
+	}
+
+	private void addLink( final Spot source, final Spot target )
+	{
+		graph.addEdge( source, target ).init();
+	}
+}